@@ -24,6 +24,7 @@ LANGUAGES_TABLE='/apps/languages'
 RATINGS_ALBUMS_TABLE='/apps/albums_ratings'
 RATINGS_ARTISTS_TABLE='/apps/artists_ratings'
 USERS_TABLE='/apps/users'
+SLUGS_TABLE='/apps/slugs'
 
 # MapR-FS directories
 ALBUMS_MFS_DIRECTORY='/tmp/albums'
@@ -226,6 +227,9 @@ create_table $RATINGS_ALBUMS_TABLE $RECREATE_TABLES
 create_table $RATINGS_ARTISTS_TABLE $RECREATE_TABLES
 create_table $USERS_TABLE $RECREATE_TABLES
 
+# Slug index is backfilled by the application, so it is recreated empty along with imported tables
+create_table $SLUGS_TABLE $RECREATE_TABLES
+
 #######################################################################
 # Extracting dataset archive
 #######################################################################
@@ -253,6 +257,7 @@ change_table_permissions $LANGUAGES_TABLE
 change_table_permissions $RATINGS_ALBUMS_TABLE
 change_table_permissions $RATINGS_ARTISTS_TABLE
 change_table_permissions $USERS_TABLE
+change_table_permissions $SLUGS_TABLE
 
 cleanup
 
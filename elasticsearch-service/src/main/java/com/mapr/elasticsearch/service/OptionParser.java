@@ -21,6 +21,15 @@ public class OptionParser {
         options.addOption("h", "help", false, "Prints usage information.");
         options.addOption(null, "host", true, "Specifies ElasticSearch host name.");
         options.addOption("p", "port", true, "Specifies ElasticSearch transport port number.");
+        options.addOption("w", "workers", true, "Specifies number of workers per changelog, which publish changes " +
+                "to the ElasticSearch in parallel.");
+        options.addOption(null, "bulk-actions", true, "Specifies maximum number of documents in single bulk " +
+                "request, which is used to reinitialize indices.");
+        options.addOption(null, "bulk-size", true, "Specifies maximum size of single bulk request in megabytes.");
+        options.addOption(null, "bulk-flush-interval", true, "Specifies interval in seconds, after which buffered " +
+                "documents are sent regardless of their number.");
+        options.addOption(null, "bulk-concurrency", true, "Specifies number of bulk requests, which can be " +
+                "executed concurrently. Zero value means that bulk requests are executed synchronously.");
     }
 
     public void parseOpts() {
@@ -57,6 +66,31 @@ public class OptionParser {
                 }
             }
 
+            Integer workers = parseIntOption(cmd, "w", 1);
+            if (workers != null) {
+                elasticSearchService.setWorkers(workers);
+            }
+
+            Integer bulkActions = parseIntOption(cmd, "bulk-actions", 1);
+            if (bulkActions != null) {
+                elasticSearchService.setBulkActions(bulkActions);
+            }
+
+            Integer bulkSize = parseIntOption(cmd, "bulk-size", 1);
+            if (bulkSize != null) {
+                elasticSearchService.setBulkSizeMb(bulkSize);
+            }
+
+            Integer bulkFlushInterval = parseIntOption(cmd, "bulk-flush-interval", 1);
+            if (bulkFlushInterval != null) {
+                elasticSearchService.setBulkFlushIntervalSeconds(bulkFlushInterval);
+            }
+
+            Integer bulkConcurrency = parseIntOption(cmd, "bulk-concurrency", 0);
+            if (bulkConcurrency != null) {
+                elasticSearchService.setBulkConcurrentRequests(bulkConcurrency);
+            }
+
             if (cmd.hasOption("r")) {
                 elasticSearchService.reinit();
             }
@@ -69,6 +103,28 @@ public class OptionParser {
 
     }
 
+    private Integer parseIntOption(CommandLine cmd, String option, int minValue) {
+
+        if (!cmd.hasOption(option)) {
+            return null;
+        }
+
+        Integer value = null;
+        try {
+            value = Integer.parseInt(cmd.getOptionValue(option));
+        } catch (NumberFormatException e) {
+            log.error("Failed to parse option '{}'", option);
+            help();
+        }
+
+        if (value != null && value < minValue) {
+            log.error("Option '{}' must be greater than or equal to {}", option, minValue);
+            help();
+        }
+
+        return value;
+    }
+
     private void help() {
         HelpFormatter formatter = new HelpFormatter();
         formatter.printHelp("elasticsearch-service-1.0-SNAPSHOT.jar", options);
@@ -2,6 +2,7 @@ package com.mapr.elasticsearch.service.listener;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.util.List;
 import java.util.function.Consumer;
 
 public interface ChangelogListener {
@@ -10,11 +11,69 @@ public interface ChangelogListener {
         void callback(String documentId, JsonNode changes);
     }
 
+    /**
+     * Callback, which is invoked once for all the change data records received by single poll of the changelog.
+     * Changelog offsets are committed only after the callback returns normally. If callback throws an exception, the
+     * same records will be redelivered, so callback must be idempotent.
+     */
+    interface ChangeBatchCallback {
+        void callback(List<Change> changes);
+    }
+
+    /**
+     * Single change of the document.
+     */
+    final class Change {
+
+        public enum Type {
+            INSERT, UPDATE, DELETE
+        }
+
+        private final Type type;
+        private final String documentId;
+
+        /**
+         * Inserted document for {@link Type#INSERT}, changed fields for {@link Type#UPDATE} and <code>null</code> for
+         * {@link Type#DELETE}.
+         */
+        private final JsonNode changes;
+
+        public Change(Type type, String documentId, JsonNode changes) {
+            this.type = type;
+            this.documentId = documentId;
+            this.changes = changes;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getDocumentId() {
+            return documentId;
+        }
+
+        public JsonNode getChanges() {
+            return changes;
+        }
+    }
+
     void onInsert(ChangeDataRecordCallback callback);
 
     void onUpdate(ChangeDataRecordCallback callback);
 
     void onDelete(Consumer<String> callback);
 
+    /**
+     * Sets callback, which receives changes in batches. When set, per-record callbacks are not invoked.
+     *
+     * @param callback batch callback.
+     */
+    void onBatch(ChangeBatchCallback callback);
+
     void listen();
+
+    /**
+     * Stops listening. Changes, which are already received, are processed before listener is stopped.
+     */
+    void close();
 }
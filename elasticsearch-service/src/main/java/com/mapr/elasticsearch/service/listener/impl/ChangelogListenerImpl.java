@@ -4,9 +4,14 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.mapr.elasticsearch.service.listener.ChangelogListener;
+import com.mapr.elasticsearch.service.util.ExtendedJson;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
 import org.ojai.FieldPath;
 import org.ojai.KeyValue;
 import org.ojai.Value;
@@ -17,21 +22,56 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+/**
+ * Listens changelog and invokes callbacks via pool of workers. Records are distributed across workers by document
+ * identifier, so changes of the same document are processed in order, while changes of different documents are
+ * processed in parallel. Offsets are committed only up to the first record, which is not processed yet.
+ * <p>
+ * Work queues are bounded by the number of queued records. When workers can not keep up, fetching is paused until
+ * queues are drained, so the polling thread never blocks and the consumer keeps sending heartbeats.
+ */
 public final class ChangelogListenerImpl implements ChangelogListener {
 
     private static final long KAFKA_CONSUMER_POLL_TIMEOUT = 500L;
+    private static final int KAFKA_CONSUMER_MAX_POLL_RECORDS = 500;
+    private static final long BATCH_RETRY_DELAY_MS = 1000L;
+    private static final long METRICS_UPDATE_INTERVAL_MS = 10000L;
+    private static final long METRICS_LOG_INTERVAL_MS = 60000L;
+    private static final long SHUTDOWN_TIMEOUT_MS = 30000L;
+
+    private static final int DEFAULT_WORKERS = 1;
+
+    /**
+     * Number of records, which may be queued for each worker before fetching is paused. Each poll adds at most
+     * {@link #KAFKA_CONSUMER_MAX_POLL_RECORDS} records, so queue never exceeds the sum of both.
+     */
+    private static final int WORKER_QUEUE_CAPACITY = 2 * KAFKA_CONSUMER_MAX_POLL_RECORDS;
 
     /**
      * Consumer used to consume MapR-DB CDC events.
      */
     private KafkaConsumer<byte[], ChangeDataRecord> consumer;
 
+    /**
+     * Consumer, which is used only to look up end offsets of assigned partitions in order to compute the lag. Created
+     * lazily, since Kafka 0.9 consumer API does not allow to look up end offsets without seeking.
+     */
+    private KafkaConsumer<byte[], ChangeDataRecord> lagProbe;
+    private final Properties consumerProperties;
+
     /**
      * MapR changelog path in '/stream:topic' format.
      */
@@ -40,17 +80,48 @@ public final class ChangelogListenerImpl implements ChangelogListener {
     private ChangeDataRecordCallback onInsert;
     private ChangeDataRecordCallback onUpdate;
     private Consumer<String> onDelete;
+    private ChangeBatchCallback onBatch;
+
+    private final int workers;
+    private DocumentWorkerPool workerPool;
+    private final OffsetTracker offsetTracker = new OffsetTracker();
+    private final Set<TopicPartition> pausedPartitions = new HashSet<>();
+    private final ChangelogListenerMetrics metrics;
+
+    private volatile boolean running;
+    private final CountDownLatch stopped = new CountDownLatch(1);
 
     private static final ObjectMapper mapper = new ObjectMapper();
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private ChangelogListenerImpl(String changelog, Properties consumerProperties) {
+    private ChangelogListenerImpl(String changelog, Properties consumerProperties, int workers) {
+        this.consumerProperties = consumerProperties;
         this.consumer = new KafkaConsumer<>(consumerProperties);
         this.changelog = changelog;
+        this.workers = workers;
+        this.metrics = new ChangelogListenerMetrics(
+                () -> (workerPool != null) ? workerPool.queueDepth() : 0,
+                offsetTracker::pendingCount
+        );
     }
 
     public static ChangelogListenerImpl forChangelog(String changelog) {
+        return forChangelog(changelog, DEFAULT_WORKERS);
+    }
+
+    /**
+     * Creates listener, which processes records via the specified number of workers.
+     *
+     * @param changelog changelog path in '/stream:topic' format.
+     * @param workers   number of workers.
+     * @return listener.
+     */
+    public static ChangelogListenerImpl forChangelog(String changelog, int workers) {
+
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be greater than zero");
+        }
 
         if (changelog == null || changelog.isEmpty()) {
             throw new IllegalArgumentException("Changelog path can not be empty");
@@ -63,12 +134,13 @@ public final class ChangelogListenerImpl implements ChangelogListener {
 
         Properties consumerProperties = new Properties();
         consumerProperties.setProperty("group.id", "mapr.music.es");
-        consumerProperties.setProperty("enable.auto.commit", "true");
+        consumerProperties.setProperty("enable.auto.commit", "false");
         consumerProperties.setProperty("auto.offset.reset", "latest");
+        consumerProperties.setProperty("max.poll.records", String.valueOf(KAFKA_CONSUMER_MAX_POLL_RECORDS));
         consumerProperties.setProperty("key.deserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer");
         consumerProperties.setProperty("value.deserializer", "com.mapr.db.cdc.ChangeDataRecordDeserializer");
 
-        return new ChangelogListenerImpl(changelog, consumerProperties);
+        return new ChangelogListenerImpl(changelog, consumerProperties, workers);
     }
 
 
@@ -87,42 +159,336 @@ public final class ChangelogListenerImpl implements ChangelogListener {
         this.onDelete = callback;
     }
 
+    @Override
+    public void onBatch(ChangeBatchCallback callback) {
+        this.onBatch = callback;
+    }
+
     @Override
     public void listen() {
 
-        if (this.onInsert == null && this.onUpdate == null && this.onDelete == null) {
+        if (this.onInsert == null && this.onUpdate == null && this.onDelete == null && this.onBatch == null) {
             log.warn("There is no callbacks set. Listening change data records without callbacks has no effect.");
         }
 
-        this.consumer.subscribe(Collections.singletonList(this.changelog));
-        log.info("Start listening changelog '{}'", this.changelog);
+        if (this.running) {
+            throw new IllegalStateException("Listener is already started");
+        }
+
+        this.running = true;
+        this.workerPool = new DocumentWorkerPool(this.changelog, this.workers, WORKER_QUEUE_CAPACITY);
+        this.metrics.register(this.changelog);
+        this.consumer.subscribe(Collections.singletonList(this.changelog), new ConsumerRebalanceListener() {
+
+            @Override
+            public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                commit();
+                offsetTracker.remove(partitions);
+                pausedPartitions.removeAll(partitions);
+            }
+
+            @Override
+            public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+
+                // Newly assigned partitions stay paused until worker queues are drained
+                if (metrics.isPaused() && !partitions.isEmpty()) {
+                    pause(partitions);
+                }
+            }
+        });
+
+        log.info("Start listening changelog '{}' with {} worker(s)", this.changelog, this.workers);
+
+        new Thread(this::poll, "changelog-listener-" + this.changelog).start();
+    }
+
+    /**
+     * Stops fetching records, waits until fetched records are processed, commits offsets and closes the consumer.
+     */
+    @Override
+    public void close() {
+
+        if (!this.running) {
+            return;
+        }
+
+        // Polling thread stops after the current poll, which takes at most poll timeout
+        this.running = false;
+        try {
+            this.stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        new Thread(() -> {
-            while (true) {
+    private void poll() {
+
+        long lastMetricsUpdate = 0;
+        long lastMetricsLog = System.currentTimeMillis();
+        try {
+            while (this.running && !Thread.currentThread().isInterrupted()) {
 
                 ConsumerRecords<byte[], ChangeDataRecord> changeRecords = consumer.poll(KAFKA_CONSUMER_POLL_TIMEOUT);
-                for (ConsumerRecord<byte[], ChangeDataRecord> consumerRecord : changeRecords) {
-
-                    // The ChangeDataRecord contains all the changes made to a document
-                    ChangeDataRecord changeDataRecord = consumerRecord.value();
-                    ChangeDataRecordType recordType = changeDataRecord.getType();
-                    switch (recordType) {
-                        case RECORD_INSERT:
-                            handleInsert(changeDataRecord);
-                            break;
-                        case RECORD_UPDATE:
-                            handleUpdate(changeDataRecord);
-                            break;
-                        case RECORD_DELETE:
-                            handleDelete(changeDataRecord);
-                            break;
-                        default:
-                            log.warn("Get record of unknown type '{}'. Ignoring ...", recordType);
-                    }
+                dispatch(changeRecords);
+                applyBackpressure();
+                commit();
+
+                long now = System.currentTimeMillis();
+                if (now - lastMetricsUpdate >= METRICS_UPDATE_INTERVAL_MS) {
+                    updateConsumerLag();
+                    lastMetricsUpdate = now;
+                }
+
+                if (now - lastMetricsLog >= METRICS_LOG_INTERVAL_MS) {
+                    log.info("Changelog '{}' metrics: {}", this.changelog, this.metrics);
+                    lastMetricsLog = now;
                 }
+            }
 
+            if (Thread.currentThread().isInterrupted()) {
+                log.warn("Listening changelog '{}' is interrupted", this.changelog);
             }
-        }).start();
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void dispatch(ConsumerRecords<byte[], ChangeDataRecord> changeRecords) {
+
+        if (changeRecords.isEmpty()) {
+            return;
+        }
+
+        for (ConsumerRecord<byte[], ChangeDataRecord> consumerRecord : changeRecords) {
+            offsetTracker.dispatched(partitionOf(consumerRecord), consumerRecord.offset());
+        }
+
+        if (this.onBatch != null) {
+
+            // Batch is split into sub-batches, one per worker, so changes of the same document are in the same one
+            List<List<ConsumerRecord<byte[], ChangeDataRecord>>> subBatches = new ArrayList<>(workerPool.size());
+            for (int i = 0; i < workerPool.size(); i++) {
+                subBatches.add(new ArrayList<>());
+            }
+
+            for (ConsumerRecord<byte[], ChangeDataRecord> consumerRecord : changeRecords) {
+                subBatches.get(workerPool.workerOf(documentIdOf(consumerRecord))).add(consumerRecord);
+            }
+
+            for (int i = 0; i < subBatches.size(); i++) {
+                List<ConsumerRecord<byte[], ChangeDataRecord>> subBatch = subBatches.get(i);
+                if (!subBatch.isEmpty()) {
+                    workerPool.submit(i, subBatch.size(), () -> handleBatch(subBatch));
+                }
+            }
+
+            return;
+        }
+
+        for (ConsumerRecord<byte[], ChangeDataRecord> consumerRecord : changeRecords) {
+            workerPool.submit(workerPool.workerOf(documentIdOf(consumerRecord)), 1, () -> {
+
+                long start = System.nanoTime();
+                boolean failed = false;
+                try {
+                    handleRecord(consumerRecord);
+                } catch (Exception e) {
+                    log.error("Failed to process change data record of document '{}'. Exception: {}",
+                            documentIdOf(consumerRecord), e);
+                    failed = true;
+                }
+
+                metrics.recordCallback(System.nanoTime() - start, failed);
+                offsetTracker.completed(partitionOf(consumerRecord), consumerRecord.offset());
+            });
+        }
+    }
+
+    /**
+     * Invokes batch callback until it succeeds, since the contract of batch callback guarantees redelivery of failed
+     * batches. Failed batch blocks its worker, so fetching is eventually paused until ES recovers.
+     */
+    private void handleBatch(List<ConsumerRecord<byte[], ChangeDataRecord>> subBatch) {
+
+        List<Change> changes = toChanges(subBatch);
+        while (true) {
+
+            long start = System.nanoTime();
+            try {
+                this.onBatch.callback(changes);
+                metrics.recordCallback(System.nanoTime() - start, false);
+                break;
+            } catch (Exception e) {
+                metrics.recordCallback(System.nanoTime() - start, true);
+                log.warn("Failed to process batch of {} change data records. Retrying. Exception: {}",
+                        subBatch.size(), e);
+            }
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(BATCH_RETRY_DELAY_MS);
+            } catch (InterruptedException e) {
+                // Offsets of the batch are not committed, so it will be redelivered after restart
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        for (ConsumerRecord<byte[], ChangeDataRecord> consumerRecord : subBatch) {
+            offsetTracker.completed(partitionOf(consumerRecord), consumerRecord.offset());
+        }
+    }
+
+    /**
+     * Pauses fetching when at least one of the worker queues is almost full and resumes it when all of them are
+     * drained.
+     */
+    private void applyBackpressure() {
+
+        if (!metrics.isPaused() && workerPool.isSaturated()) {
+            pause(consumer.assignment());
+            metrics.setPaused(true);
+            log.debug("Fetching from changelog '{}' is paused. Queue depth: {}", this.changelog,
+                    workerPool.queueDepth());
+        } else if (metrics.isPaused() && workerPool.isDrained()) {
+            if (!pausedPartitions.isEmpty()) {
+                consumer.resume(pausedPartitions.toArray(new TopicPartition[0]));
+                pausedPartitions.clear();
+            }
+            metrics.setPaused(false);
+            log.debug("Fetching from changelog '{}' is resumed", this.changelog);
+        }
+    }
+
+    /**
+     * Pauses the specified partitions and remembers them, since Kafka 0.9 consumer does not expose paused partitions.
+     */
+    private void pause(Collection<TopicPartition> partitions) {
+
+        if (partitions.isEmpty()) {
+            return;
+        }
+
+        consumer.pause(partitions.toArray(new TopicPartition[0]));
+        pausedPartitions.addAll(partitions);
+    }
+
+    private void commit() {
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetTracker.committable();
+        if (offsets.isEmpty()) {
+            return;
+        }
+
+        try {
+            consumer.commitSync(offsets);
+        } catch (KafkaException e) {
+            log.warn("Can not commit offsets of changelog '{}'. Exception: {}", this.changelog, e);
+        }
+    }
+
+    private void updateConsumerLag() {
+
+        Set<TopicPartition> assignment = consumer.assignment();
+        if (assignment.isEmpty()) {
+            return;
+        }
+
+        try {
+            if (lagProbe == null) {
+                lagProbe = new KafkaConsumer<>(consumerProperties);
+            }
+
+            lagProbe.assign(new ArrayList<>(assignment));
+            lagProbe.seekToEnd(assignment.toArray(new TopicPartition[0]));
+
+            long lag = 0;
+            for (TopicPartition partition : assignment) {
+                lag += Math.max(lagProbe.position(partition) - consumer.position(partition), 0);
+            }
+
+            metrics.setConsumerLag(lag);
+        } catch (KafkaException e) {
+            log.debug("Can not compute lag of changelog '{}'. Exception: {}", this.changelog, e);
+        }
+    }
+
+    private void shutdown() {
+
+        try {
+            workerPool.shutdown(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            commit();
+            consumer.close();
+            if (lagProbe != null) {
+                lagProbe.close();
+            }
+        } finally {
+            metrics.unregister();
+            stopped.countDown();
+        }
+
+        log.info("Stopped listening changelog '{}'", this.changelog);
+    }
+
+    private void handleRecord(ConsumerRecord<byte[], ChangeDataRecord> consumerRecord) {
+
+        // The ChangeDataRecord contains all the changes made to a document
+        ChangeDataRecord changeDataRecord = consumerRecord.value();
+        ChangeDataRecordType recordType = changeDataRecord.getType();
+        switch (recordType) {
+            case RECORD_INSERT:
+                handleInsert(changeDataRecord);
+                break;
+            case RECORD_UPDATE:
+                handleUpdate(changeDataRecord);
+                break;
+            case RECORD_DELETE:
+                handleDelete(changeDataRecord);
+                break;
+            default:
+                log.warn("Get record of unknown type '{}'. Ignoring ...", recordType);
+        }
+    }
+
+    private List<Change> toChanges(List<ConsumerRecord<byte[], ChangeDataRecord>> changeRecords) {
+
+        List<Change> changes = new ArrayList<>(changeRecords.size());
+        for (ConsumerRecord<byte[], ChangeDataRecord> consumerRecord : changeRecords) {
+
+            ChangeDataRecord changeDataRecord = consumerRecord.value();
+            String documentId = changeDataRecord.getId().getString();
+            ChangeDataRecordType recordType = changeDataRecord.getType();
+            switch (recordType) {
+                case RECORD_INSERT:
+                    JsonNode inserted = insertedDocument(changeDataRecord);
+                    if (inserted != null) {
+                        changes.add(new Change(Change.Type.INSERT, documentId, inserted));
+                    }
+                    break;
+                case RECORD_UPDATE:
+                    changes.add(new Change(Change.Type.UPDATE, documentId, updatedFields(changeDataRecord)));
+                    break;
+                case RECORD_DELETE:
+                    changes.add(new Change(Change.Type.DELETE, documentId, null));
+                    break;
+                default:
+                    log.warn("Get record of unknown type '{}'. Ignoring ...", recordType);
+            }
+        }
+
+        return changes;
+    }
+
+    private static TopicPartition partitionOf(ConsumerRecord<?, ?> consumerRecord) {
+        return new TopicPartition(consumerRecord.topic(), consumerRecord.partition());
+    }
+
+    private static String documentIdOf(ConsumerRecord<byte[], ChangeDataRecord> consumerRecord) {
+        return consumerRecord.value().getId().getString();
     }
 
     private void handleInsert(ChangeDataRecord changeDataRecord) {
@@ -134,37 +500,50 @@ public final class ChangelogListenerImpl implements ChangelogListener {
             return;
         }
 
+        JsonNode inserted = insertedDocument(changeDataRecord);
+        if (inserted != null) {
+            this.onInsert.callback(documentId, inserted);
+        }
+    }
+
+    private void handleUpdate(ChangeDataRecord changeDataRecord) {
+
+        String documentId = changeDataRecord.getId().getString();
+        log.debug("Updated document with id = '{}'", documentId);
+
+        if (this.onUpdate == null) {
+            return;
+        }
+
+        this.onUpdate.callback(documentId, updatedFields(changeDataRecord));
+    }
+
+    private JsonNode insertedDocument(ChangeDataRecord changeDataRecord) {
+
         Iterator<KeyValue<FieldPath, ChangeNode>> iterator = changeDataRecord.iterator();
         if (!iterator.hasNext()) {
             log.warn("Insert Change Data Record received with no change nodes. Ignoring ...");
-            return;
+            return null;
         }
 
         Map.Entry<FieldPath, ChangeNode> changeNodeEntry = iterator.next();
         ChangeNode changeNode = changeNodeEntry.getValue();
         if (changeNode == null) {
             log.warn("Insert Change Data Record received with 'null' change node. Ignoring ...");
-            return;
+            return null;
         }
 
         Value changeNodeValue = changeNode.getValue();
         if (changeNodeValue == null) {
             log.warn("Insert Change Data Record received with 'null' change node value. Ignoring ...");
-            return;
+            return null;
         }
 
         String jsonString = changeNodeValue.asJsonString();
-        this.onInsert.callback(documentId, parseJsonString(jsonString));
+        return parseJsonString(jsonString);
     }
 
-    private void handleUpdate(ChangeDataRecord changeDataRecord) {
-
-        String documentId = changeDataRecord.getId().getString();
-        log.debug("Updated document with id = '{}'", documentId);
-
-        if (this.onUpdate == null) {
-            return;
-        }
+    private ObjectNode updatedFields(ChangeDataRecord changeDataRecord) {
 
         ObjectNode changes = mapper.createObjectNode();
         for (Map.Entry<FieldPath, ChangeNode> changeNodeEntry : changeDataRecord) {
@@ -175,7 +554,7 @@ public final class ChangelogListenerImpl implements ChangelogListener {
             changes.set(fieldPathAsString, parseJsonString(jsonString));
         }
 
-        this.onUpdate.callback(documentId, changes);
+        return changes;
     }
 
     private void handleDelete(ChangeDataRecord changeDataRecord) {
@@ -191,7 +570,7 @@ public final class ChangelogListenerImpl implements ChangelogListener {
 
         JsonNode node = null;
         try {
-            node = mapper.readValue(jsonString, JsonNode.class);
+            node = ExtendedJson.removeTags(mapper.readValue(jsonString, JsonNode.class));
         } catch (IOException e) {
             log.warn("Can not parse JSON string '{}' as instance of Jackson JsonNode", jsonString);
 
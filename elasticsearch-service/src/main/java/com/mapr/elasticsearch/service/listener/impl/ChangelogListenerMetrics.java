@@ -0,0 +1,146 @@
+package com.mapr.elasticsearch.service.listener.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Collects metrics of the changelog listener. Queue depth and pending records are read on demand, consumer lag and
+ * paused state are updated by the polling thread.
+ */
+public final class ChangelogListenerMetrics implements ChangelogListenerMetricsMBean {
+
+    private static final String OBJECT_NAME_FORMAT = "com.mapr.elasticsearch.service:type=ChangelogListener,name=%s";
+
+    private final Logger log = LoggerFactory.getLogger(ChangelogListenerMetrics.class);
+
+    private final IntSupplier queueDepth;
+    private final IntSupplier pendingRecords;
+
+    private volatile long consumerLag;
+    private volatile boolean paused;
+
+    private final AtomicLong callbackCount = new AtomicLong();
+    private final AtomicLong callbackFailureCount = new AtomicLong();
+    private final AtomicLong callbackLatencyNanos = new AtomicLong();
+    private final AtomicLong maxCallbackLatencyNanos = new AtomicLong();
+
+    private ObjectName objectName;
+
+    ChangelogListenerMetrics(IntSupplier queueDepth, IntSupplier pendingRecords) {
+        this.queueDepth = queueDepth;
+        this.pendingRecords = pendingRecords;
+    }
+
+    void register(String changelog) {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            objectName = new ObjectName(String.format(OBJECT_NAME_FORMAT, ObjectName.quote(changelog)));
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            log.warn("Can not register metrics of changelog '{}'. Exception: {}", changelog, e);
+            objectName = null;
+        }
+    }
+
+    void unregister() {
+
+        if (objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.warn("Can not unregister metrics '{}'. Exception: {}", objectName, e);
+        }
+    }
+
+    void recordCallback(long latencyNanos, boolean failed) {
+
+        callbackCount.incrementAndGet();
+        if (failed) {
+            callbackFailureCount.incrementAndGet();
+        }
+
+        callbackLatencyNanos.addAndGet(latencyNanos);
+        maxCallbackLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    void setConsumerLag(long consumerLag) {
+        this.consumerLag = consumerLag;
+    }
+
+    void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    @Override
+    public long getConsumerLag() {
+        return consumerLag;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public int getPendingRecords() {
+        return pendingRecords.getAsInt();
+    }
+
+    @Override
+    public boolean isPaused() {
+        return paused;
+    }
+
+    @Override
+    public long getCallbackCount() {
+        return callbackCount.get();
+    }
+
+    @Override
+    public long getCallbackFailureCount() {
+        return callbackFailureCount.get();
+    }
+
+    @Override
+    public double getAverageCallbackLatencyMs() {
+        long count = callbackCount.get();
+        return (count > 0) ? toMillis(callbackLatencyNanos.get()) / count : 0;
+    }
+
+    @Override
+    public double getMaxCallbackLatencyMs() {
+        return toMillis(maxCallbackLatencyNanos.get());
+    }
+
+    @Override
+    public void resetLatency() {
+        callbackCount.set(0);
+        callbackFailureCount.set(0);
+        callbackLatencyNanos.set(0);
+        maxCallbackLatencyNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("lag: %d, queue depth: %d, pending records: %d, paused: %b, callbacks: %d, " +
+                        "failures: %d, avg latency: %.2fms, max latency: %.2fms", getConsumerLag(), getQueueDepth(),
+                getPendingRecords(), isPaused(), getCallbackCount(), getCallbackFailureCount(),
+                getAverageCallbackLatencyMs(), getMaxCallbackLatencyMs());
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
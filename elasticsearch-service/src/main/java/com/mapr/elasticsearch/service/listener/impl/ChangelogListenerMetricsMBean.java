@@ -0,0 +1,40 @@
+package com.mapr.elasticsearch.service.listener.impl;
+
+/**
+ * Metrics of the changelog listener, exposed via JMX.
+ */
+public interface ChangelogListenerMetricsMBean {
+
+    /**
+     * @return number of records, which are published to the changelog, but not fetched by the listener yet.
+     */
+    long getConsumerLag();
+
+    /**
+     * @return number of records, which are queued to the workers.
+     */
+    int getQueueDepth();
+
+    /**
+     * @return number of records, which are fetched, but not processed yet.
+     */
+    int getPendingRecords();
+
+    /**
+     * @return <code>true</code> if fetching is paused since workers can not keep up.
+     */
+    boolean isPaused();
+
+    long getCallbackCount();
+
+    long getCallbackFailureCount();
+
+    double getAverageCallbackLatencyMs();
+
+    double getMaxCallbackLatencyMs();
+
+    /**
+     * Resets callback latency statistics.
+     */
+    void resetLatency();
+}
@@ -0,0 +1,187 @@
+package com.mapr.elasticsearch.service.listener.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed pool of single-threaded workers. Tasks of the same document are always executed by the same worker, so they are
+ * executed in order they were submitted, while tasks of different documents are executed in parallel.
+ * <p>
+ * Queues are bounded by the number of records of the queued tasks instead of the number of tasks, since single task may
+ * process the whole batch. Submitting never blocks: the caller must stop fetching once the pool is saturated, so each
+ * queue exceeds its capacity by at most the records, which were fetched before fetching is stopped.
+ */
+final class DocumentWorkerPool {
+
+    /**
+     * Submitted to the queue of each worker on shutdown. Worker stops after all the preceding tasks are executed.
+     */
+    private static final Task STOP = new Task(() -> {
+    }, 0);
+
+    private final Logger log = LoggerFactory.getLogger(DocumentWorkerPool.class);
+
+    private final List<BlockingQueue<Task>> queues;
+    private final List<AtomicInteger> queuedRecords;
+    private final List<Thread> threads;
+    private final int queueCapacity;
+
+    /**
+     * Creates and starts workers.
+     *
+     * @param name          name of the pool, which is used in thread names.
+     * @param workers       number of workers.
+     * @param queueCapacity number of records, which may be queued for each worker before the pool is saturated.
+     */
+    DocumentWorkerPool(String name, int workers, int queueCapacity) {
+
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be greater than zero");
+        }
+
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be greater than zero");
+        }
+
+        this.queueCapacity = queueCapacity;
+        this.queues = new ArrayList<>(workers);
+        this.queuedRecords = new ArrayList<>(workers);
+        this.threads = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+
+            BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+            AtomicInteger records = new AtomicInteger();
+            Thread thread = new Thread(() -> work(queue, records), name + "-worker-" + i);
+            queues.add(queue);
+            queuedRecords.add(records);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    int size() {
+        return queues.size();
+    }
+
+    /**
+     * Returns index of the worker, which executes tasks of the specified document.
+     *
+     * @param documentId document's identifier.
+     * @return index of the worker.
+     */
+    int workerOf(String documentId) {
+        return (documentId == null) ? 0 : (documentId.hashCode() & Integer.MAX_VALUE) % queues.size();
+    }
+
+    /**
+     * Submits task to the specified worker without blocking.
+     *
+     * @param worker  index of the worker.
+     * @param records number of records, which are processed by the task.
+     * @param task    task.
+     */
+    void submit(int worker, int records, Runnable task) {
+        queuedRecords.get(worker).addAndGet(records);
+        queues.get(worker).add(new Task(task, records));
+    }
+
+    /**
+     * Returns total number of records of the queued and running tasks.
+     *
+     * @return total number of queued records.
+     */
+    int queueDepth() {
+        return queuedRecords.stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    /**
+     * Indicates that at least one of the queues is almost full, so no more tasks should be fetched.
+     *
+     * @return <code>true</code> if at least one of the queues is filled above high watermark.
+     */
+    boolean isSaturated() {
+        int highWatermark = queueCapacity - queueCapacity / 4;
+        return queuedRecords.stream().anyMatch(records -> records.get() >= highWatermark);
+    }
+
+    /**
+     * Indicates that all the queues are drained enough to fetch more tasks.
+     *
+     * @return <code>true</code> if all of the queues are filled below low watermark.
+     */
+    boolean isDrained() {
+        int lowWatermark = queueCapacity / 2;
+        return queuedRecords.stream().allMatch(records -> records.get() <= lowWatermark);
+    }
+
+    /**
+     * Executes all the queued tasks and stops workers. Workers, which do not stop within the specified timeout, are
+     * interrupted.
+     *
+     * @param timeout maximum time to wait.
+     * @param unit    time unit of the timeout.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (BlockingQueue<Task> queue : queues) {
+            queue.add(STOP);
+        }
+
+        for (Thread thread : threads) {
+            thread.join(Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 1));
+            if (thread.isAlive()) {
+                log.warn("Worker '{}' did not stop in time. Interrupting", thread.getName());
+                thread.interrupt();
+            }
+        }
+    }
+
+    private void work(BlockingQueue<Task> queue, AtomicInteger records) {
+
+        while (true) {
+
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (task == STOP) {
+                return;
+            }
+
+            try {
+                task.runnable.run();
+            } catch (Exception e) {
+                log.error("Task failed. Exception: {}", e);
+            } finally {
+                records.addAndGet(-task.records);
+            }
+
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private static final class Task {
+
+        final Runnable runnable;
+        final int records;
+
+        Task(Runnable runnable, int records) {
+            this.runnable = runnable;
+            this.records = records;
+        }
+    }
+}
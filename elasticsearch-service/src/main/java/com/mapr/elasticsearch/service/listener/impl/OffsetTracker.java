@@ -0,0 +1,78 @@
+package com.mapr.elasticsearch.service.listener.impl;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Tracks offsets of the records, which are processed out of order by several workers. Offset of the partition can be
+ * committed only up to the first record, which is not processed yet, so no record is lost on restart.
+ */
+final class OffsetTracker {
+
+    private static final class PartitionOffsets {
+
+        /**
+         * Offsets of dispatched records, which are not processed yet.
+         */
+        final TreeSet<Long> pending = new TreeSet<>();
+
+        /**
+         * Offset of the next record after the last dispatched one.
+         */
+        long next = -1;
+
+        long committed = -1;
+    }
+
+    private final Map<TopicPartition, PartitionOffsets> partitions = new HashMap<>();
+
+    synchronized void dispatched(TopicPartition partition, long offset) {
+
+        PartitionOffsets offsets = partitions.computeIfAbsent(partition, p -> new PartitionOffsets());
+        offsets.pending.add(offset);
+        offsets.next = Math.max(offsets.next, offset + 1);
+    }
+
+    synchronized void completed(TopicPartition partition, long offset) {
+
+        // Partition may be already revoked
+        PartitionOffsets offsets = partitions.get(partition);
+        if (offsets != null) {
+            offsets.pending.remove(offset);
+        }
+    }
+
+    /**
+     * Returns offsets, which can be committed and were not returned before.
+     *
+     * @return offsets to commit by partition.
+     */
+    synchronized Map<TopicPartition, OffsetAndMetadata> committable() {
+
+        Map<TopicPartition, OffsetAndMetadata> committable = new HashMap<>();
+        for (Map.Entry<TopicPartition, PartitionOffsets> entry : partitions.entrySet()) {
+
+            PartitionOffsets offsets = entry.getValue();
+            long offset = offsets.pending.isEmpty() ? offsets.next : offsets.pending.first();
+            if (offset > offsets.committed) {
+                committable.put(entry.getKey(), new OffsetAndMetadata(offset));
+                offsets.committed = offset;
+            }
+        }
+
+        return committable;
+    }
+
+    synchronized int pendingCount() {
+        return partitions.values().stream().mapToInt(offsets -> offsets.pending.size()).sum();
+    }
+
+    synchronized void remove(Collection<TopicPartition> revoked) {
+        revoked.forEach(partitions::remove);
+    }
+}
@@ -0,0 +1,415 @@
+package com.mapr.elasticsearch.service.service;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads documents into the single ElasticSearch index via {@link BulkProcessor}. Documents are grouped into bulk
+ * requests by number of actions, size in bytes and flush interval, and several bulk requests can be executed
+ * concurrently.
+ * <p>
+ * Rejected bulk requests are retried with exponential backoff by {@link BulkProcessor} itself. Failed items and bulk
+ * requests, which failed entirely, are queued and retried up to the specified number of times.
+ * <p>
+ * Refreshing and replication of the index are disabled while documents are loaded and restored after the indexer is
+ * closed.
+ */
+public class BulkIndexer implements AutoCloseable {
+
+    private static final String REFRESH_INTERVAL_SETTING = "index.refresh_interval";
+    private static final String NUMBER_OF_REPLICAS_SETTING = "index.number_of_replicas";
+
+    private static final long BACKOFF_INITIAL_DELAY_MS = 100L;
+    private static final long RETRY_DELAY_MS = 1000L;
+    private static final long AWAIT_POLL_INTERVAL_MS = 100L;
+    private static final long AWAIT_CLOSE_TIMEOUT_MINUTES = 10L;
+    private static final long PROGRESS_LOG_INTERVAL_MS = 10000L;
+
+    private static final int DEFAULT_BULK_ACTIONS = 1000;
+    private static final int DEFAULT_BULK_SIZE_MB = 5;
+    private static final int DEFAULT_FLUSH_INTERVAL_SECONDS = 5;
+    private static final int DEFAULT_CONCURRENT_REQUESTS = 2;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final Logger log = LoggerFactory.getLogger(BulkIndexer.class);
+
+    private final TransportClient client;
+    private final String indexName;
+    private final String typeName;
+
+    private int bulkActions = DEFAULT_BULK_ACTIONS;
+    private int bulkSizeMb = DEFAULT_BULK_SIZE_MB;
+    private int flushIntervalSeconds = DEFAULT_FLUSH_INTERVAL_SECONDS;
+    private int concurrentRequests = DEFAULT_CONCURRENT_REQUESTS;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    private BulkProcessor processor;
+
+    /**
+     * Index settings, which were set before the loading started.
+     */
+    private String originalRefreshInterval;
+    private String originalNumberOfReplicas;
+
+    /**
+     * Requests of the failed items, which will be retried.
+     */
+    private final Queue<IndexRequest> retries = new ConcurrentLinkedQueue<>();
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+
+    /**
+     * Number of added documents, which are neither indexed nor failed nor queued for retry.
+     */
+    private final AtomicLong pending = new AtomicLong();
+
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong lastProgressLogTime = new AtomicLong();
+    private long startTime;
+
+    public BulkIndexer(TransportClient client, String indexName, String typeName) {
+
+        if (client == null) {
+            throw new IllegalArgumentException("Client can not be null");
+        }
+
+        if (indexName == null || indexName.isEmpty()) {
+            throw new IllegalArgumentException("Index name can not be empty");
+        }
+
+        if (typeName == null || typeName.isEmpty()) {
+            throw new IllegalArgumentException("Type name can not be empty");
+        }
+
+        this.client = client;
+        this.indexName = indexName;
+        this.typeName = typeName;
+    }
+
+    /**
+     * Specifies maximum number of documents in single bulk request.
+     *
+     * @param bulkActions maximum number of documents in single bulk request.
+     * @return indexer.
+     */
+    public BulkIndexer withBulkActions(int bulkActions) {
+
+        if (bulkActions <= 0) {
+            throw new IllegalArgumentException("Bulk actions must be greater than zero");
+        }
+
+        this.bulkActions = bulkActions;
+        return this;
+    }
+
+    /**
+     * Specifies maximum size of single bulk request in megabytes.
+     *
+     * @param bulkSizeMb maximum size of single bulk request in megabytes.
+     * @return indexer.
+     */
+    public BulkIndexer withBulkSizeMb(int bulkSizeMb) {
+
+        if (bulkSizeMb <= 0) {
+            throw new IllegalArgumentException("Bulk size must be greater than zero");
+        }
+
+        this.bulkSizeMb = bulkSizeMb;
+        return this;
+    }
+
+    /**
+     * Specifies interval, after which buffered documents are sent regardless of the number of them.
+     *
+     * @param flushIntervalSeconds flush interval in seconds.
+     * @return indexer.
+     */
+    public BulkIndexer withFlushIntervalSeconds(int flushIntervalSeconds) {
+
+        if (flushIntervalSeconds <= 0) {
+            throw new IllegalArgumentException("Flush interval must be greater than zero");
+        }
+
+        this.flushIntervalSeconds = flushIntervalSeconds;
+        return this;
+    }
+
+    /**
+     * Specifies number of bulk requests, which can be executed concurrently. Zero value means that bulk requests are
+     * executed synchronously.
+     *
+     * @param concurrentRequests number of concurrent bulk requests.
+     * @return indexer.
+     */
+    public BulkIndexer withConcurrentRequests(int concurrentRequests) {
+
+        if (concurrentRequests < 0) {
+            throw new IllegalArgumentException("Concurrent requests can not be negative");
+        }
+
+        this.concurrentRequests = concurrentRequests;
+        return this;
+    }
+
+    /**
+     * Specifies number of times failed document will be retried.
+     *
+     * @param maxRetries maximum number of retries.
+     * @return indexer.
+     */
+    public BulkIndexer withMaxRetries(int maxRetries) {
+
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("Max retries can not be negative");
+        }
+
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Disables refreshing and replication of the index and starts the indexer.
+     *
+     * @return indexer.
+     */
+    public BulkIndexer start() {
+
+        if (processor != null) {
+            throw new IllegalStateException("Indexer is already started");
+        }
+
+        GetSettingsResponse settings = client.admin().indices().prepareGetSettings(indexName).get();
+        originalRefreshInterval = settings.getSetting(indexName, REFRESH_INTERVAL_SETTING);
+        originalNumberOfReplicas = settings.getSetting(indexName, NUMBER_OF_REPLICAS_SETTING);
+
+        client.admin().indices().prepareUpdateSettings(indexName)
+                .setSettings(Settings.builder()
+                        .put(REFRESH_INTERVAL_SETTING, "-1")
+                        .put(NUMBER_OF_REPLICAS_SETTING, 0))
+                .get();
+
+        processor = BulkProcessor.builder(client, new Listener())
+                .setBulkActions(bulkActions)
+                .setBulkSize(new ByteSizeValue(bulkSizeMb, ByteSizeUnit.MB))
+                .setFlushInterval(TimeValue.timeValueSeconds(flushIntervalSeconds))
+                .setConcurrentRequests(concurrentRequests)
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(BACKOFF_INITIAL_DELAY_MS),
+                        maxRetries))
+                .build();
+
+        startTime = System.nanoTime();
+        lastProgressLogTime.set(System.currentTimeMillis());
+        log.info("Started bulk indexing of '{}' index. Bulk actions: {}, bulk size: {}MB, flush interval: {}s, " +
+                "concurrent requests: {}", indexName, bulkActions, bulkSizeMb, flushIntervalSeconds,
+                concurrentRequests);
+
+        return this;
+    }
+
+    /**
+     * Adds document to the indexer. Document will be sent to the ElasticSearch as part of the bulk request.
+     *
+     * @param id   document's identifier.
+     * @param json document's JSON source.
+     */
+    public void index(String id, String json) {
+
+        if (processor == null) {
+            throw new IllegalStateException("Indexer is not started");
+        }
+
+        add(new IndexRequest(indexName, typeName, id).source(json, XContentType.JSON));
+        resubmitRetries();
+    }
+
+    /**
+     * Sends buffered documents, waits until all the documents are indexed or retries are exhausted, restores index
+     * settings and refreshes the index.
+     */
+    @Override
+    public void close() {
+
+        if (processor == null) {
+            return;
+        }
+
+        try {
+            do {
+                resubmitRetries();
+                processor.flush();
+                awaitPending();
+                if (!retries.isEmpty()) {
+                    TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MS);
+                }
+            } while (!retries.isEmpty());
+
+            processor.awaitClose(AWAIT_CLOSE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Bulk indexing of '{}' index is interrupted", indexName);
+        } finally {
+            processor = null;
+            restoreSettings();
+        }
+
+        log.info("Finished bulk indexing of '{}' index. Indexed: {}, failed: {}, throughput: {} docs/sec", indexName,
+                indexed.get(), failed.get(), throughput());
+    }
+
+    private void add(IndexRequest request) {
+        pending.incrementAndGet();
+        processor.add(request);
+    }
+
+    private void resubmitRetries() {
+
+        IndexRequest request;
+        while ((request = retries.poll()) != null) {
+            add(request);
+        }
+    }
+
+    private void awaitPending() throws InterruptedException {
+        while (pending.get() > 0) {
+            TimeUnit.MILLISECONDS.sleep(AWAIT_POLL_INTERVAL_MS);
+        }
+    }
+
+    private void restoreSettings() {
+
+        Settings.Builder settings = Settings.builder();
+        if (originalRefreshInterval != null) {
+            settings.put(REFRESH_INTERVAL_SETTING, originalRefreshInterval);
+        } else {
+            settings.putNull(REFRESH_INTERVAL_SETTING);
+        }
+
+        if (originalNumberOfReplicas != null) {
+            settings.put(NUMBER_OF_REPLICAS_SETTING, originalNumberOfReplicas);
+        } else {
+            settings.putNull(NUMBER_OF_REPLICAS_SETTING);
+        }
+
+        try {
+            client.admin().indices().prepareUpdateSettings(indexName).setSettings(settings).get();
+            client.admin().indices().prepareRefresh(indexName).get();
+        } catch (Exception e) {
+            log.error("Can not restore settings of '{}' index. Exception: {}", indexName, e);
+        }
+    }
+
+    private void retryOrFail(IndexRequest request, String reason) {
+
+        int attempt = attempts.merge(request.id(), 1, Integer::sum);
+        if (attempt <= maxRetries) {
+            log.debug("Document '{}' is not indexed, retrying. Attempt: {}. Reason: {}", request.id(), attempt, reason);
+            retries.add(request);
+        } else {
+            log.warn("Document '{}' is not indexed after {} retries. Reason: {}", request.id(), maxRetries, reason);
+            attempts.remove(request.id());
+            failed.incrementAndGet();
+        }
+
+        pending.decrementAndGet();
+    }
+
+    private void succeed(IndexRequest request) {
+
+        if (!attempts.isEmpty()) {
+            attempts.remove(request.id());
+        }
+
+        indexed.incrementAndGet();
+        pending.decrementAndGet();
+    }
+
+    private void logProgress() {
+
+        long now = System.currentTimeMillis();
+        long last = lastProgressLogTime.get();
+        if (now - last >= PROGRESS_LOG_INTERVAL_MS && lastProgressLogTime.compareAndSet(last, now)) {
+            log.info("Bulk indexing of '{}' index. Indexed: {}, failed: {}, throughput: {} docs/sec", indexName,
+                    indexed.get(), failed.get(), throughput());
+        }
+    }
+
+    private long throughput() {
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        return (elapsedMs > 0) ? indexed.get() * 1000 / elapsedMs : indexed.get();
+    }
+
+    private static boolean isRetryable(BulkItemResponse.Failure failure) {
+        return failure.getStatus() == RestStatus.TOO_MANY_REQUESTS
+                || failure.getStatus() == RestStatus.SERVICE_UNAVAILABLE
+                || failure.getStatus() == RestStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    private class Listener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            log.debug("Executing bulk #{} of {} documents", executionId, request.numberOfActions());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+
+            for (BulkItemResponse item : response.getItems()) {
+
+                DocWriteRequest itemRequest = request.requests().get(item.getItemId());
+                if (!(itemRequest instanceof IndexRequest)) {
+                    continue;
+                }
+
+                IndexRequest indexRequest = (IndexRequest) itemRequest;
+                if (!item.isFailed()) {
+                    succeed(indexRequest);
+                } else if (isRetryable(item.getFailure())) {
+                    retryOrFail(indexRequest, item.getFailureMessage());
+                } else {
+                    log.warn("Document '{}' can not be indexed. Reason: {}", item.getId(), item.getFailureMessage());
+                    failed.incrementAndGet();
+                    pending.decrementAndGet();
+                }
+            }
+
+            logProgress();
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+
+            log.warn("Bulk #{} of {} documents failed. Exception: {}", executionId, request.numberOfActions(),
+                    failure);
+
+            for (DocWriteRequest itemRequest : request.requests()) {
+                if (itemRequest instanceof IndexRequest) {
+                    retryOrFail((IndexRequest) itemRequest, failure.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -5,11 +5,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.mapr.elasticsearch.service.listener.ChangelogListener;
 import com.mapr.elasticsearch.service.listener.impl.ChangelogListenerImpl;
-import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.transport.client.PreBuiltTransportClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +22,9 @@ import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -35,35 +41,109 @@ public class MaprElasticSearchServiceBuilder {
     }
 
     /**
-     * Specifies ES index creating/updating action on Change Data Record callback.
+     * Publishes batch of changes to the ElasticSearch via single bulk request. Changes of the same document are merged,
+     * so each document is sent at most once per batch. Inserts replace the indexed document, updates are sent as
+     * partial-document upserts, so fields which are not changed are preserved.
      */
-    private class SaveIndexCDCCallback implements ChangelogListener.ChangeDataRecordCallback {
+    private class BulkIndexCDCCallback implements ChangelogListener.ChangeBatchCallback {
 
         TransportClient client;
         ObjectMapper mapper = new ObjectMapper();
 
-        Logger log = LoggerFactory.getLogger(SaveIndexCDCCallback.class);
+        Logger log = LoggerFactory.getLogger(BulkIndexCDCCallback.class);
 
-        SaveIndexCDCCallback(TransportClient client) {
+        BulkIndexCDCCallback(TransportClient client) {
             this.client = client;
         }
 
         @Override
-        public void callback(String documentId, JsonNode changes) {
+        public void callback(List<ChangelogListener.Change> changes) {
 
-            JsonNode allowed = copyOnlyAllowedFields(changes);
+            Map<String, ChangelogListener.Change> merged = merge(changes);
+            if (merged.isEmpty()) {
+                return;
+            }
 
-            if (allowed == null) {
-                log.info("Document with id: '{}' was changed, but none of the fields are allowed to be sent to the ES",
-                        documentId);
+            BulkRequestBuilder bulk = client.prepareBulk();
+            for (ChangelogListener.Change change : merged.values()) {
+                switch (change.getType()) {
+                    case INSERT:
+                        bulk.add(client.prepareIndex(indexName, typeName, change.getDocumentId())
+                                .setSource(change.getChanges().toString(), XContentType.JSON));
+                        break;
+                    case UPDATE:
+                        bulk.add(client.prepareUpdate(indexName, typeName, change.getDocumentId())
+                                .setDoc(change.getChanges().toString(), XContentType.JSON)
+                                .setDocAsUpsert(true));
+                        break;
+                    case DELETE:
+                        bulk.add(client.prepareDelete(indexName, typeName, change.getDocumentId()));
+                        break;
+                }
+            }
+
+            BulkResponse response = bulk.get();
+            log.debug("Sent {} changes of {} change data records to the '{}' index. Took: {}", merged.size(),
+                    changes.size(), indexName, response.getTook());
+
+            if (!response.hasFailures()) {
                 return;
             }
 
-            IndexResponse response = client.prepareIndex(indexName, typeName, documentId)
-                    .setSource(allowed.toString(), XContentType.JSON)
-                    .get();
+            for (BulkItemResponse item : response.getItems()) {
+
+                if (!item.isFailed()) {
+                    continue;
+                }
+
+                // Whole batch is retried by the listener, since all of the operations are idempotent
+                if (isRetryable(item.getFailure().getStatus())) {
+                    throw new IllegalStateException("Document '" + item.getId() + "' can not be sent to the ES: " +
+                            item.getFailureMessage());
+                }
+
+                log.warn("Document '{}' can not be sent to the ES. Ignoring. Reason: {}", item.getId(),
+                        item.getFailureMessage());
+            }
+        }
+
+        /**
+         * Merges changes of the same document in order they were made.
+         *
+         * @param changes batch of changes.
+         * @return resulting change by document identifier.
+         */
+        private Map<String, ChangelogListener.Change> merge(List<ChangelogListener.Change> changes) {
+
+            Map<String, ChangelogListener.Change> merged = new LinkedHashMap<>();
+            for (ChangelogListener.Change change : changes) {
+
+                String documentId = change.getDocumentId();
+                if (change.getType() == ChangelogListener.Change.Type.DELETE) {
+                    merged.put(documentId, change);
+                    continue;
+                }
+
+                ObjectNode allowed = copyOnlyAllowedFields(change.getChanges());
+                if (allowed == null) {
+                    log.debug("Document with id: '{}' was changed, but none of the fields are allowed to be sent to " +
+                            "the ES", documentId);
+                    continue;
+                }
+
+                ChangelogListener.Change previous = merged.get(documentId);
+                if (change.getType() == ChangelogListener.Change.Type.UPDATE && previous != null
+                        && previous.getType() != ChangelogListener.Change.Type.DELETE) {
+
+                    // Update is applied on top of the previous insert or update, keeping its type
+                    ((ObjectNode) previous.getChanges()).setAll(allowed);
+                    continue;
+                }
+
+                merged.put(documentId, new ChangelogListener.Change(change.getType(), documentId, allowed));
+            }
 
-            log.info("Elasticsearch Index Response: '{}'", response);
+            return merged;
         }
 
         /**
@@ -72,7 +152,7 @@ public class MaprElasticSearchServiceBuilder {
          * @param original all the changes.
          * @return changes for the specified fields.
          */
-        private JsonNode copyOnlyAllowedFields(JsonNode original) {
+        private ObjectNode copyOnlyAllowedFields(JsonNode original) {
 
             ObjectNode allowed = null;
             Iterator<String> fieldNamesIterator = original.fieldNames();
@@ -92,6 +172,11 @@ public class MaprElasticSearchServiceBuilder {
 
             return allowed;
         }
+
+        private boolean isRetryable(RestStatus status) {
+            return status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE
+                    || status == RestStatus.INTERNAL_SERVER_ERROR;
+        }
     }
 
     /**
@@ -112,6 +197,11 @@ public class MaprElasticSearchServiceBuilder {
      */
     private Set<String> fields;
 
+    /**
+     * Number of workers, which publish changes to the ElasticSearch in parallel.
+     */
+    private int workers = 1;
+
     public MaprElasticSearchServiceBuilder() {
     }
 
@@ -249,6 +339,23 @@ public class MaprElasticSearchServiceBuilder {
         return this;
     }
 
+    /**
+     * Specifies number of workers, which publish changes to the ElasticSearch in parallel. Changes of the same
+     * document are always published by the same worker, so they are published in order.
+     *
+     * @param workers number of workers.
+     * @return builder.
+     */
+    public MaprElasticSearchServiceBuilder withWorkers(int workers) {
+
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be greater than zero");
+        }
+
+        this.workers = workers;
+        return this;
+    }
+
     /**
      * Builds the {@link MaprElasticSearchService} according to the specified properties.
      *
@@ -271,19 +378,19 @@ public class MaprElasticSearchServiceBuilder {
                     .addTransportAddress(new InetSocketTransportAddress(inetAddress, port));
 
             // Create CDC Listener
-            ChangelogListener listener = ChangelogListenerImpl.forChangelog(changelog);
+            ChangelogListener listener = ChangelogListenerImpl.forChangelog(changelog, workers);
 
-            // Set 'onInsert' callback
-            listener.onInsert(new SaveIndexCDCCallback(client));
-
-            // Set 'onUpdate' callback
-            listener.onUpdate(new SaveIndexCDCCallback(client));
-
-            // Define and set 'onDelete' callback
-            listener.onDelete((id) -> client.prepareDelete(indexName, typeName, id).get());
+            // Changes are published in batches, one bulk request per poll of the changelog
+            listener.onBatch(new BulkIndexCDCCallback(client));
 
             listener.listen();
 
+            // Process received changes and commit offsets on shutdown
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                listener.close();
+                client.close();
+            }));
+
         };
     }
 
@@ -1,8 +1,9 @@
 package com.mapr.elasticsearch.service.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mapr.elasticsearch.service.util.ExtendedJson;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
-import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
@@ -17,8 +18,14 @@ import org.ojai.store.DriverManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
 
 public class MaprMusicElasticSearchService {
 
@@ -35,19 +42,46 @@ public class MaprMusicElasticSearchService {
     private static final String ALBUMS_INDEX_NAME = "albums";
     private static final String ALBUMS_TYPE_NAME = "album";
 
-    private static final String[] INDEXED_FIELDS = new String[]{"name"};
+    /**
+     * Slugs and images are indexed along with names, so search results can be built without querying MapR-DB.
+     */
+    private static final String[] ARTISTS_INDEXED_FIELDS =
+            new String[]{"name", "slug_name", "slug_postfix", "profile_image_url"};
+
+    private static final String[] ALBUMS_INDEXED_FIELDS =
+            new String[]{"name", "slug_name", "slug_postfix", "cover_image_url"};
+
+    private static final String ALBUMS_INDEX_DEFINITION = "/es/albums-index.json";
+    private static final String ARTISTS_INDEX_DEFINITION = "/es/artists-index.json";
 
     private static final String ALBUMS_TABLE_PATH = "/apps/albums";
     private static final String ARTISTS_TABLE_PATH = "/apps/artists";
 
     private static final String DEFAULT_ES_HOSTNAME = "localhost";
     private static final int DEFAULT_ES_PORT = 9300;
+    private static final int DEFAULT_WORKERS = 1;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
 
     private static final Logger log = LoggerFactory.getLogger(MaprMusicElasticSearchService.class);
 
     private String host;
     private int port;
 
+    /**
+     * Bulk indexing settings, which are used to reinitialize indices. <code>null</code> values mean that defaults of
+     * {@link BulkIndexer} are used.
+     */
+    private Integer bulkActions;
+    private Integer bulkSizeMb;
+    private Integer bulkFlushIntervalSeconds;
+    private Integer bulkConcurrentRequests;
+
+    /**
+     * Number of workers per changelog, which publish changes to the ElasticSearch in parallel.
+     */
+    private int workers = DEFAULT_WORKERS;
+
     public MaprMusicElasticSearchService(String host, int port) {
         this.host = host;
         this.port = port;
@@ -73,18 +107,30 @@ public class MaprMusicElasticSearchService {
         this.port = port;
     }
 
-    public void reinit() {
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
 
-        InetAddress inetAddress;
-        try {
-            inetAddress = InetAddress.getByName(host);
-        } catch (UnknownHostException e) {
-            throw new IllegalArgumentException(e);
-        }
+    public void setBulkActions(int bulkActions) {
+        this.bulkActions = bulkActions;
+    }
+
+    public void setBulkSizeMb(int bulkSizeMb) {
+        this.bulkSizeMb = bulkSizeMb;
+    }
+
+    public void setBulkFlushIntervalSeconds(int bulkFlushIntervalSeconds) {
+        this.bulkFlushIntervalSeconds = bulkFlushIntervalSeconds;
+    }
+
+    public void setBulkConcurrentRequests(int bulkConcurrentRequests) {
+        this.bulkConcurrentRequests = bulkConcurrentRequests;
+    }
+
+    public void reinit() {
 
         // Create ES Client
-        TransportClient client = new PreBuiltTransportClient(Settings.EMPTY)
-                .addTransportAddress(new InetSocketTransportAddress(inetAddress, port));
+        TransportClient client = createClient();
 
         // Delete indices
         try {
@@ -95,16 +141,77 @@ public class MaprMusicElasticSearchService {
         }
 
         // Recreate indices
-        client.admin().indices().prepareCreate(ALBUMS_INDEX_NAME).get();
-        client.admin().indices().prepareCreate(ARTISTS_INDEX_NAME).get();
+        createIndex(client, ALBUMS_INDEX_NAME, ALBUMS_INDEX_DEFINITION);
+        createIndex(client, ARTISTS_INDEX_NAME, ARTISTS_INDEX_DEFINITION);
 
         // Iterate over Album/Artist documents and send them to ElasticSearch
-        indexJSONTableDocuments(client, ALBUMS_INDEX_NAME, ALBUMS_TYPE_NAME, ALBUMS_TABLE_PATH, INDEXED_FIELDS);
-        indexJSONTableDocuments(client, ARTISTS_INDEX_NAME, ARTISTS_TYPE_NAME, ARTISTS_TABLE_PATH, INDEXED_FIELDS);
+        indexJSONTableDocuments(client, ALBUMS_INDEX_NAME, ALBUMS_TYPE_NAME, ALBUMS_TABLE_PATH,
+                ALBUMS_INDEXED_FIELDS);
+        indexJSONTableDocuments(client, ARTISTS_INDEX_NAME, ARTISTS_TYPE_NAME, ARTISTS_TABLE_PATH,
+                ARTISTS_INDEXED_FIELDS);
 
         client.close();
     }
 
+    private TransportClient createClient() {
+
+        InetAddress inetAddress;
+        try {
+            inetAddress = InetAddress.getByName(host);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        return new PreBuiltTransportClient(Settings.EMPTY)
+                .addTransportAddress(new InetSocketTransportAddress(inetAddress, port));
+    }
+
+    /**
+     * Creates index with settings and mappings, defined at the specified resource. Index definition contains
+     * autocomplete analyzer, which is used for search-as-you-type suggestions.
+     *
+     * @param client     ES client.
+     * @param indexName  name of the index.
+     * @param definition path to the resource, which contains index definition.
+     */
+    private static void createIndex(TransportClient client, String indexName, String definition) {
+
+        InputStream resource = MaprMusicElasticSearchService.class.getResourceAsStream(definition);
+        if (resource == null) {
+            throw new IllegalStateException("Can not find index definition '" + definition + "'");
+        }
+
+        String source;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource, StandardCharsets.UTF_8))) {
+            source = reader.lines().collect(Collectors.joining("\n"));
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not read index definition '" + definition + "'", e);
+        }
+
+        client.admin().indices().prepareCreate(indexName).setSource(source, XContentType.JSON).get();
+        log.info("Created index '{}'", indexName);
+    }
+
+    /**
+     * Creates indices if they do not exist, so documents published from changelogs are indexed according to the
+     * index definitions instead of dynamic mappings.
+     */
+    private void ensureIndices() {
+
+        TransportClient client = createClient();
+        try {
+            if (!client.admin().indices().prepareExists(ALBUMS_INDEX_NAME).get().isExists()) {
+                createIndex(client, ALBUMS_INDEX_NAME, ALBUMS_INDEX_DEFINITION);
+            }
+
+            if (!client.admin().indices().prepareExists(ARTISTS_INDEX_NAME).get().isExists()) {
+                createIndex(client, ARTISTS_INDEX_NAME, ARTISTS_INDEX_DEFINITION);
+            }
+        } finally {
+            client.close();
+        }
+    }
+
     private void indexJSONTableDocuments(TransportClient client, String indexName, String typeName, String tablePath, String... fields) {
 
         loginTestUser(TEST_USER_NAME, TEST_USER_GROUP);
@@ -115,14 +222,13 @@ public class MaprMusicElasticSearchService {
         // Get an instance of OJAI DocumentStore
         final DocumentStore store = connection.getStore(tablePath);
 
-        DocumentStream documentStream = store.find(fields);
-        for (Document document : documentStream) {
-
-            IndexResponse response = client.prepareIndex(indexName, typeName, document.getId().getString())
-                    .setSource(document.asJsonString(), XContentType.JSON)
-                    .get();
+        // Documents are sent to the ElasticSearch in bulk requests instead of one request per document
+        try (BulkIndexer indexer = createBulkIndexer(client, indexName, typeName).start();
+             DocumentStream documentStream = store.find(fields)) {
 
-            log.info("Elasticsearch Index Response: '{}'", response);
+            for (Document document : documentStream) {
+                indexer.index(document.getId().getString(), toPlainJson(document));
+            }
         }
 
         // Close this instance of OJAI DocumentStore
@@ -132,6 +238,40 @@ public class MaprMusicElasticSearchService {
         connection.close();
     }
 
+    /**
+     * Converts document to JSON without OJAI type tags, so tagged values are indexed as plain values.
+     */
+    private static String toPlainJson(Document document) {
+
+        try {
+            return ExtendedJson.removeTags(mapper.readTree(document.asJsonString())).toString();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not parse document '" + document.getIdString() + "' as JSON", e);
+        }
+    }
+
+    private BulkIndexer createBulkIndexer(TransportClient client, String indexName, String typeName) {
+
+        BulkIndexer indexer = new BulkIndexer(client, indexName, typeName);
+        if (bulkActions != null) {
+            indexer.withBulkActions(bulkActions);
+        }
+
+        if (bulkSizeMb != null) {
+            indexer.withBulkSizeMb(bulkSizeMb);
+        }
+
+        if (bulkFlushIntervalSeconds != null) {
+            indexer.withFlushIntervalSeconds(bulkFlushIntervalSeconds);
+        }
+
+        if (bulkConcurrentRequests != null) {
+            indexer.withConcurrentRequests(bulkConcurrentRequests);
+        }
+
+        return indexer;
+    }
+
     private static void loginTestUser(String username, String group) {
         UserGroupInformation currentUgi = UserGroupInformation.createUserForTesting(username, new String[]{group});
         UserGroupInformation.setLoginUser(currentUgi);
@@ -139,6 +279,8 @@ public class MaprMusicElasticSearchService {
 
     public void start() {
 
+        ensureIndices();
+
         // Build and start service for the Artists table
         new MaprElasticSearchServiceBuilder()
                 .withHostname(host)
@@ -146,7 +288,8 @@ public class MaprMusicElasticSearchService {
                 .withIndexName(ARTISTS_INDEX_NAME)
                 .withTypeName(ARTISTS_TYPE_NAME)
                 .withChangelog(ARTISTS_CHANGELOG)
-                .withFields(INDEXED_FIELDS) // only Artist's name will be sent to the ElasticSearch
+                .withFields(ARTISTS_INDEXED_FIELDS) // only Artist's name, slug and image will be sent to the ES
+                .withWorkers(workers)
                 .build().start();
 
         // Build and start service for the Albums table
@@ -156,7 +299,8 @@ public class MaprMusicElasticSearchService {
                 .withIndexName(ALBUMS_INDEX_NAME)
                 .withTypeName(ALBUMS_TYPE_NAME)
                 .withChangelog(ALBUMS_CHANGELOG)
-                .withFields(INDEXED_FIELDS) // only Album's name will be sent to the ElasticSearch
+                .withFields(ALBUMS_INDEXED_FIELDS) // only Album's name, slug and image will be sent to the ES
+                .withWorkers(workers)
                 .build().start();
     }
 
@@ -0,0 +1,62 @@
+package com.mapr.elasticsearch.service.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Utility class for OJAI Extended JSON.
+ */
+public final class ExtendedJson {
+
+    private static final String TAG_PREFIX = "$";
+
+    private ExtendedJson() {
+    }
+
+    /**
+     * Replaces type-tagged values, such as <code>{"$numberLong": 1}</code>, with plain values, so they are indexed
+     * by ElasticSearch as values of the corresponding type instead of objects. Modifies the specified node.
+     *
+     * @param node Extended JSON node.
+     * @return node without type tags.
+     */
+    public static JsonNode removeTags(JsonNode node) {
+
+        if (node == null) {
+            return null;
+        }
+
+        if (node.isArray()) {
+            ArrayNode array = (ArrayNode) node;
+            for (int i = 0; i < array.size(); i++) {
+                array.set(i, removeTags(array.get(i)));
+            }
+
+            return array;
+        }
+
+        if (!node.isObject()) {
+            return node;
+        }
+
+        if (node.size() == 1) {
+            String fieldName = node.fieldNames().next();
+            if (fieldName.startsWith(TAG_PREFIX)) {
+                return node.get(fieldName);
+            }
+        }
+
+        ObjectNode object = (ObjectNode) node;
+        Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            field.setValue(removeTags(field.getValue()));
+        }
+
+        return object;
+    }
+}
@@ -0,0 +1,17 @@
+package com.mapr.music.annotation;
+
+import javax.ws.rs.HttpMethod;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Method level annotation which indicates that the resource method responds to HTTP PATCH requests. JAX-RS 2.0 does
+ * not provide one.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@HttpMethod("PATCH")
+public @interface PATCH {
+}
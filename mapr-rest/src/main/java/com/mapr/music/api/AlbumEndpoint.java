@@ -1,6 +1,7 @@
 package com.mapr.music.api;
 
 
+import com.mapr.music.annotation.PATCH;
 import com.mapr.music.dao.SortOption;
 import com.mapr.music.dto.AlbumDto;
 import com.mapr.music.dto.RateDto;
@@ -55,11 +56,18 @@ public class AlbumEndpoint {
 
     @GET
     @Path("/")
-    @ApiOperation(value = "Get list of albums, which is represented by page")
+    @ApiOperation(value = "Get list of albums, which is represented by page",
+            notes = "Specify 'cursor' parameter to use keyset pagination. Empty cursor returns the first page, " +
+                    "subsequent pages are fetched using 'next_cursor' value of the previous page's pagination info")
     public ResourceDto<AlbumDto> getAlbumsPage(@QueryParam("per_page") Long perPage,
                                                @QueryParam("page") Long page,
                                                @QueryParam("sort") List<SortOption> sortOptions,
-                                               @QueryParam("language") String language) {
+                                               @QueryParam("language") String language,
+                                               @QueryParam("cursor") String cursor) {
+
+        if (cursor != null) {
+            return albumService.getAlbumsPageByCursor(perPage, cursor, sortOptions, language);
+        }
 
         if (language != null) {
             return albumService.getAlbumsPageByLanguage(perPage, page, sortOptions, language);
@@ -119,6 +127,14 @@ public class AlbumEndpoint {
         return albumService.setAlbumTrackList(id, trackList);
     }
 
+    @PATCH
+    @Path("{id}/tracks")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Updates several album's tracks and adds the ones, which have no identifier")
+    public List<TrackDto> patchAlbumTracks(@PathParam("id") String id, List<TrackDto> trackList) {
+        return albumService.patchAlbumTracks(id, trackList);
+    }
+
     @PUT
     @Path("{album-id}/tracks/{track-id}")
     @ApiOperation(value = "Update single album's track")
@@ -53,10 +53,17 @@ public class ArtistEndpoint {
 
     @GET
     @Path("/")
-    @ApiOperation(value = "Get list of artists, which is represented by page")
+    @ApiOperation(value = "Get list of artists, which is represented by page",
+            notes = "Specify 'cursor' parameter to use keyset pagination. Empty cursor returns the first page, " +
+                    "subsequent pages are fetched using 'next_cursor' value of the previous page's pagination info")
     public ResourceDto<ArtistDto> getAllArtists(@QueryParam("per_page") Long perPage,
                                                 @QueryParam("page") Long page,
-                                                @QueryParam("sort") List<SortOption> sortOptions) {
+                                                @QueryParam("sort") List<SortOption> sortOptions,
+                                                @QueryParam("cursor") String cursor) {
+
+        if (cursor != null) {
+            return artistService.getArtistsPageByCursor(perPage, cursor, sortOptions);
+        }
 
         return artistService.getArtistsPage(perPage, page, sortOptions);
     }
@@ -0,0 +1,61 @@
+package com.mapr.music.api;
+
+import com.mapr.music.dao.DocumentCache;
+import com.mapr.music.dao.OjaiConnectionPool;
+import com.mapr.music.service.ArtistsChangelogListenerService;
+import com.mapr.music.service.ChangelogDispatcher;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Endpoint for accessing runtime metrics of the application.
+ */
+@Api(value = MetricsEndpoint.ENDPOINT_PATH, description = "Metrics endpoint, which provides access to runtime metrics")
+@Path(MetricsEndpoint.ENDPOINT_PATH)
+@Produces(MediaType.APPLICATION_JSON)
+public class MetricsEndpoint {
+
+    public static final String ENDPOINT_PATH = "/metrics";
+
+    @Inject
+    private ChangelogDispatcher changelogDispatcher;
+
+    @Inject
+    private ArtistsChangelogListenerService artistsChangelogListenerService;
+
+    @GET
+    @Path("/ojai-pool")
+    @ApiOperation(value = "Get OJAI connection pool metrics")
+    public OjaiConnectionPool.Metrics getOjaiPoolMetrics() {
+        return OjaiConnectionPool.getInstance().getMetrics();
+    }
+
+    @GET
+    @Path("/cache")
+    @ApiOperation(value = "Get hit, miss and eviction metrics of entity caches")
+    public Map<String, DocumentCache.Metrics> getCacheMetrics() {
+        return DocumentCache.getAllMetrics();
+    }
+
+    @GET
+    @Path("/cdc")
+    @ApiOperation(value = "Get lag and handler metrics of MapR-DB changelog consumers")
+    public Map<String, ChangelogDispatcher.Metrics> getCdcMetrics() {
+        return changelogDispatcher.getMetrics();
+    }
+
+    @GET
+    @Path("/cascade-delete")
+    @ApiOperation(value = "Get progress of queued and running cascade deletes of artists")
+    public List<ArtistsChangelogListenerService.Progress> getCascadeDeleteProgress() {
+        return artistsChangelogListenerService.getProgress();
+    }
+}
@@ -12,8 +12,11 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
-import java.util.List;
+
+import static com.mapr.music.util.AsyncResponses.resume;
 
 /**
  * Endpoint for accessing 'Reporting' resources.
@@ -32,23 +35,29 @@ public class ReportingEndpoint {
     
     @GET
     @Path("/artists/top-{count}-area")
-    @ApiOperation(value = "Get the area with the most artists")
-    public List<Pair> getTopArtistByArea(@ApiParam(value = "Number of lines", required = true) @PathParam("count") int count) {
-        return reportingService.getTopArtistByArea(count);
+    @ApiOperation(value = "Get the area with the most artists", response = Pair.class, responseContainer = "List")
+    public void getTopArtistByArea(@ApiParam(value = "Number of lines", required = true) @PathParam("count") int count,
+                                   @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, reportingService.getTopArtistByArea(count));
     }
 
     @GET
     @Path("/albums/top-{count}-languages")
-    @ApiOperation(value = "Get the languages with the most albums")
-    public List<Pair> getTopLanguagesForAlbum(@ApiParam(value = "Number of lines", required = true) @PathParam("count") int count) {
-        return reportingService.getTopLanguagesForAlbum(count);
+    @ApiOperation(value = "Get the languages with the most albums", response = Pair.class,
+            responseContainer = "List")
+    public void getTopLanguagesForAlbum(@ApiParam(value = "Number of lines", required = true)
+                                        @PathParam("count") int count,
+                                        @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, reportingService.getTopLanguagesForAlbum(count));
     }
 
     @GET
     @Path("/albums/per-year-last-{count}")
-    @ApiOperation(value = "Get the Number of Albums per year")
-    public List<Pair> getNumberOfAlbumsPerYear(@ApiParam(value = "Number of years", required = true) @PathParam("count") int count) {
-        return reportingService.getNumberOfAlbumsPerYear(count);
+    @ApiOperation(value = "Get the Number of Albums per year", response = Pair.class, responseContainer = "List")
+    public void getNumberOfAlbumsPerYear(@ApiParam(value = "Number of years", required = true)
+                                         @PathParam("count") int count,
+                                         @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, reportingService.getNumberOfAlbumsPerYear(count));
     }
 
 }
@@ -1,7 +1,8 @@
 package com.mapr.music.api;
 
+import com.mapr.music.dto.FederatedSearchDto;
 import com.mapr.music.dto.ResourceDto;
-import com.mapr.music.model.ESSearchResult;
+import com.mapr.music.dto.SuggestionsDto;
 import com.mapr.music.service.ESSearchService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -11,10 +12,15 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 
+import static com.mapr.music.util.AsyncResponses.resume;
+
 /**
- * Endpoint for performing various searching.
+ * Endpoint for performing various searching. Requests are processed asynchronously, so request threads are not
+ * blocked while waiting for ElasticSearch responses.
  */
 @Api(value = SearchEndpoint.ENDPOINT_PATH, description = "Search endpoint, which allows to perform various searching")
 @Path(SearchEndpoint.ENDPOINT_PATH)
@@ -28,31 +34,58 @@ public class SearchEndpoint {
 
     @GET
     @Path("/name")
-    @ApiOperation(value = "Search by name entry")
-    public ResourceDto<ESSearchResult> byNameEntry(@QueryParam("per_page") Integer perPage,
-                                                   @QueryParam("page") Integer page,
-                                                   @QueryParam("entry") String nameEntry) {
+    @ApiOperation(value = "Search by name entry", response = ResourceDto.class)
+    public void byNameEntry(@QueryParam("per_page") Integer perPage,
+                            @QueryParam("page") Integer page,
+                            @QueryParam("entry") String nameEntry,
+                            @Suspended AsyncResponse asyncResponse) {
 
-        return searchService.findByNameEntry(nameEntry, perPage, page);
+        resume(asyncResponse, searchService.findByNameEntry(nameEntry, perPage, page));
     }
 
     @GET
     @Path("/artists/name")
-    @ApiOperation(value = "Search artists by name entry")
-    public ResourceDto<ESSearchResult> artistsByNameEntry(@QueryParam("per_page") Integer perPage,
-                                                          @QueryParam("page") Integer page,
-                                                          @QueryParam("entry") String nameEntry) {
+    @ApiOperation(value = "Search artists by name entry", response = ResourceDto.class)
+    public void artistsByNameEntry(@QueryParam("per_page") Integer perPage,
+                                   @QueryParam("page") Integer page,
+                                   @QueryParam("entry") String nameEntry,
+                                   @Suspended AsyncResponse asyncResponse) {
 
-        return searchService.findArtistsByNameEntry(nameEntry, perPage, page);
+        resume(asyncResponse, searchService.findArtistsByNameEntry(nameEntry, perPage, page));
     }
 
     @GET
     @Path("/albums/name")
-    @ApiOperation(value = "Search albums by name entry")
-    public ResourceDto<ESSearchResult> albumsByNameEntry(@QueryParam("per_page") Integer perPage,
-                                                         @QueryParam("page") Integer page,
-                                                         @QueryParam("entry") String nameEntry) {
+    @ApiOperation(value = "Search albums by name entry", response = ResourceDto.class)
+    public void albumsByNameEntry(@QueryParam("per_page") Integer perPage,
+                                  @QueryParam("page") Integer page,
+                                  @QueryParam("entry") String nameEntry,
+                                  @Suspended AsyncResponse asyncResponse) {
+
+        resume(asyncResponse, searchService.findAlbumsByNameEntry(nameEntry, perPage, page));
+    }
+
+    @GET
+    @Path("/federated")
+    @ApiOperation(value = "Search albums and artists by name entry, ranked together and separately, in a single call",
+            response = FederatedSearchDto.class)
+    public void federated(@QueryParam("per_page") Integer perPage,
+                          @QueryParam("page") Integer page,
+                          @QueryParam("entry") String nameEntry,
+                          @QueryParam("dfs") boolean dfs,
+                          @Suspended AsyncResponse asyncResponse) {
+
+        resume(asyncResponse, searchService.federatedSearch(nameEntry, perPage, page, dfs));
+    }
+
+    @GET
+    @Path("/suggest")
+    @ApiOperation(value = "Suggest albums and artists whose names contain words starting with the specified entry",
+            response = SuggestionsDto.class)
+    public void suggest(@QueryParam("entry") String entry,
+                        @QueryParam("limit") Integer limit,
+                        @Suspended AsyncResponse asyncResponse) {
 
-        return searchService.findAlbumsByNameEntry(nameEntry, perPage, page);
+        resume(asyncResponse, searchService.suggest(entry, limit));
     }
 }
@@ -2,10 +2,13 @@ package com.mapr.music.dao;
 
 import com.google.common.base.Stopwatch;
 import com.mapr.music.model.Album;
+import com.mapr.music.model.Artist;
 import com.mapr.music.model.Track;
 import org.ojai.Document;
 import org.ojai.DocumentStream;
+import org.ojai.store.Connection;
 import org.ojai.store.DocumentMutation;
+import org.ojai.store.DocumentStore;
 import org.ojai.store.Query;
 import org.ojai.store.QueryCondition;
 import org.ojai.store.SortOrder;
@@ -22,8 +25,16 @@ import static java.util.stream.Collectors.toList;
 @Named("albumDao")
 public class AlbumDao extends MaprDbDao<Album> {
 
+    private static final String TRACKS_FIELD = "tracks";
+
+    /**
+     * Number of attempts to apply track mutation, when tracks are moved concurrently.
+     */
+    private static final int TRACK_MUTATION_ATTEMPTS = 5;
+
     public AlbumDao() {
         super(Album.class);
+        enableCache();
     }
 
     /**
@@ -87,6 +98,26 @@ public class AlbumDao extends MaprDbDao<Album> {
         });
     }
 
+    /**
+     * Returns page of albums by language code using keyset pagination.
+     *
+     * @param cursor  cursor returned with the previous page. <code>null</code> cursor means first page.
+     * @param limit   limit value.
+     * @param options define the order of documents.
+     * @param lang    language code.
+     * @param fields  list of fields that will present in document.
+     * @return page of albums with specified language code.
+     * @see MaprDbDao#getPage(PageCursor, long, List, String...)
+     */
+    public CursorPage<Album> getByLanguage(PageCursor cursor, long limit, List<SortOption> options, String lang,
+                                           String... fields) {
+
+        // Build Query Condition to fetch documents by specified language
+        return getPage(connection -> connection.newCondition()
+                .is("language", QueryCondition.Op.EQUAL, lang)
+                .build(), cursor, limit, options, fields);
+    }
+
     /**
      * Returns number of albums according to the specified language.
      *
@@ -135,68 +166,176 @@ public class AlbumDao extends MaprDbDao<Album> {
     }
 
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} Note, that rating is not updated, since it is derived from the running rating aggregates.
      *
-     * @param id    identifier of album, which will be updated.
-     * @param album contains album info that will be updated.
-     * @return updated album.
+     * @param connection OJAI connection.
+     * @param album      contains album info that will be updated.
+     * @return document mutation.
      */
     @Override
     @SuppressWarnings("unchecked")
-    public Album update(String id, Album album) {
+    protected DocumentMutation buildUpdateMutation(Connection connection, Album album) {
+
+        // Update basic fields
+        DocumentMutation albumMutation = AlbumMutationBuilder.forConnection(connection)
+                .setName(album.getName())
+                .setBarcode(album.getBarcode())
+                .setCountry(album.getCountry())
+                .setLanguage(album.getLanguage())
+                .setPackaging(album.getPackaging())
+                .setTrackList(album.getTrackList())
+                .setArtists(album.getArtists())
+                .setFormat(album.getFormat())
+                .setDateDay(album.getReleasedDate())
+                .build();
+
+        // Set update info if available
+        getUpdateInfo().ifPresent(updateInfo -> albumMutation.set("update_info", updateInfo));
+
+        return albumMutation;
+    }
+
+    /**
+     * Atomically applies delta to the running rating aggregates of the album and updates album's average rating.
+     *
+     * @param id         album's identifier.
+     * @param sumDelta   value which will be added to the sum of album's rates.
+     * @param countDelta value which will be added to the number of album's rates.
+     * @return album's average rating.
+     */
+    public Double applyRatingDelta(String id, double sumDelta, long countDelta) {
+
+        Double rating = processStore((connection, store) -> {
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            Double average = RatingAggregates.applyDelta(connection, store, id, sumDelta, countDelta);
+            log.debug("Apply rating delta to 'album' with id: '{}'. Elapsed time: {}", id, stopwatch);
+
+            return average;
+        });
+
+        invalidateCached(id);
+
+        return rating;
+    }
 
+    /**
+     * Replaces running rating aggregates of the album if they are not changed concurrently.
+     *
+     * @param id       album's identifier.
+     * @param expected expected aggregates. <code>null</code> value means that album must not contain aggregates.
+     * @param actual   actual aggregates, which will be set.
+     * @return <code>true</code> if aggregates are replaced, <code>false</code> otherwise.
+     */
+    public boolean replaceRatingAggregates(String id, RatingAggregates.Totals expected,
+                                           RatingAggregates.Totals actual) {
+
+        boolean replaced = processStore((connection, store) -> {
+            return RatingAggregates.replace(connection, store, id, expected, actual);
+        });
+
+        if (replaced) {
+            invalidateCached(id);
+        }
+
+        return replaced;
+    }
+
+    /**
+     * Returns running rating aggregates of all rated albums.
+     *
+     * @return rating aggregates by album's identifier.
+     */
+    public Map<String, RatingAggregates.Totals> getRatingAggregates() {
         return processStore((connection, store) -> {
+            return RatingAggregates.findAll(connection, store);
+        });
+    }
+
+    /**
+     * Appends Artist to the album's list of artists via conditional mutation. Artist, which is already in the list, is
+     * not added twice, so the call is safe to retry.
+     *
+     * @param albumId album's identifier.
+     * @param artist  short info of Artist, which will be added.
+     * @return <code>true</code> if Artist is added or is already in the list, <code>false</code> if there is no such
+     * album.
+     */
+    public boolean addArtist(String albumId, Artist.ShortInfo artist) {
+
+        boolean added = processStore((connection, store) -> {
 
             Stopwatch stopwatch = Stopwatch.createStarted();
+            boolean appended = ShortInfoLinks.append(connection, store, albumId, "artists", artist.getId(),
+                    artist);
+            log.debug("Add artist '{}' to album '{}' took {}", artist.getId(), albumId, stopwatch);
 
-            // Update basic fields
-            DocumentMutation albumMutation = AlbumMutationBuilder.forConnection(connection)
-                    .setName(album.getName())
-                    .setBarcode(album.getBarcode())
-                    .setCountry(album.getCountry())
-                    .setLanguage(album.getLanguage())
-                    .setPackaging(album.getPackaging())
-                    .setTrackList(album.getTrackList())
-                    .setArtists(album.getArtists())
-                    .setFormat(album.getFormat())
-                    .setDateDay(album.getReleasedDate())
-                    .setRating(album.getRating())
-                    .build();
+            return appended;
+        });
 
-            // Set update info if available
-            getUpdateInfo().ifPresent(updateInfo -> albumMutation.set("update_info", updateInfo));
+        invalidateCached(albumId);
 
-            // Update the OJAI Document with specified identifier
-            store.update(id, albumMutation);
+        return added;
+    }
 
-            Document updatedOjaiDoc = store.findById(id);
+    /**
+     * Removes Artist from the album's list of artists via targeted mutation of the list.
+     *
+     * @param albumId  album's identifier.
+     * @param artistId identifier of Artist, which will be removed.
+     * @return number of album's artists left or <code>null</code> if there is no such album or it has no list of
+     * artists.
+     */
+    public Integer removeArtist(String albumId, String artistId) {
 
-            log.debug("Update document from table '{}' with id: '{}'. Elapsed time: {}", tablePath, id, stopwatch);
+        Integer remaining = processStore((connection, store) -> {
 
-            // Map Ojai document to the actual instance of model class
-            return mapOjaiDocument(updatedOjaiDoc);
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            Integer left = ShortInfoLinks.remove(connection, store, albumId, "artists", artistId);
+            log.debug("Remove artist '{}' from album '{}' took {}", artistId, albumId, stopwatch);
+
+            return left;
         });
+
+        invalidateCached(albumId);
+
+        return remaining;
     }
 
     /**
-     * Returns single track according to the specified track identifier and album identifier.
+     * Returns single track according to the specified track identifier and album identifier. Track's index is taken
+     * from the album's track positions, so only the track itself is read from the track list.
      *
      * @param albumId identifier of album, which is associated with track.
      * @param trackId track identifier.
      * @return single track according to the specified track identifier and album identifier.
      */
     public Track getTrackById(String albumId, String trackId) {
+        return processStore((connection, store) -> {
 
-        List<Track> existingAlbumTracks = getTracksList(albumId);
-        if (existingAlbumTracks == null) {
-            return null;
-        }
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            for (int attempt = 0; attempt < TRACK_MUTATION_ATTEMPTS; attempt++) {
+
+                TrackPositions positions = findTrackPositions(store, albumId);
+                Integer trackIndex = (positions != null) ? positions.byId.get(trackId) : null;
+                if (trackIndex == null) {
+                    return null;
+                }
 
-        Optional<Track> trackOptional = existingAlbumTracks.stream()
-                .filter(track -> trackId.equals(track.getId()))
-                .findAny();
+                if (!positions.isStored()) {
+                    return positions.tracks.get(trackIndex);
+                }
+
+                Track track = findTracksAt(store, albumId, Collections.singleton(trackIndex)).get(trackId);
+                if (track != null) {
+                    log.debug("Get track '{}' of album '{}' took {}", trackId, albumId, stopwatch);
+                    return track;
+                }
+            }
 
-        return (trackOptional.isPresent()) ? trackOptional.get() : null;
+            throw new IllegalStateException("Can not get track '" + trackId + "' of album '" + albumId + "', " +
+                    "since tracks are changed concurrently");
+        });
     }
 
     /**
@@ -215,66 +354,67 @@ public class AlbumDao extends MaprDbDao<Album> {
      *
      * @param albumId identifier of album, for which track will be added.
      * @param track   track, which will be added to the album's track list.
-     * @return newly created track with id field set.
+     * @return newly created track with id field set or <code>null</code> if there is no such album.
      */
     public Track addTrack(String albumId, Track track) {
-
-        if (!exists(albumId)) {
-            return null;
-        }
-
-        track.setId(UUID.randomUUID().toString());
-        processStore((connection, store) -> {
-
-            Stopwatch stopwatch = Stopwatch.createStarted();
-
-            // Add tracks to the track list
-            AlbumMutationBuilder mutationBuilder = AlbumMutationBuilder.forConnection(connection)
-                    .addTracks(track);
-
-            // Update the OJAI Document with specified identifier
-            store.update(albumId, mutationBuilder.build());
-
-            log.debug("Add track to album '{}' took {}", albumId, stopwatch);
-
-        });
-
-        Optional<Track> trackOptional = getTracksList(albumId).stream().filter(t -> track.getId().equals(t.getId())).findAny();
-        return (trackOptional.isPresent()) ? trackOptional.get() : null;
+        List<Track> added = addTracks(albumId, Collections.singletonList(track));
+        return (added != null) ? added.get(0) : null;
     }
 
     /**
-     * Adds list of tracks to the album with specified identifier.
+     * Adds list of tracks to the album with specified identifier via single conditional mutation, which appends tracks
+     * along with their positions. Mutation is applied only if the number of tracks is not changed concurrently,
+     * otherwise it is applied once again. Created tracks are returned as they are sent.
      *
      * @param albumId identifier of album, for which tracks will be added.
      * @param tracks  list of tracks, which will be added to the album's track list.
-     * @return list of newly created tracks, each of tracks has id field set.
+     * @return list of newly created tracks, each of tracks has id field set, or <code>null</code> if there is no such
+     * album.
      */
     public List<Track> addTracks(String albumId, List<Track> tracks) {
 
-        if (!exists(albumId)) {
-            return null;
-        }
-
         tracks.forEach(track -> track.setId(UUID.randomUUID().toString()));
 
-        processStore((connection, store) -> {
+        boolean added = processStore((connection, store) -> {
 
             Stopwatch stopwatch = Stopwatch.createStarted();
+            for (int attempt = 0; attempt < TRACK_MUTATION_ATTEMPTS; attempt++) {
 
-            // Add tracks to the track list
-            AlbumMutationBuilder mutationBuilder = AlbumMutationBuilder.forConnection(connection)
-                    .addTracks(tracks);
+                TrackPositions positions = findTrackPositions(store, albumId);
+                if (positions == null) {
+                    return false;
+                }
 
-            // Update the OJAI Document with specified identifier
-            store.update(albumId, mutationBuilder.build());
+                AlbumMutationBuilder mutationBuilder = AlbumMutationBuilder.forConnection(connection)
+                        .addTracks(tracks);
+
+                // Album is not created if it does not exist
+                QueryCondition unchanged = connection.newCondition().and().exists("_id");
+                pinTrackCount(unchanged, positions.count);
 
-            log.debug("Add '{}' tracks to album '{}' took {}", tracks.size(), albumId, stopwatch);
+                Map<String, Integer> addedPositions = new LinkedHashMap<>();
+                for (int i = 0; i < tracks.size(); i++) {
+                    addedPositions.put(tracks.get(i).getId(), positions.count + i);
+                }
+                writePositions(mutationBuilder, unchanged, positions, addedPositions, Collections.emptySet());
 
+                if (store.checkAndMutate(albumId, unchanged.close().build(), mutationBuilder.build())) {
+                    log.debug("Add '{}' tracks to album '{}' took {}", tracks.size(), albumId, stopwatch);
+                    return true;
+                }
+            }
+
+            throw new IllegalStateException("Can not add tracks to album '" + albumId + "', since tracks are " +
+                    "changed concurrently");
         });
 
-        Set<String> createdTracksIds = tracks.stream().map(Track::getId).collect(Collectors.toSet());
-        return getTracksList(albumId).stream().filter(track -> createdTracksIds.contains(track.getId())).collect(toList());
+        if (!added) {
+            return null;
+        }
+
+        invalidateCached(albumId);
+
+        return tracks;
     }
 
     /**
@@ -283,43 +423,100 @@ public class AlbumDao extends MaprDbDao<Album> {
      * @param albumId identifier of album, for which track will be updated.
      * @param trackId identifier of track, which will be updated.
      * @param track   contains update information.
-     * @return updated track.
+     * @return updated track or <code>null</code> if there is no such album or track.
      */
     public Track updateTrack(String albumId, String trackId, Track track) {
 
-        List<Track> existingAlbumTracks = getTracksList(albumId);
-        if (existingAlbumTracks == null) {
-            return null;
-        }
+        track.setId(trackId);
+        List<Track> updated = updateTracks(albumId, Collections.singletonList(track));
 
-        int trackIndex = getTrackIndexById(existingAlbumTracks, trackId);
-        if (trackIndex < 0) {
-            return null;
-        }
+        return (updated != null && !updated.isEmpty()) ? updated.get(0) : null;
+    }
 
-        return processStore((connection, store) -> {
+    /**
+     * Updates several tracks via single conditional mutation. Indexes of tracks are taken from the album's track
+     * positions and mutation is applied only if edited tracks are not moved concurrently, otherwise it is applied once
+     * again. Only edited tracks are read from the track list, so updated tracks are merged with them instead of
+     * reading them once again.
+     *
+     * @param albumId identifier of album, for which tracks will be updated.
+     * @param tracks  contain update information. Each track must have identifier set.
+     * @return updated tracks, which exist at the album, or <code>null</code> if there is no such album.
+     */
+    public List<Track> updateTracks(String albumId, List<Track> tracks) {
+
+        List<Track> updated = processStore((connection, store) -> {
 
             Stopwatch stopwatch = Stopwatch.createStarted();
+            for (int attempt = 0; attempt < TRACK_MUTATION_ATTEMPTS; attempt++) {
 
-            // Update single track
-            AlbumMutationBuilder mutationBuilder = AlbumMutationBuilder.forConnection(connection)
-                    .editTrack(trackIndex, track);
+                TrackPositions positions = findTrackPositions(store, albumId);
+                if (positions == null) {
+                    return null;
+                }
 
-            // Update the OJAI Document with specified identifier
-            store.update(albumId, mutationBuilder.build());
+                List<Track> edited = tracks.stream()
+                        .filter(track -> positions.byId.containsKey(track.getId()))
+                        .collect(toList());
+
+                if (edited.isEmpty()) {
+                    return new ArrayList<Track>();
+                }
+
+                Set<Integer> editedIndexes = edited.stream()
+                        .map(track -> positions.byId.get(track.getId()))
+                        .collect(Collectors.toSet());
 
-            Document updatedOjaiDoc = store.findById(albumId, "tracks");
+                Map<String, Track> existingTracks = positions.isStored()
+                        ? findTracksAt(store, albumId, editedIndexes)
+                        : byId(positions.tracks);
 
-            // Map Ojai document to the actual instance of model class
-            Album updatedAlbum = mapOjaiDocument(updatedOjaiDoc);
-            Optional<Track> trackOptional = updatedAlbum.getTrackList().stream()
-                    .filter(t -> trackId.equals(t.getId()))
-                    .findAny();
+                AlbumMutationBuilder mutationBuilder = AlbumMutationBuilder.forConnection(connection);
+                QueryCondition unmoved = connection.newCondition().and();
+                List<Track> merged = new ArrayList<>();
+                for (Track track : edited) {
 
-            log.debug("Updating album's track with id '{}' for albumId: '{}' took {}", trackId, albumId, stopwatch);
+                    int trackIndex = positions.byId.get(track.getId());
+                    Track existing = existingTracks.get(track.getId());
+                    if (existing == null) {
+                        break;
+                    }
+
+                    mutationBuilder.editTrack(trackIndex, track);
+                    unmoved.is(trackIdField(trackIndex), QueryCondition.Op.EQUAL, track.getId());
+                    merged.add(merge(existing, track));
+                }
 
-            return (trackOptional.isPresent()) ? trackOptional.get() : null;
+                // Edited track is moved between reads, so positions are read once again
+                if (merged.size() < edited.size()) {
+                    continue;
+                }
+
+                // Positions of album, which was stored without them, are written along with the changes
+                if (!positions.isStored()) {
+                    pinTrackCount(unmoved, positions.count);
+                    writePositions(mutationBuilder, unmoved, positions, Collections.emptyMap(),
+                            Collections.emptySet());
+                }
+
+                DocumentMutation mutation = mutationBuilder.build();
+
+                // Set update info if available
+                getUpdateInfo().ifPresent(updateInfo -> mutation.set("update_info", updateInfo));
+
+                if (store.checkAndMutate(albumId, unmoved.close().build(), mutation)) {
+                    log.debug("Updating '{}' tracks of album '{}' took {}", merged.size(), albumId, stopwatch);
+                    return merged;
+                }
+            }
+
+            throw new IllegalStateException("Can not update tracks of album '" + albumId + "', since they are " +
+                    "changed concurrently");
         });
+
+        invalidateCached(albumId);
+
+        return updated;
     }
 
     /**
@@ -332,43 +529,39 @@ public class AlbumDao extends MaprDbDao<Album> {
      */
     public List<Track> setTrackList(String albumId, List<Track> trackList) {
 
-        List<Track> existingTracks = getTracksList(albumId);
-        if (existingTracks == null) {
+        TrackPositions positions = processStore((connection, store) -> findTrackPositions(store, albumId));
+        if (positions == null) {
             return null;
         }
 
-        Set<String> existingTracksIds = existingTracks.stream().map(Track::getId).collect(Collectors.toSet());
-
         // Set identifiers for tracks that don't have one
         trackList.stream()
-                .filter(track -> track.getId() == null || !existingTracksIds.contains(track.getId()))
+                .filter(track -> track.getId() == null || !positions.byId.containsKey(track.getId()))
                 .forEach(track -> track.setId(UUID.randomUUID().toString()));
 
-        return processStore((connection, store) -> {
+        processStore((connection, store) -> {
 
             Stopwatch stopwatch = Stopwatch.createStarted();
 
-            // Set new track list for the specified album
+            // Set new track list for the specified album along with positions of tracks
             AlbumMutationBuilder mutationBuilder = AlbumMutationBuilder.forConnection(connection)
                     .setTrackList(trackList);
 
             // Update the OJAI Document with specified identifier
             store.update(albumId, mutationBuilder.build());
-
-            Document updatedOjaiDoc = store.findById(albumId, "tracks");
-
-            // Map Ojai document to the actual instance of model class
-            Album updatedAlbum = mapOjaiDocument(updatedOjaiDoc);
+            invalidateCached(albumId);
 
             log.debug("Updating album's track list for albumId: '{}' took {}", albumId, stopwatch);
-
-            return updatedAlbum.getTrackList();
         });
 
+        // Track list is replaced as a whole, so there is no need to read it once again
+        return trackList;
     }
 
     /**
-     * Deletes single track according to the specified album identifier and track identifier.
+     * Deletes single track according to the specified album identifier and track identifier. Track's index is taken
+     * from the album's track positions and positions of the following tracks are shifted by the same mutation. Track
+     * is deleted only if the tracks are not moved concurrently, otherwise deletion is retried.
      *
      * @param albumId identifier of album, for which track will be deleted.
      * @param trackId identifier of track, which will be deleted.
@@ -376,35 +569,55 @@ public class AlbumDao extends MaprDbDao<Album> {
      */
     public boolean deleteTrack(String albumId, String trackId) {
 
-        List<Track> existingAlbumTracks = getTracksList(albumId);
-        if (existingAlbumTracks == null) {
-            return false;
-        }
+        boolean deleted = processStore((connection, store) -> {
 
-        int trackIndex = getTrackIndexById(existingAlbumTracks, trackId);
-        if (trackIndex < 0) {
-            return false;
-        }
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            for (int attempt = 0; attempt < TRACK_MUTATION_ATTEMPTS; attempt++) {
 
-        return processStore((connection, store) -> {
+                TrackPositions positions = findTrackPositions(store, albumId);
+                Integer trackIndex = (positions != null) ? positions.byId.get(trackId) : null;
+                if (trackIndex == null) {
+                    return false;
+                }
 
-            Stopwatch stopwatch = Stopwatch.createStarted();
+                // Delete single track
+                AlbumMutationBuilder mutationBuilder = AlbumMutationBuilder.forConnection(connection)
+                        .deleteTrack(trackIndex);
 
-            // Delete single track
-            DocumentMutation mutation = AlbumMutationBuilder.forConnection(connection)
-                    .deleteTrack(trackIndex).build();
+                QueryCondition unmoved = connection.newCondition().and()
+                        .is(trackIdField(trackIndex), QueryCondition.Op.EQUAL, trackId);
+                pinTrackCount(unmoved, positions.count);
 
-            // Set update info if available
-            getUpdateInfo().ifPresent(updateInfo -> mutation.set("update_info", updateInfo));
+                // Following tracks are moved by the deletion
+                Map<String, Integer> shifted = new HashMap<>();
+                positions.byId.forEach((id, index) -> {
+                    if (index > trackIndex) {
+                        shifted.put(id, index - 1);
+                    }
+                });
+                writePositions(mutationBuilder, unmoved, positions, shifted, Collections.singleton(trackId));
 
-            // Update the OJAI Document with specified identifier
-            store.update(albumId, mutation);
+                DocumentMutation mutation = mutationBuilder.build();
 
-            log.debug("Deleting album's track with id: '{}' for albumId: '{}' took {}", trackId, albumId, stopwatch);
+                // Set update info if available
+                getUpdateInfo().ifPresent(updateInfo -> mutation.set("update_info", updateInfo));
 
-            return true;
+                if (store.checkAndMutate(albumId, unmoved.close().build(), mutation)) {
+                    log.debug("Deleting album's track with id: '{}' for albumId: '{}' took {}", trackId, albumId,
+                            stopwatch);
+                    return true;
+                }
+            }
+
+            throw new IllegalStateException("Can not delete track '" + trackId + "' of album '" + albumId + "', " +
+                    "since tracks are changed concurrently");
         });
 
+        if (deleted) {
+            invalidateCached(albumId);
+        }
+
+        return deleted;
     }
 
     /**
@@ -452,14 +665,163 @@ public class AlbumDao extends MaprDbDao<Album> {
         });
     }
 
-    private int getTrackIndexById(List<Track> trackList, String trackId) {
+    /**
+     * Reads album's tracks.
+     *
+     * @return list of tracks or <code>null</code> if there is no such album.
+     */
+    private List<Track> findTracks(DocumentStore store, String albumId) {
+
+        Document albumDocument = store.findById(albumId, TRACKS_FIELD);
+        if (albumDocument == null) {
+            return null;
+        }
+
+        List<Track> tracks = mapOjaiDocument(albumDocument).getTrackList();
+        return (tracks != null) ? tracks : Collections.emptyList();
+    }
+
+    /**
+     * Reads only the tracks at the specified indexes.
+     *
+     * @return tracks keyed by identifier. Tracks, which are deleted concurrently, are missing.
+     */
+    private Map<String, Track> findTracksAt(DocumentStore store, String albumId, Set<Integer> trackIndexes) {
+
+        String[] fields = trackIndexes.stream().map(AlbumDao::trackField).toArray(String[]::new);
+        Document albumDocument = store.findById(albumId, fields);
+        List<Track> tracks = (albumDocument != null) ? mapOjaiDocument(albumDocument).getTrackList() : null;
+        if (tracks == null) {
+            return Collections.emptyMap();
+        }
+
+        return byId(tracks);
+    }
+
+    private static Map<String, Track> byId(List<Track> tracks) {
+        return tracks.stream()
+                .filter(track -> track.getId() != null)
+                .collect(Collectors.toMap(Track::getId, track -> track, (first, second) -> first));
+    }
 
-        for (int i = 0; i < trackList.size(); i++) {
-            if (trackId.equals(trackList.get(i).getId())) {
-                return i;
+    /**
+     * Reads positions of album's tracks. Positions of album, which was stored without them, are computed from the
+     * track list, which is read in this case only.
+     *
+     * @return positions of tracks or <code>null</code> if there is no such album.
+     */
+    private TrackPositions findTrackPositions(DocumentStore store, String albumId) {
+
+        Document albumDocument = store.findById(albumId, AlbumMutationBuilder.TRACK_POSITIONS_FIELD);
+        if (albumDocument == null) {
+            return null;
+        }
+
+        Map<String, Object> stored = albumDocument.getMap(AlbumMutationBuilder.TRACK_POSITIONS_FIELD);
+        if (stored != null) {
+            Map<String, Integer> positions = new HashMap<>();
+            stored.forEach((trackId, trackIndex) -> positions.put(trackId, ((Number) trackIndex).intValue()));
+            return new TrackPositions(positions, positions.size(), null);
+        }
+
+        List<Track> tracks = findTracks(store, albumId);
+        if (tracks == null) {
+            return null;
+        }
+
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < tracks.size(); i++) {
+            if (tracks.get(i).getId() != null) {
+                positions.putIfAbsent(tracks.get(i).getId(), i);
             }
         }
 
-        return -1;
+        return new TrackPositions(positions, tracks.size(), tracks);
+    }
+
+    /**
+     * Adds changes of track positions to the mutation. Stored positions are changed entry by entry, so the condition
+     * pins identifiers of the tracks, whose positions are changed. Otherwise, positions are written as a whole, so the
+     * condition pins identifiers of all the tracks. Number of tracks must be pinned by the caller.
+     */
+    private static void writePositions(AlbumMutationBuilder mutationBuilder, QueryCondition condition,
+                                       TrackPositions positions, Map<String, Integer> changed, Set<String> removed) {
+
+        if (positions.isStored()) {
+            removed.forEach(mutationBuilder::deleteTrackPosition);
+            changed.forEach((trackId, trackIndex) -> {
+                Integer previousIndex = positions.byId.get(trackId);
+                if (previousIndex != null) {
+                    condition.is(trackIdField(previousIndex), QueryCondition.Op.EQUAL, trackId);
+                }
+                mutationBuilder.setTrackPosition(trackId, trackIndex);
+            });
+
+            return;
+        }
+
+        positions.byId.forEach((trackId, trackIndex) ->
+                condition.is(trackIdField(trackIndex), QueryCondition.Op.EQUAL, trackId));
+
+        Map<String, Integer> written = new HashMap<>(positions.byId);
+        removed.forEach(written::remove);
+        written.putAll(changed);
+        mutationBuilder.setTrackPositions(written);
+    }
+
+    /**
+     * Adds condition, which matches only if album has the specified number of tracks.
+     */
+    private static void pinTrackCount(QueryCondition condition, int trackCount) {
+
+        if (trackCount > 0) {
+            condition.exists(trackField(trackCount - 1));
+        }
+
+        condition.notExists(trackField(trackCount));
+    }
+
+    private static String trackField(int trackIndex) {
+        return String.format("%s[%d]", TRACKS_FIELD, trackIndex);
+    }
+
+    private static String trackIdField(int trackIndex) {
+        return String.format("%s[%d].id", TRACKS_FIELD, trackIndex);
+    }
+
+    private static Track merge(Track existing, Track changes) {
+
+        Track merged = new Track();
+        merged.setId(existing.getId());
+        merged.setName((changes.getName() != null) ? changes.getName() : existing.getName());
+        merged.setLength((changes.getLength() != null) ? changes.getLength() : existing.getLength());
+        merged.setPosition((changes.getPosition() != null) ? changes.getPosition() : existing.getPosition());
+
+        return merged;
+    }
+
+    /**
+     * Positions of album's tracks keyed by track identifier.
+     */
+    private static final class TrackPositions {
+
+        final Map<String, Integer> byId;
+        final int count;
+
+        /**
+         * Track list, which is read to compute positions of album stored without them, or <code>null</code> if
+         * positions are read from the album.
+         */
+        final List<Track> tracks;
+
+        TrackPositions(Map<String, Integer> byId, int count, List<Track> tracks) {
+            this.byId = byId;
+            this.count = count;
+            this.tracks = tracks;
+        }
+
+        boolean isStored() {
+            return tracks == null;
+        }
     }
 }
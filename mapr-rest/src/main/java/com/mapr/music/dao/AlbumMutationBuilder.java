@@ -8,6 +8,7 @@ import org.ojai.store.DocumentMutation;
 import org.ojai.types.ODate;
 
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -43,6 +44,12 @@ public class AlbumMutationBuilder {
     private static final String TRACK_POSITION_FIELD = "position";
     private static final String TRACK_LENGTH_FIELD = "length";
 
+    /**
+     * Map of track identifiers to the indexes of tracks at the track list, which allows to address single track without
+     * reading the whole track list.
+     */
+    static final String TRACK_POSITIONS_FIELD = "track_positions";
+
     private final DocumentMutation mutation;
     private final ObjectMapper objectMapper;
 
@@ -156,12 +163,26 @@ public class AlbumMutationBuilder {
             return this;
         }
 
+        if (trackList == null) {
+            this.mutation.setNull(TRACKS_FIELD);
+            this.mutation.delete(TRACK_POSITIONS_FIELD);
+            return this;
+        }
+
         List<Map> tracks = trackList.stream()
                 .map(track -> objectMapper.convertValue(track, Map.class))
                 .collect(Collectors.toList());
 
+        // Positions are replaced along with the track list, so they always match each other
+        Map<String, Integer> positions = new LinkedHashMap<>();
+        for (int i = 0; i < trackList.size(); i++) {
+            if (trackList.get(i).getId() != null) {
+                positions.put(trackList.get(i).getId(), i);
+            }
+        }
+
         this.mutation.set(TRACKS_FIELD, tracks);
-        return this;
+        return setTrackPositions(positions);
     }
 
 
@@ -229,6 +250,29 @@ public class AlbumMutationBuilder {
         return this;
     }
 
+    public AlbumMutationBuilder setTrackPositions(Map<String, Integer> positions) {
+        this.mutation.set(TRACK_POSITIONS_FIELD, positions);
+        return this;
+    }
+
+    public AlbumMutationBuilder setTrackPosition(String trackId, int trackIndex) {
+        this.mutation.set(trackPositionField(trackId), trackIndex);
+        return this;
+    }
+
+    public AlbumMutationBuilder deleteTrackPosition(String trackId) {
+        this.mutation.delete(trackPositionField(trackId));
+        return this;
+    }
+
+    /**
+     * Returns path of the track's position. Track identifier is quoted, since it may contain characters, which are not
+     * allowed at field paths.
+     */
+    static String trackPositionField(String trackId) {
+        return String.format("%s.`%s`", TRACK_POSITIONS_FIELD, trackId);
+    }
+
     public DocumentMutation build() {
         return this.mutation;
     }
@@ -4,6 +4,7 @@ import com.google.common.base.Stopwatch;
 import com.mapr.music.model.AlbumRate;
 import org.ojai.Document;
 import org.ojai.DocumentStream;
+import org.ojai.store.Connection;
 import org.ojai.store.DocumentMutation;
 import org.ojai.store.Query;
 import org.ojai.store.QueryCondition;
@@ -11,6 +12,7 @@ import org.ojai.store.QueryCondition;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public class AlbumRateDao extends MaprDbDao<AlbumRate> {
 
@@ -39,17 +41,18 @@ public class AlbumRateDao extends MaprDbDao<AlbumRate> {
 
             Query query = connection.newQuery().where(condition).build();
 
-            // Fetch all OJAI Documents from this store according to the built query
-            DocumentStream documentStream = store.findQuery(query);
-            Iterator<Document> documentIterator = documentStream.iterator();
+            // Fetch OJAI Documents according to the built query. Stream is not fully consumed, so close it explicitly
+            try (DocumentStream documentStream = store.findQuery(query)) {
+                Iterator<Document> documentIterator = documentStream.iterator();
 
-            if (!documentIterator.hasNext()) {
-                return null;
-            }
+                if (!documentIterator.hasNext()) {
+                    return null;
+                }
 
-            log.debug("Get rate by album id '{}' and user id '{}' took {}", albumId, userId, stopwatch);
+                log.debug("Get rate by album id '{}' and user id '{}' took {}", albumId, userId, stopwatch);
 
-            return mapOjaiDocument(documentIterator.next());
+                return mapOjaiDocument(documentIterator.next());
+            }
         });
     }
 
@@ -119,36 +122,51 @@ public class AlbumRateDao extends MaprDbDao<AlbumRate> {
         });
     }
 
+    /**
+     * Deletes all the rates of the Album via single bulk operation.
+     *
+     * @param albumId album's identifier.
+     */
+    public void deleteByAlbumId(String albumId) {
+        deleteWhere(connection -> connection.newCondition()
+                .is("document_id", QueryCondition.Op.EQUAL, albumId)
+                .build());
+    }
+
     /**
      * {@inheritDoc}
      *
-     * @param id        identifier of document, which will be updated.
-     * @param albumRate album rate.
-     * @return updated album rate.
+     * @param connection OJAI connection.
+     * @param albumRate  album rate.
+     * @return document mutation.
      */
     @Override
-    public AlbumRate update(String id, AlbumRate albumRate) {
-        return processStore((connection, store) -> {
+    protected DocumentMutation buildUpdateMutation(Connection connection, AlbumRate albumRate) {
 
-            Stopwatch stopwatch = Stopwatch.createStarted();
+        // Create a DocumentMutation to update non-null fields
+        DocumentMutation mutation = connection.newMutation();
 
-            // Create a DocumentMutation to update non-null fields
-            DocumentMutation mutation = connection.newMutation();
+        // Update only non-null fields
+        if (albumRate.getRating() != null) {
+            mutation.set("rating", albumRate.getRating());
+        }
 
-            // Update only non-null fields
-            if (albumRate.getRating() != null) {
-                mutation.set("rating", albumRate.getRating());
-            }
-
-            // Update the OJAI Document with specified identifier
-            store.update(id, mutation);
+        return mutation;
+    }
 
-            Document updatedOjaiDoc = store.findById(id);
+    /**
+     * Computes sum and number of rates of each rated album using single table scan.
+     *
+     * @return sum and number of rates by album's identifier.
+     */
+    public Map<String, RatingAggregates.Totals> getRatingTotals() {
+        return processStore((connection, store) -> {
 
-            log.debug("Update document from table '{}' with id: '{}'. Elapsed time: {}", tablePath, id, stopwatch);
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            Map<String, RatingAggregates.Totals> totals = RatingAggregates.computeFromRates(connection, store);
+            log.debug("Compute rating totals of '{}' albums took {}", totals.size(), stopwatch);
 
-            // Map Ojai document to the actual instance of model class
-            return mapOjaiDocument(updatedOjaiDoc);
+            return totals;
         });
     }
 }
@@ -3,9 +3,11 @@ package com.mapr.music.dao;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Stopwatch;
+import com.mapr.music.model.Album;
 import com.mapr.music.model.Artist;
 import org.ojai.Document;
 import org.ojai.DocumentStream;
+import org.ojai.store.Connection;
 import org.ojai.store.DocumentMutation;
 import org.ojai.store.Query;
 import org.ojai.store.QueryCondition;
@@ -27,89 +29,208 @@ public class ArtistDao extends MaprDbDao<Artist> {
 
     public ArtistDao() {
         super(Artist.class);
+        enableCache();
     }
 
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} Note, that rating is not updated, since it is derived from the running rating aggregates.
      *
-     * @param id     identifier of document, which will be updated.
-     * @param artist contains artist info that will be updated.
-     * @return updated artist.
+     * @param connection OJAI connection.
+     * @param artist     contains artist info that will be updated.
+     * @return document mutation.
      */
     @Override
-    public Artist update(String id, Artist artist) {
-        return processStore((connection, store) -> {
+    protected DocumentMutation buildUpdateMutation(Connection connection, Artist artist) {
+
+        // Create a DocumentMutation to update non-null fields
+        DocumentMutation mutation = connection.newMutation();
+
+        // Update only non-null fields
+        if (artist.getName() != null) {
+            mutation.set("name", artist.getName());
+        }
+
+        if (artist.getGender() != null) {
+            mutation.set("gender", artist.getGender());
+        }
+
+        if (artist.getBeginDate() != null) {
+            mutation.set("begin_date", artist.getBeginDate());
+        }
+
+        if (artist.getEndDate() != null) {
+            mutation.set("end_date", artist.getEndDate());
+        }
+
+        if (artist.getIpi() != null) {
+            mutation.set("IPI", artist.getIpi());
+        }
+
+        if (artist.getIsni() != null) {
+            mutation.set("ISNI", artist.getIsni());
+        }
+
+        if (artist.getArea() != null) {
+            mutation.set("area", artist.getArea());
+        }
+
+        if (artist.getAlbums() != null) {
+
+            List<Map> albumsMapList = artist.getAlbums().stream()
+                    .map(album -> mapper.convertValue(album, Map.class))
+                    .collect(Collectors.toList());
+
+            mutation.set("albums", albumsMapList);
+        }
+
+        if (artist.getProfileImageUrl() != null) {
+            mutation.set("profile_image_url", artist.getProfileImageUrl());
+        }
+
+        if (artist.getDeleted() != null) {
+            mutation.set("deleted", artist.getDeleted());
+        }
+
+        // Set update info if available
+        getUpdateInfo().ifPresent(updateInfo -> mutation.set("update_info", updateInfo));
+
+        return mutation;
+    }
+
+    /**
+     * Atomically applies delta to the running rating aggregates of the artist and updates artist's average rating.
+     *
+     * @param id         artist's identifier.
+     * @param sumDelta   value which will be added to the sum of artist's rates.
+     * @param countDelta value which will be added to the number of artist's rates.
+     * @return artist's average rating.
+     */
+    public Double applyRatingDelta(String id, double sumDelta, long countDelta) {
+
+        Double rating = processStore((connection, store) -> {
 
             Stopwatch stopwatch = Stopwatch.createStarted();
+            Double average = RatingAggregates.applyDelta(connection, store, id, sumDelta, countDelta);
+            log.debug("Apply rating delta to 'artist' with id: '{}'. Elapsed time: {}", id, stopwatch);
 
-            // Create a DocumentMutation to update non-null fields
-            DocumentMutation mutation = connection.newMutation();
+            return average;
+        });
 
-            // Update only non-null fields
-            if (artist.getName() != null) {
-                mutation.set("name", artist.getName());
-            }
+        invalidateCached(id);
 
-            if (artist.getGender() != null) {
-                mutation.set("gender", artist.getGender());
-            }
+        return rating;
+    }
 
-            if (artist.getBeginDate() != null) {
-                mutation.set("begin_date", artist.getBeginDate());
-            }
+    /**
+     * Replaces running rating aggregates of the artist if they are not changed concurrently.
+     *
+     * @param id       artist's identifier.
+     * @param expected expected aggregates. <code>null</code> value means that artist must not contain aggregates.
+     * @param actual   actual aggregates, which will be set.
+     * @return <code>true</code> if aggregates are replaced, <code>false</code> otherwise.
+     */
+    public boolean replaceRatingAggregates(String id, RatingAggregates.Totals expected,
+                                           RatingAggregates.Totals actual) {
 
-            if (artist.getEndDate() != null) {
-                mutation.set("end_date", artist.getEndDate());
-            }
+        boolean replaced = processStore((connection, store) -> {
+            return RatingAggregates.replace(connection, store, id, expected, actual);
+        });
 
-            if (artist.getIpi() != null) {
-                mutation.set("IPI", artist.getIpi());
-            }
+        if (replaced) {
+            invalidateCached(id);
+        }
 
-            if (artist.getIsni() != null) {
-                mutation.set("ISNI", artist.getIsni());
-            }
+        return replaced;
+    }
 
-            if (artist.getArea() != null) {
-                mutation.set("area", artist.getArea());
-            }
+    /**
+     * Returns running rating aggregates of all rated artists.
+     *
+     * @return rating aggregates by artist's identifier.
+     */
+    public Map<String, RatingAggregates.Totals> getRatingAggregates() {
+        return processStore((connection, store) -> {
+            return RatingAggregates.findAll(connection, store);
+        });
+    }
 
-            if (artist.getAlbums() != null) {
 
-                List<Map> albumsMapList = artist.getAlbums().stream()
-                        .map(album -> mapper.convertValue(album, Map.class))
-                        .collect(Collectors.toList());
+    /**
+     * Appends Album to the artist's list of albums via conditional mutation. Album, which is already in the list, is
+     * not added twice, so the call is safe to retry.
+     *
+     * @param artistId artist's identifier.
+     * @param album    short info of Album, which will be added.
+     * @return <code>true</code> if Album is added or is already in the list, <code>false</code> if there is no such
+     * artist.
+     */
+    public boolean addAlbum(String artistId, Album.ShortInfo album) {
 
-                mutation.set("albums", albumsMapList);
-            }
+        boolean added = processStore((connection, store) -> {
 
-            if (artist.getProfileImageUrl() != null) {
-                mutation.set("profile_image_url", artist.getProfileImageUrl());
-            }
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            boolean appended = ShortInfoLinks.append(connection, store, artistId, "albums", album.getId(),
+                    album);
+            log.debug("Add album '{}' to artist '{}' took {}", album.getId(), artistId, stopwatch);
 
-            if (artist.getDeleted() != null) {
-                mutation.set("deleted", artist.getDeleted());
-            }
+            return appended;
+        });
 
-            if (artist.getRating() != null) {
-                mutation.set("rating", artist.getRating());
-            }
+        invalidateCached(artistId);
 
-            // Set update info if available
-            getUpdateInfo().ifPresent(updateInfo -> mutation.set("update_info", updateInfo));
+        return added;
+    }
 
-            // Update the OJAI Document with specified identifier
-            store.update(id, mutation);
+    /**
+     * Removes Album from the artist's list of albums via targeted mutation of the list.
+     *
+     * @param artistId artist's identifier.
+     * @param albumId  identifier of Album, which will be removed.
+     * @return number of artist's albums left or <code>null</code> if there is no such artist or it has no list of
+     * albums.
+     */
+    public Integer removeAlbum(String artistId, String albumId) {
 
-            Document updatedOjaiDoc = store.findById(id);
+        Integer remaining = processStore((connection, store) -> {
 
-            log.debug("Update document from table '{}' with id: '{}'. Elapsed time: {}", tablePath, id, stopwatch);
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            Integer left = ShortInfoLinks.remove(connection, store, artistId, "albums", albumId);
+            log.debug("Remove album '{}' from artist '{}' took {}", albumId, artistId, stopwatch);
 
-            // Map Ojai document to the actual instance of model class
-            return mapOjaiDocument(updatedOjaiDoc);
+            return left;
         });
+
+        invalidateCached(artistId);
+
+        return remaining;
     }
 
+    /**
+     * Returns identifiers of artists, which are marked as deleted.
+     *
+     * @return identifiers of deleted artists.
+     */
+    public List<String> getDeletedIds() {
+        return processStore((connection, store) -> {
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            Query query = connection.newQuery()
+                    .select("_id")
+                    .where(connection.newCondition().is("deleted", QueryCondition.Op.EQUAL, true).build())
+                    .build();
+
+            List<String> ids = new ArrayList<>();
+            try (DocumentStream documentStream = store.findQuery(query)) {
+                for (Document document : documentStream) {
+                    ids.add(document.getIdString());
+                }
+            }
+
+            log.debug("Get '{}' deleted artists took {}", ids.size(), stopwatch);
+
+            return ids;
+        });
+    }
 
     /**
      * Creates single artist document. For the sake of example OJAI Document is created form the JSON string. In this
@@ -163,6 +284,7 @@ public class ArtistDao extends MaprDbDao<Artist> {
 
             // Insert the document into the OJAI store
             store.insertOrReplace(createdOjaiDoc);
+            invalidateCached(createdOjaiDoc.getIdString());
 
             log.debug("Create document '{}' at table: '{}'. Elapsed time: {}", createdOjaiDoc, tablePath, stopwatch);
 
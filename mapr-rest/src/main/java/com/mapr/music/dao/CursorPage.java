@@ -0,0 +1,32 @@
+package com.mapr.music.dao;
+
+import java.util.List;
+
+/**
+ * Page of documents, which is fetched using keyset pagination.
+ *
+ * @param <T> model type.
+ */
+public class CursorPage<T> {
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    public CursorPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Returns cursor, which can be used to fetch the next page.
+     *
+     * @return cursor of the next page or <code>null</code> if there is no next page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
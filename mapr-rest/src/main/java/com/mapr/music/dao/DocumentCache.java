@@ -0,0 +1,256 @@
+package com.mapr.music.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.ojai.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.mapr.music.util.MaprProperties.ENTITY_CACHE_MAX_SIZE;
+import static com.mapr.music.util.MaprProperties.ENTITY_CACHE_TTL_MS;
+
+/**
+ * Bounded read-through cache of OJAI documents of single table. Documents are cached per projection, so the document
+ * fetched with projection is never returned for the request with different projection. Raw OJAI documents are cached
+ * instead of model instances, so each read is mapped to the new model instance, which can be safely modified by the
+ * caller.
+ * <p>
+ * Cache is invalidated by the DAO on local writes and by {@link com.mapr.music.service.EntityCacheInvalidationService}
+ * on MapR-DB CDC events, so all the application nodes stay coherent. Cache is disabled while CDC consumer is down, so
+ * changes, which are not delivered yet, are never hidden by cached documents. Size and TTL are configured via
+ * {@link com.mapr.music.util.MaprProperties}.
+ */
+public final class DocumentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentCache.class);
+
+    private static final String FULL_DOCUMENT_PROJECTION = "*";
+
+    private static final Map<String, DocumentCache> caches = new ConcurrentHashMap<>();
+
+    private final String tablePath;
+
+    /**
+     * Documents by identifier. Each entry contains document's projections.
+     */
+    private final Cache<String, ConcurrentMap<String, Document>> documents;
+
+    /**
+     * Incremented on each invalidation. Used to prevent caching of documents, which were loaded concurrently with
+     * invalidation and thus may be stale.
+     */
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile boolean enabled = true;
+
+    /**
+     * Snapshot of cache metrics.
+     */
+    public static final class Metrics {
+
+        private final String tablePath;
+        private final long size;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final double hitRate;
+        private final boolean enabled;
+
+        private Metrics(DocumentCache cache) {
+
+            this.tablePath = cache.tablePath;
+            this.size = cache.documents.size();
+            this.hits = cache.hits.get();
+            this.misses = cache.misses.get();
+            this.evictions = cache.documents.stats().evictionCount();
+            this.invalidations = cache.invalidations.get();
+            this.hitRate = (hits + misses == 0) ? 1.0 : (double) hits / (hits + misses);
+            this.enabled = cache.enabled;
+        }
+
+        public String getTablePath() {
+            return tablePath;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public double getHitRate() {
+            return hitRate;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+    }
+
+    private DocumentCache(String tablePath, long maxSize, long ttlMillis) {
+
+        this.tablePath = tablePath;
+        this.documents = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns cache of the specified table.
+     *
+     * @param tablePath table path.
+     * @return cache of the specified table.
+     */
+    public static DocumentCache forTable(String tablePath) {
+        return caches.computeIfAbsent(tablePath, path -> new DocumentCache(path, ENTITY_CACHE_MAX_SIZE,
+                ENTITY_CACHE_TTL_MS));
+    }
+
+    /**
+     * Returns metrics of all table caches.
+     *
+     * @return metrics of all table caches by table path.
+     */
+    public static Map<String, Metrics> getAllMetrics() {
+
+        Map<String, Metrics> metrics = new ConcurrentHashMap<>();
+        caches.forEach((tablePath, cache) -> metrics.put(tablePath, cache.getMetrics()));
+
+        return metrics;
+    }
+
+    /**
+     * Returns cached document with the specified identifier and projection. In case when there is no such document in
+     * cache, it will be loaded using specified loader. Absent documents are not cached.
+     *
+     * @param id     document's identifier.
+     * @param fields projection fields. Empty or <code>null</code> array means whole document.
+     * @param loader loads document in case of cache miss.
+     * @return document or <code>null</code> if there is no such document.
+     */
+    public Document get(String id, String[] fields, Supplier<Document> loader) {
+
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String projection = projectionKey(fields);
+        ConcurrentMap<String, Document> projections = documents.getIfPresent(id);
+        Document cached = (projections != null) ? projections.get(projection) : null;
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        long versionBeforeLoad = version.get();
+        Document loaded = loader.get();
+        if (loaded != null) {
+            put(id, projection, loaded, versionBeforeLoad);
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Removes all projections of document with the specified identifier.
+     *
+     * @param id document's identifier.
+     */
+    public void invalidate(String id) {
+
+        version.incrementAndGet();
+        invalidations.incrementAndGet();
+        documents.invalidate(id);
+
+        log.debug("Invalidate cached document with id: '{}' of '{}' table", id, tablePath);
+    }
+
+    /**
+     * Removes all documents from cache.
+     */
+    public void invalidateAll() {
+
+        version.incrementAndGet();
+        invalidations.incrementAndGet();
+        documents.invalidateAll();
+    }
+
+    /**
+     * Disables cache. Must be called when cache can not be invalidated anymore, for instance, when CDC consumer fails.
+     * Documents are read from the table until cache is enabled again.
+     */
+    public void disable() {
+        enabled = false;
+        invalidateAll();
+        log.warn("Cache of '{}' table is disabled", tablePath);
+    }
+
+    /**
+     * Enables cache, which was disabled, once it can be invalidated again, for instance, when CDC consumer is
+     * recreated.
+     */
+    public void enable() {
+        if (!enabled) {
+            enabled = true;
+            log.info("Cache of '{}' table is enabled", tablePath);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Metrics getMetrics() {
+        return new Metrics(this);
+    }
+
+    private void put(String id, String projection, Document document, long versionBeforeLoad) {
+
+        ConcurrentMap<String, Document> projections = documents.asMap()
+                .computeIfAbsent(id, key -> new ConcurrentHashMap<>());
+        projections.put(projection, document);
+
+        // Document may be invalidated while it was loading, so it is not cached to avoid serving stale data
+        if (version.get() != versionBeforeLoad) {
+            projections.remove(projection, document);
+        }
+    }
+
+    private static String projectionKey(String[] fields) {
+
+        if (fields == null || fields.length == 0) {
+            return FULL_DOCUMENT_PROJECTION;
+        }
+
+        return String.join(",", new TreeSet<>(Arrays.asList(fields)));
+    }
+}
@@ -1,6 +1,8 @@
 package com.mapr.music.dao;
 
 import com.mapr.music.model.Language;
+import org.ojai.store.Connection;
+import org.ojai.store.DocumentMutation;
 
 public class LanguageDao extends MaprDbDao<Language> {
 
@@ -12,7 +14,7 @@ public class LanguageDao extends MaprDbDao<Language> {
      * Updating language documents is not supported.
      */
     @Override
-    public Language update(String id, Language entity) {
+    protected DocumentMutation buildUpdateMutation(Connection connection, Language language) {
         throw new UnsupportedOperationException("Language updating is not supported");
     }
 }
@@ -1,22 +1,22 @@
 package com.mapr.music.dao;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Stopwatch;
 import com.mapr.music.annotation.MaprDbTable;
-import org.apache.hadoop.security.UserGroupInformation;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.ojai.Document;
 import org.ojai.DocumentStream;
+import org.ojai.exceptions.OjaiException;
 import org.ojai.store.*;
+import org.ojai.types.ODate;
+import org.ojai.types.OTime;
+import org.ojai.types.OTimestamp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
+import java.math.BigDecimal;
 import java.security.Principal;
 import java.util.*;
-
-import static com.mapr.music.util.MaprProperties.MAPR_USER_GROUP;
-import static com.mapr.music.util.MaprProperties.MAPR_USER_NAME;
+import java.util.function.Function;
 
 /**
  * Implements common methods to access MapR-DB using OJAI driver.
@@ -33,13 +33,13 @@ public abstract class MaprDbDao<T> {
         void process(Connection connection, DocumentStore store);
     }
 
-    protected static final String CONNECTION_URL = "ojai:mapr:";
-
     protected static final Logger log = LoggerFactory.getLogger(MaprDbDao.class);
 
-    protected final ObjectMapper mapper = new ObjectMapper();
+    protected final OjaiDocumentMapper documentMapper = OjaiDocumentMapper.getInstance();
+    protected final OjaiConnectionPool connectionPool = OjaiConnectionPool.getInstance();
     protected final Class<T> documentClass;
     protected String tablePath;
+    protected DocumentCache cache;
 
     public MaprDbDao(Class<T> documentClass) {
 
@@ -152,6 +152,102 @@ public abstract class MaprDbDao<T> {
         });
     }
 
+    /**
+     * Returns page of documents using keyset pagination. Unlike offset pagination, next page is fetched by condition on
+     * sort keys of the last document of the previous page, so deep pages cost the same as the first one. Document's
+     * identifier is always used as the last sort key to make the order total.
+     *
+     * @param cursor      cursor returned with the previous page, which is decoded for the same sort options.
+     *                    <code>null</code> cursor means first page.
+     * @param limit       limit value.
+     * @param sortOptions define the order of documents.
+     * @param fields      list of fields that will present in document.
+     * @return page of documents with the cursor of the next page.
+     * @see PageCursor#decode(String, List)
+     */
+    public CursorPage<T> getPage(PageCursor cursor, long limit, List<SortOption> sortOptions, String... fields) {
+        return getPage(null, cursor, limit, sortOptions, fields);
+    }
+
+    /**
+     * Returns page of filtered documents using keyset pagination.
+     *
+     * @param filter      function, which builds filter condition for the specified connection. May be
+     *                    <code>null</code>.
+     * @param pageCursor  cursor returned with the previous page. <code>null</code> cursor means first page.
+     * @param limit       limit value.
+     * @param sortOptions define the order of documents.
+     * @param fields      list of fields that will present in document.
+     * @return page of documents with the cursor of the next page.
+     * @see #getPage(PageCursor, long, List, String...)
+     */
+    protected CursorPage<T> getPage(Function<Connection, QueryCondition> filter, PageCursor pageCursor, long limit,
+                                    List<SortOption> sortOptions, String... fields) {
+
+        List<PageCursor.SortKey> keys = PageCursor.sortKeys(sortOptions);
+
+        return processStore((connection, store) -> {
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+
+            QueryCondition filterCondition = (filter != null) ? filter.apply(connection) : null;
+            QueryCondition keysetCondition = (pageCursor != null)
+                    ? buildKeysetCondition(connection, keys, pageCursor.getValues())
+                    : null;
+
+            Query query = connection.newQuery().select(projectionWithSortKeys(fields, keys));
+
+            if (filterCondition != null && keysetCondition != null) {
+                query.where(connection.newCondition()
+                        .and()
+                        .condition(filterCondition)
+                        .condition(keysetCondition)
+                        .close()
+                        .build());
+            } else if (filterCondition != null) {
+                query.where(filterCondition);
+            } else if (keysetCondition != null) {
+                query.where(keysetCondition);
+            }
+
+            for (PageCursor.SortKey key : keys) {
+                SortOrder ojaiOrder = (SortOption.Order.DESC == key.getOrder()) ? SortOrder.DESC : SortOrder.ASC;
+                query.orderBy(key.getField(), ojaiOrder);
+            }
+
+            // Fetch one extra document to know whether there is the next page
+            query.limit(limit + 1).build();
+
+            List<T> documents = new ArrayList<>();
+            Document last = null;
+            boolean hasNext = false;
+            try (DocumentStream documentStream = store.findQuery(query)) {
+                for (Document document : documentStream) {
+
+                    if (documents.size() == limit) {
+                        hasNext = true;
+                        break;
+                    }
+
+                    last = document;
+                    T doc = mapOjaiDocument(document);
+                    if (doc != null) {
+                        documents.add(doc);
+                    }
+                }
+            }
+
+            String nextCursor = (hasNext && last != null) ? PageCursor.of(last, keys).encode() : null;
+
+            log.debug("Get page of '{}' documents from '{}' table after: '{}', limit: '{}', sortKeys: '{}', " +
+                    "fields: '{}'. Elapsed time: {}", documents.size(), tablePath,
+                    (pageCursor != null) ? pageCursor.getValues() : "[]", limit, keys,
+                    (fields != null) ? Arrays.asList(fields) : "[]", stopwatch);
+
+            return new CursorPage<>(documents, nextCursor);
+        });
+    }
+
     /**
      * Returns single document by it's identifier. If there is no such document <code>null</code> will be returned.
      *
@@ -171,6 +267,16 @@ public abstract class MaprDbDao<T> {
      * @return document with the specified identifier.
      */
     public T getById(String id, String... fields) {
+
+        // Use read-through cache if it is enabled for this table
+        Document ojaiDoc = (cache != null)
+                ? cache.get(id, fields, () -> fetchById(id, fields))
+                : fetchById(id, fields);
+
+        return (ojaiDoc == null) ? null : mapOjaiDocument(ojaiDoc);
+    }
+
+    private Document fetchById(String id, String... fields) {
         return processStore((connection, store) -> {
 
             Stopwatch stopwatch = Stopwatch.createStarted();
@@ -181,39 +287,99 @@ public abstract class MaprDbDao<T> {
             log.debug("Get by ID from '{}' table with id: '{}', fields: '{}'. Elapsed time: {}", tablePath, id,
                     (fields != null) ? Arrays.asList(fields) : "[]", stopwatch);
 
-            return (ojaiDoc == null) ? null : mapOjaiDocument(ojaiDoc);
+            return ojaiDoc;
         });
     }
 
     /**
-     * Allows to specify action via {@link OjaiStoreAction} to access the OJAI store.
+     * Returns documents by their identifiers using projection. All documents are fetched via single
+     * <code>_id IN (...)</code> query, so only one round trip to the MapR-DB is performed. Documents are returned in
+     * the order of specified identifiers, non-existing documents are omitted.
      *
-     * @param storeAction specifies action which will be performed on store.
-     * @param <R>         type of {@link OjaiStoreAction} return value.
-     * @return process result.
+     * @param ids    documents identifiers.
+     * @param fields list of fields that will present in documents. Note, that '_id' field is always fetched.
+     * @return list of documents with the specified identifiers.
      */
-    public <R> R processStore(OjaiStoreAction<R> storeAction) {
+    public List<T> getByIds(Collection<String> ids, String... fields) {
+
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Duplicates and nulls are not needed in query, but requested order must be preserved
+        Set<String> uniqueIds = new LinkedHashSet<>(ids);
+        uniqueIds.remove(null);
+        if (uniqueIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<String, Document> documentsById = processStore((connection, store) -> {
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+
+            QueryCondition condition = connection.newCondition()
+                    .in("_id", new ArrayList<>(uniqueIds))
+                    .build();
+
+            Query query = connection.newQuery()
+                    .select(projectionWithId(fields))
+                    .where(condition)
+                    .build();
 
-        loginTestUser(MAPR_USER_NAME, MAPR_USER_GROUP);
+            Map<String, Document> found = new HashMap<>();
+            try (DocumentStream documentStream = store.findQuery(query)) {
+                for (Document document : documentStream) {
+                    found.put(document.getIdString(), document);
+                }
+            }
 
-        // Create an OJAI connection to MapR cluster
-        Connection connection = DriverManager.getConnection(CONNECTION_URL);
+            log.debug("Get by IDs from '{}' table with ids: '{}', fields: '{}'. Found: '{}'. Elapsed time: {}",
+                    tablePath, uniqueIds, (fields != null) ? Arrays.asList(fields) : "[]", found.size(), stopwatch);
 
-        // Get an instance of OJAI DocumentStore
-        final DocumentStore store = connection.getStore(tablePath);
+            return found;
+        });
 
-        R processingResult = null;
-        if (storeAction != null) {
-            processingResult = storeAction.process(connection, store);
+        List<T> documents = new ArrayList<>();
+        for (String id : ids) {
+            Document ojaiDoc = (id != null) ? documentsById.get(id) : null;
+            T doc = (ojaiDoc != null) ? mapOjaiDocument(ojaiDoc) : null;
+            if (doc != null) {
+                documents.add(doc);
+            }
         }
 
-        // Close this instance of OJAI DocumentStore
-        store.close();
+        return documents;
+    }
+
+    /**
+     * Allows to specify action via {@link OjaiStoreAction} to access the OJAI store. Connection and store are borrowed
+     * from the shared {@link OjaiConnectionPool} and must not be closed by the action.
+     *
+     * @param storeAction specifies action which will be performed on store.
+     * @param <R>         type of {@link OjaiStoreAction} return value.
+     * @return process result.
+     */
+    public <R> R processStore(OjaiStoreAction<R> storeAction) {
 
-        // Close the OJAI connection and release any resources held by the connection
-        connection.close();
+        // Borrow long-lived OJAI connection and DocumentStore from the pool instead of creating new ones
+        OjaiConnectionPool.PooledStore pooledStore = connectionPool.borrow(tablePath);
 
-        return processingResult;
+        boolean broken = false;
+        try {
+            return (storeAction != null)
+                    ? storeAction.process(pooledStore.getConnection(), pooledStore.getStore())
+                    : null;
+        } catch (OjaiException e) {
+            // Do not return possibly broken handle to the pool
+            broken = true;
+            throw e;
+        } finally {
+            if (broken) {
+                connectionPool.invalidate(pooledStore);
+            } else {
+                connectionPool.release(pooledStore);
+            }
+        }
     }
 
     /**
@@ -243,6 +409,31 @@ public abstract class MaprDbDao<T> {
             store.delete(id);
             log.debug("Delete by ID from '{}' table with id: '{}'. Elapsed time: {}", tablePath, id, stopwatch);
         });
+
+        invalidateCached(id);
+    }
+
+    /**
+     * Deletes all the documents, which match the specified condition. Only identifiers of matching documents are
+     * fetched and documents are deleted via single bulk operation.
+     *
+     * @param filter creates condition of documents, which will be deleted.
+     */
+    protected void deleteWhere(Function<Connection, QueryCondition> filter) {
+        processStore((connection, store) -> {
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            Query query = connection.newQuery()
+                    .select("_id")
+                    .where(filter.apply(connection))
+                    .build();
+
+            try (DocumentStream documentStream = store.findQuery(query)) {
+                store.delete(documentStream);
+            }
+
+            log.debug("Delete by condition from '{}' table. Elapsed time: {}", tablePath, stopwatch);
+        });
     }
 
     /**
@@ -264,6 +455,7 @@ public abstract class MaprDbDao<T> {
 
             // Insert the document into the OJAI store
             store.insertOrReplace(createdOjaiDoc);
+            invalidateCached(createdOjaiDoc.getIdString());
 
             log.debug("Create document '{}' at table: '{}'. Elapsed time: {}", createdOjaiDoc, tablePath, stopwatch);
 
@@ -273,13 +465,104 @@ public abstract class MaprDbDao<T> {
     }
 
     /**
-     * Updates single document.
+     * Updates single document and reads it back.
      *
      * @param id     identifier of document, which will be updated.
      * @param entity contains info for document, which will be updated.
      * @return updated document.
+     * @see #updateAndGet(String, Object, String...)
+     */
+    public T update(String id, T entity) {
+        return updateAndGet(id, entity);
+    }
+
+    /**
+     * Updates single document and reads back only the specified fields of it. Use {@link #mutate(String, Object)} if
+     * updated document is not needed, since it saves the read round trip.
+     *
+     * @param id     identifier of document, which will be updated.
+     * @param entity contains info for document, which will be updated.
+     * @param fields fields what will present in returned document. The whole document is returned if fields are not
+     *               specified.
+     * @return updated document or <code>null</code> if there is no such document.
+     */
+    public T updateAndGet(String id, T entity, String... fields) {
+        return processStore((connection, store) -> {
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+
+            // Update the OJAI Document with specified identifier
+            store.update(id, buildUpdateMutation(connection, entity));
+            invalidateCached(id);
+
+            Document updatedOjaiDoc = (fields == null || fields.length == 0) ? store.findById(id)
+                    : store.findById(id, projectionWithId(fields));
+
+            log.debug("Update document from table '{}' with id: '{}'. Elapsed time: {}", tablePath, id, stopwatch);
+
+            // Map Ojai document to the actual instance of model class
+            return (updatedOjaiDoc == null) ? null : mapOjaiDocument(updatedOjaiDoc);
+        });
+    }
+
+    /**
+     * Updates single document without reading it back, so update takes single round trip.
+     *
+     * @param id     identifier of document, which will be updated.
+     * @param entity contains info for document, which will be updated.
+     */
+    public void mutate(String id, T entity) {
+        processStore((connection, store) -> {
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            store.update(id, buildUpdateMutation(connection, entity));
+            invalidateCached(id);
+
+            log.debug("Mutate document from table '{}' with id: '{}'. Elapsed time: {}", tablePath, id, stopwatch);
+        });
+    }
+
+    /**
+     * Updates single document only if it matches the specified condition. Condition is checked by the store along with
+     * the update, so optimistic checks, e.g. that the version of document is equal to the one read by the caller, do
+     * not need additional reads. Document is not created if it does not exist.
+     *
+     * @param id        identifier of document, which will be updated.
+     * @param entity    contains info for document, which will be updated.
+     * @param condition creates condition, which document must match.
+     * @return <code>true</code> if document is updated, <code>false</code> if it does not exist or does not match the
+     * condition.
+     */
+    public boolean updateIf(String id, T entity, Function<Connection, QueryCondition> condition) {
+
+        boolean updated = processStore((connection, store) -> {
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            boolean mutated = store.checkAndMutate(id, condition.apply(connection),
+                    buildUpdateMutation(connection, entity));
+
+            log.debug("Conditional update of document from table '{}' with id: '{}'. Updated: {}. Elapsed time: {}",
+                    tablePath, id, mutated, stopwatch);
+
+            return mutated;
+        });
+
+        if (updated) {
+            invalidateCached(id);
+        }
+
+        return updated;
+    }
+
+    /**
+     * Builds mutation, which applies the changes of the specified entity to the document. Subclasses, which do not
+     * support updates, must throw {@link UnsupportedOperationException}.
+     *
+     * @param connection OJAI connection.
+     * @param entity     contains info for document, which will be updated.
+     * @return document mutation.
      */
-    public abstract T update(String id, T entity);
+    protected abstract DocumentMutation buildUpdateMutation(Connection connection, T entity);
 
     /**
      * Indicates whether document with specified identifier exists.
@@ -288,9 +571,35 @@ public abstract class MaprDbDao<T> {
      * @return <code>true</code> if document with specified identifier exists, <code>false</code> otherwise.
      */
     public boolean exists(String id) {
+
+        if (cache != null) {
+            return getById(id, "_id") != null;
+        }
+
         return processStore((connection, store) -> store.findById(id) != null);
     }
 
+    /**
+     * Enables read-through cache of documents for this table.
+     *
+     * @see DocumentCache
+     */
+    protected void enableCache() {
+        this.cache = DocumentCache.forTable(tablePath);
+    }
+
+    /**
+     * Removes document with specified identifier from cache. Must be called after each write operation, so the changes
+     * are visible for this node before they are delivered via CDC.
+     *
+     * @param id document's identifier.
+     */
+    protected void invalidateCached(String id) {
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+    }
+
     /**
      * Converts OJAI document to the instance of model class.
      *
@@ -305,8 +614,9 @@ public abstract class MaprDbDao<T> {
 
         T document = null;
         try {
-            document = mapper.readValue(ojaiDocument.toString(), documentClass);
-        } catch (IOException e) {
+            // Read document's fields directly instead of serializing it to JSON string and parsing it back
+            document = documentMapper.map(ojaiDocument, documentClass);
+        } catch (RuntimeException e) {
             log.warn("Can not map OJAI document '{}' to instance of '{}' class. Exception: {}", ojaiDocument,
                     documentClass.getCanonicalName(), e);
         }
@@ -333,6 +643,123 @@ public abstract class MaprDbDao<T> {
         return Optional.of(userInfo);
     }
 
+    /**
+     * Returns projection fields, which always contain document's identifier.
+     *
+     * @param fields fields what will present in returned document.
+     * @return projection fields.
+     */
+    private static String[] projectionWithId(String[] fields) {
+
+        if (fields == null || fields.length == 0) {
+            return new String[]{"*"};
+        }
+
+        if (Arrays.asList(fields).contains("_id")) {
+            return fields;
+        }
+
+        String[] projection = Arrays.copyOf(fields, fields.length + 1);
+        projection[fields.length] = "_id";
+
+        return projection;
+    }
+
+    /**
+     * Returns projection fields, which always contain sort keys, so cursor of the next page can be built.
+     *
+     * @param fields fields what will present in returned document.
+     * @param keys   sort keys.
+     * @return projection fields.
+     */
+    private static String[] projectionWithSortKeys(String[] fields, List<PageCursor.SortKey> keys) {
+
+        if (fields == null || fields.length == 0) {
+            return new String[]{"*"};
+        }
+
+        Set<String> projection = new LinkedHashSet<>(Arrays.asList(fields));
+        keys.forEach(key -> projection.add(key.getField()));
+
+        return projection.toArray(new String[projection.size()]);
+    }
+
+    /**
+     * Builds condition, which matches documents that follow the cursor's document in the order defined by sort keys:
+     * <code>(k1 > v1) OR (k1 = v1 AND k2 > v2) OR ...</code>, where '>' is replaced by '<' for descending keys. Missing
+     * values are considered to be the lowest ones.
+     *
+     * @param connection OJAI connection.
+     * @param keys       sort keys.
+     * @param values     values of sort keys of the cursor's document.
+     * @return keyset condition.
+     */
+    private static QueryCondition buildKeysetCondition(Connection connection, List<PageCursor.SortKey> keys,
+                                                       List<Object> values) {
+
+        QueryCondition condition = connection.newCondition().or();
+        for (int i = 0; i < keys.size(); i++) {
+
+            PageCursor.SortKey key = keys.get(i);
+            Object value = values.get(i);
+
+            // Nothing is lower than missing value
+            if (value == null && SortOption.Order.DESC == key.getOrder()) {
+                continue;
+            }
+
+            condition.and();
+            for (int j = 0; j < i; j++) {
+                Object previousValue = values.get(j);
+                if (previousValue == null) {
+                    condition.notExists(keys.get(j).getField());
+                } else {
+                    is(condition, keys.get(j).getField(), QueryCondition.Op.EQUAL, previousValue);
+                }
+            }
+
+            if (value == null) {
+                condition.exists(key.getField());
+            } else {
+                QueryCondition.Op op = (SortOption.Order.DESC == key.getOrder())
+                        ? QueryCondition.Op.LESS
+                        : QueryCondition.Op.GREATER;
+                is(condition, key.getField(), op, value);
+            }
+
+            condition.close();
+        }
+
+        return condition.close().build();
+    }
+
+    private static void is(QueryCondition condition, String field, QueryCondition.Op op, Object value) {
+
+        if (value instanceof String) {
+            condition.is(field, op, (String) value);
+        } else if (value instanceof Integer) {
+            condition.is(field, op, (Integer) value);
+        } else if (value instanceof Long) {
+            condition.is(field, op, (Long) value);
+        } else if (value instanceof Float) {
+            condition.is(field, op, (Float) value);
+        } else if (value instanceof Double) {
+            condition.is(field, op, (Double) value);
+        } else if (value instanceof BigDecimal) {
+            condition.is(field, op, (BigDecimal) value);
+        } else if (value instanceof Boolean) {
+            condition.is(field, op, (Boolean) value);
+        } else if (value instanceof ODate) {
+            condition.is(field, op, (ODate) value);
+        } else if (value instanceof OTime) {
+            condition.is(field, op, (OTime) value);
+        } else if (value instanceof OTimestamp) {
+            condition.is(field, op, (OTimestamp) value);
+        } else {
+            throw new IllegalArgumentException("Unsupported sort key value: " + value);
+        }
+    }
+
     /**
      * Build an OJAI query according to the specified offset and limit values. Given fields array will be used in
      * projection.
@@ -365,9 +792,4 @@ public abstract class MaprDbDao<T> {
 
         return query.offset(offset).limit(limit).build();
     }
-
-    private static void loginTestUser(String username, String group) {
-        UserGroupInformation currentUgi = UserGroupInformation.createUserForTesting(username, new String[]{group});
-        UserGroupInformation.setLoginUser(currentUgi);
-    }
 }
@@ -0,0 +1,424 @@
+package com.mapr.music.dao;
+
+import org.apache.hadoop.security.UserGroupInformation;
+import org.ojai.store.Connection;
+import org.ojai.store.DocumentStore;
+import org.ojai.store.DriverManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.mapr.music.util.MaprProperties.*;
+
+/**
+ * Pool of long-lived OJAI connections and {@link DocumentStore} handles, which is shared by all the
+ * {@link MaprDbDao} instances. Handles are pooled per table path, so borrowing a handle does not require
+ * establishing new connection to the MapR cluster.
+ * <p>
+ * Pool size, borrow timeout, idle eviction and health checks are configured via
+ * {@link com.mapr.music.util.MaprProperties}.
+ */
+public final class OjaiConnectionPool {
+
+    private static final Logger log = LoggerFactory.getLogger(OjaiConnectionPool.class);
+
+    private static final String CONNECTION_URL = "ojai:mapr:";
+
+    /**
+     * Identifier of non-existing document, which is used to check whether pooled store handle is still alive.
+     */
+    private static final String HEALTH_CHECK_DOCUMENT_ID = "__ojai_pool_health_check__";
+
+    /**
+     * Single OJAI connection and store handle, which belongs to the pool.
+     */
+    public static final class PooledStore {
+
+        private final String tablePath;
+        private final Connection connection;
+        private final DocumentStore store;
+        private volatile long lastUsedAt;
+
+        private PooledStore(String tablePath, Connection connection, DocumentStore store) {
+            this.tablePath = tablePath;
+            this.connection = connection;
+            this.store = store;
+            this.lastUsedAt = System.currentTimeMillis();
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public DocumentStore getStore() {
+            return store;
+        }
+
+        public String getTablePath() {
+            return tablePath;
+        }
+    }
+
+    /**
+     * Handles of the single table.
+     */
+    private static final class TablePool {
+
+        final Deque<PooledStore> idle = new ConcurrentLinkedDeque<>();
+        final Semaphore permits;
+        final AtomicInteger active = new AtomicInteger();
+
+        TablePool(int maxSize) {
+            this.permits = new Semaphore(maxSize, true);
+        }
+    }
+
+    /**
+     * Snapshot of pool metrics.
+     */
+    public static final class Metrics {
+
+        private final long created;
+        private final long closed;
+        private final long borrowed;
+        private final long invalidated;
+        private final long evicted;
+        private final long validationFailures;
+        private final long waitTimeouts;
+        private final long totalWaitMillis;
+        private final int active;
+        private final int idle;
+        private final int maxSizePerTable;
+
+        private Metrics(OjaiConnectionPool pool) {
+            this.created = pool.created.get();
+            this.closed = pool.closed.get();
+            this.borrowed = pool.borrowed.get();
+            this.invalidated = pool.invalidated.get();
+            this.evicted = pool.evicted.get();
+            this.validationFailures = pool.validationFailures.get();
+            this.waitTimeouts = pool.waitTimeouts.get();
+            this.totalWaitMillis = TimeUnit.NANOSECONDS.toMillis(pool.totalWaitNanos.get());
+            this.active = pool.tablePools.values().stream().mapToInt(tablePool -> tablePool.active.get()).sum();
+            this.idle = pool.tablePools.values().stream().mapToInt(tablePool -> tablePool.idle.size()).sum();
+            this.maxSizePerTable = pool.maxSize;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getClosed() {
+            return closed;
+        }
+
+        public long getBorrowed() {
+            return borrowed;
+        }
+
+        public long getInvalidated() {
+            return invalidated;
+        }
+
+        public long getEvicted() {
+            return evicted;
+        }
+
+        public long getValidationFailures() {
+            return validationFailures;
+        }
+
+        public long getWaitTimeouts() {
+            return waitTimeouts;
+        }
+
+        public long getTotalWaitMillis() {
+            return totalWaitMillis;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getMaxSizePerTable() {
+            return maxSizePerTable;
+        }
+    }
+
+    private static final OjaiConnectionPool INSTANCE = new OjaiConnectionPool(OJAI_POOL_MAX_SIZE, OJAI_POOL_MAX_WAIT_MS,
+            OJAI_POOL_IDLE_TIMEOUT_MS, OJAI_POOL_VALIDATION_INTERVAL_MS, OJAI_POOL_EVICTION_INTERVAL_MS);
+
+    private final Map<String, TablePool> tablePools = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closedPool;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong waitTimeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private OjaiConnectionPool(int maxSize, long maxWaitMillis, long idleTimeoutMillis, long validationIntervalMillis,
+                               long evictionIntervalMillis) {
+
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be greater than zero");
+        }
+
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ojai-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (evictionIntervalMillis > 0) {
+            this.evictor.scheduleWithFixedDelay(this::evictIdle, evictionIntervalMillis, evictionIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns application-wide pool instance.
+     *
+     * @return pool instance.
+     */
+    public static OjaiConnectionPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Borrows store handle for the specified table. Idle handle will be reused if available, otherwise new one will be
+     * created. In case when pool is exhausted caller waits up to configured timeout for the handle to be returned.
+     * Note, that borrowed handle must be returned to the pool either via {@link #release(PooledStore)} or
+     * {@link #invalidate(PooledStore)}.
+     *
+     * @param tablePath MapR-DB table path.
+     * @return pooled store handle.
+     * @throws IllegalStateException in case when pool is closed or handle can not be borrowed within timeout.
+     */
+    public PooledStore borrow(String tablePath) {
+
+        if (closedPool) {
+            throw new IllegalStateException("OJAI connection pool is closed");
+        }
+
+        TablePool tablePool = tablePools.computeIfAbsent(tablePath, path -> new TablePool(maxSize));
+
+        long waitStarted = System.nanoTime();
+        try {
+            if (!tablePool.permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                waitTimeouts.incrementAndGet();
+                throw new IllegalStateException("Timed out waiting for OJAI store handle of table '" + tablePath +
+                        "' after " + maxWaitMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for OJAI store handle", e);
+        } finally {
+            totalWaitNanos.addAndGet(System.nanoTime() - waitStarted);
+        }
+
+        try {
+            PooledStore pooledStore;
+            while ((pooledStore = tablePool.idle.pollFirst()) != null) {
+                if (isUsable(pooledStore)) {
+                    break;
+                }
+                closeQuietly(pooledStore);
+            }
+
+            if (pooledStore == null) {
+                pooledStore = createPooledStore(tablePath);
+            }
+
+            tablePool.active.incrementAndGet();
+            borrowed.incrementAndGet();
+
+            return pooledStore;
+        } catch (RuntimeException e) {
+            tablePool.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns healthy handle to the pool, so it can be reused.
+     *
+     * @param pooledStore handle, which was previously borrowed.
+     */
+    public void release(PooledStore pooledStore) {
+
+        TablePool tablePool = tablePools.get(pooledStore.getTablePath());
+        pooledStore.lastUsedAt = System.currentTimeMillis();
+        tablePool.active.decrementAndGet();
+
+        if (closedPool) {
+            closeQuietly(pooledStore);
+        } else {
+            // LIFO order keeps the most recently used handles warm and lets the rest become idle and evicted
+            tablePool.idle.offerFirst(pooledStore);
+        }
+
+        tablePool.permits.release();
+    }
+
+    /**
+     * Closes broken handle and removes it from the pool.
+     *
+     * @param pooledStore handle, which was previously borrowed.
+     */
+    public void invalidate(PooledStore pooledStore) {
+
+        TablePool tablePool = tablePools.get(pooledStore.getTablePath());
+        tablePool.active.decrementAndGet();
+        invalidated.incrementAndGet();
+        closeQuietly(pooledStore);
+        tablePool.permits.release();
+    }
+
+    /**
+     * Returns snapshot of pool metrics.
+     *
+     * @return pool metrics.
+     */
+    public Metrics getMetrics() {
+        return new Metrics(this);
+    }
+
+    /**
+     * Closes all idle handles and stops idle eviction. Handles, which are currently borrowed, will be closed as soon as
+     * they are returned.
+     */
+    public void close() {
+
+        closedPool = true;
+        evictor.shutdownNow();
+        tablePools.values().forEach(tablePool -> {
+            PooledStore pooledStore;
+            while ((pooledStore = tablePool.idle.pollFirst()) != null) {
+                closeQuietly(pooledStore);
+            }
+        });
+
+        log.info("OJAI connection pool is closed");
+    }
+
+    private void evictIdle() {
+
+        long now = System.currentTimeMillis();
+        for (TablePool tablePool : tablePools.values()) {
+
+            Iterator<PooledStore> iterator = tablePool.idle.descendingIterator();
+            while (iterator.hasNext()) {
+                PooledStore pooledStore = iterator.next();
+                if (now - pooledStore.lastUsedAt < idleTimeoutMillis) {
+                    continue;
+                }
+
+                // Handle may be borrowed concurrently, so close it only if it was actually removed
+                if (tablePool.idle.remove(pooledStore)) {
+                    evicted.incrementAndGet();
+                    closeQuietly(pooledStore);
+                }
+            }
+        }
+    }
+
+    private boolean isUsable(PooledStore pooledStore) {
+
+        long idleMillis = System.currentTimeMillis() - pooledStore.lastUsedAt;
+        if (idleMillis >= idleTimeoutMillis) {
+            evicted.incrementAndGet();
+            return false;
+        }
+
+        if (idleMillis < validationIntervalMillis) {
+            return true;
+        }
+
+        try {
+            pooledStore.getStore().findById(HEALTH_CHECK_DOCUMENT_ID, "_id");
+            return true;
+        } catch (RuntimeException e) {
+            validationFailures.incrementAndGet();
+            log.warn("Pooled OJAI store handle of table '{}' failed health check. Exception: {}",
+                    pooledStore.getTablePath(), e);
+            return false;
+        }
+    }
+
+    private PooledStore createPooledStore(String tablePath) {
+
+        loginTestUser(MAPR_USER_NAME, MAPR_USER_GROUP);
+
+        // Create an OJAI connection to MapR cluster
+        Connection connection = DriverManager.getConnection(CONNECTION_URL);
+
+        // Get an instance of OJAI DocumentStore
+        DocumentStore store;
+        try {
+            store = connection.getStore(tablePath);
+        } catch (RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+
+        created.incrementAndGet();
+        log.debug("Created new OJAI store handle for table '{}'", tablePath);
+
+        return new PooledStore(tablePath, connection, store);
+    }
+
+    private void closeQuietly(PooledStore pooledStore) {
+
+        try {
+            // Close this instance of OJAI DocumentStore
+            pooledStore.getStore().close();
+        } catch (RuntimeException e) {
+            log.debug("Can not close OJAI store of table '{}'. Exception: {}", pooledStore.getTablePath(), e);
+        }
+
+        try {
+            // Close the OJAI connection and release any resources held by the connection
+            pooledStore.getConnection().close();
+        } catch (RuntimeException e) {
+            log.debug("Can not close OJAI connection. Exception: {}", e);
+        }
+
+        closed.incrementAndGet();
+    }
+
+    private static void loginTestUser(String username, String group) {
+        UserGroupInformation currentUgi = UserGroupInformation.createUserForTesting(username, new String[]{group});
+        UserGroupInformation.setLoginUser(currentUgi);
+    }
+}
@@ -0,0 +1,367 @@
+package com.mapr.music.dao;
+
+import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.ojai.Document;
+import org.ojai.DocumentReader;
+import org.ojai.DocumentReader.EventType;
+import org.ojai.types.ODate;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps OJAI documents to the instances of model classes by reading document's {@link DocumentReader} events directly
+ * into the model's fields. Unlike serializing document to the JSON string and parsing it back via Jackson, no
+ * intermediate JSON text or tree is created.
+ * <p>
+ * Model classes are described using the same Jackson annotations as for JSON serialization: field names are taken from
+ * {@link JsonProperty} (or {@link JsonGetter} of the corresponding getter) and {@link JsonIgnore} fields are skipped.
+ * Field accessors are resolved once per class and cached as {@link MethodHandle}s.
+ */
+public final class OjaiDocumentMapper {
+
+    private static final OjaiDocumentMapper INSTANCE = new OjaiDocumentMapper();
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    /**
+     * Describes how to map document fields to the instance of single class.
+     */
+    private static final class ClassMapping {
+
+        final MethodHandle constructor;
+        final Map<String, PropertyMapping> properties;
+
+        ClassMapping(MethodHandle constructor, Map<String, PropertyMapping> properties) {
+            this.constructor = constructor;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * Describes how to set single document field.
+     */
+    private static final class PropertyMapping {
+
+        final Type type;
+        final Class<?> rawType;
+        final MethodHandle setter;
+
+        PropertyMapping(Type type, MethodHandle setter) {
+            this.type = type;
+            this.rawType = rawClass(type);
+            this.setter = setter;
+        }
+    }
+
+    private final Map<Class<?>, ClassMapping> mappings = new ConcurrentHashMap<>();
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private OjaiDocumentMapper() {
+    }
+
+    public static OjaiDocumentMapper getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Converts OJAI document to the instance of specified class.
+     *
+     * @param document OJAI document which will be converted.
+     * @param type     model class.
+     * @param <T>      model type.
+     * @return instance of model class.
+     * @throws IllegalArgumentException in case when document can not be mapped to the specified class.
+     */
+    public <T> T map(Document document, Class<T> type) {
+
+        if (document == null) {
+            throw new IllegalArgumentException("OJAI document can not be null");
+        }
+
+        DocumentReader reader = document.asReader();
+        EventType event = reader.next();
+        if (event != EventType.START_MAP) {
+            throw new IllegalArgumentException("OJAI document must start with map, but was: " + event);
+        }
+
+        return type.cast(readObject(reader, type));
+    }
+
+    private Object readObject(DocumentReader reader, Class<?> type) {
+
+        ClassMapping mapping = mappings.computeIfAbsent(type, this::createMapping);
+        Object instance = newInstance(mapping, type);
+
+        EventType event;
+        while ((event = reader.next()) != null && event != EventType.END_MAP) {
+
+            PropertyMapping property = mapping.properties.get(reader.getFieldName());
+            if (property == null) {
+                // Ignore unknown properties
+                skip(reader, event);
+                continue;
+            }
+
+            Object value = readValue(reader, event, property.type, property.rawType);
+            if (value == null && property.rawType.isPrimitive()) {
+                continue;
+            }
+
+            try {
+                property.setter.invokeExact(instance, value);
+            } catch (Throwable throwable) {
+                throw new IllegalArgumentException("Can not set field '" + reader.getFieldName() + "' of '" +
+                        type.getCanonicalName() + "' class", throwable);
+            }
+        }
+
+        return instance;
+    }
+
+    private Object readValue(DocumentReader reader, EventType event, Type type, Class<?> rawType) {
+
+        switch (event) {
+            case NULL:
+                return null;
+            case START_MAP:
+                return (Map.class.isAssignableFrom(rawType) || rawType == Object.class)
+                        ? readMap(reader)
+                        : readObject(reader, rawType);
+            case START_ARRAY:
+                return readArray(reader, type, rawType);
+            default:
+                return readScalar(reader, event, rawType);
+        }
+    }
+
+    private Object readArray(DocumentReader reader, Type type, Class<?> rawType) {
+
+        Type elementType;
+        if (rawType.isArray()) {
+            elementType = rawType.getComponentType();
+        } else if (type instanceof ParameterizedType) {
+            elementType = ((ParameterizedType) type).getActualTypeArguments()[0];
+        } else {
+            elementType = Object.class;
+        }
+
+        Class<?> elementRawType = rawClass(elementType);
+        List<Object> elements = new ArrayList<>();
+        EventType event;
+        while ((event = reader.next()) != null && event != EventType.END_ARRAY) {
+            elements.add(readValue(reader, event, elementType, elementRawType));
+        }
+
+        if (!rawType.isArray()) {
+            return elements;
+        }
+
+        Object array = Array.newInstance(elementRawType, elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            Array.set(array, i, elements.get(i));
+        }
+
+        return array;
+    }
+
+    private Map<String, Object> readMap(DocumentReader reader) {
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        EventType event;
+        while ((event = reader.next()) != null && event != EventType.END_MAP) {
+            String fieldName = reader.getFieldName();
+            map.put(fieldName, readValue(reader, event, Object.class, Object.class));
+        }
+
+        return map;
+    }
+
+    private Object readScalar(DocumentReader reader, EventType event, Class<?> rawType) {
+
+        switch (event) {
+            case STRING:
+                String string = reader.getString();
+                return (rawType == ODate.class) ? ODate.parse(string) : string;
+            case BOOLEAN:
+                return reader.getBoolean();
+            case BYTE:
+                return toNumber(reader.getByte(), rawType);
+            case SHORT:
+                return toNumber(reader.getShort(), rawType);
+            case INT:
+                return toNumber(reader.getInt(), rawType);
+            case LONG:
+                return toNumber(reader.getLong(), rawType);
+            case FLOAT:
+                return toNumber(reader.getFloat(), rawType);
+            case DOUBLE:
+                return toNumber(reader.getDouble(), rawType);
+            case DECIMAL:
+                return toNumber(reader.getDecimal(), rawType);
+            case DATE:
+                ODate date = reader.getDate();
+                return (rawType == String.class) ? date.toDateStr() : date;
+            case TIME:
+                return (rawType == String.class) ? reader.getTime().toTimeStr() : reader.getTime();
+            case TIMESTAMP:
+                return (rawType == String.class) ? reader.getTimestamp().toUTCString() : reader.getTimestamp();
+            case INTERVAL:
+                return reader.getInterval();
+            case BINARY:
+                return reader.getBinary();
+            default:
+                throw new IllegalArgumentException("Unexpected OJAI event: " + event);
+        }
+    }
+
+    /**
+     * Converts numeric value to the type of field. Allows to assign MapR-DB numeric values to the fields of compatible
+     * types, for instance, integer value to the field of type {@link Long}.
+     */
+    private static Object toNumber(Number number, Class<?> rawType) {
+
+        if (rawType == Long.class || rawType == long.class) {
+            return number.longValue();
+        }
+
+        if (rawType == Double.class || rawType == double.class) {
+            return number.doubleValue();
+        }
+
+        if (rawType == Integer.class || rawType == int.class) {
+            return number.intValue();
+        }
+
+        if (rawType == Float.class || rawType == float.class) {
+            return number.floatValue();
+        }
+
+        if (rawType == String.class) {
+            return number.toString();
+        }
+
+        return number;
+    }
+
+    private static void skip(DocumentReader reader, EventType event) {
+
+        if (event != EventType.START_MAP && event != EventType.START_ARRAY) {
+            return;
+        }
+
+        int depth = 1;
+        while (depth > 0) {
+            EventType next = reader.next();
+            if (next == null) {
+                return;
+            }
+
+            if (next == EventType.START_MAP || next == EventType.START_ARRAY) {
+                depth++;
+            } else if (next == EventType.END_MAP || next == EventType.END_ARRAY) {
+                depth--;
+            }
+        }
+    }
+
+    private static Object newInstance(ClassMapping mapping, Class<?> type) {
+        try {
+            return mapping.constructor.invokeExact();
+        } catch (Throwable throwable) {
+            throw new IllegalArgumentException("Can not create instance of '" + type.getCanonicalName() + "' class",
+                    throwable);
+        }
+    }
+
+    private ClassMapping createMapping(Class<?> type) {
+
+        if (Collection.class.isAssignableFrom(type) || type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            throw new IllegalArgumentException("Can not map OJAI document to '" + type.getCanonicalName() + "'");
+        }
+
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            MethodHandle constructorHandle = lookup.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+
+            Map<String, PropertyMapping> properties = new HashMap<>();
+            for (Class<?> current = type; current != null && current != Object.class;
+                 current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                            || field.isAnnotationPresent(JsonIgnore.class)) {
+                        continue;
+                    }
+
+                    field.setAccessible(true);
+                    MethodHandle setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+                    properties.putIfAbsent(propertyName(field), new PropertyMapping(field.getGenericType(), setter));
+                }
+            }
+
+            return new ClassMapping(constructorHandle, properties);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Can not create OJAI mapping for '" + type.getCanonicalName() + "'", e);
+        }
+    }
+
+    /**
+     * Returns name of document's field, which corresponds to the specified class field.
+     */
+    private static String propertyName(Field field) {
+
+        JsonProperty jsonProperty = field.getAnnotation(JsonProperty.class);
+        if (jsonProperty != null && !jsonProperty.value().isEmpty()) {
+            return jsonProperty.value();
+        }
+
+        // Field may be renamed via annotated getter, for instance, in case of custom date format handling
+        String name = field.getName();
+        String getterName = "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        try {
+            Method getter = field.getDeclaringClass().getMethod(getterName);
+            JsonGetter jsonGetter = getter.getAnnotation(JsonGetter.class);
+            if (jsonGetter != null && !jsonGetter.value().isEmpty()) {
+                return jsonGetter.value();
+            }
+        } catch (NoSuchMethodException e) {
+            // there is no getter, use field name
+        }
+
+        return name;
+    }
+
+    private static Class<?> rawClass(Type type) {
+
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+
+        return Object.class;
+    }
+}
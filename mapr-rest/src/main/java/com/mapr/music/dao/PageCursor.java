@@ -0,0 +1,256 @@
+package com.mapr.music.dao;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.ojai.Document;
+import org.ojai.Value;
+import org.ojai.types.ODate;
+import org.ojai.types.OTime;
+import org.ojai.types.OTimestamp;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Continuation token for keyset pagination. Cursor contains values of sort keys of the last document of the page and
+ * the signature of sort keys, so the next page can be fetched by condition on sort keys instead of skipping documents
+ * using offset. Cursor is represented to the clients as opaque URL-safe string.
+ */
+public final class PageCursor {
+
+    public static final String ID_FIELD = "_id";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Single sort key. Document's identifier is always used as the last sort key, so the order is total.
+     */
+    public static final class SortKey {
+
+        private final String field;
+        private final SortOption.Order order;
+
+        SortKey(String field, SortOption.Order order) {
+            this.field = field;
+            this.order = order;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public SortOption.Order getOrder() {
+            return order;
+        }
+
+        @Override
+        public String toString() {
+            return field + ":" + order;
+        }
+    }
+
+    private final String signature;
+    private final List<Object> values;
+
+    private PageCursor(String signature, List<Object> values) {
+        this.signature = signature;
+        this.values = values;
+    }
+
+    /**
+     * Returns list of sort keys according to the specified sort options. Document's identifier is added as the last
+     * sort key, if it is not specified explicitly.
+     *
+     * @param sortOptions sort options.
+     * @return list of sort keys.
+     */
+    public static List<SortKey> sortKeys(List<SortOption> sortOptions) {
+
+        List<SortKey> keys = new ArrayList<>();
+        if (sortOptions != null) {
+            for (SortOption sortOption : sortOptions) {
+                for (String field : sortOption.getFields()) {
+                    keys.add(new SortKey(field, sortOption.getOrder()));
+                }
+            }
+        }
+
+        boolean containsId = keys.stream().anyMatch(key -> ID_FIELD.equals(key.getField()));
+        if (!containsId) {
+            keys.add(new SortKey(ID_FIELD, SortOption.Order.ASC));
+        }
+
+        return keys;
+    }
+
+    /**
+     * Creates cursor, which points to the specified document.
+     *
+     * @param document last document of the page.
+     * @param keys     sort keys.
+     * @return cursor, which points to the specified document.
+     */
+    public static PageCursor of(Document document, List<SortKey> keys) {
+
+        List<Object> values = new ArrayList<>();
+        for (SortKey key : keys) {
+            Value value = document.getValue(key.getField());
+            values.add((value == null) ? null : value.getObject());
+        }
+
+        return new PageCursor(signature(keys), values);
+    }
+
+    /**
+     * Decodes cursor from it's string representation and checks that it was created for the same sort keys.
+     *
+     * @param token string representation of cursor.
+     * @param keys  sort keys.
+     * @return decoded cursor.
+     * @throws IllegalArgumentException in case when token is malformed or created for different sort keys.
+     */
+    public static PageCursor decode(String token, List<SortKey> keys) {
+
+        JsonNode cursorNode;
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(token);
+            cursorNode = mapper.readTree(json);
+        } catch (IllegalArgumentException | IOException e) {
+            throw new IllegalArgumentException("Cursor '" + token + "' is malformed", e);
+        }
+
+        if (cursorNode == null || !cursorNode.has("s") || !cursorNode.has("v")) {
+            throw new IllegalArgumentException("Cursor '" + token + "' is malformed");
+        }
+
+        String signature = cursorNode.get("s").asText();
+        if (!signature(keys).equals(signature)) {
+            throw new IllegalArgumentException("Cursor '" + token + "' was created for different sort options");
+        }
+
+        List<Object> values = new ArrayList<>();
+        for (JsonNode valueNode : cursorNode.get("v")) {
+            values.add(decodeValue(valueNode));
+        }
+
+        if (values.size() != keys.size()) {
+            throw new IllegalArgumentException("Cursor '" + token + "' is malformed");
+        }
+
+        return new PageCursor(signature, values);
+    }
+
+    /**
+     * Returns URL-safe string representation of cursor.
+     *
+     * @return string representation of cursor.
+     */
+    public String encode() {
+
+        ObjectNode cursorNode = mapper.createObjectNode();
+        cursorNode.put("s", signature);
+        ArrayNode valuesNode = cursorNode.putArray("v");
+        values.forEach(value -> valuesNode.add(encodeValue(value)));
+
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(cursorNode.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns values of sort keys in the order of keys.
+     *
+     * @return values of sort keys.
+     */
+    public List<Object> getValues() {
+        return Collections.unmodifiableList(values);
+    }
+
+    private static String signature(List<SortKey> keys) {
+        return keys.stream().map(SortKey::toString).collect(Collectors.joining(","));
+    }
+
+    /**
+     * Values are stored along with their types, so conditions on sort keys are built using the same types as the
+     * stored ones.
+     */
+    private static JsonNode encodeValue(Object value) {
+
+        ArrayNode node = mapper.createArrayNode();
+        if (value == null) {
+            return node.add("null");
+        } else if (value instanceof String) {
+            return node.add("s").add((String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return node.add("i").add(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            return node.add("l").add((Long) value);
+        } else if (value instanceof Float) {
+            return node.add("f").add((Float) value);
+        } else if (value instanceof Double) {
+            return node.add("d").add((Double) value);
+        } else if (value instanceof BigDecimal) {
+            return node.add("dec").add(value.toString());
+        } else if (value instanceof Boolean) {
+            return node.add("b").add((Boolean) value);
+        } else if (value instanceof ODate) {
+            return node.add("date").add(((ODate) value).toDateStr());
+        } else if (value instanceof OTime) {
+            return node.add("time").add(((OTime) value).toTimeStr());
+        } else if (value instanceof OTimestamp) {
+            return node.add("ts").add(((OTimestamp) value).getMillis());
+        }
+
+        throw new IllegalArgumentException("Sorting by values of type '" + value.getClass().getCanonicalName() +
+                "' is not supported by cursor pagination");
+    }
+
+    private static Object decodeValue(JsonNode node) {
+
+        if (!node.isArray() || node.size() == 0) {
+            throw new IllegalArgumentException("Cursor value '" + node + "' is malformed");
+        }
+
+        String type = node.get(0).asText();
+        JsonNode value = node.get(1);
+        if ("null".equals(type)) {
+            return null;
+        }
+
+        if (value == null) {
+            throw new IllegalArgumentException("Cursor value '" + node + "' is malformed");
+        }
+
+        switch (type) {
+            case "s":
+                return value.asText();
+            case "i":
+                return value.asInt();
+            case "l":
+                return value.asLong();
+            case "f":
+                return (float) value.asDouble();
+            case "d":
+                return value.asDouble();
+            case "dec":
+                return new BigDecimal(value.asText());
+            case "b":
+                return value.asBoolean();
+            case "date":
+                return ODate.parse(value.asText());
+            case "time":
+                return OTime.parse(value.asText());
+            case "ts":
+                return new OTimestamp(value.asLong());
+            default:
+                throw new IllegalArgumentException("Cursor value '" + node + "' has unknown type");
+        }
+    }
+}
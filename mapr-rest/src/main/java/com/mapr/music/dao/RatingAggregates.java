@@ -0,0 +1,227 @@
+package com.mapr.music.dao;
+
+import org.ojai.Document;
+import org.ojai.DocumentStream;
+import org.ojai.Value;
+import org.ojai.store.Connection;
+import org.ojai.store.DocumentMutation;
+import org.ojai.store.DocumentStore;
+import org.ojai.store.Query;
+import org.ojai.store.QueryCondition;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maintains running rating aggregates of rated documents. Each rated document contains 'rating_sum' and 'rating_count'
+ * fields, which are changed only via atomic increments, and 'rating' field, which is derived from them. Thus, each
+ * vote costs constant number of operations regardless of the number of document's rates.
+ */
+public final class RatingAggregates {
+
+    public static final String RATING_FIELD = "rating";
+    public static final String RATING_SUM_FIELD = "rating_sum";
+    public static final String RATING_COUNT_FIELD = "rating_count";
+
+    /**
+     * Sums of rates are accumulated via floating point increments, so they are compared with tolerance.
+     */
+    private static final double SUM_TOLERANCE = 1e-6;
+
+    /**
+     * Sum and number of document's rates.
+     */
+    public static final class Totals {
+
+        public static final Totals EMPTY = new Totals(0, 0);
+
+        private final double sum;
+        private final long count;
+
+        public Totals(double sum, long count) {
+            this.sum = sum;
+            this.count = count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public Totals add(double rating) {
+            return new Totals(sum + rating, count + 1);
+        }
+
+        public Double getAverage() {
+            return average(sum, count);
+        }
+
+        public boolean matches(Totals other) {
+            return other != null && count == other.count && Math.abs(sum - other.sum) < SUM_TOLERANCE;
+        }
+    }
+
+    private RatingAggregates() {
+    }
+
+    /**
+     * Atomically applies delta to the aggregates of the specified document and updates document's average rating.
+     *
+     * @param connection OJAI connection.
+     * @param store      store of rated documents.
+     * @param id         rated document's identifier.
+     * @param sumDelta   value which will be added to the sum of rates.
+     * @param countDelta value which will be added to the number of rates.
+     * @return document's average rating after the delta is applied or <code>null</code> if there is no such document.
+     */
+    static Double applyDelta(Connection connection, DocumentStore store, String id, double sumDelta,
+                             long countDelta) {
+
+        DocumentMutation mutation = connection.newMutation().increment(RATING_SUM_FIELD, sumDelta);
+        if (countDelta != 0) {
+            mutation.increment(RATING_COUNT_FIELD, countDelta);
+        }
+
+        // Increment must not recreate the document, which is deleted concurrently
+        QueryCondition exists = connection.newCondition().exists("_id").build();
+        if (!store.checkAndMutate(id, exists, mutation)) {
+            return null;
+        }
+
+        Document aggregates = store.findById(id, RATING_SUM_FIELD, RATING_COUNT_FIELD);
+        Totals totals = (aggregates != null) ? totalsOf(aggregates) : null;
+        if (totals == null) {
+            return null;
+        }
+
+        // Average is set only if aggregates are not changed concurrently, otherwise it is set by the concurrent vote
+        QueryCondition unchanged = connection.newCondition()
+                .and()
+                .is(RATING_SUM_FIELD, QueryCondition.Op.EQUAL, totals.getSum())
+                .is(RATING_COUNT_FIELD, QueryCondition.Op.EQUAL, totals.getCount())
+                .close()
+                .build();
+
+        store.checkAndMutate(id, unchanged, averageMutation(connection, totals));
+
+        return totals.getAverage();
+    }
+
+    /**
+     * Replaces aggregates of the specified document if they are equal to the expected ones. Used to initialize
+     * aggregates of documents, which were rated before aggregates were introduced, and to fix aggregates drift.
+     *
+     * @param connection OJAI connection.
+     * @param store      store of rated documents.
+     * @param id         rated document's identifier.
+     * @param expected   expected aggregates. <code>null</code> value means that document must not contain aggregates.
+     * @param actual     actual aggregates, which will be set.
+     * @return <code>true</code> if aggregates are replaced, <code>false</code> if they were changed concurrently.
+     */
+    static boolean replace(Connection connection, DocumentStore store, String id, Totals expected, Totals actual) {
+
+        QueryCondition unchanged = (expected == null)
+                ? connection.newCondition().notExists(RATING_COUNT_FIELD).build()
+                : connection.newCondition()
+                .and()
+                .is(RATING_SUM_FIELD, QueryCondition.Op.EQUAL, expected.getSum())
+                .is(RATING_COUNT_FIELD, QueryCondition.Op.EQUAL, expected.getCount())
+                .close()
+                .build();
+
+        DocumentMutation mutation = averageMutation(connection, actual)
+                .set(RATING_SUM_FIELD, actual.getSum())
+                .set(RATING_COUNT_FIELD, actual.getCount());
+
+        return store.checkAndMutate(id, unchanged, mutation);
+    }
+
+    /**
+     * Returns stored aggregates of all the documents, which contain them.
+     *
+     * @param connection OJAI connection.
+     * @param store      store of rated documents.
+     * @return aggregates by document's identifier.
+     */
+    static Map<String, Totals> findAll(Connection connection, DocumentStore store) {
+
+        Query query = connection.newQuery()
+                .select("_id", RATING_SUM_FIELD, RATING_COUNT_FIELD)
+                .where(connection.newCondition().exists(RATING_COUNT_FIELD).build())
+                .build();
+
+        Map<String, Totals> aggregates = new HashMap<>();
+        try (DocumentStream documentStream = store.findQuery(query)) {
+            for (Document document : documentStream) {
+                Totals totals = totalsOf(document);
+                if (totals != null) {
+                    aggregates.put(document.getIdString(), totals);
+                }
+            }
+        }
+
+        return aggregates;
+    }
+
+    /**
+     * Computes actual aggregates from the rates.
+     *
+     * @param connection OJAI connection.
+     * @param store      store of rates.
+     * @return aggregates by rated document's identifier.
+     */
+    static Map<String, Totals> computeFromRates(Connection connection, DocumentStore store) {
+
+        Query query = connection.newQuery()
+                .select("document_id", "rating")
+                .build();
+
+        Map<String, Totals> aggregates = new HashMap<>();
+        try (DocumentStream documentStream = store.findQuery(query)) {
+            for (Document rate : documentStream) {
+
+                String documentId = rate.getString("document_id");
+                Value rating = rate.getValue("rating");
+                if (documentId == null || rating == null || !(rating.getObject() instanceof Number)) {
+                    continue;
+                }
+
+                double value = ((Number) rating.getObject()).doubleValue();
+                aggregates.merge(documentId, Totals.EMPTY.add(value),
+                        (totals, single) -> totals.add(single.getSum()));
+            }
+        }
+
+        return aggregates;
+    }
+
+    private static Totals totalsOf(Document document) {
+
+        Value sum = document.getValue(RATING_SUM_FIELD);
+        Value count = document.getValue(RATING_COUNT_FIELD);
+        if (count == null || !(count.getObject() instanceof Number)) {
+            return null;
+        }
+
+        double sumValue = (sum != null && sum.getObject() instanceof Number)
+                ? ((Number) sum.getObject()).doubleValue()
+                : 0;
+
+        return new Totals(sumValue, ((Number) count.getObject()).longValue());
+    }
+
+    private static DocumentMutation averageMutation(Connection connection, Totals totals) {
+
+        Double average = totals.getAverage();
+        DocumentMutation mutation = connection.newMutation();
+
+        return (average != null) ? mutation.set(RATING_FIELD, average) : mutation.delete(RATING_FIELD);
+    }
+
+    private static Double average(double sum, long count) {
+        return (count > 0) ? sum / count : null;
+    }
+}
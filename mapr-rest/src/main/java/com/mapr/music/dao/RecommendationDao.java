@@ -1,6 +1,8 @@
 package com.mapr.music.dao;
 
 import com.mapr.music.model.Recommendation;
+import org.ojai.store.Connection;
+import org.ojai.store.DocumentMutation;
 
 import javax.inject.Named;
 
@@ -15,7 +17,7 @@ public class RecommendationDao extends MaprDbDao<Recommendation> {
      * Updating recommendation documents is not supported.
      */
     @Override
-    public Recommendation update(String id, Recommendation entity) {
+    protected DocumentMutation buildUpdateMutation(Connection connection, Recommendation recommendation) {
         throw new UnsupportedOperationException("Recommendation updating is not supported");
     }
 }
@@ -1,6 +1,8 @@
 package com.mapr.music.dao;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.mapr.music.model.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,24 +11,52 @@ import javax.annotation.Resource;
 import javax.inject.Named;
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.SQLFeatureNotSupportedException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import static com.mapr.music.util.MaprProperties.DRILL_DATA_SOURCE;
+import static com.mapr.music.util.MaprProperties.*;
 
 @Named("reportingDao")
 public class ReportingDao {
 
     private static final Logger log = LoggerFactory.getLogger(ReportingDao.class);
 
+    /**
+     * Report queries do not depend on the requested number of rows, so each of them is prepared once per pooled
+     * connection and cached by the datasource. Number of rows is limited via {@link PreparedStatement#setMaxRows(int)}.
+     */
+    private static final String TOP_AREA_FOR_ARTISTS_SQL = "SELECT `area` AS `area`, COUNT(1) AS `count` " +
+            " FROM dfs.`/apps/artists`" +
+            " GROUP BY `area` ORDER BY 2 DESC";
+
+    private static final String TOP_LANGUAGES_FOR_ALBUM_SQL = "SELECT l.`name` as `language`, COUNT(1) as `count` " +
+            " FROM dfs.`/apps/albums` AS a " +
+            " LEFT JOIN dfs.`/apps/languages` AS l ON l.`_id` = a.`language` " +
+            " GROUP BY l.`name` ORDER BY 2 DESC";
+
+    private static final String NUMBER_OF_ALBUMS_PER_YEAR_SQL = "SELECT EXTRACT(YEAR FROM released_date) AS `year`, " +
+            " COUNT(1) AS `count` " +
+            " FROM (SELECT TO_DATE(released_date) AS `released_date`, `name`, `_id` FROM dfs.`/apps/albums` " +
+            " WHERE released_date IS NOT NULL ORDER BY released_date DESC) " +
+            " GROUP BY EXTRACT(YEAR from released_date)";
+
+    /**
+     * Reports keyed by query and number of rows. Only successfully computed reports are cached.
+     */
+    private static final Cache<String, List<Pair>> reports = CacheBuilder.newBuilder()
+            .maximumSize(REPORTING_CACHE_MAX_SIZE)
+            .expireAfterWrite(REPORTING_CACHE_TTL_MS, TimeUnit.MILLISECONDS)
+            .build();
+
     @Resource(lookup = DRILL_DATA_SOURCE)
     private DataSource ds;
 
-    private Connection connection;
-
     /**
      * Return the most common area with artists.
      *
@@ -34,13 +64,7 @@ public class ReportingDao {
      * @return top area for artists.
      */
     public List<Pair> getTopAreaForArtists(int numberOfRows) {
-
-        String sql = "SELECT `area` AS `area`, COUNT(1) AS `count` " +
-                " FROM dfs.`/apps/artists`" +
-                " GROUP BY `area` ORDER BY 2 DESC LIMIT " + numberOfRows;
-
-        List<Pair> pairs = populatePaiFromSQL(sql);
-        return pairs;
+        return getReport(TOP_AREA_FOR_ARTISTS_SQL, numberOfRows);
     }
 
     /**
@@ -50,12 +74,7 @@ public class ReportingDao {
      * @return languages for album.
      */
     public List<Pair> getTopLanguagesForAlbum(int numberOfRows) {
-        String sql = "SELECT l.`name` as `language`, COUNT(1) as `count` " +
-                " FROM dfs.`/apps/albums` AS a " +
-                " LEFT JOIN dfs.`/apps/languages` AS l ON l.`_id` = a.`language` " +
-                " GROUP BY l.`name` ORDER BY 2 DESC LIMIT " + numberOfRows;
-        List<Pair> pairs = populatePaiFromSQL(sql);
-        return pairs;
+        return getReport(TOP_LANGUAGES_FOR_ALBUM_SQL, numberOfRows);
     }
 
     /**
@@ -65,63 +84,71 @@ public class ReportingDao {
      * @return number of albums per year.
      */
     public List<Pair> getNumberOfAlbumsPerYear(int numberOfRows) {
-        String sql = "SELECT EXTRACT(YEAR FROM released_date) AS `year`, COUNT(1) AS `count` " +
-                " FROM (SELECT TO_DATE(released_date) AS `released_date`, `name`, `_id` FROM dfs.`/apps/albums` " +
-                " WHERE released_date IS NOT NULL ORDER BY released_date DESC) " +
-                " GROUP BY EXTRACT(YEAR from released_date) LIMIT " + numberOfRows;
-        List<Pair> pairs = populatePaiFromSQL(sql);
-        return pairs;
+        return getReport(NUMBER_OF_ALBUMS_PER_YEAR_SQL, numberOfRows);
     }
 
+    private List<Pair> getReport(String sql, int numberOfRows) {
 
-    /**
-     * Get the connection from the datasouce.
-     *
-     * @return the JDBC Connection
-     * @throws SQLException
-     */
-    private Connection getConnection() throws SQLException {
-        if (connection == null) {
-            connection = ds.getConnection();
+        String cacheKey = numberOfRows + ":" + sql;
+        List<Pair> cached = reports.getIfPresent(cacheKey);
+        if (cached != null) {
+            return cached;
         }
-        return connection;
-    }
 
+        try {
+            List<Pair> pairs = Collections.unmodifiableList(populatePaiFromSQL(sql, numberOfRows));
+            reports.put(cacheKey, pairs);
+
+            return pairs;
+        } catch (SQLException e) {
+            log.warn("Can not execute SQL: '{}'. Exception: {}", sql, e);
+            return Collections.emptyList();
+        }
+    }
 
     /**
-     * Execute the SQL statement and return a list of K/V
+     * Execute the SQL statement and return a list of K/V. Connection is borrowed from the datasource's pool and
+     * returned to it once the query is executed.
      *
-     * @param sql query.
-     * @return
+     * @param sql          query.
+     * @param numberOfRows maximum number of rows.
+     * @return list of K/V.
+     * @throws SQLException in case of query failure.
      */
-    private List<Pair> populatePaiFromSQL(String sql) {
+    private List<Pair> populatePaiFromSQL(String sql, int numberOfRows) throws SQLException {
 
         Stopwatch stopwatch = Stopwatch.createStarted();
-        List<Pair> pairs = new ArrayList<>();
-        try {
+        log.debug("Executing SQL :\n\t" + sql);
 
-            log.debug("Executing SQL :\n\t" + sql);
-
-            Statement st = getConnection().createStatement();
-            ResultSet rs = st.executeQuery(sql);
-            while (rs.next()) {
-                String label = rs.getString(1);
-                if (label == null || label.trim().isEmpty()) {
-                    label = "Unknown";
+        List<Pair> pairs = new ArrayList<>();
+        try (Connection connection = ds.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setMaxRows(numberOfRows);
+            setQueryTimeout(statement);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    String label = rs.getString(1);
+                    if (label == null || label.trim().isEmpty()) {
+                        label = "Unknown";
+                    }
+                    pairs.add(new Pair(label, rs.getString(2)));
                 }
-                pairs.add(new Pair(label, rs.getString(2)));
             }
-            rs.close();
-            st.close();
-            connection.close();
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            // TODO: Manage exception
         }
 
         log.debug("Performing query: '{}' took: {}", sql, stopwatch);
         return pairs;
     }
 
+    private static void setQueryTimeout(PreparedStatement statement) throws SQLException {
+        try {
+            statement.setQueryTimeout(DRILL_QUERY_TIMEOUT_S);
+        } catch (SQLFeatureNotSupportedException e) {
+            // Older Drill drivers do not support query timeouts
+            log.debug("Query timeout is not supported by the Drill driver");
+        }
+    }
+
 }
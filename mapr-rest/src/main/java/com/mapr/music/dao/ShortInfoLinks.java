@@ -0,0 +1,149 @@
+package com.mapr.music.dao;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ojai.Document;
+import org.ojai.store.Connection;
+import org.ojai.store.DocumentMutation;
+import org.ojai.store.DocumentStore;
+import org.ojai.store.QueryCondition;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains arrays of short infos, which link Albums and Artists to each other, via targeted mutations of single array
+ * entries instead of rewriting the whole documents.
+ */
+final class ShortInfoLinks {
+
+    /**
+     * Name of the short info's identifier field.
+     */
+    static final String ID_FIELD = "id";
+
+    /**
+     * Number of attempts to mutate an array, which is changed concurrently.
+     */
+    private static final int MUTATION_ATTEMPTS = 5;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private ShortInfoLinks() {
+    }
+
+    /**
+     * Appends short info to the array unless it already contains entry with the same identifier, so appending is safe
+     * to retry. Only identifiers of entries are read. Short info is appended only if the identifiers are not changed
+     * concurrently, otherwise appending is retried. Document is not created if it does not exist.
+     *
+     * @param connection OJAI connection.
+     * @param store      store of documents, which contain the array.
+     * @param id         identifier of document, which contains the array.
+     * @param arrayField name of the array field.
+     * @param linkedId   identifier of short info.
+     * @param shortInfo  short info, which will be appended.
+     * @return <code>true</code> if short info is appended or is already present, <code>false</code> if there is no
+     * such document.
+     */
+    static boolean append(Connection connection, DocumentStore store, String id, String arrayField, String linkedId,
+                          Object shortInfo) {
+
+        Map entry = mapper.convertValue(shortInfo, Map.class);
+        DocumentMutation mutation = connection.newMutation().append(arrayField, Collections.singletonList(entry));
+
+        for (int attempt = 0; attempt < MUTATION_ATTEMPTS; attempt++) {
+
+            Document document = store.findById(id, arrayField + "." + ID_FIELD);
+            if (document == null) {
+                return false;
+            }
+
+            List<Object> entries = document.getList(arrayField);
+            if (entries == null) {
+                entries = Collections.emptyList();
+            }
+
+            if (indexOf(entries, linkedId) >= 0) {
+                return true;
+            }
+
+            QueryCondition unchanged = connection.newCondition().and().exists("_id");
+            for (int i = 0; i < entries.size(); i++) {
+                String element = String.format("%s[%d]", arrayField, i);
+                Object elementId = (entries.get(i) instanceof Map) ? ((Map) entries.get(i)).get(ID_FIELD) : null;
+                if (elementId instanceof String) {
+                    unchanged.is(element + "." + ID_FIELD, QueryCondition.Op.EQUAL, (String) elementId);
+                } else {
+                    unchanged.exists(element);
+                }
+            }
+            unchanged.notExists(String.format("%s[%d]", arrayField, entries.size()));
+
+            if (store.checkAndMutate(id, unchanged.close().build(), mutation)) {
+                return true;
+            }
+        }
+
+        throw new IllegalStateException("Can not append '" + linkedId + "' to '" + arrayField + "' of '" + id +
+                "', since it is changed concurrently");
+    }
+
+    /**
+     * Removes entry with the specified identifier from the array of short infos. Entry is removed by it's index only if
+     * the entry is not moved and the length of the array is not changed concurrently, otherwise removal is retried. So
+     * the returned number of entries left is never based on a stale read.
+     *
+     * @param connection OJAI connection.
+     * @param store      store of documents, which contain the array.
+     * @param id         identifier of document, which contains the array.
+     * @param arrayField name of the array field.
+     * @param linkedId   identifier of entry, which will be removed.
+     * @return number of entries left or <code>null</code> if there is no such document or it does not contain the
+     * array.
+     */
+    static Integer remove(Connection connection, DocumentStore store, String id, String arrayField, String linkedId) {
+
+        for (int attempt = 0; attempt < MUTATION_ATTEMPTS; attempt++) {
+
+            Document document = store.findById(id, arrayField);
+            List<Object> entries = (document != null) ? document.getList(arrayField) : null;
+            if (entries == null) {
+                return null;
+            }
+
+            int index = indexOf(entries, linkedId);
+            if (index < 0) {
+                return entries.size();
+            }
+
+            String entry = String.format("%s[%d]", arrayField, index);
+            QueryCondition unchanged = connection.newCondition()
+                    .and()
+                    .is(entry + "." + ID_FIELD, QueryCondition.Op.EQUAL, linkedId)
+                    .exists(String.format("%s[%d]", arrayField, entries.size() - 1))
+                    .notExists(String.format("%s[%d]", arrayField, entries.size()))
+                    .close()
+                    .build();
+
+            if (store.checkAndMutate(id, unchanged, connection.newMutation().delete(entry))) {
+                return entries.size() - 1;
+            }
+        }
+
+        throw new IllegalStateException("Can not remove '" + linkedId + "' from '" + arrayField + "' of '" + id +
+                "', since it is changed concurrently");
+    }
+
+    private static int indexOf(List<Object> entries, String linkedId) {
+
+        for (int i = 0; i < entries.size(); i++) {
+            Object entry = entries.get(i);
+            if (entry instanceof Map && linkedId.equals(((Map) entry).get(ID_FIELD))) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
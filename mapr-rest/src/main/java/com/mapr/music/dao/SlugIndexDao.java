@@ -0,0 +1,166 @@
+package com.mapr.music.dao;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mapr.music.model.SlugIndexEntry;
+import org.ojai.Document;
+import org.ojai.store.Connection;
+import org.ojai.store.DocumentMutation;
+import org.ojai.store.QueryCondition;
+import org.ojai.store.exceptions.DocumentExistsException;
+
+import javax.inject.Named;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.mapr.music.util.MaprProperties.ENTITY_CACHE_MAX_SIZE;
+import static com.mapr.music.util.MaprProperties.ENTITY_CACHE_TTL_MS;
+
+/**
+ * Provides access to the slug index, which maps slugs to the identifiers of documents, so slug can be resolved via
+ * single primary key read. Resolved slugs are cached in memory. Slugs never change after the document is created, so
+ * cached entries can only become stale when document is deleted, thus callers must check the resolved document.
+ * <p>
+ * Slug index table also contains postfix counters, which are used to allocate unique slug postfixes atomically instead
+ * of scanning documents sorted by postfix.
+ */
+@Named("slugIndexDao")
+public class SlugIndexDao extends MaprDbDao<SlugIndexEntry> {
+
+    private static final String DOCUMENT_ID_FIELD = "document_id";
+    private static final String LAST_POSTFIX_FIELD = "last_postfix";
+    private static final int POSTFIX_ALLOCATION_ATTEMPTS = 10;
+
+    private static final Cache<String, String> documentIds = CacheBuilder.newBuilder()
+            .maximumSize(ENTITY_CACHE_MAX_SIZE)
+            .expireAfterWrite(ENTITY_CACHE_TTL_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+    public SlugIndexDao() {
+        super(SlugIndexEntry.class);
+    }
+
+    /**
+     * Updating index entries is not supported. Use {@link SlugIndexDao#put(String, String)} instead.
+     */
+    @Override
+    protected DocumentMutation buildUpdateMutation(Connection connection, SlugIndexEntry entry) {
+        throw new UnsupportedOperationException("Slug index entry updating is not supported");
+    }
+
+    /**
+     * Returns identifier of the document, which is indexed by the specified key.
+     *
+     * @param key index key.
+     * @return document's identifier or <code>null</code> if there is no such index entry.
+     */
+    public String getDocumentId(String key) {
+
+        String cached = documentIds.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        String documentId = processStore((connection, store) -> {
+            Document entry = store.findById(key, DOCUMENT_ID_FIELD);
+            return (entry != null) ? entry.getString(DOCUMENT_ID_FIELD) : null;
+        });
+
+        if (documentId != null) {
+            documentIds.put(key, documentId);
+        }
+
+        return documentId;
+    }
+
+    /**
+     * Creates or replaces index entry.
+     *
+     * @param key        index key.
+     * @param documentId identifier of indexed document.
+     */
+    public void put(String key, String documentId) {
+
+        processStore((connection, store) -> {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            store.insertOrReplace(connection.newDocument().setId(key).set(DOCUMENT_ID_FIELD, documentId));
+            log.debug("Put slug index entry '{}' -> '{}'. Elapsed time: {}", key, documentId, stopwatch);
+        });
+
+        documentIds.put(key, documentId);
+    }
+
+    /**
+     * Removes index entry.
+     *
+     * @param key index key.
+     */
+    public void remove(String key) {
+        documentIds.invalidate(key);
+        deleteById(key);
+    }
+
+    /**
+     * Atomically allocates next postfix of the counter. Counter is advanced via check-and-mutate, so concurrent
+     * allocations on any node never return the same postfix. Missing counter is seeded using the specified supplier,
+     * which allows to initialize counters for the documents created before the counter existed.
+     *
+     * @param counterKey          key of counter.
+     * @param lastPostfixSupplier returns last used postfix or <code>null</code> if there is no such postfix. Invoked
+     *                            only if counter does not exist yet.
+     * @param firstPostfix        postfix, which is allocated when there is no last used postfix.
+     * @return allocated postfix.
+     * @throws IllegalStateException in case when counter is concurrently modified on each of the attempts.
+     */
+    public long nextPostfix(String counterKey, Supplier<Long> lastPostfixSupplier, long firstPostfix) {
+
+        for (int attempt = 0; attempt < POSTFIX_ALLOCATION_ATTEMPTS; attempt++) {
+
+            Document counter = processStore((connection, store) -> {
+                return store.findById(counterKey, LAST_POSTFIX_FIELD);
+            });
+
+            if (counter == null) {
+
+                Long lastPostfix = lastPostfixSupplier.get();
+                long postfix = (lastPostfix == null) ? firstPostfix : lastPostfix + 1;
+                boolean created = processStore((connection, store) -> {
+                    try {
+                        store.insert(connection.newDocument().setId(counterKey).set(LAST_POSTFIX_FIELD, postfix));
+                        return true;
+                    } catch (DocumentExistsException e) {
+                        // Counter is concurrently created by another request
+                        return false;
+                    }
+                });
+
+                if (created) {
+                    return postfix;
+                }
+
+                continue;
+            }
+
+            long lastPostfix = ((Number) counter.getValue(LAST_POSTFIX_FIELD).getObject()).longValue();
+            boolean advanced = processStore((connection, store) -> {
+
+                QueryCondition unchanged = connection.newCondition()
+                        .is(LAST_POSTFIX_FIELD, QueryCondition.Op.EQUAL, lastPostfix)
+                        .build();
+
+                return store.checkAndMutate(counterKey, unchanged,
+                        connection.newMutation().set(LAST_POSTFIX_FIELD, lastPostfix + 1));
+            });
+
+            if (advanced) {
+                return lastPostfix + 1;
+            }
+
+            log.debug("Postfix counter '{}' is concurrently modified. Retrying", counterKey);
+        }
+
+        throw new IllegalStateException("Can not allocate postfix of '" + counterKey + "', since counter is " +
+                "changed concurrently");
+    }
+}
@@ -2,10 +2,11 @@ package com.mapr.music.dao;
 
 import com.google.common.base.Stopwatch;
 import com.mapr.music.model.Statistic;
-import org.ojai.Document;
+import org.ojai.store.Connection;
 import org.ojai.store.DocumentMutation;
 
 import javax.inject.Named;
+import java.util.Map;
 
 @Named("statisticDao")
 public class StatisticDao extends MaprDbDao<Statistic> {
@@ -17,34 +18,48 @@ public class StatisticDao extends MaprDbDao<Statistic> {
     /**
      * {@inheritDoc}
      *
-     * @param id        identifier of document, which will be updated.
-     * @param id        identifier of document, which will be updated.
-     * @param statistic statistic.
-     * @return updated statistic.
+     * @param connection OJAI connection.
+     * @param statistic  statistic.
+     * @return document mutation.
      */
     @Override
-    public Statistic update(String id, Statistic statistic) {
-        return processStore((connection, store) -> {
+    protected DocumentMutation buildUpdateMutation(Connection connection, Statistic statistic) {
 
-            Stopwatch stopwatch = Stopwatch.createStarted();
+        // Create a DocumentMutation to update non-null fields
+        DocumentMutation mutation = connection.newMutation();
 
-            // Create a DocumentMutation to update non-null fields
-            DocumentMutation mutation = connection.newMutation();
+        // Update only non-null fields
+        if (statistic.getDocumentNumber() != null) {
+            mutation.set("document_number", statistic.getDocumentNumber());
+        }
 
-            // Update only non-null fields
-            if (statistic.getDocumentNumber() != null) {
-                mutation.set("document_number", statistic.getDocumentNumber());
-            }
+        if (statistic.getOffsets() != null) {
+            statistic.getOffsets().forEach((partition, offset) -> mutation.set("offsets.`" + partition + "`", offset));
+        }
 
-            // Update the OJAI Document with specified identifier
-            store.update(id, mutation);
+        return mutation;
+    }
 
-            Document updatedOjaiDoc = store.findById(id);
+    /**
+     * Atomically adds the specified delta to the number of documents and stores offsets of the changelog partitions,
+     * which follow the counted changes. Statistic document is created if it does not exist.
+     *
+     * @param id      identifier of statistic document.
+     * @param delta   number, which will be added to the number of documents. May be negative.
+     * @param offsets offsets of the changelog partitions, keyed by partition number.
+     */
+    public void incrementDocumentNumber(String id, long delta, Map<Integer, Long> offsets) {
+        processStore((connection, store) -> {
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
 
-            log.debug("Update document from table '{}' with id: '{}'. Elapsed time: {}", tablePath, id, stopwatch);
+            // Increment is applied by the server, so concurrent increments of several nodes are not lost. Number and
+            // offsets are changed by single mutation, so they are consistent with each other
+            DocumentMutation mutation = connection.newMutation().increment("document_number", delta);
+            offsets.forEach((partition, offset) -> mutation.set("offsets.`" + partition + "`", offset));
+            store.update(id, mutation);
 
-            // Map Ojai document to the actual instance of model class
-            return mapOjaiDocument(updatedOjaiDoc);
+            log.debug("Increment document number of '{}' by {}. Elapsed time: {}", id, delta, stopwatch);
         });
     }
 
@@ -1,8 +1,7 @@
 package com.mapr.music.dao;
 
-import com.google.common.base.Stopwatch;
 import com.mapr.music.model.User;
-import org.ojai.Document;
+import org.ojai.store.Connection;
 import org.ojai.store.DocumentMutation;
 
 import javax.inject.Named;
@@ -15,32 +14,20 @@ public class UserDao extends MaprDbDao<User> {
     }
 
     @Override
-    public User update(String id, User user) {
-        return processStore((connection, store) -> {
+    protected DocumentMutation buildUpdateMutation(Connection connection, User user) {
 
-            Stopwatch stopwatch = Stopwatch.createStarted();
+        // Create a DocumentMutation to update non-null fields
+        DocumentMutation mutation = connection.newMutation();
 
-            // Create a DocumentMutation to update non-null fields
-            DocumentMutation mutation = connection.newMutation();
+        // Update only non-null fields
+        if (user.getFirstName() != null) {
+            mutation.set("first_name", user.getFirstName());
+        }
 
-            // Update only non-null fields
-            if (user.getFirstName() != null) {
-                mutation.set("first_name", user.getFirstName());
-            }
+        if (user.getLastName() != null) {
+            mutation.set("last_name", user.getLastName());
+        }
 
-            if (user.getLastName() != null) {
-                mutation.set("last_name", user.getLastName());
-            }
-
-            // Update the OJAI Document with specified identifier
-            store.update(id, mutation);
-
-            Document updatedOjaiDoc = store.findById(id);
-
-            log.debug("Update document from table '{}' with id: '{}'. Elapsed time: {}", tablePath, id, stopwatch);
-
-            // Map Ojai document to the actual instance of model class
-            return mapOjaiDocument(updatedOjaiDoc);
-        });
+        return mutation;
     }
 }
@@ -0,0 +1,193 @@
+package com.mapr.music.dto;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps model instances to Data Transfer Objects and vice versa by copying properties with the same names. Copies the
+ * same properties as {@code PropertyUtilsBean#copyProperties(Object, Object)}, but property accessors are resolved
+ * only once per pair of types and invoked via {@link MethodHandle}s, so no introspection and reflective calls are
+ * performed for each copied object.
+ * <p>
+ * Mappers are thread-safe and cached, so they can be shared across services.
+ *
+ * @param <S> source type.
+ * @param <T> target type.
+ */
+public final class DtoMapper<S, T> {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private static final Map<List<Class<?>>, DtoMapper<?, ?>> mappers = new ConcurrentHashMap<>();
+
+    private final Class<S> sourceType;
+    private final Class<T> targetType;
+    private final MethodHandle constructor;
+    private final MethodHandle[] getters;
+    private final MethodHandle[] setters;
+
+    /**
+     * Indicates whether the corresponding setter accepts primitive value, so <code>null</code> can not be set.
+     */
+    private final boolean[] primitives;
+
+    private DtoMapper(Class<S> sourceType, Class<T> targetType) {
+
+        this.sourceType = sourceType;
+        this.targetType = targetType;
+
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        Map<String, PropertyDescriptor> targetProperties = properties(targetType);
+        List<MethodHandle> getterList = new ArrayList<>();
+        List<MethodHandle> setterList = new ArrayList<>();
+        List<Boolean> primitiveList = new ArrayList<>();
+
+        try {
+            this.constructor = lookup.findConstructor(targetType, MethodType.methodType(void.class))
+                    .asType(CONSTRUCTOR_TYPE);
+
+            for (PropertyDescriptor sourceProperty : properties(sourceType).values()) {
+
+                PropertyDescriptor targetProperty = targetProperties.get(sourceProperty.getName());
+                Method getter = sourceProperty.getReadMethod();
+                Method setter = (targetProperty != null) ? targetProperty.getWriteMethod() : null;
+                if (getter == null || setter == null) {
+                    continue;
+                }
+
+                Class<?> valueType = setter.getParameterTypes()[0];
+                if (!wrap(valueType).isAssignableFrom(wrap(getter.getReturnType()))) {
+                    throw new IllegalArgumentException("Property '" + sourceProperty.getName() + "' of '" +
+                            sourceType.getName() + "' can not be assigned to the property of '" +
+                            targetType.getName() + "'");
+                }
+
+                getterList.add(lookup.unreflect(getter).asType(GETTER_TYPE));
+                setterList.add(lookup.unreflect(setter).asType(SETTER_TYPE));
+                primitiveList.add(valueType.isPrimitive());
+            }
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Can not create mapper from '" + sourceType.getName() + "' to '" +
+                    targetType.getName() + "'", e);
+        }
+
+        this.getters = getterList.toArray(new MethodHandle[0]);
+        this.setters = setterList.toArray(new MethodHandle[0]);
+        this.primitives = new boolean[primitiveList.size()];
+        for (int i = 0; i < primitives.length; i++) {
+            primitives[i] = primitiveList.get(i);
+        }
+    }
+
+    /**
+     * Returns mapper for the specified pair of types. Target type must have public no-args constructor.
+     *
+     * @param sourceType source type.
+     * @param targetType target type.
+     * @param <S>        source type.
+     * @param <T>        target type.
+     * @return mapper for the specified pair of types.
+     */
+    @SuppressWarnings("unchecked")
+    public static <S, T> DtoMapper<S, T> of(Class<S> sourceType, Class<T> targetType) {
+
+        Objects.requireNonNull(sourceType, "Source type can not be null");
+        Objects.requireNonNull(targetType, "Target type can not be null");
+
+        List<Class<?>> key = new ArrayList<>(2);
+        key.add(sourceType);
+        key.add(targetType);
+
+        return (DtoMapper<S, T>) mappers.computeIfAbsent(key, types -> new DtoMapper<>(sourceType, targetType));
+    }
+
+    /**
+     * Creates new instance of target type and copies properties of the specified source to it.
+     *
+     * @param source source object.
+     * @return new instance of target type.
+     */
+    @SuppressWarnings("unchecked")
+    public T map(S source) {
+
+        T target;
+        try {
+            target = (T) constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new RuntimeException("Can not create instance of '" + targetType.getName() + "'", e);
+        }
+
+        copy(source, target);
+
+        return target;
+    }
+
+    /**
+     * Copies properties of the specified source to the specified target.
+     *
+     * @param source source object.
+     * @param target target object.
+     */
+    public void copy(S source, T target) {
+
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Source and target can not be null");
+        }
+
+        for (int i = 0; i < getters.length; i++) {
+            try {
+                Object value = getters[i].invokeExact((Object) source);
+                if (value == null && primitives[i]) {
+                    continue;
+                }
+
+                setters[i].invokeExact((Object) target, value);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException("Can not copy properties of '" + sourceType.getName() + "' to '" +
+                        targetType.getName() + "'", e);
+            }
+        }
+    }
+
+    private static Map<String, PropertyDescriptor> properties(Class<?> type) {
+
+        BeanInfo beanInfo;
+        try {
+            beanInfo = Introspector.getBeanInfo(type, Object.class);
+        } catch (IntrospectionException e) {
+            throw new IllegalArgumentException("Can not introspect '" + type.getName() + "'", e);
+        }
+
+        Map<String, PropertyDescriptor> properties = new HashMap<>();
+        for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+            properties.put(descriptor.getName(), descriptor);
+        }
+
+        return properties;
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+
+        if (!type.isPrimitive()) {
+            return type;
+        }
+
+        return MethodType.methodType(type).wrap().returnType();
+    }
+}
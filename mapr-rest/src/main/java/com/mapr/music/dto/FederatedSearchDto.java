@@ -0,0 +1,44 @@
+package com.mapr.music.dto;
+
+import com.mapr.music.model.ESSearchResult;
+
+import java.util.Map;
+
+/**
+ * Data Transfer Object which is used to provide results of the federated search. Contains page of Albums and Artists
+ * ranked together, pages of Albums and Artists ranked separately and number of matches of each type.
+ */
+public class FederatedSearchDto extends ResourceDto<ESSearchResult> {
+
+    /**
+     * Number of matches per type, where keys are types of the search results.
+     */
+    private Map<String, Long> facets;
+
+    private ResourceDto<ESSearchResult> albums;
+    private ResourceDto<ESSearchResult> artists;
+
+    public Map<String, Long> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(Map<String, Long> facets) {
+        this.facets = facets;
+    }
+
+    public ResourceDto<ESSearchResult> getAlbums() {
+        return albums;
+    }
+
+    public void setAlbums(ResourceDto<ESSearchResult> albums) {
+        this.albums = albums;
+    }
+
+    public ResourceDto<ESSearchResult> getArtists() {
+        return artists;
+    }
+
+    public void setArtists(ResourceDto<ESSearchResult> artists) {
+        this.artists = artists;
+    }
+}
@@ -1,5 +1,6 @@
 package com.mapr.music.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -13,6 +14,14 @@ public class Pagination {
     private long page;
     private long pages;
 
+    /**
+     * Cursor of the next page. Set only for pages, which are fetched using keyset pagination. In this case page number
+     * is not known and equals to <code>0</code>.
+     */
+    @JsonProperty("next_cursor")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
     public Pagination() {
     }
 
@@ -54,4 +63,12 @@ public class Pagination {
     public void setPages(long pages) {
         this.pages = pages;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
@@ -0,0 +1,38 @@
+package com.mapr.music.dto;
+
+import com.mapr.music.model.ESSearchResult;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object which is used to provide search-as-you-type suggestions.
+ */
+public class SuggestionsDto {
+
+    private List<ESSearchResult> albums;
+    private List<ESSearchResult> artists;
+
+    public SuggestionsDto() {
+    }
+
+    public SuggestionsDto(List<ESSearchResult> albums, List<ESSearchResult> artists) {
+        this.albums = albums;
+        this.artists = artists;
+    }
+
+    public List<ESSearchResult> getAlbums() {
+        return albums;
+    }
+
+    public void setAlbums(List<ESSearchResult> albums) {
+        this.albums = albums;
+    }
+
+    public List<ESSearchResult> getArtists() {
+        return artists;
+    }
+
+    public void setArtists(List<ESSearchResult> artists) {
+        this.artists = artists;
+    }
+}
@@ -166,6 +166,12 @@ public class Album {
     @JsonProperty("rating")
     private Double rating;
 
+    @JsonProperty("rating_sum")
+    private Double ratingSum;
+
+    @JsonProperty("rating_count")
+    private Long ratingCount;
+
     @JsonIgnore
     private ShortInfo shortInfo;
 
@@ -350,6 +356,22 @@ public class Album {
         this.rating = rating;
     }
 
+    public Double getRatingSum() {
+        return ratingSum;
+    }
+
+    public void setRatingSum(Double ratingSum) {
+        this.ratingSum = ratingSum;
+    }
+
+    public Long getRatingCount() {
+        return ratingCount;
+    }
+
+    public void setRatingCount(Long ratingCount) {
+        this.ratingCount = ratingCount;
+    }
+
     public ShortInfo getShortInfo() {
 
         if (this.shortInfo == null) {
@@ -156,6 +156,12 @@ public class Artist {
     @JsonProperty("rating")
     private Double rating;
 
+    @JsonProperty("rating_sum")
+    private Double ratingSum;
+
+    @JsonProperty("rating_count")
+    private Long ratingCount;
+
     @JsonIgnore
     private ShortInfo shortInfo;
 
@@ -340,4 +346,20 @@ public class Artist {
     public void setRating(Double rating) {
         this.rating = rating;
     }
+
+    public Double getRatingSum() {
+        return ratingSum;
+    }
+
+    public void setRatingSum(Double ratingSum) {
+        this.ratingSum = ratingSum;
+    }
+
+    public Long getRatingCount() {
+        return ratingCount;
+    }
+
+    public void setRatingCount(Long ratingCount) {
+        this.ratingCount = ratingCount;
+    }
 }
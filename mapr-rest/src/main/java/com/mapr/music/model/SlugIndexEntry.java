@@ -0,0 +1,52 @@
+package com.mapr.music.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mapr.music.annotation.MaprDbTable;
+
+import static com.mapr.music.util.MaprProperties.SLUGS_TABLE_NAME;
+
+/**
+ * Model class, which represents entry of the slug index stored in MapR DB. Index entry maps slug to the identifier of
+ * the album or artist document. Slug index table also contains postfix counters, which are accessed directly via
+ * {@link com.mapr.music.dao.SlugIndexDao}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+@MaprDbTable(SLUGS_TABLE_NAME)
+public class SlugIndexEntry {
+
+    /**
+     * Natural primary key, which consists of document type and slug, for instance 'album:slug:the-wall-0'.
+     */
+    @JsonProperty("_id")
+    private String key;
+
+    @JsonProperty("document_id")
+    private String documentId;
+
+    public SlugIndexEntry() {
+    }
+
+    public SlugIndexEntry(String key, String documentId) {
+        this.key = key;
+        this.documentId = documentId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(String documentId) {
+        this.documentId = documentId;
+    }
+}
@@ -5,6 +5,8 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.mapr.music.annotation.MaprDbTable;
 
+import java.util.Map;
+
 import static com.mapr.music.util.MaprProperties.STATISTICS_TABLE_NAME;
 
 /**
@@ -24,6 +26,13 @@ public class Statistic {
     @JsonProperty("document_number")
     private Long documentNumber;
 
+    /**
+     * Offsets of the changelog partitions, which follow the changes reflected by the number of documents. Offsets are
+     * keyed by partition number.
+     */
+    @JsonProperty("offsets")
+    private Map<String, Long> offsets;
+
     public Statistic() {
     }
 
@@ -47,4 +56,12 @@ public class Statistic {
     public void setDocumentNumber(Long documentNumber) {
         this.documentNumber = documentNumber;
     }
+
+    public Map<String, Long> getOffsets() {
+        return offsets;
+    }
+
+    public void setOffsets(Map<String, Long> offsets) {
+        this.offsets = offsets;
+    }
 }
@@ -3,6 +3,7 @@ package com.mapr.music.service;
 import com.mapr.music.dao.*;
 import com.mapr.music.dto.AlbumDto;
 import com.mapr.music.dto.ArtistDto;
+import com.mapr.music.dto.DtoMapper;
 import com.mapr.music.dto.ResourceDto;
 import com.mapr.music.dto.TrackDto;
 import com.mapr.music.exception.ResourceNotFoundException;
@@ -11,25 +12,37 @@ import com.mapr.music.model.Album;
 import com.mapr.music.model.Artist;
 import com.mapr.music.model.Language;
 import com.mapr.music.model.Track;
-import org.apache.commons.beanutils.PropertyUtilsBean;
 import org.ojai.types.ODate;
 
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 
 /**
  * Responsible of performing all business on {@link Album} model.
  */
 public class AlbumService implements PaginatedService {
 
+    private static final DtoMapper<Album, AlbumDto> ALBUM_TO_DTO = DtoMapper.of(Album.class, AlbumDto.class);
+    private static final DtoMapper<Track, TrackDto> TRACK_TO_DTO = DtoMapper.of(Track.class, TrackDto.class);
+    private static final DtoMapper<TrackDto, Track> DTO_TO_TRACK = DtoMapper.of(TrackDto.class, Track.class);
+    private static final DtoMapper<AlbumDto, Album> DTO_TO_ALBUM = DtoMapper.of(AlbumDto.class, Album.class);
+    private static final DtoMapper<Artist.ShortInfo, ArtistDto> ARTIST_SHORT_INFO_TO_DTO =
+            DtoMapper.of(Artist.ShortInfo.class, ArtistDto.class);
+    private static final DtoMapper<ArtistDto, Artist.ShortInfo> DTO_TO_ARTIST_SHORT_INFO =
+            DtoMapper.of(ArtistDto.class, Artist.ShortInfo.class);
+
     private static final long ALBUMS_PER_PAGE_DEFAULT = 50;
     private static final long FIRST_PAGE_NUM = 1;
     private static final long MAX_SEARCH_LIMIT = 15;
@@ -52,14 +65,20 @@ public class AlbumService implements PaginatedService {
     };
 
     private final AlbumDao albumDao;
-    private final MaprDbDao<Artist> artistDao;
+    private final ArtistDao artistDao;
     private final LanguageDao languageDao;
     private final SlugService slugService;
     private final StatisticService statisticService;
     private final AlbumRateDao albumRateDao;
 
+    /**
+     * Runs updates of linked Artists in parallel.
+     */
+    @Resource
+    private ManagedExecutorService executor;
+
     @Inject
-    public AlbumService(@Named("albumDao") AlbumDao albumDao, @Named("artistDao") MaprDbDao<Artist> artistDao,
+    public AlbumService(@Named("albumDao") AlbumDao albumDao, @Named("artistDao") ArtistDao artistDao,
                         LanguageDao languageDao, SlugService slugService, StatisticService statisticService,
                         AlbumRateDao albumRateDao) {
 
@@ -224,6 +243,45 @@ public class AlbumService implements PaginatedService {
         return albumsPage;
     }
 
+    /**
+     * Returns list of albums which is represented by page, fetched using keyset pagination. Albums will be ordered
+     * according to the specified list of sort options and optionally filtered by language code.
+     *
+     * @param perPage     specifies number of albums per page. In case when value is <code>null</code> the
+     *                    default value will be used. Default value depends on implementation class.
+     * @param cursor      cursor of the page, which is returned with the previous page. Empty or <code>null</code>
+     *                    cursor means first page.
+     * @param sortOptions specifies albums ordering.
+     * @param lang        language code. May be <code>null</code>.
+     * @return albums page resource with the cursor of the next page.
+     */
+    public ResourceDto<AlbumDto> getAlbumsPageByCursor(Long perPage, String cursor, List<SortOption> sortOptions,
+                                                       String lang) {
+
+        if (perPage == null) {
+            perPage = ALBUMS_PER_PAGE_DEFAULT;
+        }
+
+        if (perPage <= 0) {
+            throw new IllegalArgumentException("Per page value must be greater than zero");
+        }
+
+        PageCursor pageCursor = decodeCursor(cursor, sortOptions);
+        CursorPage<Album> albums = (lang != null)
+                ? albumDao.getByLanguage(pageCursor, perPage, sortOptions, lang, ALBUM_SHORT_INFO_FIELDS)
+                : albumDao.getPage(pageCursor, perPage, sortOptions, ALBUM_SHORT_INFO_FIELDS);
+
+        long totalNum = (lang != null) ? albumDao.getTotalNumByLanguage(lang) : getTotalNum();
+
+        ResourceDto<AlbumDto> albumsPage = new ResourceDto<>();
+        albumsPage.setPagination(getCursorPaginationInfo(perPage, totalNum, albums.getNextCursor()));
+        albumsPage.setResults(albums.getItems().stream()
+                .map(this::albumToDto)
+                .collect(toList()));
+
+        return albumsPage;
+    }
+
     /**
      * Returns single album according to it's identifier.
      *
@@ -281,28 +339,23 @@ public class AlbumService implements PaginatedService {
         }
 
         // Remove Album's rates
-        albumRateDao.getByAlbumId(id).forEach(albumRate -> albumRateDao.deleteById(albumRate.getId()));
+        albumRateDao.deleteByAlbumId(id);
 
         // Remove album from Artists' list of albums
         List<Artist.ShortInfo> artistList = album.getArtists();
         if (artistList != null) {
-            artistList.stream()
+            List<String> artistIds = artistList.stream()
+                    .filter(Objects::nonNull)
                     .map(Artist.ShortInfo::getId)
                     .filter(Objects::nonNull)
-                    .map(artistDao::getById) // Map from artist short info to actual artist
-                    .filter(artist -> artist.getAlbums() != null)
-                    .peek(artist -> {
-                        List<Album.ShortInfo> toDelete = artist.getAlbums().stream()
-                                .filter(Objects::nonNull)
-                                .filter(a -> id.equals(a.getId()))
-                                .collect(toList());
+                    .distinct()
+                    .collect(toList());
 
-                        artist.getAlbums().removeAll(toDelete);
-                    })
-                    .forEach(artist -> artistDao.update(artist.getId(), artist));
+            ParallelTasks.forEach(executor, artistIds, artistId -> artistDao.removeAlbum(artistId, id));
         }
 
         albumDao.deleteById(id);
+        slugService.removeSlugForAlbum(album);
     }
 
     /**
@@ -324,12 +377,17 @@ public class AlbumService implements PaginatedService {
         Album album = dtoToAlbum(albumDto);
 
 
+        List<Artist> actualArtists = null;
         if (album.getArtists() != null) {
-            List<Artist.ShortInfo> actualArtistsInfo = album.getArtists().stream()
+            List<String> artistIds = album.getArtists().stream()
                     .filter(Objects::nonNull)
-                    .filter(artist -> artist.getId() != null)
-                    .map(artist -> artistDao.getById(artist.getId())) // fetch actual Artist
+                    .map(Artist.ShortInfo::getId)
                     .filter(Objects::nonNull)
+                    .collect(toList());
+
+            // Fetch actual Artists via single query
+            actualArtists = artistDao.getByIds(artistIds);
+            List<Artist.ShortInfo> actualArtistsInfo = actualArtists.stream()
                     .map(Artist::getShortInfo)
                     .collect(toList());
 
@@ -338,14 +396,12 @@ public class AlbumService implements PaginatedService {
 
         slugService.setSlugForAlbum(album);
         Album createdAlbum = albumDao.create(album);
+        slugService.indexSlugForAlbum(createdAlbum);
 
-        if (album.getArtists() != null) {
-            album.getArtists().stream()
-                    .filter(Objects::nonNull)
-                    .map(Artist.ShortInfo::getId)
-                    .map(artistDao::getById)
-                    .peek(artist -> artist.addAlbum(createdAlbum.getShortInfo()))
-                    .forEach(artist -> artistDao.update(artist.getId(), artist));
+        if (actualArtists != null) {
+            Album.ShortInfo albumShortInfo = createdAlbum.getShortInfo();
+            List<String> artistIds = actualArtists.stream().map(Artist::getId).collect(toList());
+            ParallelTasks.forEach(executor, artistIds, artistId -> artistDao.addAlbum(artistId, albumShortInfo));
         }
 
         return albumToDto(createdAlbum);
@@ -396,18 +452,27 @@ public class AlbumService implements PaginatedService {
                                 "Artist's id can not be empty");
                     }
                 })
-                .peek(artist -> {
-
-                    Artist storedArtist = artistDao.getById(artist.getId());
-                    if (storedArtist == null) {
-                        throw new ResourceNotFoundException("Artist with id ='" + artist.getId() + "' not found");
-                    }
-
-                    artist.setSlug(storedArtist.getShortInfo().getSlug());
-                })
                 .map(Artist.ShortInfo::getId)
                 .collect(toList());
 
+        // Fetch all Album's artists via single query
+        Map<String, Artist> storedArtistsById = (albumArtistsIds == null)
+                ? Collections.<String, Artist>emptyMap()
+                : artistDao.getByIds(albumArtistsIds).stream()
+                .collect(toMap(Artist::getId, Function.identity(), (first, second) -> first));
+
+        if (album.getArtists() != null) {
+            for (Artist.ShortInfo artist : album.getArtists()) {
+
+                Artist storedArtist = storedArtistsById.get(artist.getId());
+                if (storedArtist == null) {
+                    throw new ResourceNotFoundException("Artist with id ='" + artist.getId() + "' not found");
+                }
+
+                artist.setSlug(storedArtist.getShortInfo().getSlug());
+            }
+        }
+
         List<String> existingAlbumArtistsIds = (existingAlbum.getArtists() == null)
                 ? null
                 : existingAlbum.getArtists().stream()
@@ -431,28 +496,12 @@ public class AlbumService implements PaginatedService {
         }
 
         if (addedArtistsIds != null && !addedArtistsIds.isEmpty()) {
-
-            addedArtistsIds.stream()
-                    .map(artistDao::getById)
-                    .filter(Objects::nonNull)
-                    .peek(artist -> artist.addAlbum(existingAlbum.getShortInfo()))
-                    .forEach(artist -> artistDao.update(artist.getId(), artist));
+            Album.ShortInfo albumShortInfo = existingAlbum.getShortInfo();
+            ParallelTasks.forEach(executor, addedArtistsIds, artistId -> artistDao.addAlbum(artistId, albumShortInfo));
         }
 
         if (removedArtistsIds != null && !removedArtistsIds.isEmpty()) {
-
-            removedArtistsIds.stream()
-                    .map(artistDao::getById)
-                    .filter(Objects::nonNull)
-                    .filter(artist -> artist.getAlbums() != null)
-                    .peek(artist -> {
-                        List<Album.ShortInfo> toDelete = artist.getAlbums().stream()
-                                .filter(a -> id.equals(a.getId()))
-                                .collect(toList());
-
-                        artist.getAlbums().removeAll(toDelete);
-                    })
-                    .forEach(artist -> artistDao.update(artist.getId(), artist));
+            ParallelTasks.forEach(executor, removedArtistsIds, artistId -> artistDao.removeAlbum(artistId, id));
         }
 
         return albumToDto(albumDao.update(id, album));
@@ -560,6 +609,50 @@ public class AlbumService implements PaginatedService {
         return trackToDto(albumDao.updateTrack(id, trackId, dtoToTrack(track)));
     }
 
+    /**
+     * Applies batch of track changes via single mutation per kind of change. Tracks, which have identifier set, are
+     * updated, while the rest of tracks are added to the album's track list.
+     *
+     * @param id     identifier of album, whose tracks will be changed.
+     * @param tracks list of tracks, which contain update information or will be added.
+     * @return list of updated tracks followed by newly created ones.
+     */
+    public List<TrackDto> patchAlbumTracks(String id, List<TrackDto> tracks) {
+
+        if (id == null || id.isEmpty()) {
+            throw new IllegalArgumentException("Album's identifier can not be empty");
+        }
+
+        if (tracks == null || tracks.contains(null)) {
+            throw new IllegalArgumentException("Track list can not be null and can not contain null tracks");
+        }
+
+        Map<Boolean, List<Track>> tracksByIdPresence = tracks.stream()
+                .map(this::dtoToTrack)
+                .collect(Collectors.partitioningBy(track -> track.getId() != null && !track.getId().isEmpty()));
+
+        List<Track> patched = new ArrayList<>();
+        List<Track> tracksToUpdate = tracksByIdPresence.get(true);
+        if (!tracksToUpdate.isEmpty()) {
+            List<Track> updated = albumDao.updateTracks(id, tracksToUpdate);
+            if (updated == null) {
+                throw new ResourceNotFoundException("Album with id '" + id + "' not found");
+            }
+            patched.addAll(updated);
+        }
+
+        List<Track> tracksToAdd = tracksByIdPresence.get(false);
+        if (!tracksToAdd.isEmpty()) {
+            List<Track> added = albumDao.addTracks(id, tracksToAdd);
+            if (added == null) {
+                throw new ResourceNotFoundException("Album with id '" + id + "' not found");
+            }
+            patched.addAll(added);
+        }
+
+        return patched.stream().map(this::trackToDto).collect(toList());
+    }
+
     /**
      * Sets track list for the album with specified identifier. Note, that in case when track's identifier corresponds
      * to the existing track, track will be updated, otherwise new track will be created.
@@ -633,13 +726,7 @@ public class AlbumService implements PaginatedService {
 
     private AlbumDto albumToDto(Album album) {
 
-        AlbumDto albumDto = new AlbumDto();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(albumDto, album);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create album Data Transfer Object", e);
-        }
+        AlbumDto albumDto = ALBUM_TO_DTO.map(album);
 
         String slug = slugService.getSlugForAlbum(album);
         albumDto.setSlug(slug);
@@ -671,39 +758,17 @@ public class AlbumService implements PaginatedService {
 
     private TrackDto trackToDto(Track track) {
 
-        TrackDto trackDto = new TrackDto();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(trackDto, track);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create track Data Transfer Object", e);
-        }
-
-        return trackDto;
+        return TRACK_TO_DTO.map(track);
     }
 
     private Track dtoToTrack(TrackDto trackDto) {
 
-        Track track = new Track();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(track, trackDto);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create track from Data Transfer Object", e);
-        }
-
-        return track;
+        return DTO_TO_TRACK.map(trackDto);
     }
 
     private Album dtoToAlbum(AlbumDto albumDto) {
 
-        Album album = new Album();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(album, albumDto);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create album Data Transfer Object", e);
-        }
+        Album album = DTO_TO_ALBUM.map(albumDto);
 
         if (albumDto.getTrackList() != null && !albumDto.getTrackList().isEmpty()) {
 
@@ -732,28 +797,12 @@ public class AlbumService implements PaginatedService {
 
     private ArtistDto artistShortInfoToDto(Artist.ShortInfo artistShortInfo) {
 
-        ArtistDto artistDto = new ArtistDto();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(artistDto, artistShortInfo);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create artist Data Transfer Object", e);
-        }
-
-        return artistDto;
+        return ARTIST_SHORT_INFO_TO_DTO.map(artistShortInfo);
     }
 
     private Artist.ShortInfo artistDtoToShortInfo(ArtistDto artistDto) {
 
-        Artist.ShortInfo artistShortInfo = new Artist.ShortInfo();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(artistShortInfo, artistDto);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create album Data Transfer Object", e);
-        }
-
-        return artistShortInfo;
+        return DTO_TO_ARTIST_SHORT_INFO.map(artistDto);
     }
 
 }
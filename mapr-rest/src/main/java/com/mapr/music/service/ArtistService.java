@@ -1,21 +1,24 @@
 package com.mapr.music.service;
 
+import com.mapr.music.dao.AlbumDao;
 import com.mapr.music.dao.ArtistDao;
-import com.mapr.music.dao.MaprDbDao;
+import com.mapr.music.dao.CursorPage;
+import com.mapr.music.dao.PageCursor;
 import com.mapr.music.dao.SortOption;
 import com.mapr.music.dto.AlbumDto;
 import com.mapr.music.dto.ArtistDto;
+import com.mapr.music.dto.DtoMapper;
 import com.mapr.music.dto.ResourceDto;
 import com.mapr.music.exception.ResourceNotFoundException;
 import com.mapr.music.exception.ValidationException;
 import com.mapr.music.model.Album;
 import com.mapr.music.model.Artist;
-import org.apache.commons.beanutils.PropertyUtilsBean;
 import org.ojai.types.ODate;
 
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -24,6 +27,13 @@ import java.util.stream.Collectors;
  */
 public class ArtistService implements PaginatedService {
 
+    private static final DtoMapper<Artist, ArtistDto> ARTIST_TO_DTO = DtoMapper.of(Artist.class, ArtistDto.class);
+    private static final DtoMapper<ArtistDto, Artist> DTO_TO_ARTIST = DtoMapper.of(ArtistDto.class, Artist.class);
+    private static final DtoMapper<Album.ShortInfo, AlbumDto> ALBUM_SHORT_INFO_TO_DTO =
+            DtoMapper.of(Album.ShortInfo.class, AlbumDto.class);
+    private static final DtoMapper<AlbumDto, Album.ShortInfo> DTO_TO_ALBUM_SHORT_INFO =
+            DtoMapper.of(AlbumDto.class, Album.ShortInfo.class);
+
     private static final long ARTISTS_PER_PAGE_DEFAULT = 50;
     private static final long FIRST_PAGE_NUM = 1;
     private static final long MAX_SEARCH_LIMIT = 15;
@@ -48,12 +58,18 @@ public class ArtistService implements PaginatedService {
 
 
     private final ArtistDao artistDao;
-    private final MaprDbDao<Album> albumDao;
+    private final AlbumDao albumDao;
     private final SlugService slugService;
     private final StatisticService statisticService;
 
+    /**
+     * Runs updates of linked Albums in parallel.
+     */
+    @Resource
+    private ManagedExecutorService executor;
+
     @Inject
-    public ArtistService(@Named("artistDao") ArtistDao artistDao, @Named("albumDao") MaprDbDao<Album> albumDao,
+    public ArtistService(@Named("artistDao") ArtistDao artistDao, @Named("albumDao") AlbumDao albumDao,
                          SlugService slugService, StatisticService statisticService) {
 
         this.artistDao = artistDao;
@@ -169,6 +185,39 @@ public class ArtistService implements PaginatedService {
         return artistsPage;
     }
 
+    /**
+     * Returns list of artists which is represented by page, fetched using keyset pagination. Artists will be ordered
+     * according to the specified list of sort options.
+     *
+     * @param perPage     specifies number of artists per page. In case when value is <code>null</code> the
+     *                    default value will be used. Default value depends on implementation class.
+     * @param cursor      cursor of the page, which is returned with the previous page. Empty or <code>null</code>
+     *                    cursor means first page.
+     * @param sortOptions specifies artists ordering.
+     * @return artists page resource with the cursor of the next page.
+     */
+    public ResourceDto<ArtistDto> getArtistsPageByCursor(Long perPage, String cursor, List<SortOption> sortOptions) {
+
+        if (perPage == null) {
+            perPage = ARTISTS_PER_PAGE_DEFAULT;
+        }
+
+        if (perPage <= 0) {
+            throw new IllegalArgumentException("Per page value must be greater than zero");
+        }
+
+        PageCursor pageCursor = decodeCursor(cursor, sortOptions);
+        CursorPage<Artist> artists = artistDao.getPage(pageCursor, perPage, sortOptions, ARTIST_SHORT_INFO_FIELDS);
+
+        ResourceDto<ArtistDto> artistsPage = new ResourceDto<>();
+        artistsPage.setPagination(getCursorPaginationInfo(perPage, getTotalNum(), artists.getNextCursor()));
+        artistsPage.setResults(artists.getItems().stream()
+                .map(this::artistToDto)
+                .collect(Collectors.toList()));
+
+        return artistsPage;
+    }
+
     /**
      * Returns single artist according to it's identifier.
      *
@@ -238,13 +287,14 @@ public class ArtistService implements PaginatedService {
             throw new IllegalArgumentException("Artist's identifier can not be empty");
         }
 
-        Artist artist = artistDao.getById(id);
-        if (artist == null) {
+        // Only the flag is set, so concurrent changes of the Artist's albums are not overwritten
+        Artist artist = new Artist();
+        artist.setDeleted(true);
+
+        boolean marked = artistDao.updateIf(id, artist, connection -> connection.newCondition().exists("_id").build());
+        if (!marked) {
             throw new ResourceNotFoundException("Artist with id '" + id + "' not found");
         }
-
-        artist.setDeleted(true);
-        artistDao.update(id, artist);
     }
 
     /**
@@ -270,18 +320,19 @@ public class ArtistService implements PaginatedService {
 
         slugService.setSlugForArtist(artist);
         Artist createdArtist = artistDao.create(artist);
+        slugService.indexSlugForArtist(createdArtist);
 
         if (createdArtist.getAlbums() != null) {
-            createdArtist.getAlbums().stream()
+            List<String> albumIds = createdArtist.getAlbums().stream()
                     .filter(Objects::nonNull)
                     .map(Album.ShortInfo::getId)
                     .filter(Objects::nonNull)
-                    .map(albumDao::getById)
-                    .filter(Objects::nonNull)
-                    .forEach(album -> {
-                        album.addArtist(createdArtist.getShortInfo());
-                        albumDao.update(album.getId(), album);
-                    });
+                    .distinct()
+                    .collect(Collectors.toList());
+
+            // Albums, which do not exist, are not created
+            Artist.ShortInfo artistShortInfo = createdArtist.getShortInfo();
+            ParallelTasks.forEach(executor, albumIds, albumId -> albumDao.addArtist(albumId, artistShortInfo));
         }
 
         return artistToDto(createdArtist);
@@ -356,31 +407,12 @@ public class ArtistService implements PaginatedService {
         }
 
         if (addedAlbumsIds != null && !addedAlbumsIds.isEmpty()) {
-
-            addedAlbumsIds.stream()
-                    .map(albumDao::getById)
-                    .filter(Objects::nonNull)
-                    .peek(album -> album.addArtist(existingArtist.getShortInfo()))
-                    .forEach(album -> albumDao.update(album.getId(), album));
+            Artist.ShortInfo artistShortInfo = existingArtist.getShortInfo();
+            ParallelTasks.forEach(executor, addedAlbumsIds, albumId -> albumDao.addArtist(albumId, artistShortInfo));
         }
 
         if (removedAlbumsIds != null && !removedAlbumsIds.isEmpty()) {
-
-            removedAlbumsIds.stream()
-                    .map(albumDao::getById)
-                    .filter(Objects::nonNull)
-                    .filter(album -> album.getArtists() != null)
-                    .peek(album -> { // remove artist from albums
-                        Artist.ShortInfo artistToRemove = null;
-                        for (Artist.ShortInfo albumArtist : album.getArtists()) {
-                            if (existingArtist.getId().equals(albumArtist.getId())) {
-                                artistToRemove = albumArtist;
-                                break;
-                            }
-                        }
-                        album.getArtists().remove(artistToRemove);
-                    })
-                    .forEach(album -> albumDao.update(album.getId(), album));
+            ParallelTasks.forEach(executor, removedAlbumsIds, albumId -> albumDao.removeArtist(albumId, id));
         }
 
         Artist updatedArtist = artistDao.update(id, artist);
@@ -415,13 +447,7 @@ public class ArtistService implements PaginatedService {
     }
 
     private ArtistDto artistToDto(Artist artist) {
-        ArtistDto artistDto = new ArtistDto();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(artistDto, artist);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create artist Data Transfer Object", e);
-        }
+        ArtistDto artistDto = ARTIST_TO_DTO.map(artist);
 
         String slug = slugService.getSlugForArtist(artist);
         artistDto.setSlug(slug);
@@ -438,13 +464,7 @@ public class ArtistService implements PaginatedService {
     }
 
     private Artist dtoToArtist(ArtistDto artistDto) {
-        Artist artist = new Artist();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(artist, artistDto);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create Artist from Data Transfer Object", e);
-        }
+        Artist artist = DTO_TO_ARTIST.map(artistDto);
 
         if (artistDto.getAlbums() != null) {
             List<Album.ShortInfo> albums = artistDto.getAlbums().stream()
@@ -466,28 +486,12 @@ public class ArtistService implements PaginatedService {
 
     private AlbumDto shortInfoToAlbumDto(Album.ShortInfo albumShortInfo) {
 
-        AlbumDto albumDto = new AlbumDto();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(albumDto, albumShortInfo);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create album Data Transfer Object", e);
-        }
-
-        return albumDto;
+        return ALBUM_SHORT_INFO_TO_DTO.map(albumShortInfo);
     }
 
     private Album.ShortInfo albumDtoToShortInfo(AlbumDto albumDto) {
 
-        Album.ShortInfo albumShortInfo = new Album.ShortInfo();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(albumShortInfo, albumDto);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create album Data Transfer Object", e);
-        }
-
-        return albumShortInfo;
+        return DTO_TO_ALBUM_SHORT_INFO.map(albumDto);
     }
 
 }
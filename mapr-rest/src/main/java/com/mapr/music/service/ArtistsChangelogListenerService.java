@@ -1,50 +1,75 @@
 package com.mapr.music.service;
 
+import com.google.common.collect.Lists;
 import com.mapr.music.dao.AlbumDao;
 import com.mapr.music.dao.AlbumRateDao;
 import com.mapr.music.dao.ArtistDao;
 import com.mapr.music.dao.ArtistRateDao;
 import com.mapr.music.model.Album;
 import com.mapr.music.model.Artist;
-import org.apache.hadoop.security.UserGroupInformation;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
-import org.ojai.FieldPath;
-import org.ojai.store.cdc.ChangeDataRecord;
-import org.ojai.store.cdc.ChangeDataRecordType;
 import org.ojai.store.cdc.ChangeNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.DependsOn;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.mapr.music.util.MaprProperties.*;
 
+/**
+ * Deletes Artists, which are marked as deleted, along with their rates and Albums, which have no other Artists.
+ * <p>
+ * Changelog handler only enqueues cascade delete jobs, which are run on the bounded executor. Each step of the job can
+ * be repeated, and Artist is deleted at the last step, so interrupted jobs are resumed by periodic sweep of Artists,
+ * which are still marked as deleted. Sweep is run by single node, which owns the Artists changelog.
+ */
 @Startup
 @Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@DependsOn("ChangelogDispatcher")
 public class ArtistsChangelogListenerService {
 
-    private static long KAFKA_CONSUMER_POLL_TIMEOUT = 500L;
-
     private static final Logger log = LoggerFactory.getLogger(ArtistsChangelogListenerService.class);
 
-    /**
-     * Consumer used to consume MapR-DB CDC events.
-     */
-    private KafkaConsumer<byte[], ChangeDataRecord> consumer;
+    public enum State {
+        QUEUED, RUNNING
+    }
 
-    @Resource(lookup = "java:jboss/ee/concurrency/factory/MaprMusicThreadFactory")
+    @Resource(lookup = THREAD_FACTORY)
     private ManagedThreadFactory threadFactory;
 
+    @Resource
+    private ManagedExecutorService executor;
+
+    @Resource
+    private TimerService timerService;
+
+    @Inject
+    private ChangelogDispatcher dispatcher;
+
     @Inject
     @Named("albumDao")
     private AlbumDao albumDao;
@@ -59,106 +84,210 @@ public class ArtistsChangelogListenerService {
     @Inject
     private ArtistRateDao artistRateDao;
 
+    @Inject
+    private SlugService slugService;
+
+    /**
+     * Jobs, which are queued or running, by Artist's identifier.
+     */
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor jobExecutor;
+
     @PostConstruct
     public void init() {
 
-        Properties consumerProperties = new Properties();
-        consumerProperties.setProperty("group.id", "mapr.music.artists.listener");
-        consumerProperties.setProperty("enable.auto.commit", "true");
-        consumerProperties.setProperty("auto.offset.reset", "latest");
-        consumerProperties.setProperty("key.deserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer");
-        consumerProperties.setProperty("value.deserializer", "com.mapr.db.cdc.ChangeDataRecordDeserializer");
-
-        loginTestUser(MAPR_USER_NAME, MAPR_USER_GROUP);
-        consumer = new KafkaConsumer<>(consumerProperties);
-        consumer.subscribe(Collections.singletonList(ARTISTS_CHANGE_LOG));
-
-        threadFactory.newThread(() -> {
-            while (true) {
-
-                ConsumerRecords<byte[], ChangeDataRecord> changeRecords = consumer.poll(KAFKA_CONSUMER_POLL_TIMEOUT);
-                for (ConsumerRecord<byte[], ChangeDataRecord> consumerRecord : changeRecords) {
-
-                    // The ChangeDataRecord contains all the changes made to a document
-                    ChangeDataRecord changeDataRecord = consumerRecord.value();
-
-                    // Ignore all the records that is not 'RECORD_UPDATE'
-                    if (changeDataRecord.getType() != ChangeDataRecordType.RECORD_UPDATE) {
-                        continue;
-                    }
-
-                    String artistId = changeDataRecord.getId().getString();
-                    // Use the ChangeNode to capture all the individual changes
-                    for (Map.Entry<FieldPath, ChangeNode> changeNodeEntry : changeDataRecord) {
-
-                        String fieldPathAsString = changeNodeEntry.getKey().asPathString();
-                        ChangeNode changeNode = changeNodeEntry.getValue();
-
-                        // When "INSERTING" a document the field path is empty (new document)
-                        // and all the changes are made in a single object represented as a Map
-                        if (fieldPathAsString == null || fieldPathAsString.isEmpty()) {
-                            // Ignore artist inserting
-                            continue;
-                        }
-
-                        // Ignore all the fields except of artist's 'deleted' flag
-                        if (!"deleted".equalsIgnoreCase(fieldPathAsString)) {
-                            continue;
-                        }
-
-                        // Ignore change record for this Artist if 'deleted' flag changed to 'false'
-                        if (!changeNode.getBoolean()) {
-                            break;
-                        }
-
-                        Artist artistToDelete = artistDao.getById(artistId);
-
-                        // Artist does not exist
-                        if (artistToDelete == null) {
-                            break;
-                        }
-
-                        if (artistToDelete.getAlbums() != null) {
-                            artistToDelete.getAlbums().stream()
-                                    .filter(Objects::nonNull)
-                                    .map(Album.ShortInfo::getId)
-                                    .map(albumDao::getById)
-                                    .filter(Objects::nonNull)
-                                    .filter(album -> album.getArtists() != null)
-                                    .peek(album -> { // Remove artist from album's list of artists
-                                        List<Artist.ShortInfo> toRemove = album.getArtists().stream()
-                                                .filter(Objects::nonNull)
-                                                .filter(artist -> artistId.equals(artist.getId()))
-                                                .collect(Collectors.toList());
-
-                                        album.getArtists().removeAll(toRemove);
-                                    })
-                                    .forEach(album -> {
-                                        if (album.getArtists().isEmpty()) { // Remove albums that had only one artist
-                                            // Remove Album's rates
-                                            albumRateDao.getByAlbumId(album.getId())
-                                                    .forEach(rate -> albumRateDao.deleteById(rate.getId()));
-                                            albumDao.deleteById(album.getId());
-                                        } else {
-                                            albumDao.update(album.getId(), album);
-                                        }
-                                    });
-                        }
-
-                        // Remove Artist's rates
-                        artistRateDao.getByArtistId(artistId).forEach(rate -> artistRateDao.deleteById(rate.getId()));
-
-                        artistDao.deleteById(artistId);
-                        log.info("Artist with id = '{}' is deleted", artistId);
-                    }
-                }
-            }
-
-        }).start();
+        jobExecutor = new ThreadPoolExecutor(CASCADE_DELETE_THREADS, CASCADE_DELETE_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(CASCADE_DELETE_QUEUE_SIZE), threadFactory);
+
+        // Artist must be deleted by single node
+        dispatcher.register(ARTISTS_CHANGE_LOG, ChangelogDispatcher.Delivery.SHARED, "artists-cascade-delete",
+                this::onArtistChange);
+
+        timerService.createIntervalTimer(CASCADE_DELETE_SWEEP_INTERVAL_MS, CASCADE_DELETE_SWEEP_INTERVAL_MS,
+                new TimerConfig(null, false));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        // Interrupted jobs are resumed by the sweep after restart
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns progress of cascade delete jobs, which are queued or running.
+     *
+     * @return progress of the jobs.
+     */
+    public List<Progress> getProgress() {
+        return jobs.values().stream().map(Progress::new).collect(Collectors.toList());
+    }
+
+    /**
+     * Enqueues jobs for the Artists, which are still marked as deleted, e.g. since their jobs were interrupted or
+     * rejected. Sweep scans the whole table, so it is run only by the owner of the Artists changelog. Swept Artist's
+     * job may still run on the node, which received the change event. Such duplicate is harmless, since each step of
+     * the job is idempotent.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void sweep() {
+        if (dispatcher.isOwner(ARTISTS_CHANGE_LOG)) {
+            artistDao.getDeletedIds().forEach(this::enqueue);
+        }
+    }
+
+    private void onArtistChange(ChangeEvent event) {
+
+        // Ignore all the events that is not 'UPDATE'
+        if (event.getType() != ChangeEvent.Type.UPDATE) {
+            return;
+        }
+
+        // Ignore all the fields except of artist's 'deleted' flag
+        ChangeNode deletedFlag = event.getChangedFields().get("deleted");
+
+        // Ignore change record for this Artist if 'deleted' flag changed to 'false'
+        if (deletedFlag == null || !deletedFlag.getBoolean()) {
+            return;
+        }
+
+        enqueue(event.getDocumentId());
+    }
+
+    private void enqueue(String artistId) {
+
+        Job job = new Job(artistId);
+        if (jobs.putIfAbsent(artistId, job) != null) {
+            return;
+        }
+
+        try {
+            jobExecutor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(artistId);
+            log.warn("Cascade delete of artist '{}' is postponed until the next sweep, since the queue is full",
+                    artistId);
+        }
+    }
+
+    private void run(Job job) {
+
+        job.state = State.RUNNING;
+        try {
+            deleteArtist(job);
+        } catch (Exception e) {
+            log.error("Cascade delete of artist '{}' failed and will be resumed by the next sweep. Exception: {}",
+                    job.artistId, e);
+        } finally {
+            jobs.remove(job.artistId);
+        }
+    }
+
+    private void deleteArtist(Job job) {
+
+        String artistId = job.artistId;
+        Artist artistToDelete = artistDao.getById(artistId);
+
+        // Artist does not exist or is restored
+        if (artistToDelete == null || !Boolean.TRUE.equals(artistToDelete.getDeleted())) {
+            return;
+        }
+
+        List<String> albumIds = (artistToDelete.getAlbums() == null) ? Collections.emptyList()
+                : artistToDelete.getAlbums().stream()
+                .filter(Objects::nonNull)
+                .map(Album.ShortInfo::getId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+
+        job.albumsTotal = albumIds.size();
+
+        // Albums are processed in parallel by chunks, so single job does not occupy the whole executor
+        for (List<String> chunk : Lists.partition(albumIds, CASCADE_DELETE_PARALLELISM)) {
+            ParallelTasks.forEach(executor, chunk, albumId -> {
+                detachAlbum(artistId, albumId);
+                job.albumsProcessed.incrementAndGet();
+            });
+        }
+
+        // Remove Artist's rates
+        artistRateDao.deleteByArtistId(artistId);
+
+        artistDao.deleteById(artistId);
+        slugService.removeSlugForArtist(artistToDelete);
+        log.info("Artist with id = '{}' is deleted. Number of processed albums: {}", artistId, albumIds.size());
+    }
+
+    /**
+     * Removes Artist from the album's list of artists and deletes album, which has no other Artists.
+     */
+    private void detachAlbum(String artistId, String albumId) {
+
+        Integer artistsLeft = albumDao.removeArtist(albumId, artistId);
+        if (artistsLeft == null || artistsLeft > 0) {
+            return;
+        }
+
+        // Remove albums that had only one artist along with their rates
+        Album album = albumDao.getById(albumId);
+        albumRateDao.deleteByAlbumId(albumId);
+        albumDao.deleteById(albumId);
+        if (album != null) {
+            slugService.removeSlugForAlbum(album);
+        }
     }
 
-    private static void loginTestUser(String username, String group) {
-        UserGroupInformation currentUgi = UserGroupInformation.createUserForTesting(username, new String[]{group});
-        UserGroupInformation.setLoginUser(currentUgi);
+    private static final class Job {
+
+        final String artistId;
+        final long createdAt = System.currentTimeMillis();
+        final AtomicInteger albumsProcessed = new AtomicInteger();
+        volatile State state = State.QUEUED;
+        volatile int albumsTotal;
+
+        Job(String artistId) {
+            this.artistId = artistId;
+        }
+    }
+
+    /**
+     * Snapshot of cascade delete job's progress.
+     */
+    public static final class Progress {
+
+        private final String artistId;
+        private final State state;
+        private final long createdAt;
+        private final int albumsTotal;
+        private final int albumsProcessed;
+
+        private Progress(Job job) {
+            this.artistId = job.artistId;
+            this.state = job.state;
+            this.createdAt = job.createdAt;
+            this.albumsTotal = job.albumsTotal;
+            this.albumsProcessed = job.albumsProcessed.get();
+        }
+
+        public String getArtistId() {
+            return artistId;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public int getAlbumsTotal() {
+            return albumsTotal;
+        }
+
+        public int getAlbumsProcessed() {
+            return albumsProcessed;
+        }
     }
 }
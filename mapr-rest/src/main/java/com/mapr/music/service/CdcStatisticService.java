@@ -5,138 +5,170 @@ import com.mapr.music.dao.ArtistDao;
 import com.mapr.music.dao.MaprDbDao;
 import com.mapr.music.dao.StatisticDao;
 import com.mapr.music.model.Statistic;
-import org.apache.hadoop.security.UserGroupInformation;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.ojai.Document;
 import org.ojai.DocumentStream;
-import org.ojai.store.cdc.ChangeDataRecord;
-import org.ojai.store.cdc.ChangeDataRecordType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.DependsOn;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
-import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.Collections;
-import java.util.Properties;
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.mapr.music.util.MaprProperties.*;
 
 @Startup
 @Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@DependsOn("ChangelogDispatcher")
 public class CdcStatisticService implements StatisticService {
 
-    @Resource(lookup = THREAD_FACTORY)
-    private ManagedThreadFactory threadFactory;
+    private static final Logger log = LoggerFactory.getLogger(CdcStatisticService.class);
 
     private final StatisticDao statisticDao;
     private final AlbumDao albumDao;
     private final ArtistDao artistDao;
+    private final ChangelogDispatcher dispatcher;
+
+    /**
+     * Counters of the Albums and Artists, which accumulate changes of the single poll.
+     */
+    private final StatisticCounter albums = new StatisticCounter();
+    private final StatisticCounter artists = new StatisticCounter();
+
+    @Resource
+    private TimerService timerService;
 
     @Inject
     public CdcStatisticService(@Named("statisticDao") StatisticDao statisticDao,
                                @Named("albumDao") AlbumDao albumDao,
-                               @Named("artistDao") ArtistDao artistDao) {
+                               @Named("artistDao") ArtistDao artistDao,
+                               ChangelogDispatcher dispatcher) {
 
         this.statisticDao = statisticDao;
         this.albumDao = albumDao;
         this.artistDao = artistDao;
+        this.dispatcher = dispatcher;
     }
 
-    static class ChangeDataRecordHandler implements Runnable {
-
-        private static long KAFKA_CONSUMER_POLL_TIMEOUT = 500L;
-
-        interface Action {
-            void handle(String documentId);
-        }
-
-        KafkaConsumer<byte[], ChangeDataRecord> consumer;
-        Action onInsert;
-        Action onDelete;
+    @PostConstruct
+    public void init() {
 
-        ChangeDataRecordHandler(KafkaConsumer<byte[], ChangeDataRecord> consumer) {
-            this.consumer = consumer;
+        // Statistics are recounted only at the first start, afterwards they are resumed from the checkpoint
+        if (!restore(ALBUMS_TABLE_NAME, albums) || !restore(ARTISTS_TABLE_NAME, artists)) {
+            recount(ALBUMS_TABLE_NAME, ALBUMS_CHANGE_LOG, albumDao, albums);
+            recount(ARTISTS_TABLE_NAME, ARTISTS_CHANGE_LOG, artistDao, artists);
         }
 
-        @Override
-        public void run() {
-            while (true) {
-
-                ConsumerRecords<byte[], ChangeDataRecord> changeRecords = consumer.poll(KAFKA_CONSUMER_POLL_TIMEOUT);
-                for (ConsumerRecord<byte[], ChangeDataRecord> consumerRecord : changeRecords) {
+        // Statistics are stored in MapR-DB, so each change must be counted by single node
+        dispatcher.register(ALBUMS_CHANGE_LOG, ChangelogDispatcher.Delivery.SHARED, "albums-statistics",
+                countingHandler(ALBUMS_TABLE_NAME, albums));
 
-                    // The ChangeDataRecord contains all the changes made to a document
-                    ChangeDataRecord changeDataRecord = consumerRecord.value();
-                    String documentId = changeDataRecord.getId().getString();
+        dispatcher.register(ARTISTS_CHANGE_LOG, ChangelogDispatcher.Delivery.SHARED, "artists-statistics",
+                countingHandler(ARTISTS_TABLE_NAME, artists));
 
-                    // Handle 'RECORD_INSERT'
-                    if (changeDataRecord.getType() == ChangeDataRecordType.RECORD_INSERT && this.onInsert != null) {
-                        this.onInsert.handle(documentId);
-                    }
+        // Changes may be counted by other nodes, so totals are refreshed periodically
+        timerService.createIntervalTimer(STATISTICS_REFRESH_INTERVAL_MS, STATISTICS_REFRESH_INTERVAL_MS,
+                new TimerConfig(null, false));
+    }
 
-                    // Handle 'RECORD_DELETE'
-                    if (changeDataRecord.getType() == ChangeDataRecordType.RECORD_DELETE && this.onDelete != null) {
-                        this.onDelete.handle(documentId);
-                    }
+    /**
+     * Creates handler, which sums inserts and deletes of the poll and writes the sum via single increment mutation.
+     */
+    private ChangeHandler countingHandler(String tableName, StatisticCounter counter) {
+        return new ChangeHandler() {
+
+            @Override
+            public void handle(ChangeEvent event) {
+                if (event.getType() == ChangeEvent.Type.INSERT) {
+                    counter.increment(event.getPartition(), event.getOffset());
+                } else if (event.getType() == ChangeEvent.Type.DELETE) {
+                    counter.decrement(event.getPartition(), event.getOffset());
+                }
+            }
 
+            @Override
+            public void flush() {
+                if (counter.getPendingDelta() != 0) {
+                    write(tableName, counter);
+                    refresh(tableName, counter);
                 }
             }
-        }
+        };
+    }
 
-        public void setOnInsert(Action onInsert) {
-            this.onInsert = onInsert;
-        }
+    /**
+     * Writes deltas, which are pending since the last flush failed, so they are not lost on undeploy.
+     */
+    @PreDestroy
+    public void destroy() {
+        flushPending(ALBUMS_TABLE_NAME, albums);
+        flushPending(ARTISTS_TABLE_NAME, artists);
+    }
 
-        public void setOnDelete(Action onDelete) {
-            this.onDelete = onDelete;
+    private void flushPending(String tableName, StatisticCounter counter) {
+        try {
+            write(tableName, counter);
+        } catch (Exception e) {
+            log.warn("Can not write pending statistics of '{}' table. Exception: {}", tableName, e);
         }
+    }
 
+    private void write(String tableName, StatisticCounter counter) {
+        counter.flush((delta, offsets) -> statisticDao.incrementDocumentNumber(tableName, delta, offsets));
     }
 
-    @PostConstruct
-    public void init() {
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Recount scans both tables, so it is performed at the first start and on demand only. Checkpointed offsets are
+     * kept, since the changes before them are reflected by the scan as well.
+     */
+    @Override
+    public void recomputeStatistics() {
 
-        recomputeStatistics();
+        long albumsTotal = count(albumDao);
+        statisticDao.mutate(ALBUMS_TABLE_NAME, new Statistic(ALBUMS_TABLE_NAME, albumsTotal));
+        albums.setTotal(albumsTotal);
 
-        Properties consumerProperties = new Properties();
-        consumerProperties.setProperty("group.id", "mapr.music.statistics");
-        consumerProperties.setProperty("enable.auto.commit", "true");
-        consumerProperties.setProperty("auto.offset.reset", "latest");
-        consumerProperties.setProperty("key.deserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer");
-        consumerProperties.setProperty("value.deserializer", "com.mapr.db.cdc.ChangeDataRecordDeserializer");
+        long artistsTotal = count(artistDao);
+        statisticDao.mutate(ARTISTS_TABLE_NAME, new Statistic(ARTISTS_TABLE_NAME, artistsTotal));
+        artists.setTotal(artistsTotal);
+    }
 
-        loginTestUser(MAPR_USER_NAME, MAPR_USER_GROUP);
+    /**
+     * Counts documents of the table at the first start. End offsets of the changelog are recorded before the scan and
+     * stored as the checkpoint along with the total, so the changes, which are made during and after the scan, are
+     * counted by the handler, and the preceding ones are skipped, since they are reflected by the scan.
+     */
+    private void recount(String tableName, String changelog, MaprDbDao<?> dao, StatisticCounter counter) {
 
-        // Create and adjust consumer which is used to consume MapR-DB CDC events for Albums table.
-        KafkaConsumer<byte[], ChangeDataRecord> albumsChangelogConsumer = new KafkaConsumer<>(consumerProperties);
-        albumsChangelogConsumer.subscribe(Collections.singletonList(ALBUMS_CHANGE_LOG));
-        ChangeDataRecordHandler albumsHandler = new ChangeDataRecordHandler(albumsChangelogConsumer);
-        albumsHandler.setOnDelete((id) -> decrementAlbums());
-        albumsHandler.setOnInsert((id) -> incrementAlbums());
+        Map<Integer, Long> endOffsets = dispatcher.markEndOffsets(changelog);
+        long total = count(dao);
 
-        // Create and adjust consumer which is used to consume MapR-DB CDC events for Artists table.
-        KafkaConsumer<byte[], ChangeDataRecord> artistsChangelogConsumer = new KafkaConsumer<>(consumerProperties);
-        artistsChangelogConsumer.subscribe(Collections.singletonList(ARTISTS_CHANGE_LOG));
-        ChangeDataRecordHandler artistsHandler = new ChangeDataRecordHandler(artistsChangelogConsumer);
-        artistsHandler.setOnDelete((id) -> decrementArtists());
-        artistsHandler.setOnInsert((id) -> incrementArtists());
+        Statistic statistic = new Statistic(tableName, total);
+        Map<String, Long> offsets = new HashMap<>();
+        endOffsets.forEach((partition, offset) -> offsets.put(String.valueOf(partition), offset));
+        statistic.setOffsets(offsets);
+        statisticDao.mutate(tableName, statistic);
 
-        threadFactory.newThread(albumsHandler).start();
-        threadFactory.newThread(artistsHandler).start();
+        counter.restore(endOffsets);
+        counter.setTotal(total);
     }
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void recomputeStatistics() {
-
-        MaprDbDao.OjaiStoreAction<Long> countAction = ((connection, store) -> {
+    private static long count(MaprDbDao<?> dao) {
+        return dao.processStore((connection, store) -> {
 
             long total = 0;
             DocumentStream documentStream = store.find("_id");
@@ -146,16 +178,6 @@ public class CdcStatisticService implements StatisticService {
 
             return total;
         });
-
-        long albumsTotal = albumDao.processStore(countAction);
-        Statistic albumsStatistic = getStatisticForTable(ALBUMS_TABLE_NAME);
-        albumsStatistic.setDocumentNumber(albumsTotal);
-        statisticDao.update(ALBUMS_TABLE_NAME, albumsStatistic);
-
-        long artistsTotal = artistDao.processStore(countAction);
-        Statistic artistsStatistic = getStatisticForTable(ARTISTS_TABLE_NAME);
-        artistsStatistic.setDocumentNumber(artistsTotal);
-        statisticDao.update(ARTISTS_TABLE_NAME, artistsStatistic);
     }
 
     /**
@@ -165,8 +187,7 @@ public class CdcStatisticService implements StatisticService {
      */
     @Override
     public long getTotalAlbums() {
-        Statistic albumsStatistic = getStatisticForTable(ALBUMS_TABLE_NAME);
-        return albumsStatistic.getDocumentNumber();
+        return getTotal(ALBUMS_TABLE_NAME, albums);
     }
 
     /**
@@ -176,33 +197,51 @@ public class CdcStatisticService implements StatisticService {
      */
     @Override
     public long getTotalArtists() {
-        Statistic artistsStatistic = getStatisticForTable(ARTISTS_TABLE_NAME);
-        return artistsStatistic.getDocumentNumber();
+        return getTotal(ARTISTS_TABLE_NAME, artists);
     }
 
-    private void incrementAlbums() {
-        Statistic albumsStatistic = getStatisticForTable(ALBUMS_TABLE_NAME);
-        albumsStatistic.setDocumentNumber(albumsStatistic.getDocumentNumber() + 1);
-        statisticDao.update(ALBUMS_TABLE_NAME, albumsStatistic);
+    /**
+     * Reads totals, which may be changed by other nodes.
+     */
+    @Timeout
+    public void refreshTotals() {
+        refresh(ALBUMS_TABLE_NAME, albums);
+        refresh(ARTISTS_TABLE_NAME, artists);
     }
 
-    private void decrementAlbums() {
-        Statistic albumsStatistic = getStatisticForTable(ALBUMS_TABLE_NAME);
-        albumsStatistic.setDocumentNumber(albumsStatistic.getDocumentNumber() - 1);
-        statisticDao.update(ALBUMS_TABLE_NAME, albumsStatistic);
+    private long getTotal(String tableName, StatisticCounter counter) {
+
+        if (!counter.isLoaded()) {
+            refresh(tableName, counter);
+        }
+
+        return counter.getTotal();
     }
 
-    private void incrementArtists() {
+    /**
+     * Restores total and checkpoint from the statistic document.
+     *
+     * @return <code>false</code> if there is no statistic document, so total must be recomputed.
+     */
+    private boolean restore(String tableName, StatisticCounter counter) {
+
+        Statistic statistic = statisticDao.getById(tableName);
+        if (statistic == null || statistic.getDocumentNumber() == null) {
+            return false;
+        }
 
-        Statistic artistsStatistic = getStatisticForTable(ARTISTS_TABLE_NAME);
-        artistsStatistic.setDocumentNumber(artistsStatistic.getDocumentNumber() + 1);
-        statisticDao.update(ARTISTS_TABLE_NAME, artistsStatistic);
+        if (statistic.getOffsets() != null) {
+            Map<Integer, Long> offsets = new HashMap<>();
+            statistic.getOffsets().forEach((partition, offset) -> offsets.put(Integer.valueOf(partition), offset));
+            counter.restore(offsets);
+        }
+
+        counter.setTotal(statistic.getDocumentNumber());
+        return true;
     }
 
-    private void decrementArtists() {
-        Statistic artistsStatistic = getStatisticForTable(ARTISTS_TABLE_NAME);
-        artistsStatistic.setDocumentNumber(artistsStatistic.getDocumentNumber() - 1);
-        statisticDao.update(ARTISTS_TABLE_NAME, artistsStatistic);
+    private void refresh(String tableName, StatisticCounter counter) {
+        counter.setTotal(getStatisticForTable(tableName).getDocumentNumber());
     }
 
     private Statistic getStatisticForTable(String tableName) {
@@ -211,9 +250,4 @@ public class CdcStatisticService implements StatisticService {
         return (statistic != null) ? statistic : new Statistic(tableName, 0);
     }
 
-    private static void loginTestUser(String username, String group) {
-        UserGroupInformation currentUgi = UserGroupInformation.createUserForTesting(username, new String[]{group});
-        UserGroupInformation.setLoginUser(currentUgi);
-    }
-
 }
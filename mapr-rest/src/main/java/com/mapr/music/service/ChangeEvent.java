@@ -0,0 +1,134 @@
+package com.mapr.music.service;
+
+import org.ojai.FieldPath;
+import org.ojai.store.cdc.ChangeDataRecord;
+import org.ojai.store.cdc.ChangeDataRecordType;
+import org.ojai.store.cdc.ChangeNode;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Change of the document, received from the MapR-DB changelog. Change data record is parsed once and shared by all the
+ * handlers, so handlers must not modify it.
+ */
+public final class ChangeEvent {
+
+    public enum Type {
+        INSERT, UPDATE, DELETE
+    }
+
+    private final String changelog;
+    private final int partition;
+    private final long offset;
+    private final Type type;
+    private final String documentId;
+
+    /**
+     * Inserted document for {@link Type#INSERT}, <code>null</code> otherwise.
+     */
+    private final Map<String, Object> document;
+
+    /**
+     * Changed fields by field path for {@link Type#UPDATE}, empty otherwise.
+     */
+    private final Map<String, ChangeNode> changedFields;
+
+    private ChangeEvent(String changelog, int partition, long offset, Type type, String documentId,
+                        Map<String, Object> document, Map<String, ChangeNode> changedFields) {
+
+        this.changelog = changelog;
+        this.partition = partition;
+        this.offset = offset;
+        this.type = type;
+        this.documentId = documentId;
+        this.document = document;
+        this.changedFields = changedFields;
+    }
+
+    /**
+     * Creates event from the change data record.
+     *
+     * @param changelog        changelog, from which record is received.
+     * @param partition        partition of the changelog, from which record is received.
+     * @param offset           offset of the record within partition.
+     * @param changeDataRecord change data record.
+     * @return change event or <code>null</code> if record does not describe change of the document.
+     */
+    static ChangeEvent of(String changelog, int partition, long offset, ChangeDataRecord changeDataRecord) {
+
+        Type type = typeOf(changeDataRecord.getType());
+        if (type == null) {
+            return null;
+        }
+
+        String documentId = changeDataRecord.getId().getString();
+        if (type == Type.DELETE) {
+            return new ChangeEvent(changelog, partition, offset, type, documentId, null, Collections.emptyMap());
+        }
+
+        Map<String, Object> document = null;
+        Map<String, ChangeNode> changedFields = new LinkedHashMap<>();
+        for (Map.Entry<FieldPath, ChangeNode> changeNodeEntry : changeDataRecord) {
+
+            String fieldPath = changeNodeEntry.getKey().asPathString();
+
+            // When "INSERTING" a document the field path is empty and the whole document is represented as a Map
+            if (fieldPath == null || fieldPath.isEmpty()) {
+                document = changeNodeEntry.getValue().getMap();
+            } else {
+                changedFields.put(fieldPath, changeNodeEntry.getValue());
+            }
+        }
+
+        return new ChangeEvent(changelog, partition, offset, type, documentId, (type == Type.INSERT) ? document : null,
+                Collections.unmodifiableMap(changedFields));
+    }
+
+    public String getChangelog() {
+        return changelog;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public Map<String, Object> getDocument() {
+        return document;
+    }
+
+    public Map<String, ChangeNode> getChangedFields() {
+        return changedFields;
+    }
+
+    @Override
+    public String toString() {
+        return type + " of '" + documentId + "' at '" + changelog + "'";
+    }
+
+    private static Type typeOf(ChangeDataRecordType recordType) {
+        switch (recordType) {
+            case RECORD_INSERT:
+                return Type.INSERT;
+            case RECORD_UPDATE:
+                return Type.UPDATE;
+            case RECORD_DELETE:
+                return Type.DELETE;
+            default:
+                return null;
+        }
+    }
+}
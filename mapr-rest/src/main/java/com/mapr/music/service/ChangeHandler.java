@@ -0,0 +1,41 @@
+package com.mapr.music.service;
+
+/**
+ * Handles changes of the documents, which are received via {@link ChangelogDispatcher}. Handler receives events of the
+ * changelog in order, one event at a time. Once all the events of the poll are handled, handler is flushed.
+ */
+@FunctionalInterface
+public interface ChangeHandler {
+
+    /**
+     * Handles change event. Exception, thrown by the handler, is logged and the event is skipped.
+     *
+     * @param event change event.
+     * @throws Exception in case of handling failure.
+     */
+    void handle(ChangeEvent event) throws Exception;
+
+    /**
+     * Invoked after all the events of the poll are handled and before their offsets are committed. Handlers, which
+     * accumulate changes in memory, apply them here. Exception, thrown by the handler, prevents the offsets from being
+     * committed, so the events are delivered once again to all the handlers of the changelog.
+     *
+     * @throws Exception in case of flush failure.
+     */
+    default void flush() throws Exception {
+    }
+
+    /**
+     * Invoked when consumer of the changelog fails, so events are not delivered until it is recreated. Handlers, which
+     * keep node's state coherent with the table, e.g. caches, stop relying on the events here.
+     */
+    default void suspend() {
+    }
+
+    /**
+     * Invoked when consumer of the changelog is recreated after failure and delivers events again. Events, which were
+     * not committed before the failure, are delivered once again.
+     */
+    default void resume() {
+    }
+}
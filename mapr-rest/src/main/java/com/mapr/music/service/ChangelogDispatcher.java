@@ -0,0 +1,638 @@
+package com.mapr.music.service;
+
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.ojai.store.cdc.ChangeDataRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.mapr.music.util.MaprProperties.*;
+
+/**
+ * Consumes MapR-DB changelogs and dispatches change events to the registered handlers. Each change data record is
+ * received and parsed once per node and delivery mode, regardless of the number of handlers.
+ * <p>
+ * Handlers of the single poll are invoked in parallel via bounded executor, but each handler receives events in order.
+ * Offsets are committed once all the handlers processed the polled events. If any handler can not be flushed, offsets
+ * are not committed and consumer is recreated, so the events are delivered once again.
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ChangelogDispatcher {
+
+    private static final long KAFKA_CONSUMER_POLL_TIMEOUT = 500L;
+    private static final long CONSUMER_FAILURE_BACKOFF_MS = 5000L;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000L;
+
+    private static final String SHARED_GROUP_ID = "mapr.music.cdc";
+
+    /**
+     * Node, which is assigned this partition of the changelog, owns the changelog.
+     */
+    private static final int OWNER_PARTITION = 0;
+
+    private static final Logger log = LoggerFactory.getLogger(ChangelogDispatcher.class);
+
+    /**
+     * Defines which nodes receive the change event.
+     */
+    public enum Delivery {
+
+        /**
+         * Event is handled by single node of the cluster. Used by handlers, which change shared state, e.g. MapR-DB
+         * tables.
+         */
+        SHARED,
+
+        /**
+         * Event is handled by each node of the cluster. Used by handlers, which change node's state, e.g. in-memory
+         * caches.
+         */
+        BROADCAST
+    }
+
+    @Resource(lookup = THREAD_FACTORY)
+    private ManagedThreadFactory threadFactory;
+
+    /**
+     * Broadcast consumers use unique group, since each node must receive all the changes.
+     */
+    private final String broadcastGroupId = SHARED_GROUP_ID + "." + UUID.randomUUID().toString();
+
+    private final Map<String, ChangelogConsumer> consumers = new LinkedHashMap<>();
+    private ThreadPoolExecutor handlerExecutor;
+    private volatile boolean running = true;
+    private boolean started;
+
+    @PostConstruct
+    public void init() {
+
+        loginTestUser(MAPR_USER_NAME, MAPR_USER_GROUP);
+
+        // Each handler has at most one task per poll of each consumer. When the queue is full, the polling thread runs
+        // the handler itself, which slows down polling. Rejected tasks are always run, since polling thread waits for
+        // them
+        handlerExecutor = new ThreadPoolExecutor(CDC_HANDLER_THREADS, CDC_HANDLER_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(CDC_HANDLER_QUEUE_SIZE), threadFactory, (task, executor) -> task.run());
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        running = false;
+
+        List<ChangelogConsumer> toAwait;
+        synchronized (consumers) {
+            toAwait = new ArrayList<>(consumers.values());
+        }
+
+        // Consumers are not woken up, so offsets of the handled events are committed before consumers are closed
+        for (ChangelogConsumer consumer : toAwait) {
+            try {
+                if (!consumer.stopped.await(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    log.warn("Consumer of changelog '{}' is not stopped in time", consumer.changelog);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        handlerExecutor.shutdown();
+    }
+
+    /**
+     * Registers handler of the changelog's events. Consumers are started by {@link #start()} once all the handlers are
+     * registered, so handlers, which share the consumer, receive the same events.
+     *
+     * @param changelog changelog path.
+     * @param delivery  delivery mode.
+     * @param name      handler's name, which is used in logs and metrics.
+     * @param handler   change handler.
+     */
+    public void register(String changelog, Delivery delivery, String name, ChangeHandler handler) {
+
+        synchronized (consumers) {
+
+            if (!running) {
+                throw new IllegalStateException("Dispatcher is stopped");
+            }
+
+            ChangelogConsumer consumer = consumers.computeIfAbsent(key(changelog, delivery),
+                    key -> new ChangelogConsumer(changelog, delivery));
+
+            consumer.handlers.add(new RegisteredHandler(name, handler));
+            log.info("Handler '{}' is registered for changelog '{}' with '{}' delivery", name, changelog, delivery);
+
+            if (!started) {
+                return;
+            }
+
+            if (consumer.started) {
+                log.warn("Handler '{}' is registered after consumer of changelog '{}' is started, so it misses the " +
+                        "events, which are already polled", name, changelog);
+            } else {
+                consumer.start();
+            }
+        }
+    }
+
+    /**
+     * Starts consumers of all the registered handlers. Handlers, which are registered afterwards, start their consumers
+     * on registration.
+     */
+    public void start() {
+
+        synchronized (consumers) {
+
+            if (!running || started) {
+                return;
+            }
+
+            started = true;
+            consumers.values().forEach(ChangelogConsumer::start);
+        }
+    }
+
+    /**
+     * Indicates whether this node owns the changelog, i.e. shared consumer of this node is assigned the first partition
+     * of the changelog. At most one node of the cluster owns the changelog at a time, except for the short period of
+     * rebalance, so owner runs periodic tasks, which must be run by single node.
+     *
+     * @param changelog changelog path.
+     * @return <code>true</code> if this node owns the changelog, <code>false</code> otherwise or if there are no
+     * handlers of the changelog with {@link Delivery#SHARED} delivery.
+     */
+    public boolean isOwner(String changelog) {
+
+        ChangelogConsumer consumer;
+        synchronized (consumers) {
+            consumer = consumers.get(key(changelog, Delivery.SHARED));
+        }
+
+        return consumer != null && consumer.assignedPartitions.contains(OWNER_PARTITION);
+    }
+
+    /**
+     * Returns end offsets of the changelog partitions. Offsets are committed for the shared consumers of the
+     * partitions, which have no committed offsets yet, so such consumers start from the returned offsets instead of the
+     * end of the changelog at the time of subscription. Thus handlers with {@link Delivery#SHARED} delivery receive all
+     * the changes, which follow the returned offsets, if the method is invoked before {@link #start()}.
+     *
+     * @param changelog changelog path.
+     * @return end offsets keyed by partition number or empty map if offsets can not be obtained.
+     */
+    public Map<Integer, Long> markEndOffsets(String changelog) {
+
+        Map<Integer, Long> endOffsets = new HashMap<>();
+        KafkaConsumer<byte[], ChangeDataRecord> consumer = new KafkaConsumer<>(consumerProperties(Delivery.SHARED));
+        try {
+            List<TopicPartition> partitions = consumer.partitionsFor(changelog).stream()
+                    .map(info -> new TopicPartition(changelog, info.partition()))
+                    .collect(Collectors.toList());
+
+            consumer.assign(partitions);
+            consumer.seekToEnd(partitions.toArray(new TopicPartition[partitions.size()]));
+
+            // Offsets, which are already committed by the shared group, are kept, so its pending events are not lost
+            Map<TopicPartition, OffsetAndMetadata> uncommitted = new HashMap<>();
+            for (TopicPartition partition : partitions) {
+                long offset = consumer.position(partition);
+                endOffsets.put(partition.partition(), offset);
+                if (consumer.committed(partition) == null) {
+                    uncommitted.put(partition, new OffsetAndMetadata(offset));
+                }
+            }
+
+            if (!uncommitted.isEmpty()) {
+                consumer.commitSync(uncommitted);
+            }
+        } catch (KafkaException e) {
+            log.warn("Can not obtain end offsets of changelog '{}'. Exception: {}", changelog, e);
+            return Collections.emptyMap();
+        } finally {
+            consumer.close();
+        }
+
+        return endOffsets;
+    }
+
+    /**
+     * Returns metrics of all the consumers.
+     *
+     * @return metrics by changelog and delivery mode.
+     */
+    public Map<String, Metrics> getMetrics() {
+
+        Map<String, Metrics> metrics = new LinkedHashMap<>();
+        synchronized (consumers) {
+            consumers.forEach((key, consumer) -> metrics.put(key, new Metrics(consumer)));
+        }
+
+        return metrics;
+    }
+
+    private static String key(String changelog, Delivery delivery) {
+        return changelog + " (" + delivery.name().toLowerCase() + ")";
+    }
+
+    private final class ChangelogConsumer implements Runnable {
+
+        final String changelog;
+        final Delivery delivery;
+        final List<RegisteredHandler> handlers = new CopyOnWriteArrayList<>();
+        final CountDownLatch stopped = new CountDownLatch(1);
+
+        final AtomicLong records = new AtomicLong();
+        final AtomicLong polls = new AtomicLong();
+        final AtomicLong consumerFailures = new AtomicLong();
+        volatile Set<Integer> assignedPartitions = Collections.emptySet();
+        volatile long consumerLag = -1;
+        volatile long lastPollTimestamp;
+        volatile long lastDispatchMillis;
+
+        boolean started;
+        private long lagUpdatedAt;
+
+        /**
+         * Indicates whether handlers are suspended, since consumer failed and is not recreated yet.
+         */
+        private boolean suspended;
+
+        ChangelogConsumer(String changelog, Delivery delivery) {
+            this.changelog = changelog;
+            this.delivery = delivery;
+        }
+
+        void start() {
+            started = true;
+            threadFactory.newThread(this).start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running && !Thread.currentThread().isInterrupted()) {
+                    try {
+                        consume();
+                    } catch (Exception e) {
+
+                        // Interrupted consumer thread is stopped instead of recreating the consumer
+                        if (Thread.currentThread().isInterrupted()) {
+                            log.warn("Consumer of changelog '{}' is interrupted and stopped", changelog);
+                            break;
+                        }
+
+                        // Consumer is recreated, so uncommitted events are received once again
+                        consumerFailures.incrementAndGet();
+                        log.error("Can not consume changelog '{}'. Exception: {}", changelog, e);
+                        suspendHandlers();
+                        sleep(CONSUMER_FAILURE_BACKOFF_MS);
+                    }
+                }
+            } finally {
+                stopped.countDown();
+            }
+        }
+
+        private void consume() {
+
+            KafkaConsumer<byte[], ChangeDataRecord> consumer = new KafkaConsumer<>(consumerProperties(delivery));
+            KafkaConsumer<byte[], ChangeDataRecord> lagProbe = null;
+            try {
+                consumer.subscribe(Collections.singletonList(changelog), new ConsumerRebalanceListener() {
+
+                    @Override
+                    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                        assignedPartitions = Collections.emptySet();
+                    }
+
+                    @Override
+                    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                        assignedPartitions = partitions.stream()
+                                .map(TopicPartition::partition)
+                                .collect(Collectors.toSet());
+                    }
+                });
+                while (running && !Thread.currentThread().isInterrupted()) {
+
+                    ConsumerRecords<byte[], ChangeDataRecord> changeRecords =
+                            consumer.poll(KAFKA_CONSUMER_POLL_TIMEOUT);
+
+                    polls.incrementAndGet();
+                    lastPollTimestamp = System.currentTimeMillis();
+
+                    if (suspended && !consumer.assignment().isEmpty()) {
+                        resumeHandlers();
+                    }
+
+                    if (!changeRecords.isEmpty()) {
+                        dispatch(toEvents(changeRecords));
+                        consumer.commitSync();
+                    }
+
+                    if (lastPollTimestamp - lagUpdatedAt >= CDC_LAG_UPDATE_INTERVAL_MS) {
+                        lagProbe = (lagProbe != null) ? lagProbe : new KafkaConsumer<>(consumerProperties(delivery));
+                        updateConsumerLag(consumer, lagProbe);
+                        lagUpdatedAt = lastPollTimestamp;
+                    }
+                }
+            } finally {
+                assignedPartitions = Collections.emptySet();
+                consumer.close();
+                if (lagProbe != null) {
+                    lagProbe.close();
+                }
+            }
+        }
+
+        private void suspendHandlers() {
+
+            if (suspended) {
+                return;
+            }
+
+            suspended = true;
+            for (RegisteredHandler handler : handlers) {
+                try {
+                    handler.handler.suspend();
+                } catch (Exception e) {
+                    log.warn("Handler '{}' can not be suspended. Exception: {}", handler.name, e);
+                }
+            }
+        }
+
+        private void resumeHandlers() {
+
+            suspended = false;
+            for (RegisteredHandler handler : handlers) {
+                try {
+                    handler.handler.resume();
+                } catch (Exception e) {
+                    log.warn("Handler '{}' can not be resumed. Exception: {}", handler.name, e);
+                }
+            }
+        }
+
+        private List<ChangeEvent> toEvents(ConsumerRecords<byte[], ChangeDataRecord> changeRecords) {
+
+            List<ChangeEvent> events = new ArrayList<>(changeRecords.count());
+            for (ConsumerRecord<byte[], ChangeDataRecord> consumerRecord : changeRecords) {
+
+                records.incrementAndGet();
+                ChangeEvent event = ChangeEvent.of(changelog, consumerRecord.partition(), consumerRecord.offset(),
+                        consumerRecord.value());
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+
+            return events;
+        }
+
+        private void dispatch(List<ChangeEvent> events) {
+
+            if (events.isEmpty()) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(handlers.size());
+            for (RegisteredHandler handler : handlers) {
+                futures.add(handlerExecutor.submit(() -> handler.handleAll(events)));
+            }
+
+            Throwable failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failure = (failure != null) ? failure : e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while dispatching events of " + changelog, e);
+                }
+            }
+
+            lastDispatchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Offsets are not committed, so the events are delivered once again by the recreated consumer
+            if (failure != null) {
+                throw new IllegalStateException("Handler of changelog '" + changelog + "' failed", failure);
+            }
+        }
+
+        /**
+         * Computes lag as the difference between end offsets and consumer's positions. End offsets are obtained via
+         * separate consumer, since seeking to the end would change positions of the main one.
+         */
+        private void updateConsumerLag(KafkaConsumer<byte[], ChangeDataRecord> consumer,
+                                       KafkaConsumer<byte[], ChangeDataRecord> lagProbe) {
+
+            Set<TopicPartition> assignment = consumer.assignment();
+            if (assignment.isEmpty()) {
+                return;
+            }
+
+            try {
+                TopicPartition[] partitions = assignment.toArray(new TopicPartition[assignment.size()]);
+                lagProbe.assign(new ArrayList<>(assignment));
+                lagProbe.seekToEnd(partitions);
+
+                long lag = 0;
+                for (TopicPartition partition : partitions) {
+                    lag += Math.max(lagProbe.position(partition) - consumer.position(partition), 0);
+                }
+
+                consumerLag = lag;
+            } catch (KafkaException e) {
+                log.debug("Can not compute lag of changelog '{}'. Exception: {}", changelog, e);
+            }
+        }
+    }
+
+    private static final class RegisteredHandler {
+
+        final String name;
+        final ChangeHandler handler;
+
+        final AtomicLong handled = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+
+        RegisteredHandler(String name, ChangeHandler handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+
+        void handleAll(List<ChangeEvent> events) {
+            for (ChangeEvent event : events) {
+
+                long start = System.nanoTime();
+                try {
+                    handler.handle(event);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    log.warn("Handler '{}' can not handle {}. Exception: {}", name, event, e);
+                } finally {
+                    handled.incrementAndGet();
+                    totalNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+
+            try {
+                handler.flush();
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                throw new IllegalStateException("Handler '" + name + "' can not flush " + events.size() +
+                        " event(s)", e);
+            }
+        }
+    }
+
+    /**
+     * Snapshot of consumer's metrics.
+     */
+    public static final class Metrics {
+
+        private final long consumerLag;
+        private final long records;
+        private final long polls;
+        private final long consumerFailures;
+        private final long lastPollTimestamp;
+        private final long lastDispatchMillis;
+        private final Map<String, HandlerMetrics> handlers = new LinkedHashMap<>();
+
+        private Metrics(ChangelogConsumer consumer) {
+            this.consumerLag = consumer.consumerLag;
+            this.records = consumer.records.get();
+            this.polls = consumer.polls.get();
+            this.consumerFailures = consumer.consumerFailures.get();
+            this.lastPollTimestamp = consumer.lastPollTimestamp;
+            this.lastDispatchMillis = consumer.lastDispatchMillis;
+            consumer.handlers.forEach(handler -> handlers.put(handler.name, new HandlerMetrics(handler)));
+        }
+
+        /**
+         * Returns number of records, which are not received yet, or <code>-1</code> if it is not computed yet.
+         */
+        public long getConsumerLag() {
+            return consumerLag;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public long getPolls() {
+            return polls;
+        }
+
+        public long getConsumerFailures() {
+            return consumerFailures;
+        }
+
+        public long getLastPollTimestamp() {
+            return lastPollTimestamp;
+        }
+
+        public long getLastDispatchMillis() {
+            return lastDispatchMillis;
+        }
+
+        public Map<String, HandlerMetrics> getHandlers() {
+            return handlers;
+        }
+    }
+
+    /**
+     * Snapshot of handler's metrics.
+     */
+    public static final class HandlerMetrics {
+
+        private final long handled;
+        private final long failures;
+        private final double averageMillis;
+
+        private HandlerMetrics(RegisteredHandler handler) {
+            this.handled = handler.handled.get();
+            this.failures = handler.failures.get();
+            this.averageMillis = (handled > 0)
+                    ? (double) handler.totalNanos.get() / handled / TimeUnit.MILLISECONDS.toNanos(1)
+                    : 0;
+        }
+
+        public long getHandled() {
+            return handled;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public double getAverageMillis() {
+            return averageMillis;
+        }
+    }
+
+    private Properties consumerProperties(Delivery delivery) {
+
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty("group.id", (delivery == Delivery.SHARED) ? SHARED_GROUP_ID : broadcastGroupId);
+        consumerProperties.setProperty("enable.auto.commit", "false");
+        consumerProperties.setProperty("auto.offset.reset", "latest");
+        consumerProperties.setProperty("key.deserializer",
+                "org.apache.kafka.common.serialization.ByteArrayDeserializer");
+        consumerProperties.setProperty("value.deserializer", "com.mapr.db.cdc.ChangeDataRecordDeserializer");
+
+        return consumerProperties;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void loginTestUser(String username, String group) {
+        UserGroupInformation currentUgi = UserGroupInformation.createUserForTesting(username, new String[]{group});
+        UserGroupInformation.setLoginUser(currentUgi);
+    }
+}
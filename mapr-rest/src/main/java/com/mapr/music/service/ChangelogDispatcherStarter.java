@@ -0,0 +1,28 @@
+package com.mapr.music.service;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.DependsOn;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.inject.Inject;
+
+/**
+ * Starts {@link ChangelogDispatcher} consumers after all the startup handlers are registered. Otherwise handler, which
+ * is registered after the shared consumer is started, misses the events, which are already polled and committed.
+ * <p>
+ * New startup beans, which register change handlers, must be listed in {@link DependsOn}.
+ */
+@Startup
+@Singleton
+@DependsOn({"ChangelogDispatcher", "EntityCacheInvalidationService", "CdcStatisticService",
+        "ReportingAggregatesService", "ArtistsChangelogListenerService"})
+public class ChangelogDispatcherStarter {
+
+    @Inject
+    private ChangelogDispatcher dispatcher;
+
+    @PostConstruct
+    public void init() {
+        dispatcher.start();
+    }
+}
@@ -0,0 +1,109 @@
+package com.mapr.music.service;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+import static com.mapr.music.util.MaprProperties.*;
+
+/**
+ * Provides single ElasticSearch client, which is shared by the whole application. Client maintains pool of persistent
+ * HTTP connections, so creating client per service instance would create new connection pool each time.
+ * <p>
+ * Connection pool size, keep-alive and timeouts are configured via {@link com.mapr.music.util.MaprProperties}.
+ */
+public final class ESClientProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(ESClientProvider.class);
+
+    /**
+     * Client is created lazily on first use, since it starts I/O threads.
+     */
+    private static final class Holder {
+        static final ESClientProvider INSTANCE = new ESClientProvider();
+    }
+
+    private final RestClient lowLevelClient;
+    private final RestHighLevelClient client;
+    private volatile boolean closed;
+
+    private ESClientProvider() {
+
+        this.lowLevelClient = RestClient.builder(new HttpHost(ES_REST_HOST, ES_REST_PORT, "http"))
+                .setRequestConfigCallback(requestConfig -> requestConfig
+                        .setConnectTimeout(ES_REST_CONNECT_TIMEOUT_MS)
+                        .setConnectionRequestTimeout(ES_REST_CONNECTION_REQUEST_TIMEOUT_MS)
+                        .setSocketTimeout(ES_REST_SOCKET_TIMEOUT_MS))
+                .setMaxRetryTimeoutMillis(ES_REST_MAX_RETRY_TIMEOUT_MS)
+                .setHttpClientConfigCallback(httpClient -> httpClient
+                        .setMaxConnTotal(ES_REST_MAX_CONNECTIONS)
+                        .setMaxConnPerRoute(ES_REST_MAX_CONNECTIONS_PER_ROUTE)
+                        .setKeepAliveStrategy((response, context) -> ES_REST_KEEP_ALIVE_MS))
+                .build();
+
+        this.client = new RestHighLevelClient(lowLevelClient);
+        log.info("ElasticSearch client for '{}:{}' is created", ES_REST_HOST, ES_REST_PORT);
+    }
+
+    /**
+     * Returns application-wide provider instance.
+     *
+     * @return provider instance.
+     */
+    public static ESClientProvider getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Returns shared client. Client must not be closed by callers.
+     *
+     * @return shared client.
+     * @throws IllegalStateException in case when client is closed.
+     */
+    public RestHighLevelClient getClient() {
+
+        if (closed) {
+            throw new IllegalStateException("ElasticSearch client is closed");
+        }
+
+        return client;
+    }
+
+    /**
+     * Returns low-level client, which is shared with the high-level one. Used for the requests, which are not supported
+     * by the high-level client, e.g. multi search. Client must not be closed by callers.
+     *
+     * @return shared low-level client.
+     * @throws IllegalStateException in case when client is closed.
+     */
+    public RestClient getLowLevelClient() {
+
+        if (closed) {
+            throw new IllegalStateException("ElasticSearch client is closed");
+        }
+
+        return lowLevelClient;
+    }
+
+    /**
+     * Closes the client and releases its connections.
+     */
+    public void close() {
+
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            lowLevelClient.close();
+            log.info("ElasticSearch client is closed");
+        } catch (IOException e) {
+            log.warn("Can not close ElasticSearch client. Exception: {}", e);
+        }
+    }
+}
@@ -2,40 +2,111 @@ package com.mapr.music.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.mapr.music.dao.ArtistDao;
 import com.mapr.music.dao.MaprDbDao;
+import com.mapr.music.dto.FederatedSearchDto;
+import com.mapr.music.dto.Pagination;
 import com.mapr.music.dto.ResourceDto;
+import com.mapr.music.dto.SuggestionsDto;
 import com.mapr.music.model.Album;
 import com.mapr.music.model.Artist;
 import com.mapr.music.model.ESSearchResult;
-import org.apache.http.HttpHost;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NStringEntity;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.Operator;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.tophits.TopHits;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static com.mapr.music.util.MaprProperties.*;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 
 public class ESSearchService implements PaginatedService {
 
     private static final int PER_PAGE_DEFAULT = 5;
     private static final int FIRST_PAGE_NUM = 1;
 
+    private static final String NAME_FIELD = "name";
+    private static final String SLUG_NAME_FIELD = "slug_name";
+    private static final String SLUG_POSTFIX_FIELD = "slug_postfix";
+    private static final String ARTIST_IMAGE_FIELD = "profile_image_url";
+    private static final String ALBUM_IMAGE_FIELD = "cover_image_url";
+    private static final String NUMBER_LONG_TAG = "$numberLong";
+
+    private static final int SUGGEST_LIMIT_DEFAULT = 5;
+    private static final int SUGGEST_LIMIT_MAX = 20;
+    private static final String NAME_AUTOCOMPLETE_FIELD = "name.autocomplete";
+    private static final String BY_INDEX_AGGREGATION = "by_index";
+    private static final String TOP_HITS_AGGREGATION = "top";
+
+    private static final ContentType NDJSON_CONTENT_TYPE = ContentType.create("application/x-ndjson",
+            StandardCharsets.UTF_8);
+
     private static final ObjectMapper mapper = new ObjectMapper();
-    private RestHighLevelClient client;
+
+    /**
+     * Only fields, which are needed to build search results, are fetched from the hit's source.
+     */
+    private static final String[] RESULT_SOURCE_FIELDS =
+            {NAME_FIELD, SLUG_NAME_FIELD, SLUG_POSTFIX_FIELD, ARTIST_IMAGE_FIELD, ALBUM_IMAGE_FIELD};
+
+    private static final Cache<String, SuggestionsDto> suggestions = CacheBuilder.newBuilder()
+            .maximumSize(SUGGEST_CACHE_MAX_SIZE)
+            .expireAfterWrite(SUGGEST_CACHE_TTL_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+    private final RestHighLevelClient client;
+    private final RestClient lowLevelClient;
+
+    /**
+     * Executes processing of search responses, so I/O threads of the ES client are not blocked by fetching documents
+     * from MapR-DB.
+     */
+    @Resource
+    private ManagedExecutorService executor;
 
     private static final Logger log = LoggerFactory.getLogger(ESSearchService.class);
 
@@ -48,9 +119,8 @@ public class ESSearchService implements PaginatedService {
 
         this.artistDao = artistDao;
         this.albumDao = albumDao;
-
-        RestClient lowLevelRestClient = RestClient.builder(new HttpHost(ES_REST_HOST, ES_REST_PORT, "http")).build();
-        this.client = new RestHighLevelClient(lowLevelRestClient);
+        this.client = ESClientProvider.getInstance().getClient();
+        this.lowLevelClient = ESClientProvider.getInstance().getLowLevelClient();
     }
 
     /**
@@ -61,9 +131,10 @@ public class ESSearchService implements PaginatedService {
      *                  default value will be used. Default value depends on implementation class.
      * @param page      specifies number of page, which will be returned. In case when page value is <code>null</code>
      *                  the first page will be returned.
-     * @return list of artists and albums whose names contain specified name entry.
+     * @return stage, which is completed with list of artists and albums whose names contain specified name entry.
      */
-    public ResourceDto<ESSearchResult> findByNameEntry(String nameEntry, Integer perPage, Integer page) {
+    public CompletionStage<ResourceDto<ESSearchResult>> findByNameEntry(String nameEntry, Integer perPage,
+                                                                         Integer page) {
         return findByNameEntry(nameEntry, perPage, page, ES_ARTISTS_INDEX, ES_ALBUMS_INDEX);
     }
 
@@ -75,9 +146,10 @@ public class ESSearchService implements PaginatedService {
      *                  default value will be used. Default value depends on implementation class.
      * @param page      specifies number of page, which will be returned. In case when page value is <code>null</code>
      *                  the first page will be returned.
-     * @return list of albums whose names contain specified name entry.
+     * @return stage, which is completed with list of albums whose names contain specified name entry.
      */
-    public ResourceDto<ESSearchResult> findAlbumsByNameEntry(String nameEntry, Integer perPage, Integer page) {
+    public CompletionStage<ResourceDto<ESSearchResult>> findAlbumsByNameEntry(String nameEntry, Integer perPage,
+                                                                               Integer page) {
         return findByNameEntry(nameEntry, perPage, page, ES_ALBUMS_INDEX);
     }
 
@@ -89,13 +161,144 @@ public class ESSearchService implements PaginatedService {
      *                  default value will be used. Default value depends on implementation class.
      * @param page      specifies number of page, which will be returned. In case when page value is <code>null</code>
      *                  the first page will be returned.
-     * @return list of artists whose names contain specified name entry.
+     * @return stage, which is completed with list of artists whose names contain specified name entry.
      */
-    public ResourceDto<ESSearchResult> findArtistsByNameEntry(String nameEntry, Integer perPage, Integer page) {
+    public CompletionStage<ResourceDto<ESSearchResult>> findArtistsByNameEntry(String nameEntry, Integer perPage,
+                                                                                Integer page) {
         return findByNameEntry(nameEntry, perPage, page, ES_ARTISTS_INDEX);
     }
 
-    private ResourceDto<ESSearchResult> findByNameEntry(String nameEntry, Integer perPage, Integer page, String... indices) {
+    /**
+     * Finds Albums and Artists by specified name entry via single multi search request. Besides of the page of Albums
+     * and Artists ranked together, result contains the same page of Albums and Artists ranked separately and number of
+     * matches of each type, so search screen can be rendered without querying each type separately.
+     *
+     * @param nameEntry specifies search query.
+     * @param perPage   specifies number of search results per page. In case when value is <code>null</code> the
+     *                  default value will be used.
+     * @param page      specifies number of page, which will be returned. In case when page value is <code>null</code>
+     *                  the first page will be returned.
+     * @param dfs       specifies whether term statistics are collected across both indices before ranking Albums and
+     *                  Artists together, so their scores are comparable at the cost of additional round trip to the
+     *                  shards.
+     * @return stage, which is completed with federated search results.
+     */
+    public CompletionStage<FederatedSearchDto> federatedSearch(String nameEntry, Integer perPage, Integer page,
+                                                               boolean dfs) {
+
+        if (nameEntry == null || nameEntry.isEmpty()) {
+            throw new IllegalArgumentException("Name entry can not be null");
+        }
+
+        if (page == null) {
+            page = FIRST_PAGE_NUM;
+        }
+
+        if (page <= 0) {
+            throw new IllegalArgumentException("Page must be greater than zero");
+        }
+
+        if (perPage == null) {
+            perPage = PER_PAGE_DEFAULT;
+        }
+
+        if (perPage <= 0) {
+            throw new IllegalArgumentException("Per page value must be greater than zero");
+        }
+
+        int offset = (page - 1) * perPage;
+
+        // Page ranked together and pages of each type are fetched by the sub-queries of single request, so number of
+        // matches of each type is the total of the type's sub-query
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder()
+                .query(QueryBuilders.matchQuery(NAME_FIELD, nameEntry))
+                .fetchSource(RESULT_SOURCE_FIELDS, null)
+                .from(offset)
+                .size(perPage);
+
+        String requestBody;
+        try {
+            String source = sourceBuilder.toXContent(XContentFactory.jsonBuilder(), ToXContent.EMPTY_PARAMS).string();
+            requestBody = multiSearchHeader(dfs ? SearchType.DFS_QUERY_THEN_FETCH : null, ES_ALBUMS_INDEX,
+                    ES_ARTISTS_INDEX) + "\n" + source + "\n" +
+                    multiSearchHeader(null, ES_ALBUMS_INDEX) + "\n" + source + "\n" +
+                    multiSearchHeader(null, ES_ARTISTS_INDEX) + "\n" + source + "\n";
+        } catch (IOException e) {
+            CompletableFuture<FederatedSearchDto> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed.exceptionally(ex -> recover(ex, new FederatedSearchDto()));
+        }
+
+        int pageNumber = page;
+        int pageSize = perPage;
+
+        return multiSearch(requestBody)
+                .thenApplyAsync(responses -> {
+
+                    SearchHits mergedHits = responses.get(0).getHits();
+                    SearchHits albumHits = responses.get(1).getHits();
+                    SearchHits artistHits = responses.get(2).getHits();
+
+                    List<SearchHit> hits = new ArrayList<>();
+                    mergedHits.forEach(hits::add);
+                    int mergedHitsNum = hits.size();
+                    albumHits.forEach(hits::add);
+                    int albumsEnd = hits.size();
+                    artistHits.forEach(hits::add);
+
+                    // All the hits are converted at once, so missing slugs are fetched via single query per table
+                    List<ESSearchResult> results = hitsToResults(hits);
+
+                    Map<String, Long> facets = new LinkedHashMap<>();
+                    facets.put(ES_ALBUMS_TYPE, albumHits.getTotalHits());
+                    facets.put(ES_ARTISTS_TYPE, artistHits.getTotalHits());
+
+                    FederatedSearchDto federatedSearchDto = new FederatedSearchDto();
+                    federatedSearchDto.setResults(new ArrayList<>(results.subList(0, mergedHitsNum)));
+                    federatedSearchDto.setPagination(getPaginationInfo(pageNumber, pageSize,
+                            mergedHits.getTotalHits()));
+                    federatedSearchDto.setFacets(facets);
+                    federatedSearchDto.setAlbums(resultPage(results.subList(mergedHitsNum, albumsEnd),
+                            getPaginationInfo(pageNumber, pageSize, albumHits.getTotalHits())));
+                    federatedSearchDto.setArtists(resultPage(results.subList(albumsEnd, results.size()),
+                            getPaginationInfo(pageNumber, pageSize, artistHits.getTotalHits())));
+
+                    return federatedSearchDto;
+                }, executor)
+                .exceptionally(e -> recover(e, new FederatedSearchDto()));
+    }
+
+    /**
+     * Builds header line of the multi search sub-query.
+     *
+     * @param searchType search type of the sub-query or <code>null</code> for the default one.
+     * @param indices    indices of the sub-query.
+     * @return header line.
+     */
+    private static String multiSearchHeader(SearchType searchType, String... indices) throws IOException {
+
+        XContentBuilder header = XContentFactory.jsonBuilder()
+                .startObject()
+                .field("index", String.join(",", indices));
+
+        if (searchType != null) {
+            header.field("search_type", searchType.name().toLowerCase(Locale.ROOT));
+        }
+
+        return header.endObject().string();
+    }
+
+    private static ResourceDto<ESSearchResult> resultPage(List<ESSearchResult> results, Pagination pagination) {
+
+        ResourceDto<ESSearchResult> resultPage = new ResourceDto<>();
+        resultPage.setResults(new ArrayList<>(results));
+        resultPage.setPagination(pagination);
+
+        return resultPage;
+    }
+
+    private CompletionStage<ResourceDto<ESSearchResult>> findByNameEntry(String nameEntry, Integer perPage,
+                                                                         Integer page, String... indices) {
 
         if (nameEntry == null || nameEntry.isEmpty()) {
             throw new IllegalArgumentException("Name entry can not be null");
@@ -117,9 +320,9 @@ public class ESSearchService implements PaginatedService {
             throw new IllegalArgumentException("Per page value must be greater than zero");
         }
 
-        JsonNode jsonQuery = matchQueryByName(nameEntry);
         SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
-        sourceBuilder.query(QueryBuilders.wrapperQuery(jsonQuery.toString()));
+        sourceBuilder.query(QueryBuilders.matchQuery(NAME_FIELD, nameEntry));
+        sourceBuilder.fetchSource(RESULT_SOURCE_FIELDS, null);
 
         int offset = (page - 1) * perPage;
         sourceBuilder.from(offset);
@@ -128,93 +331,314 @@ public class ESSearchService implements PaginatedService {
         SearchRequest searchRequest = new SearchRequest(indices);
         searchRequest.source(sourceBuilder);
 
-        ResourceDto<ESSearchResult> resultPage = new ResourceDto<>();
-        try {
-            SearchResponse response = client.search(searchRequest);
-            JsonNode result = mapper.readTree(response.toString());
+        int pageNumber = page;
+        int pageSize = perPage;
 
-            resultPage.setResults(mapToResultList(result));
-            resultPage.setPagination(getPaginationInfo(page, perPage, response.getHits().getTotalHits()));
-        } catch (IOException e) {
-            log.warn("Can not get ES search response. Exception: {}", e);
+        return search(searchRequest)
+                .thenApplyAsync(response -> {
+
+                    SearchHits hits = response.getHits();
+
+                    ResourceDto<ESSearchResult> resultPage = new ResourceDto<>();
+                    resultPage.setResults(hitsToResults(hits));
+                    resultPage.setPagination(getPaginationInfo(pageNumber, pageSize, hits.getTotalHits()));
+
+                    return resultPage;
+                }, executor)
+                .exceptionally(e -> recover(e, new ResourceDto<>()));
+    }
+
+    /**
+     * Suggests Albums and Artists whose names contain words starting with the specified prefix. Albums and Artists are
+     * found via single query. Suggestions are cached per prefix.
+     *
+     * @param prefix prefix of the name's words.
+     * @param limit  maximum number of suggested Albums and Artists each. In case when value is <code>null</code> the
+     *               default value will be used.
+     * @return stage, which is completed with suggested Albums and Artists.
+     */
+    public CompletionStage<SuggestionsDto> suggest(String prefix, Integer limit) {
+
+        if (prefix == null || prefix.trim().isEmpty()) {
+            throw new IllegalArgumentException("Prefix can not be empty");
         }
 
-        return resultPage;
+        if (limit == null) {
+            limit = SUGGEST_LIMIT_DEFAULT;
+        }
+
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be greater than zero");
+        }
+
+        int actualLimit = Math.min(limit, SUGGEST_LIMIT_MAX);
+        String normalizedPrefix = prefix.trim().toLowerCase();
+        String cacheKey = actualLimit + ":" + normalizedPrefix;
+
+        SuggestionsDto cached = suggestions.getIfPresent(cacheKey);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // Top hits of each index are returned by single request with no search hits, which is served by shard
+        // request cache of ES on repeated prefixes
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder()
+                .query(QueryBuilders.matchQuery(NAME_AUTOCOMPLETE_FIELD, normalizedPrefix).operator(Operator.AND))
+                .size(0)
+                .aggregation(AggregationBuilders.terms(BY_INDEX_AGGREGATION)
+                        .field("_index")
+                        .size(2)
+                        .subAggregation(AggregationBuilders.topHits(TOP_HITS_AGGREGATION)
+                                .size(actualLimit)
+                                .fetchSource(RESULT_SOURCE_FIELDS, null)));
+
+        SearchRequest searchRequest = new SearchRequest(ES_ALBUMS_INDEX, ES_ARTISTS_INDEX).source(sourceBuilder);
+
+        return search(searchRequest)
+                .thenApplyAsync(response -> {
+
+                    List<SearchHit> hits = new ArrayList<>();
+                    Terms byIndex = response.getAggregations().get(BY_INDEX_AGGREGATION);
+                    for (Terms.Bucket bucket : byIndex.getBuckets()) {
+                        TopHits topHits = bucket.getAggregations().get(TOP_HITS_AGGREGATION);
+                        topHits.getHits().forEach(hits::add);
+                    }
+
+                    List<ESSearchResult> results = hitsToResults(hits);
+                    SuggestionsDto suggestionsDto = new SuggestionsDto(
+                            results.stream().filter(r -> ES_ALBUMS_TYPE.equals(r.getType())).collect(toList()),
+                            results.stream().filter(r -> ES_ARTISTS_TYPE.equals(r.getType())).collect(toList())
+                    );
+
+                    suggestions.put(cacheKey, suggestionsDto);
+
+                    return suggestionsDto;
+                }, executor)
+                .exceptionally(e -> recover(e, new SuggestionsDto(Collections.emptyList(), Collections.emptyList())));
     }
 
-    private JsonNode matchQueryByName(String name) {
+    /**
+     * Executes search request asynchronously, so the caller's thread is not blocked while waiting for the response.
+     *
+     * @param searchRequest search request.
+     * @return future, which is completed with search response.
+     */
+    private CompletableFuture<SearchResponse> search(SearchRequest searchRequest) {
+
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        client.searchAsync(searchRequest, ActionListener.wrap(future::complete, future::completeExceptionally));
 
-        ObjectNode jsonQuery = mapper.createObjectNode();
-        ObjectNode nameNode = mapper.createObjectNode();
-        nameNode.put("name", name);
-        jsonQuery.set("match", nameNode);
+        return future;
+    }
 
-        return jsonQuery;
+    /**
+     * Executes multi search request asynchronously via low-level client, since multi search is not supported by the
+     * high-level client of this version.
+     *
+     * @param requestBody newline-delimited headers and sources of the sub-queries.
+     * @return future, which is completed with responses of the sub-queries in the order of the sub-queries.
+     */
+    private CompletableFuture<List<SearchResponse>> multiSearch(String requestBody) {
+
+        CompletableFuture<List<SearchResponse>> future = new CompletableFuture<>();
+        HttpEntity entity = new NStringEntity(requestBody, NDJSON_CONTENT_TYPE);
+        lowLevelClient.performRequestAsync("GET", "/_msearch", Collections.emptyMap(), entity,
+                new ResponseListener() {
+
+                    @Override
+                    public void onSuccess(Response response) {
+                        try {
+                            future.complete(parseMultiSearchResponse(response.getEntity()));
+                        } catch (IOException | RuntimeException e) {
+                            future.completeExceptionally(e);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+
+        return future;
     }
 
-    private List<ESSearchResult> mapToResultList(JsonNode result) {
+    /**
+     * Parses responses of the sub-queries. Failure of any sub-query is reported as I/O failure of the whole request.
+     */
+    private static List<SearchResponse> parseMultiSearchResponse(HttpEntity entity) throws IOException {
 
-        if (result == null) {
-            return Collections.emptyList();
+        JsonNode items;
+        try (InputStream content = entity.getContent()) {
+            items = mapper.readTree(content).path("responses");
         }
 
-        JsonNode hits = result.get("hits");
+        List<SearchResponse> responses = new ArrayList<>();
+        for (JsonNode item : items) {
 
-        int total = hits.get("total").asInt();
-        if (total == 0) {
-            return Collections.emptyList();
-        }
+            if (item.has("error")) {
+                throw new IOException("Multi search sub-query failed: " + item.get("error"));
+            }
 
-        ArrayNode hitsArray = (ArrayNode) hits.get("hits");
-        List<ESSearchResult> resultList = new ArrayList<>();
-        for (JsonNode hit : hitsArray) {
-            resultList.add(hitToResult(hit));
+            try (XContentParser parser = XContentType.JSON.xContent()
+                    .createParser(NamedXContentRegistry.EMPTY, item.toString())) {
+                responses.add(SearchResponse.fromXContent(parser));
+            }
         }
 
-        return resultList;
+        return responses;
     }
 
-    private ESSearchResult hitToResult(JsonNode hit) {
+    /**
+     * Returns fallback value in case of I/O failure, as if nothing was found. Other failures are propagated.
+     */
+    private static <T> T recover(Throwable throwable, T fallback) {
 
-        JsonNode jsonSource = hit.get("_source");
-        ESSearchResult result = mapper.convertValue(jsonSource, ESSearchResult.class);
-        result.setId(hit.get("_id").asText());
-        result.setType(hit.get("_type").asText());
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        if (cause instanceof IOException) {
+            log.warn("Can not get ES search response. Exception: {}", cause);
+            return fallback;
+        }
 
-        if (isArtistHit(hit)) {
+        throw (cause instanceof RuntimeException) ? (RuntimeException) cause : new CompletionException(cause);
+    }
+
+    /**
+     * Converts search hits to the search results. Slugs and images of documents, which were indexed without them, are
+     * fetched from MapR-DB.
+     *
+     * @param hits search hits.
+     * @return search results.
+     */
+    private List<ESSearchResult> hitsToResults(Iterable<SearchHit> hits) {
 
-            Artist artist = artistDao.getById(result.getId(), "profile_image_url", "slug_name", "slug_postfix");
-            if (artist == null) {
-                return result;
+        List<ESSearchResult> resultList = new ArrayList<>();
+        List<String> artistIds = new ArrayList<>();
+        List<String> albumIds = new ArrayList<>();
+        for (SearchHit hit : hits) {
+
+            Map<String, Object> source = hit.getSourceAsMap();
+            ESSearchResult hitResult = hitToResult(hit, source);
+
+            // Slugs and images are indexed along with names, so only documents indexed before that are fetched
+            if (isArtistHit(hit) && !fillFromSource(hitResult, source, ARTIST_IMAGE_FIELD)) {
+                artistIds.add(hitResult.getId());
+            } else if (isAlbumHit(hit) && !fillFromSource(hitResult, source, ALBUM_IMAGE_FIELD)) {
+                albumIds.add(hitResult.getId());
             }
 
-            result.setImageURL(artist.getProfileImageUrl());
+            resultList.add(hitResult);
+        }
+
+        if (artistIds.isEmpty() && albumIds.isEmpty()) {
+            return resultList;
+        }
 
-            String artistSlug = SlugService.constructSlugString(artist.getSlugName(), artist.getSlugPostfix());
-            result.setSlug(artistSlug);
+        // Fetch images and slugs of the rest of found artists and albums via single query per table
+        Map<String, Artist> artistsById = artistDao.getByIds(artistIds, ARTIST_IMAGE_FIELD, SLUG_NAME_FIELD,
+                SLUG_POSTFIX_FIELD)
+                .stream()
+                .collect(toMap(Artist::getId, Function.identity(), (first, second) -> first));
 
-        } else if (isAlbumHit(hit)) {
+        Map<String, Album> albumsById = albumDao.getByIds(albumIds, ALBUM_IMAGE_FIELD, SLUG_NAME_FIELD,
+                SLUG_POSTFIX_FIELD)
+                .stream()
+                .collect(toMap(Album::getId, Function.identity(), (first, second) -> first));
 
-            Album album = albumDao.getById(result.getId(), "cover_image_url", "slug_name", "slug_postfix");
-            if (album == null) {
-                return result;
+        for (ESSearchResult searchResult : resultList) {
+
+            Artist artist = artistsById.get(searchResult.getId());
+            if (artist != null && ES_ARTISTS_TYPE.equals(searchResult.getType())) {
+                searchResult.setImageURL(artist.getProfileImageUrl());
+                searchResult.setSlug(SlugService.constructSlugString(artist.getSlugName(), artist.getSlugPostfix()));
+            }
+
+            Album album = albumsById.get(searchResult.getId());
+            if (album != null && ES_ALBUMS_TYPE.equals(searchResult.getType())) {
+                searchResult.setImageURL(album.getCoverImageUrl());
+                searchResult.setSlug(SlugService.constructSlugString(album.getSlugName(), album.getSlugPostfix()));
             }
+        }
 
-            result.setImageURL(album.getCoverImageUrl());
+        return resultList;
+    }
+
+    private ESSearchResult hitToResult(SearchHit hit, Map<String, Object> source) {
 
-            String albumSlug = SlugService.constructSlugString(album.getSlugName(), album.getSlugPostfix());
-            result.setSlug(albumSlug);
+        ESSearchResult result = new ESSearchResult();
+        result.setId(hit.getId());
+        result.setType(hit.getType());
+
+        Object name = (source != null) ? source.get(NAME_FIELD) : null;
+        if (name != null) {
+            result.setName(name.toString());
         }
 
         return result;
     }
 
-    private boolean isArtistHit(JsonNode hit) {
-        return ES_ARTISTS_INDEX.equals(hit.get("_index").asText()) && ES_ARTISTS_TYPE.equals(hit.get("_type").asText());
+    /**
+     * Sets slug and image of the search result from the hit's source.
+     *
+     * @param result     search result.
+     * @param source     hit's source.
+     * @param imageField name of the image field.
+     * @return <code>false</code> if source does not contain slug, which means that the document was indexed before
+     * slugs and images were indexed.
+     */
+    private boolean fillFromSource(ESSearchResult result, Map<String, Object> source, String imageField) {
+
+        Object slugName = (source != null) ? source.get(SLUG_NAME_FIELD) : null;
+        Long slugPostfix = (source != null) ? toLong(source.get(SLUG_POSTFIX_FIELD)) : null;
+        if (slugName == null || slugPostfix == null) {
+            return false;
+        }
+
+        result.setSlug(SlugService.constructSlugString(slugName.toString(), slugPostfix));
+
+        Object image = source.get(imageField);
+        if (image != null) {
+            result.setImageURL(image.toString());
+        }
+
+        return true;
+    }
+
+    /**
+     * Converts slug postfix value to long. Documents, which were indexed with OJAI type tags, contain postfix as
+     * <code>{"$numberLong": value}</code> object.
+     */
+    private static Long toLong(Object value) {
+
+        if (value instanceof Map) {
+            value = ((Map<?, ?>) value).get(NUMBER_LONG_TAG);
+        }
+
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+
+        if (value instanceof String) {
+            try {
+                return Long.parseLong((String) value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    private boolean isArtistHit(SearchHit hit) {
+        return ES_ARTISTS_INDEX.equals(hit.getIndex()) && ES_ARTISTS_TYPE.equals(hit.getType());
     }
 
-    private boolean isAlbumHit(JsonNode hit) {
-        return ES_ALBUMS_INDEX.equals(hit.get("_index").asText()) && ES_ALBUMS_TYPE.equals(hit.get("_type").asText());
+    private boolean isAlbumHit(SearchHit hit) {
+        return ES_ALBUMS_INDEX.equals(hit.getIndex()) && ES_ALBUMS_TYPE.equals(hit.getType());
     }
 
     @Override
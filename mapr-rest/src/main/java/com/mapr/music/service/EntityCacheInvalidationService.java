@@ -0,0 +1,56 @@
+package com.mapr.music.service;
+
+import com.mapr.music.dao.DocumentCache;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.DependsOn;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.inject.Inject;
+
+import static com.mapr.music.util.MaprProperties.*;
+
+/**
+ * Invalidates {@link DocumentCache} of Albums and Artists tables on MapR-DB CDC events. Events are broadcast, so every
+ * node receives all the change records and keeps it's cache coherent. Cache is bypassed while the consumer of the
+ * changelog is down and recreated.
+ */
+@Startup
+@Singleton
+@DependsOn("ChangelogDispatcher")
+public class EntityCacheInvalidationService {
+
+    @Inject
+    private ChangelogDispatcher dispatcher;
+
+    @PostConstruct
+    public void init() {
+        subscribe(ALBUMS_CHANGE_LOG, DocumentCache.forTable(ALBUMS_TABLE_NAME));
+        subscribe(ARTISTS_CHANGE_LOG, DocumentCache.forTable(ARTISTS_TABLE_NAME));
+    }
+
+    private void subscribe(String changelog, DocumentCache cache) {
+
+        dispatcher.register(changelog, ChangelogDispatcher.Delivery.BROADCAST, "cache-invalidation",
+                new ChangeHandler() {
+
+                    @Override
+                    public void handle(ChangeEvent event) {
+                        // Any change of the document invalidates all it's cached projections
+                        cache.invalidate(event.getDocumentId());
+                    }
+
+                    @Override
+                    public void suspend() {
+                        // Changes are not delivered while consumer is down, so documents are read from the table
+                        cache.disable();
+                    }
+
+                    @Override
+                    public void resume() {
+                        cache.enable();
+                    }
+                });
+    }
+
+}
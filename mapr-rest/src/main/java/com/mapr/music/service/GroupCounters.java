@@ -0,0 +1,66 @@
+package com.mapr.music.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Counts documents per group. Group of each document is remembered, so the document can be moved to another group or
+ * removed knowing only it's identifier, as it happens with MapR-DB CDC records.
+ */
+final class GroupCounters {
+
+    private final Map<String, String> groupById = new HashMap<>();
+    private final Map<String, Long> counts = new HashMap<>();
+
+    /**
+     * Sets group of the document. Document is moved from it's previous group, if any.
+     *
+     * @param id    document's identifier.
+     * @param group document's group.
+     */
+    synchronized void set(String id, String group) {
+
+        Objects.requireNonNull(group, "Group can not be null");
+        String previous = groupById.put(id, group);
+        if (group.equals(previous)) {
+            return;
+        }
+
+        if (previous != null) {
+            decrement(previous);
+        }
+
+        counts.merge(group, 1L, Long::sum);
+    }
+
+    /**
+     * Removes document from it's group.
+     *
+     * @param id document's identifier.
+     */
+    synchronized void remove(String id) {
+
+        String previous = groupById.remove(id);
+        if (previous != null) {
+            decrement(previous);
+        }
+    }
+
+    /**
+     * Returns number of documents per group.
+     *
+     * @return copy of the counters.
+     */
+    synchronized Map<String, Long> getCounts() {
+        return new HashMap<>(counts);
+    }
+
+    synchronized long getCount(String group) {
+        return counts.getOrDefault(group, 0L);
+    }
+
+    private void decrement(String group) {
+        counts.computeIfPresent(group, (key, count) -> (count > 1) ? count - 1 : null);
+    }
+}
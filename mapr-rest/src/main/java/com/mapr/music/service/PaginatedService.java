@@ -1,6 +1,11 @@
 package com.mapr.music.service;
 
+import com.mapr.music.dao.PageCursor;
+import com.mapr.music.dao.SortOption;
 import com.mapr.music.dto.Pagination;
+import com.mapr.music.exception.ValidationException;
+
+import java.util.List;
 
 /**
  * Defines default method for computing pagination info for paginated services.
@@ -41,4 +46,43 @@ public interface PaginatedService {
         return new Pagination(perPage, totalNum, page, pages);
     }
 
+    /**
+     * Computes pagination info for the page, which is fetched using keyset pagination. Page number is not known in this
+     * case, so it is set to <code>0</code>.
+     *
+     * @param perPage    number of documents per page.
+     * @param totalNum   total number of documents.
+     * @param nextCursor cursor of the next page. May be <code>null</code> if there is no next page.
+     * @return pagination info.
+     */
+    default Pagination getCursorPaginationInfo(long perPage, long totalNum, String nextCursor) {
+
+        Pagination pagination = getPaginationInfo(0, perPage, totalNum);
+        pagination.setNextCursor(nextCursor);
+
+        return pagination;
+    }
+
+    /**
+     * Decodes cursor of the page, which is fetched using keyset pagination.
+     *
+     * @param cursor      cursor returned with the previous page. Empty or <code>null</code> cursor means first page.
+     * @param sortOptions sort options of the page.
+     * @return decoded cursor or <code>null</code> for the first page.
+     * @throws ValidationException in case when cursor is malformed or created for different sort options.
+     */
+    default PageCursor decodeCursor(String cursor, List<SortOption> sortOptions) {
+
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+
+        List<PageCursor.SortKey> keys = PageCursor.sortKeys(sortOptions);
+        try {
+            return PageCursor.decode(cursor, keys);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Invalid cursor", e.getMessage());
+        }
+    }
+
 }
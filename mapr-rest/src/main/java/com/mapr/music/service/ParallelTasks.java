@@ -0,0 +1,50 @@
+package com.mapr.music.service;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Runs independent changes of several documents in parallel.
+ */
+final class ParallelTasks {
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * Applies action to each of the items via the specified executor and waits until all of them are processed.
+     *
+     * @param executor executor, which runs actions.
+     * @param items    items to process.
+     * @param action   action, which is applied to each item.
+     * @param <T>      type of items.
+     * @throws RuntimeException failure of any action, which is rethrown after all the actions are completed.
+     */
+    static <T> void forEach(Executor executor, Collection<T> items, Consumer<T> action) {
+
+        if (items.isEmpty()) {
+            return;
+        }
+
+        if (items.size() == 1) {
+            items.forEach(action);
+            return;
+        }
+
+        try {
+            CompletableFuture.allOf(items.stream()
+                    .map(item -> CompletableFuture.runAsync(() -> action.accept(item), executor))
+                    .toArray(CompletableFuture[]::new))
+                    .join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+}
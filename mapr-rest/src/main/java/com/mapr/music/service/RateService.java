@@ -1,20 +1,22 @@
 package com.mapr.music.service;
 
 import com.mapr.music.dao.*;
+import com.mapr.music.dto.DtoMapper;
 import com.mapr.music.dto.RateDto;
 import com.mapr.music.exception.ResourceNotFoundException;
 import com.mapr.music.model.*;
-import org.apache.commons.beanutils.PropertyUtilsBean;
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.lang.reflect.InvocationTargetException;
 import java.security.Principal;
-import java.util.List;
 import java.util.UUID;
 
 public class RateService {
 
+    private static final DtoMapper<ArtistRate, RateDto> ARTIST_RATE_TO_DTO =
+            DtoMapper.of(ArtistRate.class, RateDto.class);
+    private static final DtoMapper<AlbumRate, RateDto> ALBUM_RATE_TO_DTO = DtoMapper.of(AlbumRate.class, RateDto.class);
+
     private final AlbumRateDao albumRateDao;
     private final ArtistRateDao artistRateDao;
     private final AlbumDao albumDao;
@@ -108,10 +110,12 @@ public class RateService {
 
         AlbumRate possibleExistingRate = albumRateDao.getRate(userId, albumId);
         if (possibleExistingRate != null) {
+            double previousRating = (possibleExistingRate.getRating() != null) ? possibleExistingRate.getRating() : 0;
             possibleExistingRate.setRating(rate);
-            AlbumRate newAlbumRate = albumRateDao.update(possibleExistingRate.getId(), possibleExistingRate);
+            albumRateDao.mutate(possibleExistingRate.getId(), possibleExistingRate);
 
-            return recomputeAlbumRate(newAlbumRate, existingAlbum);
+            // Number of rates is not changed, so only the difference between old and new values is applied
+            return applyAlbumRateDelta(existingAlbum, rate - previousRating, 0);
         }
 
         AlbumRate albumRate = new AlbumRate();
@@ -119,27 +123,53 @@ public class RateService {
         albumRate.setUserId(userId);
         albumRate.setDocumentId(albumId);
         albumRate.setRating(rate);
-        AlbumRate newAlbumRate = albumRateDao.create(albumRate);
+        albumRateDao.create(albumRate);
 
-        return recomputeAlbumRate(newAlbumRate, existingAlbum);
+        return applyAlbumRateDelta(existingAlbum, rate, 1);
     }
 
-    private RateDto recomputeAlbumRate(AlbumRate newAlbumRate, Album existingAlbum) {
-        List<AlbumRate> albumRates = albumRateDao.getByAlbumId(newAlbumRate.getDocumentId());
-        double aggregatedRating = albumRates.stream().mapToDouble(AlbumRate::getRating).sum() / albumRates.size();
-        existingAlbum.setRating(aggregatedRating);
-        albumDao.update(existingAlbum.getId(), existingAlbum);
+    private RateDto applyAlbumRateDelta(Album existingAlbum, double sumDelta, long countDelta) {
+
+        String albumId = existingAlbum.getId();
 
-        return new RateDto(aggregatedRating);
+        // Album was rated before running aggregates were introduced, so they are computed from all the rates once.
+        // Rate is already stored, so it is taken into account
+        if (existingAlbum.getRatingCount() == null) {
+            RatingAggregates.Totals totals = RatingAggregates.Totals.EMPTY;
+            for (AlbumRate albumRate : albumRateDao.getByAlbumId(albumId)) {
+                if (albumRate.getRating() != null) {
+                    totals = totals.add(albumRate.getRating());
+                }
+            }
+
+            if (albumDao.replaceRatingAggregates(albumId, null, totals)) {
+                return new RateDto(totals.getAverage());
+            }
+        }
+
+        return new RateDto(albumDao.applyRatingDelta(albumId, sumDelta, countDelta));
     }
 
-    private RateDto recomputeArtistRate(ArtistRate newArtistRate, Artist existingArtist) {
-        List<ArtistRate> artistRates = artistRateDao.getByArtistId(newArtistRate.getDocumentId());
-        double aggregatedRating = artistRates.stream().mapToDouble(ArtistRate::getRating).sum() / artistRates.size();
-        existingArtist.setRating(aggregatedRating);
-        artistDao.update(existingArtist.getId(), existingArtist);
+    private RateDto applyArtistRateDelta(Artist existingArtist, double sumDelta, long countDelta) {
+
+        String artistId = existingArtist.getId();
+
+        // Artist was rated before running aggregates were introduced, so they are computed from all the rates once.
+        // Rate is already stored, so it is taken into account
+        if (existingArtist.getRatingCount() == null) {
+            RatingAggregates.Totals totals = RatingAggregates.Totals.EMPTY;
+            for (ArtistRate artistRate : artistRateDao.getByArtistId(artistId)) {
+                if (artistRate.getRating() != null) {
+                    totals = totals.add(artistRate.getRating());
+                }
+            }
 
-        return new RateDto(aggregatedRating);
+            if (artistDao.replaceRatingAggregates(artistId, null, totals)) {
+                return new RateDto(totals.getAverage());
+            }
+        }
+
+        return new RateDto(artistDao.applyRatingDelta(artistId, sumDelta, countDelta));
     }
 
     /**
@@ -235,10 +265,12 @@ public class RateService {
 
         ArtistRate possibleExistingRate = artistRateDao.getRate(userId, artistId);
         if (possibleExistingRate != null) {
+            double previousRating = (possibleExistingRate.getRating() != null) ? possibleExistingRate.getRating() : 0;
             possibleExistingRate.setRating(rate);
-            ArtistRate newArtistRate = artistRateDao.update(possibleExistingRate.getId(), possibleExistingRate);
+            artistRateDao.mutate(possibleExistingRate.getId(), possibleExistingRate);
 
-            return recomputeArtistRate(newArtistRate, existingArtist);
+            // Number of rates is not changed, so only the difference between old and new values is applied
+            return applyArtistRateDelta(existingArtist, rate - previousRating, 0);
         }
 
         ArtistRate artistRate = new ArtistRate();
@@ -247,9 +279,9 @@ public class RateService {
         artistRate.setDocumentId(artistId);
         artistRate.setRating(rate);
 
-        ArtistRate newArtistRate = artistRateDao.create(artistRate);
+        artistRateDao.create(artistRate);
 
-        return recomputeArtistRate(newArtistRate, existingArtist);
+        return applyArtistRateDelta(existingArtist, rate, 1);
     }
 
     /**
@@ -275,28 +307,12 @@ public class RateService {
 
     private RateDto artistRateToDto(ArtistRate artistRate) {
 
-        RateDto rateDto = new RateDto();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(rateDto, artistRate);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create artist rate Data Transfer Object", e);
-        }
-
-        return rateDto;
+        return ARTIST_RATE_TO_DTO.map(artistRate);
     }
 
     private RateDto albumRateToDto(AlbumRate albumRate) {
 
-        RateDto rateDto = new RateDto();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(rateDto, albumRate);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create album rate Data Transfer Object", e);
-        }
-
-        return rateDto;
+        return ALBUM_RATE_TO_DTO.map(albumRate);
     }
 
 }
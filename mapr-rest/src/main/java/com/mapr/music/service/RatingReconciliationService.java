@@ -0,0 +1,150 @@
+package com.mapr.music.service;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.mapr.music.dao.AlbumDao;
+import com.mapr.music.dao.AlbumRateDao;
+import com.mapr.music.dao.ArtistDao;
+import com.mapr.music.dao.ArtistRateDao;
+import com.mapr.music.dao.RatingAggregates;
+import com.mapr.music.model.Album;
+import com.mapr.music.model.Artist;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.DependsOn;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.mapr.music.util.MaprProperties.ALBUMS_CHANGE_LOG;
+import static com.mapr.music.util.MaprProperties.RATING_RECONCILIATION_INTERVAL_MS;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Periodically compares running rating aggregates of Albums and Artists with the actual rates and fixes the drift,
+ * which may be caused by failed or concurrent votes. Also initializes aggregates of documents, which were rated before
+ * running aggregates were introduced.
+ * <p>
+ * Reconciliation scans rates and rated tables, so it is run only by the node, which owns the Albums changelog.
+ */
+@Startup
+@Singleton
+@DependsOn("ChangelogDispatcher")
+public class RatingReconciliationService {
+
+    private static final long INITIAL_DELAY_MS = 60000L;
+    private static final int EXISTENCE_CHECK_BATCH_SIZE = 1000;
+
+    private static final Logger log = LoggerFactory.getLogger(RatingReconciliationService.class);
+
+    /**
+     * Replaces stored aggregates of the document if they are not changed since they were read.
+     */
+    interface AggregatesReplacer {
+        boolean replace(String id, RatingAggregates.Totals expected, RatingAggregates.Totals actual);
+    }
+
+    @Resource
+    private TimerService timerService;
+
+    @Inject
+    private ChangelogDispatcher dispatcher;
+
+    @Inject
+    @Named("albumDao")
+    private AlbumDao albumDao;
+
+    @Inject
+    @Named("artistDao")
+    private ArtistDao artistDao;
+
+    @Inject
+    private AlbumRateDao albumRateDao;
+
+    @Inject
+    private ArtistRateDao artistRateDao;
+
+    @PostConstruct
+    public void init() {
+        timerService.createIntervalTimer(INITIAL_DELAY_MS, RATING_RECONCILIATION_INTERVAL_MS,
+                new TimerConfig(null, false));
+    }
+
+    /**
+     * Reconciles rating aggregates. Runs outside of transaction, since it may take longer than transaction timeout.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void reconcile() {
+
+        // Albums changelog is consumed with shared delivery by CdcStatisticService, so at most one node owns it. There
+        // is no owner during rebalance, so the run is skipped until ownership settles
+        if (!dispatcher.isOwner(ALBUMS_CHANGE_LOG)) {
+            return;
+        }
+
+        try {
+            reconcileTable("albums", albumDao::getRatingAggregates, albumRateDao::getRatingTotals,
+                    ids -> albumDao.getByIds(ids, "_id").stream().map(Album::getId).collect(toSet()),
+                    albumDao::replaceRatingAggregates);
+
+            reconcileTable("artists", artistDao::getRatingAggregates, artistRateDao::getRatingTotals,
+                    ids -> artistDao.getByIds(ids, "_id").stream().map(Artist::getId).collect(toSet()),
+                    artistDao::replaceRatingAggregates);
+        } catch (Exception e) {
+            log.warn("Can not reconcile rating aggregates. Exception: {}", e);
+        }
+    }
+
+    private void reconcileTable(String name, Supplier<Map<String, RatingAggregates.Totals>> storedSupplier,
+                                Supplier<Map<String, RatingAggregates.Totals>> actualSupplier,
+                                Function<List<String>, Set<String>> existingIds, AggregatesReplacer replacer) {
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+
+        // Stored aggregates are read before the rates. So the vote, which is missed by rates scan, changes the stored
+        // aggregates after they are read, thus replacement of such aggregates fails and they are reconciled next time
+        Map<String, RatingAggregates.Totals> stored = storedSupplier.get();
+        Map<String, RatingAggregates.Totals> actual = actualSupplier.get();
+
+        int fixed = 0;
+        for (Map.Entry<String, RatingAggregates.Totals> entry : stored.entrySet()) {
+            RatingAggregates.Totals expected = actual.getOrDefault(entry.getKey(), RatingAggregates.Totals.EMPTY);
+            if (!entry.getValue().matches(expected) && replacer.replace(entry.getKey(), entry.getValue(), expected)) {
+                fixed++;
+            }
+        }
+
+        // Documents, which were rated before running aggregates were introduced. Rates of deleted documents may still
+        // exist, so aggregates are initialized only for existing documents
+        List<String> notInitialized = actual.keySet().stream()
+                .filter(id -> !stored.containsKey(id))
+                .collect(toList());
+
+        for (List<String> batch : Lists.partition(notInitialized, EXISTENCE_CHECK_BATCH_SIZE)) {
+            for (String id : existingIds.apply(batch)) {
+                if (replacer.replace(id, null, actual.get(id))) {
+                    fixed++;
+                }
+            }
+        }
+
+        log.info("Reconciled rating aggregates of '{}' {}. Fixed: '{}'. Elapsed time: {}", stored.size(), name, fixed,
+                stopwatch);
+    }
+}
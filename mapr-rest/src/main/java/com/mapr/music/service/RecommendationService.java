@@ -5,14 +5,13 @@ import com.mapr.music.dao.ArtistDao;
 import com.mapr.music.dao.MaprDbDao;
 import com.mapr.music.dto.AlbumDto;
 import com.mapr.music.dto.ArtistDto;
+import com.mapr.music.dto.DtoMapper;
 import com.mapr.music.model.Album;
 import com.mapr.music.model.Artist;
 import com.mapr.music.model.Recommendation;
-import org.apache.commons.beanutils.PropertyUtilsBean;
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.lang.reflect.InvocationTargetException;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -24,6 +23,11 @@ import static java.util.stream.Collectors.toList;
 
 public class RecommendationService {
 
+    private static final DtoMapper<Album, AlbumDto> ALBUM_TO_DTO = DtoMapper.of(Album.class, AlbumDto.class);
+    private static final DtoMapper<Artist.ShortInfo, ArtistDto> ARTIST_SHORT_INFO_TO_DTO =
+            DtoMapper.of(Artist.ShortInfo.class, ArtistDto.class);
+    private static final DtoMapper<Artist, ArtistDto> ARTIST_TO_DTO = DtoMapper.of(Artist.class, ArtistDto.class);
+
     private static final int MAX_LIMIT = 10;
     private static final int DEFAULT_LIMIT = 5;
 
@@ -97,11 +101,13 @@ public class RecommendationService {
             return new ArrayList<ArtistDto>();
         }
 
-        return recommendationForUser.getRecommendedArtistsIds().stream()
+        List<String> recommendedIds = recommendationForUser.getRecommendedArtistsIds().stream()
                 .filter(Objects::nonNull)
                 .filter(recommendedId -> !recommendedId.equals(id))
-                .map(artistId -> artistDao.getById(artistId, ARTIST_SHORT_INFO_FIELDS))
-                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        // Fetch all recommended artists via single query
+        return artistDao.getByIds(recommendedIds, ARTIST_SHORT_INFO_FIELDS).stream()
                 .map(this::artistToDto)
                 .collect(Collectors.collectingAndThen(Collectors.toList(), collected -> {
                     Collections.shuffle(collected);
@@ -140,11 +146,13 @@ public class RecommendationService {
             return new ArrayList<AlbumDto>();
         }
 
-        return recommendationForUser.getRecommendedAlbumsIds().stream()
+        List<String> recommendedIds = recommendationForUser.getRecommendedAlbumsIds().stream()
                 .filter(Objects::nonNull)
                 .filter(recommendedId -> !recommendedId.equals(id))
-                .map(albumId -> albumDao.getById(albumId, ALBUM_SHORT_INFO_FIELDS))
-                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        // Fetch all recommended albums via single query
+        return albumDao.getByIds(recommendedIds, ALBUM_SHORT_INFO_FIELDS).stream()
                 .map(this::albumToDto)
                 .collect(Collectors.collectingAndThen(Collectors.toList(), collected -> {
                     Collections.shuffle(collected);
@@ -165,13 +173,7 @@ public class RecommendationService {
 
     private AlbumDto albumToDto(Album album) {
 
-        AlbumDto albumDto = new AlbumDto();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(albumDto, album);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create album Data Transfer Object", e);
-        }
+        AlbumDto albumDto = ALBUM_TO_DTO.map(album);
 
         String slug = slugService.getSlugForAlbum(album);
         albumDto.setSlug(slug);
@@ -190,26 +192,12 @@ public class RecommendationService {
 
     private ArtistDto artistShortInfoToDto(Artist.ShortInfo artistShortInfo) {
 
-        ArtistDto artistDto = new ArtistDto();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(artistDto, artistShortInfo);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create artist Data Transfer Object", e);
-        }
-
-        return artistDto;
+        return ARTIST_SHORT_INFO_TO_DTO.map(artistShortInfo);
     }
 
     private ArtistDto artistToDto(Artist artist) {
 
-        ArtistDto artistDto = new ArtistDto();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(artistDto, artist);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create artist Data Transfer Object", e);
-        }
+        ArtistDto artistDto = ARTIST_TO_DTO.map(artist);
 
         String slug = slugService.getSlugForArtist(artist);
         artistDto.setSlug(slug);
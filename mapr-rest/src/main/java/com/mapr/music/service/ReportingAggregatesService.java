@@ -0,0 +1,376 @@
+package com.mapr.music.service;
+
+import com.google.common.base.Stopwatch;
+import com.mapr.music.dao.AlbumDao;
+import com.mapr.music.dao.ArtistDao;
+import com.mapr.music.dao.LanguageDao;
+import com.mapr.music.model.Language;
+import com.mapr.music.model.Pair;
+import org.ojai.Document;
+import org.ojai.DocumentStream;
+import org.ojai.Value;
+import org.ojai.store.cdc.ChangeNode;
+import org.ojai.store.cdc.ChangeOp;
+import org.ojai.types.ODate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.DependsOn;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static com.mapr.music.util.MaprProperties.*;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Maintains reporting aggregates in memory: number of Artists per area, number of Albums per language and number of
+ * Albums per release year. Aggregates are loaded via single scan of Albums and Artists tables and kept up to date via
+ * MapR-DB CDC. They are periodically rebuilt to fix the drift, which may be caused by missed change records.
+ * <p>
+ * Change events are broadcast, since each node keeps it's own copy of aggregates.
+ */
+@Startup
+@Singleton
+@DependsOn("ChangelogDispatcher")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ReportingAggregatesService {
+
+    private static final String AREA_FIELD = "area";
+    private static final String LANGUAGE_FIELD = "language";
+    private static final String RELEASED_DATE_FIELD = "released_date";
+
+    /**
+     * Group of documents, which do not have value of grouping field. Such groups are reported as 'Unknown', as
+     * Drill-based reporting does.
+     */
+    private static final String UNKNOWN_GROUP = "";
+    private static final String UNKNOWN_LABEL = "Unknown";
+
+    private static final Logger log = LoggerFactory.getLogger(ReportingAggregatesService.class);
+
+    /**
+     * Counters, which are built from the single scan and changed by the change records since then.
+     */
+    private static final class Aggregates {
+        final GroupCounters artistsByArea = new GroupCounters();
+        final GroupCounters albumsByLanguage = new GroupCounters();
+        final GroupCounters albumsByYear = new GroupCounters();
+    }
+
+    @Resource
+    private TimerService timerService;
+
+    @Inject
+    private ChangelogDispatcher dispatcher;
+
+    @Inject
+    @Named("albumDao")
+    private AlbumDao albumDao;
+
+    @Inject
+    @Named("artistDao")
+    private ArtistDao artistDao;
+
+    @Inject
+    private LanguageDao languageDao;
+
+    private final Object lock = new Object();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    /**
+     * Current aggregates. Equal to <code>null</code> until aggregates are loaded for the first time.
+     */
+    private volatile Aggregates aggregates;
+
+    /**
+     * Changes, which are received while aggregates are rebuilt. They are applied to the rebuilt aggregates, since the
+     * scan may miss them. Equal to <code>null</code> if aggregates are not being rebuilt.
+     */
+    private List<Consumer<Aggregates>> pendingChanges;
+
+    private volatile Map<String, String> languageNames = Collections.emptyMap();
+
+    @PostConstruct
+    public void init() {
+
+        // Handlers are registered before the first scan, so changes made during the scan are not lost
+        dispatcher.register(ARTISTS_CHANGE_LOG, ChangelogDispatcher.Delivery.BROADCAST, "reporting-aggregates",
+                this::onArtistChange);
+        dispatcher.register(ALBUMS_CHANGE_LOG, ChangelogDispatcher.Delivery.BROADCAST, "reporting-aggregates",
+                this::onAlbumChange);
+
+        // Aggregates are loaded in background, so deployment is not blocked by the scan
+        timerService.createIntervalTimer(0, REPORTING_RECONCILIATION_INTERVAL_MS, new TimerConfig(null, false));
+    }
+
+    /**
+     * Indicates whether aggregates are loaded. Until then, reports must be computed from the tables.
+     *
+     * @return <code>true</code> if aggregates are loaded.
+     */
+    public boolean isLoaded() {
+        return aggregates != null;
+    }
+
+    /**
+     * Returns areas with the most Artists.
+     *
+     * @param numberOfRows maximum number of areas.
+     * @return areas with number of Artists, ordered by number of Artists.
+     */
+    public List<Pair> getTopAreaForArtists(int numberOfRows) {
+        return top(loaded().artistsByArea.getCounts(), numberOfRows);
+    }
+
+    /**
+     * Returns languages with the most Albums.
+     *
+     * @param numberOfRows maximum number of languages.
+     * @return names of languages with number of Albums, ordered by number of Albums.
+     */
+    public List<Pair> getTopLanguagesForAlbum(int numberOfRows) {
+
+        // Albums are counted per language code, while report contains language names
+        Map<String, String> names = languageNames;
+        Map<String, Long> countsByName = new HashMap<>();
+        loaded().albumsByLanguage.getCounts().forEach((code, count) ->
+                countsByName.merge(names.getOrDefault(code, UNKNOWN_GROUP), count, Long::sum));
+
+        return top(countsByName, numberOfRows);
+    }
+
+    /**
+     * Returns number of Albums per release year for the latest years.
+     *
+     * @param numberOfRows maximum number of years.
+     * @return years with number of Albums, ordered by year starting from the latest one.
+     */
+    public List<Pair> getNumberOfAlbumsPerYear(int numberOfRows) {
+        return loaded().albumsByYear.getCounts().entrySet().stream()
+                .sorted(Comparator.comparing((Map.Entry<String, Long> entry) -> Integer.valueOf(entry.getKey()))
+                        .reversed())
+                .limit(numberOfRows)
+                .map(entry -> new Pair<>(entry.getKey(), String.valueOf(entry.getValue())))
+                .collect(toList());
+    }
+
+    /**
+     * Rebuilds aggregates from the tables. Runs outside of transaction, since it may take longer than transaction
+     * timeout.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void rebuild() {
+
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            synchronized (lock) {
+                pendingChanges = new ArrayList<>();
+            }
+
+            Aggregates rebuilt = new Aggregates();
+            scanArtists(rebuilt);
+            scanAlbums(rebuilt);
+            languageNames = loadLanguageNames();
+
+            synchronized (lock) {
+                pendingChanges.forEach(change -> change.accept(rebuilt));
+                aggregates = rebuilt;
+            }
+
+            log.info("Rebuilt reporting aggregates. Elapsed time: {}", stopwatch);
+        } catch (Exception e) {
+            log.warn("Can not rebuild reporting aggregates. Exception: {}", e);
+        } finally {
+            synchronized (lock) {
+                pendingChanges = null;
+            }
+
+            rebuilding.set(false);
+        }
+    }
+
+    private void scanArtists(Aggregates target) {
+        artistDao.processStore((connection, store) -> {
+            try (DocumentStream documentStream = store.find("_id", AREA_FIELD)) {
+                for (Document document : documentStream) {
+                    target.artistsByArea.set(document.getIdString(), groupOf(valueOf(document, AREA_FIELD)));
+                }
+            }
+        });
+    }
+
+    private void scanAlbums(Aggregates target) {
+        albumDao.processStore((connection, store) -> {
+            try (DocumentStream documentStream = store.find("_id", LANGUAGE_FIELD, RELEASED_DATE_FIELD)) {
+                for (Document document : documentStream) {
+                    String id = document.getIdString();
+                    target.albumsByLanguage.set(id, groupOf(valueOf(document, LANGUAGE_FIELD)));
+                    setYear(target, id, valueOf(document, RELEASED_DATE_FIELD));
+                }
+            }
+        });
+    }
+
+    private Map<String, String> loadLanguageNames() {
+
+        Map<String, String> names = new HashMap<>();
+        for (Language language : languageDao.getList()) {
+            if (language.getId() != null && language.getName() != null) {
+                names.put(language.getId(), language.getName());
+            }
+        }
+
+        return names;
+    }
+
+    private void onArtistChange(ChangeEvent event) {
+
+        String id = event.getDocumentId();
+        if (event.getType() == ChangeEvent.Type.DELETE) {
+            apply(target -> target.artistsByArea.remove(id));
+        } else if (event.getType() == ChangeEvent.Type.INSERT) {
+            Object area = event.getDocument().get(AREA_FIELD);
+            apply(target -> target.artistsByArea.set(id, groupOf(area)));
+        } else if (event.getChangedFields().containsKey(AREA_FIELD)) {
+            Object area = newValueOf(event.getChangedFields().get(AREA_FIELD));
+            apply(target -> target.artistsByArea.set(id, groupOf(area)));
+        }
+    }
+
+    private void onAlbumChange(ChangeEvent event) {
+
+        String id = event.getDocumentId();
+        if (event.getType() == ChangeEvent.Type.DELETE) {
+            apply(target -> {
+                target.albumsByLanguage.remove(id);
+                target.albumsByYear.remove(id);
+            });
+            return;
+        }
+
+        if (event.getType() == ChangeEvent.Type.INSERT) {
+            Object language = event.getDocument().get(LANGUAGE_FIELD);
+            Object releasedDate = event.getDocument().get(RELEASED_DATE_FIELD);
+            apply(target -> {
+                target.albumsByLanguage.set(id, groupOf(language));
+                setYear(target, id, releasedDate);
+            });
+            return;
+        }
+
+        Map<String, ChangeNode> changedFields = event.getChangedFields();
+        if (changedFields.containsKey(LANGUAGE_FIELD)) {
+            Object language = newValueOf(changedFields.get(LANGUAGE_FIELD));
+            apply(target -> target.albumsByLanguage.set(id, groupOf(language)));
+        }
+
+        if (changedFields.containsKey(RELEASED_DATE_FIELD)) {
+            Object releasedDate = newValueOf(changedFields.get(RELEASED_DATE_FIELD));
+            apply(target -> setYear(target, id, releasedDate));
+        }
+    }
+
+    /**
+     * Applies change to the current aggregates and remembers it, if aggregates are being rebuilt.
+     */
+    private void apply(Consumer<Aggregates> change) {
+        synchronized (lock) {
+
+            if (aggregates != null) {
+                change.accept(aggregates);
+            }
+
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        }
+    }
+
+    private Aggregates loaded() {
+
+        Aggregates current = aggregates;
+        if (current == null) {
+            throw new IllegalStateException("Reporting aggregates are not loaded yet");
+        }
+
+        return current;
+    }
+
+    private static void setYear(Aggregates target, String id, Object releasedDate) {
+
+        Integer year = yearOf(releasedDate);
+        if (year != null) {
+            target.albumsByYear.set(id, String.valueOf(year));
+        } else {
+            target.albumsByYear.remove(id);
+        }
+    }
+
+    private static List<Pair> top(Map<String, Long> counts, int numberOfRows) {
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(numberOfRows)
+                .map(entry -> new Pair<>(labelOf(entry.getKey()), String.valueOf(entry.getValue())))
+                .collect(toList());
+    }
+
+    private static Object valueOf(Document document, String field) {
+        Value value = document.getValue(field);
+        return (value != null) ? value.getObject() : null;
+    }
+
+    private static Object newValueOf(ChangeNode changeNode) {
+        return (changeNode.getOp() == ChangeOp.DELETE || changeNode.getValue() == null)
+                ? null
+                : changeNode.getValue().getObject();
+    }
+
+    private static String groupOf(Object value) {
+        return (value != null && !value.toString().trim().isEmpty()) ? value.toString() : UNKNOWN_GROUP;
+    }
+
+    private static String labelOf(String group) {
+        return UNKNOWN_GROUP.equals(group) ? UNKNOWN_LABEL : group;
+    }
+
+    private static Integer yearOf(Object releasedDate) {
+
+        if (releasedDate instanceof ODate) {
+            return ((ODate) releasedDate).getYear();
+        }
+
+        if (releasedDate instanceof String && !((String) releasedDate).isEmpty()) {
+            try {
+                return ODate.parse((String) releasedDate).getYear();
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+}
@@ -3,50 +3,80 @@ package com.mapr.music.service;
 import com.mapr.music.dao.ReportingDao;
 import com.mapr.music.model.Pair;
 
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.IntFunction;
 
 /**
- * Responsible of performing reporting business logic.
+ * Responsible of performing reporting business logic. Reports are served from the in-memory aggregates, which are
+ * maintained by {@link ReportingAggregatesService}. Until aggregates are loaded, reports are computed via Drill.
+ * Reports are computed asynchronously, so slow Drill queries do not hold request threads.
  */
 public class ReportingService {
 
     private final ReportingDao reportingDao;
+    private final ReportingAggregatesService aggregatesService;
+
+    @Resource
+    private ManagedExecutorService executor;
 
     @Inject
-    public ReportingService(@Named("reportingDao") ReportingDao reportingDao) {
+    public ReportingService(@Named("reportingDao") ReportingDao reportingDao,
+                            ReportingAggregatesService aggregatesService) {
+
         this.reportingDao = reportingDao;
+        this.aggregatesService = aggregatesService;
     }
 
     /**
      * Returns top artists by area.
      *
      * @param numberOfRows specifies number of 'artists by area' rows, which will be returned.
-     * @return top artists by area.
+     * @return stage, which is completed with top artists by area.
      */
-    public List<Pair> getTopArtistByArea(int numberOfRows) {
-        return reportingDao.getTopAreaForArtists(numberOfRows);
+    public CompletionStage<List<Pair>> getTopArtistByArea(int numberOfRows) {
+        return report(numberOfRows, aggregatesService::getTopAreaForArtists, reportingDao::getTopAreaForArtists);
     }
 
     /**
      * Returns top languages for album.
      *
      * @param numberOfRows specifies number of 'languages for album' rows, which will be returned.
-     * @return top languages for album.
+     * @return stage, which is completed with top languages for album.
      */
-    public List<Pair> getTopLanguagesForAlbum(int numberOfRows) {
-        return reportingDao.getTopLanguagesForAlbum(numberOfRows);
+    public CompletionStage<List<Pair>> getTopLanguagesForAlbum(int numberOfRows) {
+        return report(numberOfRows, aggregatesService::getTopLanguagesForAlbum, reportingDao::getTopLanguagesForAlbum);
     }
 
     /**
      * Returns number of albums per year.
      *
      * @param numberOfRows specifies number of 'number of albums per year' rows, which will be returned.
-     * @return number of albums per year.
+     * @return stage, which is completed with number of albums per year.
      */
-    public List<Pair> getNumberOfAlbumsPerYear(int numberOfRows) {
-        return reportingDao.getNumberOfAlbumsPerYear(numberOfRows);
+    public CompletionStage<List<Pair>> getNumberOfAlbumsPerYear(int numberOfRows) {
+        return report(numberOfRows, aggregatesService::getNumberOfAlbumsPerYear,
+                reportingDao::getNumberOfAlbumsPerYear);
+    }
+
+    private CompletionStage<List<Pair>> report(int numberOfRows, IntFunction<List<Pair>> fromAggregates,
+                                               IntFunction<List<Pair>> fromDrill) {
+
+        if (numberOfRows <= 0) {
+            throw new IllegalArgumentException("Number of rows must be greater than zero");
+        }
+
+        // Aggregates are kept in memory, so there is no need to hand them off to another thread
+        if (aggregatesService.isLoaded()) {
+            return CompletableFuture.completedFuture(fromAggregates.apply(numberOfRows));
+        }
+
+        return CompletableFuture.supplyAsync(() -> fromDrill.apply(numberOfRows), executor);
     }
 
 }
@@ -2,11 +2,13 @@ package com.mapr.music.service;
 
 import com.ibm.icu.text.Transliterator;
 import com.mapr.music.dao.MaprDbDao;
+import com.mapr.music.dao.SlugIndexDao;
 import com.mapr.music.model.Album;
 import com.mapr.music.model.Artist;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.math3.util.Pair;
 import org.ojai.Document;
+import org.ojai.DocumentStream;
 import org.ojai.store.*;
 
 import javax.inject.Inject;
@@ -14,10 +16,12 @@ import javax.inject.Named;
 import java.text.Normalizer;
 import java.util.Iterator;
 import java.util.Locale;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 /**
- * Service responsible for managing slugs.
+ * Service responsible for managing slugs. Slugs are resolved via slug index, which is maintained on albums and artists
+ * creation and deletion, and backfilled on the first lookup of slugs of previously imported documents.
  */
 public class SlugService {
 
@@ -34,8 +38,12 @@ public class SlugService {
     private static final String SLUG_POSTFIX_DELIMITER = "-";
     private static final Long SLUG_FIRST_POSTFIX = 0L;
 
+    private static final String ALBUM_KEY_PREFIX = "album";
+    private static final String ARTIST_KEY_PREFIX = "artist";
+
     private final MaprDbDao<Artist> artistDao;
     private final MaprDbDao<Album> albumDao;
+    private final SlugIndexDao slugIndexDao;
 
     private final Transliterator transliterator;
 
@@ -58,19 +66,24 @@ public class SlugService {
                     .orderBy("slug_postfix", SortOrder.DESC)
                     .build();
 
-            Iterator<Document> iterator = store.findQuery(query).iterator();
-            if (!iterator.hasNext()) {
-                return null;
-            }
+            // Stream is not fully consumed, so close it explicitly
+            try (DocumentStream documentStream = store.findQuery(query)) {
+                Iterator<Document> iterator = documentStream.iterator();
+                if (!iterator.hasNext()) {
+                    return null;
+                }
 
-            return iterator.next().getLong("slug_postfix");
+                return iterator.next().getLong("slug_postfix");
+            }
         }
     }
 
     @Inject
-    public SlugService(@Named("artistDao") MaprDbDao<Artist> artistDao, @Named("albumDao") MaprDbDao<Album> albumDao) {
+    public SlugService(@Named("artistDao") MaprDbDao<Artist> artistDao, @Named("albumDao") MaprDbDao<Album> albumDao,
+                       @Named("slugIndexDao") SlugIndexDao slugIndexDao) {
         this.artistDao = artistDao;
         this.albumDao = albumDao;
+        this.slugIndexDao = slugIndexDao;
         this.transliterator = Transliterator.getInstance(ICU4J_TRANSLITERATOR_ID);
     }
 
@@ -106,12 +119,45 @@ public class SlugService {
         }
 
         String slugName = toSlug(album.getName());
-        Long lastPostfix = albumDao.processStore(new GetLastPostfixAction(slugName));
-        long postfix = (lastPostfix == null) ? SLUG_FIRST_POSTFIX : lastPostfix + 1;
+        long postfix = nextPostfix(albumDao, ALBUM_KEY_PREFIX, slugName);
         album.setSlugName(slugName);
         album.setSlugPostfix(postfix);
     }
 
+    /**
+     * Adds slug of the specified album to the slug index. Should be invoked after album is created.
+     *
+     * @param album created album.
+     */
+    public void indexSlugForAlbum(Album album) {
+
+        if (album == null) {
+            throw new IllegalArgumentException("Album can not be null");
+        }
+
+        String slug = getSlugForAlbum(album);
+        if (slug != null) {
+            slugIndexDao.put(slugKey(ALBUM_KEY_PREFIX, slug), album.getId());
+        }
+    }
+
+    /**
+     * Removes slug of the specified album from the slug index. Should be invoked after album is deleted.
+     *
+     * @param album deleted album.
+     */
+    public void removeSlugForAlbum(Album album) {
+
+        if (album == null) {
+            throw new IllegalArgumentException("Album can not be null");
+        }
+
+        String slug = getSlugForAlbum(album);
+        if (slug != null) {
+            slugIndexDao.remove(slugKey(ALBUM_KEY_PREFIX, slug));
+        }
+    }
+
     /**
      * Sets slug fields for the specified instance of {@link Artist} class according to artist's name. Should be
      * invoked while creating new {@link Artist} in order to generate and set slug values.
@@ -125,12 +171,44 @@ public class SlugService {
         }
 
         String slugName = toSlug(artist.getName());
-        Long lastPostfix = artistDao.processStore(new GetLastPostfixAction(slugName));
-        long postfix = (lastPostfix == null) ? SLUG_FIRST_POSTFIX : lastPostfix + 1;
+        long postfix = nextPostfix(artistDao, ARTIST_KEY_PREFIX, slugName);
         artist.setSlugName(slugName);
         artist.setSlugPostfix(postfix);
     }
 
+    /**
+     * Adds slug of the specified artist to the slug index. Should be invoked after artist is created.
+     *
+     * @param artist created artist.
+     */
+    public void indexSlugForArtist(Artist artist) {
+
+        if (artist == null) {
+            throw new IllegalArgumentException("Artist can not be null");
+        }
+
+        String slug = getSlugForArtist(artist);
+        if (slug != null) {
+            slugIndexDao.put(slugKey(ARTIST_KEY_PREFIX, slug), artist.getId());
+        }
+    }
+
+    /**
+     * Removes slug of the specified artist from the slug index. Should be invoked after artist is deleted.
+     *
+     * @param artist deleted artist.
+     */
+    public void removeSlugForArtist(Artist artist) {
+
+        if (artist == null) {
+            throw new IllegalArgumentException("Artist can not be null");
+        }
+
+        String slug = getSlugForArtist(artist);
+        if (slug != null) {
+            slugIndexDao.remove(slugKey(ARTIST_KEY_PREFIX, slug));
+        }
+    }
 
     /**
      * Returns single album by it's slug. If there is no such document <code>null</code> will be returned.
@@ -139,7 +217,7 @@ public class SlugService {
      * @return album with the specified slug.
      */
     public Album getAlbumBySlug(String slug) {
-        return getBySlug(albumDao, slug);
+        return getBySlug(albumDao, ALBUM_KEY_PREFIX, slug, this::getSlugForAlbum, Album::getId);
     }
 
     /**
@@ -149,7 +227,7 @@ public class SlugService {
      * @return album with the specified slug.
      */
     public Artist getArtistBySlug(String slug) {
-        return getBySlug(artistDao, slug);
+        return getBySlug(artistDao, ARTIST_KEY_PREFIX, slug, this::getSlugForArtist, Artist::getId);
     }
 
     /**
@@ -193,7 +271,8 @@ public class SlugService {
         return null;
     }
 
-    private <T> T getBySlug(MaprDbDao<T> dbDao, String slug) {
+    private <T> T getBySlug(MaprDbDao<T> dbDao, String keyPrefix, String slug, Function<T, String> slugOf,
+                            Function<T, String> idOf) {
 
         Pair<String, Long> slugPostfixPair = getSlugPostfixPair(slug);
         String slugWithoutPostfix = slugPostfixPair.getFirst();
@@ -203,7 +282,22 @@ public class SlugService {
             throw new IllegalArgumentException("Slug name must contain numeric postfix");
         }
 
-        return dbDao.processStore((connection, store) -> {
+        // Resolve slug via index, so the document is fetched by it's primary key
+        String key = slugKey(keyPrefix, slug);
+        String documentId = slugIndexDao.getDocumentId(key);
+        if (documentId != null) {
+
+            T document = dbDao.getById(documentId);
+            if (document != null && slug.equals(slugOf.apply(document))) {
+                return document;
+            }
+
+            // Document is deleted, so the index entry is stale
+            slugIndexDao.remove(key);
+        }
+
+        // There is no index entry for the documents imported before the index existed, so query them by slug fields
+        Document ojaiDocument = dbDao.processStore((connection, store) -> {
 
             QueryCondition condition = connection.newCondition()
                     .and()
@@ -217,13 +311,35 @@ public class SlugService {
                     .where(condition.build())
                     .build();
 
-            Iterator<Document> iterator = store.findQuery(query).iterator();
-            if (!iterator.hasNext()) {
-                return null;
+            // Stream is not fully consumed, so close it explicitly
+            try (DocumentStream documentStream = store.findQuery(query)) {
+                Iterator<Document> iterator = documentStream.iterator();
+                return (iterator.hasNext()) ? iterator.next() : null;
             }
-
-            return dbDao.mapOjaiDocument(iterator.next());
         });
+
+        if (ojaiDocument == null) {
+            return null;
+        }
+
+        T document = dbDao.mapOjaiDocument(ojaiDocument);
+        if (document != null) {
+            slugIndexDao.put(key, idOf.apply(document));
+        }
+
+        return document;
+    }
+
+    private long nextPostfix(MaprDbDao<?> dbDao, String keyPrefix, String slugName) {
+
+        // Counter is seeded from the last postfix of existing documents only once, when it does not exist yet
+        String counterKey = keyPrefix + ":postfix:" + slugName;
+        return slugIndexDao.nextPostfix(counterKey, () -> dbDao.processStore(new GetLastPostfixAction(slugName)),
+                SLUG_FIRST_POSTFIX);
+    }
+
+    private static String slugKey(String keyPrefix, String slug) {
+        return keyPrefix + ":slug:" + slug;
     }
 
     private Pair<String, Long> getSlugPostfixPair(String slug) {
@@ -0,0 +1,104 @@
+package com.mapr.music.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Number of documents of the single table. Changes are coalesced into the pending delta, which is written at once, and
+ * the total is the last number of documents read from the table.
+ * <p>
+ * Delta is written along with the changelog offsets it reflects, so changes, which are received once again after
+ * restart or failed flush, are not counted twice.
+ */
+class StatisticCounter {
+
+    /**
+     * Writes delta and offsets of the changelog partitions, which follow the counted changes.
+     */
+    @FunctionalInterface
+    interface Writer {
+        void write(long delta, Map<Integer, Long> offsets);
+    }
+
+    private long pendingDelta;
+    private final Map<Integer, Long> pendingOffsets = new HashMap<>();
+
+    /**
+     * Offsets of the changelog partitions, which follow the written changes.
+     */
+    private final Map<Integer, Long> checkpoint = new HashMap<>();
+
+    /**
+     * Last known number of documents. Equal to <code>null</code> until it is read for the first time.
+     */
+    private volatile Long total;
+
+    /**
+     * Restores offsets of the written changes.
+     *
+     * @param offsets offsets of the changelog partitions.
+     */
+    synchronized void restore(Map<Integer, Long> offsets) {
+        checkpoint.putAll(offsets);
+    }
+
+    synchronized void increment(int partition, long offset) {
+        count(partition, offset, 1);
+    }
+
+    synchronized void decrement(int partition, long offset) {
+        count(partition, offset, -1);
+    }
+
+    private void count(int partition, long offset, long delta) {
+
+        // Changes, which are written or pending, are skipped, since they are delivered once again after failed flush
+        long counted = Math.max(checkpoint.getOrDefault(partition, 0L), pendingOffsets.getOrDefault(partition, 0L));
+        if (offset < counted) {
+            return;
+        }
+
+        pendingDelta += delta;
+        pendingOffsets.merge(partition, offset + 1, Math::max);
+    }
+
+    synchronized long getPendingDelta() {
+        return pendingDelta;
+    }
+
+    synchronized Map<Integer, Long> getCheckpoint() {
+        return Collections.unmodifiableMap(new HashMap<>(checkpoint));
+    }
+
+    /**
+     * Writes the pending delta via the specified writer. In case of failure delta is kept, so it is written by the
+     * next flush.
+     *
+     * @param writer writes delta and offsets to the table.
+     */
+    synchronized void flush(Writer writer) {
+
+        if (pendingDelta == 0) {
+            return;
+        }
+
+        writer.write(pendingDelta, Collections.unmodifiableMap(pendingOffsets));
+        checkpoint.putAll(pendingOffsets);
+        pendingOffsets.clear();
+        pendingDelta = 0;
+    }
+
+    boolean isLoaded() {
+        return total != null;
+    }
+
+    long getTotal() {
+        Long current = total;
+        return (current != null) ? current : 0;
+    }
+
+    void setTotal(long total) {
+        this.total = total;
+    }
+}
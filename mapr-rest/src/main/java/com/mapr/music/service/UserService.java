@@ -2,16 +2,15 @@ package com.mapr.music.service;
 
 
 import com.mapr.music.dao.MaprDbDao;
+import com.mapr.music.dto.DtoMapper;
 import com.mapr.music.dto.UserDto;
 import com.mapr.music.exception.ResourceNotFoundException;
 import com.mapr.music.exception.ValidationException;
 import com.mapr.music.model.User;
-import org.apache.commons.beanutils.PropertyUtilsBean;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.Principal;
@@ -19,6 +18,9 @@ import java.util.stream.Stream;
 
 public class UserService {
 
+    private static final DtoMapper<User, UserDto> USER_TO_DTO = DtoMapper.of(User.class, UserDto.class);
+    private static final DtoMapper<UserDto, User> DTO_TO_USER = DtoMapper.of(UserDto.class, User.class);
+
     private static final String addUserUtility;
     private static final String appUsersPropertiesPath;
 
@@ -129,13 +131,7 @@ public class UserService {
 
     private UserDto userToDto(User user) {
 
-        UserDto userDto = new UserDto();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(userDto, user);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create user Data Transfer Object", e);
-        }
+        UserDto userDto = USER_TO_DTO.map(user);
 
         userDto.setUsername(user.getId());
 
@@ -144,13 +140,7 @@ public class UserService {
 
     private User dtoToUser(UserDto userDto) {
 
-        User user = new User();
-        PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
-        try {
-            propertyUtilsBean.copyProperties(user, userDto);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Can not create user from Data Transfer Object", e);
-        }
+        User user = DTO_TO_USER.map(userDto);
 
         user.setId(userDto.getUsername());
 
@@ -0,0 +1,37 @@
+package com.mapr.music.util;
+
+import javax.ws.rs.container.AsyncResponse;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Helps endpoints to complete suspended responses.
+ */
+public final class AsyncResponses {
+
+    private AsyncResponses() {
+    }
+
+    /**
+     * Resumes suspended response once the stage is completed. Failures are resumed with their cause, so they are
+     * mapped to responses by the registered exception mappers.
+     *
+     * @param asyncResponse suspended response.
+     * @param stage         stage, which is completed with response entity.
+     */
+    public static void resume(AsyncResponse asyncResponse, CompletionStage<?> stage) {
+        stage.whenComplete((result, throwable) -> {
+
+            if (throwable == null) {
+                asyncResponse.resume(result);
+                return;
+            }
+
+            Throwable cause = (throwable instanceof CompletionException && throwable.getCause() != null)
+                    ? throwable.getCause()
+                    : throwable;
+
+            asyncResponse.resume(cause);
+        });
+    }
+}
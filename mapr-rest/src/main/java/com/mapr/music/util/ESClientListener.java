@@ -0,0 +1,23 @@
+package com.mapr.music.util;
+
+import com.mapr.music.service.ESClientProvider;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Closes shared ElasticSearch client when application is undeployed.
+ */
+@WebListener
+public class ESClientListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        ESClientProvider.getInstance().close();
+    }
+}
@@ -19,6 +19,7 @@ public final class MaprProperties {
     public static final String RECOMMENDATIONS_TABLE_NAME = "/apps/recommendations";
     public static final String STATISTICS_TABLE_NAME = "/apps/statistics";
     public static final String USERS_TABLE_NAME = "/apps/users";
+    public static final String SLUGS_TABLE_NAME = "/apps/slugs";
 
     public static final String ARTISTS_CHANGE_LOG = getOrDefault("ARTISTS_CHANGE_LOG", "/apps/mapr_music_changelog:artists");
     public static final String ALBUMS_CHANGE_LOG = getOrDefault("ALBUMS_CHANGE_LOG", "/apps/mapr_music_changelog:albums");
@@ -29,6 +30,46 @@ public final class MaprProperties {
     public static final String ES_ALBUMS_TYPE = getOrDefault("ES_ALBUMS_TYPE", "album");
     public static final String ES_ARTISTS_INDEX = getOrDefault("ES_ARTISTS_INDEX", "artists");
     public static final String ES_ARTISTS_TYPE = getOrDefault("ES_ARTISTS_TYPE", "artist");
+    public static final int ES_REST_CONNECT_TIMEOUT_MS = getOrDefault("ES_REST_CONNECT_TIMEOUT_MS", 1000);
+    public static final int ES_REST_CONNECTION_REQUEST_TIMEOUT_MS =
+            getOrDefault("ES_REST_CONNECTION_REQUEST_TIMEOUT_MS", 1000);
+    public static final int ES_REST_SOCKET_TIMEOUT_MS = getOrDefault("ES_REST_SOCKET_TIMEOUT_MS", 10000);
+    public static final int ES_REST_MAX_RETRY_TIMEOUT_MS = getOrDefault("ES_REST_MAX_RETRY_TIMEOUT_MS", 10000);
+    public static final int ES_REST_MAX_CONNECTIONS = getOrDefault("ES_REST_MAX_CONNECTIONS", 100);
+    public static final int ES_REST_MAX_CONNECTIONS_PER_ROUTE = getOrDefault("ES_REST_MAX_CONNECTIONS_PER_ROUTE", 50);
+    public static final int ES_REST_KEEP_ALIVE_MS = getOrDefault("ES_REST_KEEP_ALIVE_MS", 60000);
+
+    public static final int OJAI_POOL_MAX_SIZE = getOrDefault("OJAI_POOL_MAX_SIZE", 16);
+    public static final int OJAI_POOL_MAX_WAIT_MS = getOrDefault("OJAI_POOL_MAX_WAIT_MS", 10000);
+    public static final int OJAI_POOL_IDLE_TIMEOUT_MS = getOrDefault("OJAI_POOL_IDLE_TIMEOUT_MS", 300000);
+    public static final int OJAI_POOL_VALIDATION_INTERVAL_MS = getOrDefault("OJAI_POOL_VALIDATION_INTERVAL_MS", 30000);
+    public static final int OJAI_POOL_EVICTION_INTERVAL_MS = getOrDefault("OJAI_POOL_EVICTION_INTERVAL_MS", 60000);
+
+    public static final int ENTITY_CACHE_MAX_SIZE = getOrDefault("ENTITY_CACHE_MAX_SIZE", 10000);
+    public static final int ENTITY_CACHE_TTL_MS = getOrDefault("ENTITY_CACHE_TTL_MS", 600000);
+
+    public static final int RATING_RECONCILIATION_INTERVAL_MS =
+            getOrDefault("RATING_RECONCILIATION_INTERVAL_MS", 3600000);
+
+    public static final int SUGGEST_CACHE_MAX_SIZE = getOrDefault("SUGGEST_CACHE_MAX_SIZE", 10000);
+    public static final int SUGGEST_CACHE_TTL_MS = getOrDefault("SUGGEST_CACHE_TTL_MS", 60000);
+
+    public static final int CDC_HANDLER_THREADS = getOrDefault("CDC_HANDLER_THREADS", 4);
+    public static final int CDC_HANDLER_QUEUE_SIZE = getOrDefault("CDC_HANDLER_QUEUE_SIZE", 16);
+    public static final int CDC_LAG_UPDATE_INTERVAL_MS = getOrDefault("CDC_LAG_UPDATE_INTERVAL_MS", 10000);
+
+    public static final int STATISTICS_REFRESH_INTERVAL_MS = getOrDefault("STATISTICS_REFRESH_INTERVAL_MS", 10000);
+
+    public static final int CASCADE_DELETE_THREADS = getOrDefault("CASCADE_DELETE_THREADS", 2);
+    public static final int CASCADE_DELETE_QUEUE_SIZE = getOrDefault("CASCADE_DELETE_QUEUE_SIZE", 100);
+    public static final int CASCADE_DELETE_PARALLELISM = getOrDefault("CASCADE_DELETE_PARALLELISM", 8);
+    public static final int CASCADE_DELETE_SWEEP_INTERVAL_MS = getOrDefault("CASCADE_DELETE_SWEEP_INTERVAL_MS", 300000);
+
+    public static final int REPORTING_CACHE_MAX_SIZE = getOrDefault("REPORTING_CACHE_MAX_SIZE", 1000);
+    public static final int REPORTING_CACHE_TTL_MS = getOrDefault("REPORTING_CACHE_TTL_MS", 60000);
+    public static final int DRILL_QUERY_TIMEOUT_S = getOrDefault("DRILL_QUERY_TIMEOUT_S", 30);
+    public static final int REPORTING_RECONCILIATION_INTERVAL_MS =
+            getOrDefault("REPORTING_RECONCILIATION_INTERVAL_MS", 3600000);
 
 
     public static String getOrDefault(String envName, String defaultValue) {
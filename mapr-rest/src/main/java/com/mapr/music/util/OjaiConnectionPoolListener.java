@@ -0,0 +1,23 @@
+package com.mapr.music.util;
+
+import com.mapr.music.dao.OjaiConnectionPool;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Closes pooled OJAI connections when application is undeployed.
+ */
+@WebListener
+public class OjaiConnectionPoolListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        OjaiConnectionPool.getInstance().close();
+    }
+}
@@ -0,0 +1,137 @@
+package com.mapr.music.benchmark;
+
+import com.mapr.music.dto.AlbumDto;
+import com.mapr.music.dto.DtoMapper;
+import com.mapr.music.dto.TrackDto;
+import com.mapr.music.model.Album;
+import com.mapr.music.model.Track;
+import org.apache.commons.beanutils.PropertyUtilsBean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares conversion of albums page to the Data Transfer Objects via per-call {@link PropertyUtilsBean} against
+ * {@link DtoMapper}. Run it with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.mapr.music.benchmark.DtoMapperBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DtoMapperBenchmark {
+
+    private static final int ALBUMS_PER_PAGE = 50;
+    private static final int TRACKS_NUMBER = 20;
+
+    private final DtoMapper<Album, AlbumDto> albumToDto = DtoMapper.of(Album.class, AlbumDto.class);
+    private final DtoMapper<Track, TrackDto> trackToDto = DtoMapper.of(Track.class, TrackDto.class);
+
+    private List<Album> albums;
+
+    @Setup
+    public void setup() {
+
+        albums = new ArrayList<>();
+        for (int i = 0; i < ALBUMS_PER_PAGE; i++) {
+
+            List<Track> tracks = new ArrayList<>();
+            for (int j = 0; j < TRACKS_NUMBER; j++) {
+                Track track = new Track();
+                track.setId("track-" + j);
+                track.setName("Track #" + j);
+                track.setLength(180000L + j);
+                track.setPosition((long) j);
+                tracks.add(track);
+            }
+
+            Album album = new Album();
+            album.setId("album-" + i);
+            album.setName("Album #" + i);
+            album.setSlugName("album-" + i);
+            album.setSlugPostfix(0L);
+            album.setBarcode("724384260927");
+            album.setStatus("Official");
+            album.setPackaging("Jewel Case");
+            album.setLanguage("eng");
+            album.setCountry("GB");
+            album.setRating(4.25);
+            album.setTrackList(tracks);
+            albums.add(album);
+        }
+    }
+
+    @Benchmark
+    public List<AlbumDto> propertyUtilsBean() throws Exception {
+
+        List<AlbumDto> page = new ArrayList<>(albums.size());
+        for (Album album : albums) {
+
+            AlbumDto albumDto = new AlbumDto();
+            new PropertyUtilsBean().copyProperties(albumDto, album);
+
+            List<TrackDto> trackDtos = new ArrayList<>(album.getTrackList().size());
+            for (Track track : album.getTrackList()) {
+                TrackDto trackDto = new TrackDto();
+                new PropertyUtilsBean().copyProperties(trackDto, track);
+                trackDtos.add(trackDto);
+            }
+
+            albumDto.setTrackList(trackDtos);
+            page.add(albumDto);
+        }
+
+        return page;
+    }
+
+    @Benchmark
+    public List<AlbumDto> dtoMapper() {
+
+        List<AlbumDto> page = new ArrayList<>(albums.size());
+        for (Album album : albums) {
+
+            AlbumDto albumDto = albumToDto.map(album);
+
+            List<TrackDto> trackDtos = new ArrayList<>(album.getTrackList().size());
+            for (Track track : album.getTrackList()) {
+                trackDtos.add(trackToDto.map(track));
+            }
+
+            albumDto.setTrackList(trackDtos);
+            page.add(albumDto);
+        }
+
+        return page;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+
+        Options options = new OptionsBuilder()
+                .include(DtoMapperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,102 @@
+package com.mapr.music.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mapr.music.dao.OjaiDocumentMapper;
+import com.mapr.music.model.Album;
+import org.ojai.Document;
+import org.ojai.json.Json;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares mapping of album document with track list via {@code toString()} and Jackson re-parse against
+ * {@link OjaiDocumentMapper}. Run it with GC profiler to see allocation rate per operation
+ * ({@code gc.alloc.rate.norm}):
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.mapr.music.benchmark.OjaiDocumentMapperBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OjaiDocumentMapperBenchmark {
+
+    private static final int TRACKS_NUMBER = 20;
+
+    private final ObjectMapper jacksonMapper = new ObjectMapper();
+    private final OjaiDocumentMapper documentMapper = OjaiDocumentMapper.getInstance();
+
+    private Document albumDocument;
+
+    @Setup
+    public void setup() {
+
+        StringBuilder tracks = new StringBuilder();
+        for (int i = 0; i < TRACKS_NUMBER; i++) {
+            tracks.append((i == 0) ? "" : ",")
+                    .append("{\"id\": \"track-").append(i).append("\", \"name\": \"Track #").append(i)
+                    .append("\", \"length\": ").append(180000 + i).append(", \"position\": ").append(i).append("}");
+        }
+
+        albumDocument = Json.newDocument("{" +
+                "\"_id\": \"00031241-d2c2-4e8c-a4e0-7e8d5b5a4b32\"," +
+                "\"name\": \"Album name\"," +
+                "\"slug_name\": \"album-name\"," +
+                "\"slug_postfix\": {\"$numberLong\": 0}," +
+                "\"barcode\": \"724384260927\"," +
+                "\"status\": \"Official\"," +
+                "\"packaging\": \"Jewel Case\"," +
+                "\"language\": \"eng\"," +
+                "\"script\": \"Latn\"," +
+                "\"MBID\": \"00031241-d2c2-4e8c-a4e0-7e8d5b5a4b32\"," +
+                "\"format\": \"CD\"," +
+                "\"country\": \"GB\"," +
+                "\"rating\": 4.25," +
+                "\"cover_image_url\": \"http://coverartarchive.org/release/00031241/front.jpg\"," +
+                "\"images_urls\": [\"http://coverartarchive.org/release/00031241/1.jpg\"]," +
+                "\"artists\": [{\"id\": \"artist-1\", \"name\": \"Artist\", \"slug\": \"artist\"}]," +
+                "\"catalog_numbers\": [{\"label\": \"Label\", \"catalog_number\": \"7243 8 42609 2 7\"}]," +
+                "\"tracks\": [" + tracks + "]" +
+                "}");
+    }
+
+    @Benchmark
+    public Album jacksonReparse() throws IOException {
+        return jacksonMapper.readValue(albumDocument.toString(), Album.class);
+    }
+
+    @Benchmark
+    public Album documentMapper() {
+        return documentMapper.map(albumDocument, Album.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+
+        Options options = new OptionsBuilder()
+                .include(OjaiDocumentMapperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,83 @@
+package com.mapr.music.dao;
+
+import org.junit.Test;
+import org.ojai.Document;
+import org.ojai.json.Json;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DocumentCacheTest {
+
+    private static final String[] FULL = new String[]{};
+    private static final String[] NAME_ONLY = new String[]{"name"};
+
+    @Test
+    public void testReadThroughPerProjection() {
+
+        DocumentCache cache = DocumentCache.forTable("/test/read_through");
+        Document full = Json.newDocument("{\"_id\": \"1\", \"name\": \"Album\", \"barcode\": \"123\"}");
+        Document projected = Json.newDocument("{\"_id\": \"1\", \"name\": \"Album\"}");
+        AtomicInteger loads = new AtomicInteger();
+
+        assertSame(full, cache.get("1", FULL, () -> {
+            loads.incrementAndGet();
+            return full;
+        }));
+        assertSame(full, cache.get("1", FULL, () -> {
+            loads.incrementAndGet();
+            return full;
+        }));
+        assertSame(projected, cache.get("1", NAME_ONLY, () -> {
+            loads.incrementAndGet();
+            return projected;
+        }));
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getMetrics().getHits());
+        assertEquals(2, cache.getMetrics().getMisses());
+    }
+
+    @Test
+    public void testInvalidation() {
+
+        DocumentCache cache = DocumentCache.forTable("/test/invalidation");
+        Document first = Json.newDocument("{\"_id\": \"1\", \"name\": \"First\"}");
+        Document second = Json.newDocument("{\"_id\": \"1\", \"name\": \"Second\"}");
+
+        cache.get("1", FULL, () -> first);
+        cache.get("1", NAME_ONLY, () -> first);
+        cache.invalidate("1");
+
+        assertSame(second, cache.get("1", FULL, () -> second));
+        assertSame(second, cache.get("1", NAME_ONLY, () -> second));
+    }
+
+    @Test
+    public void testDocumentInvalidatedWhileLoadingIsNotCached() {
+
+        DocumentCache cache = DocumentCache.forTable("/test/concurrent_invalidation");
+        Document stale = Json.newDocument("{\"_id\": \"1\", \"name\": \"Stale\"}");
+        Document actual = Json.newDocument("{\"_id\": \"1\", \"name\": \"Actual\"}");
+
+        cache.get("1", FULL, () -> {
+            cache.invalidate("1");
+            return stale;
+        });
+
+        assertSame(actual, cache.get("1", FULL, () -> actual));
+    }
+
+    @Test
+    public void testAbsentDocumentsAreNotCached() {
+
+        DocumentCache cache = DocumentCache.forTable("/test/absent");
+        Document created = Json.newDocument("{\"_id\": \"1\"}");
+
+        assertNull(cache.get("1", FULL, () -> null));
+        assertSame(created, cache.get("1", FULL, () -> created));
+    }
+}
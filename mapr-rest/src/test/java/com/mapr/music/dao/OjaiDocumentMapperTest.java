@@ -0,0 +1,95 @@
+package com.mapr.music.dao;
+
+import com.mapr.music.model.Album;
+import com.mapr.music.model.Artist;
+import com.mapr.music.model.Track;
+import org.junit.Test;
+import org.ojai.Document;
+import org.ojai.json.Json;
+import org.ojai.types.ODate;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class OjaiDocumentMapperTest {
+
+    private final OjaiDocumentMapper mapper = OjaiDocumentMapper.getInstance();
+
+    @Test
+    public void testAlbumMapping() {
+
+        Document document = Json.newDocument("{" +
+                "\"_id\": \"1\"," +
+                "\"name\": \"Album\"," +
+                "\"slug_name\": \"album\"," +
+                "\"slug_postfix\": {\"$numberLong\": 2}," +
+                "\"released_date\": {\"$dateDay\": \"2001-02-03\"}," +
+                "\"rating\": 4.5," +
+                "\"unknown\": {\"nested\": [1, 2, {\"deep\": true}]}," +
+                "\"artists\": [{\"id\": \"a1\", \"name\": \"Artist\", \"slug\": \"artist\"}]," +
+                "\"tracks\": [{\"id\": \"t1\", \"name\": \"Track\", \"length\": 1000, \"position\": 1}]," +
+                "\"images_urls\": [\"first\", \"second\"]," +
+                "\"catalog_numbers\": [{\"catalog_number\": \"123\"}]," +
+                "\"update_info\": {\"user_id\": \"jdoe\"}" +
+                "}");
+
+        Album album = mapper.map(document, Album.class);
+
+        assertEquals("1", album.getId());
+        assertEquals("Album", album.getName());
+        assertEquals("album", album.getSlugName());
+        assertEquals(Long.valueOf(2), album.getSlugPostfix());
+        assertEquals(ODate.parse("2001-02-03"), album.getReleasedDate());
+        assertEquals(Double.valueOf(4.5), album.getRating());
+
+        assertEquals(1, album.getArtists().size());
+        assertEquals("a1", album.getArtists().get(0).getId());
+        assertEquals("artist", album.getArtists().get(0).getSlug());
+
+        assertEquals(1, album.getTrackList().size());
+        Track track = album.getTrackList().get(0);
+        assertEquals("t1", track.getId());
+        assertEquals(Long.valueOf(1000), track.getLength());
+        assertEquals(Long.valueOf(1), track.getPosition());
+
+        assertEquals(2, album.getImagesUrls().size());
+        assertEquals("123", ((Map) album.getCatalogNumbers().get(0)).get("catalog_number"));
+    }
+
+    @Test
+    public void testArtistMapping() {
+
+        Document document = Json.newDocument("{" +
+                "\"_id\": \"1\"," +
+                "\"name\": \"Artist\"," +
+                "\"MBID\": \"mbid\"," +
+                "\"begin_date\": \"1980-01-01\"," +
+                "\"end_date\": null," +
+                "\"deleted\": false," +
+                "\"images_urls\": [\"first\", \"second\"]," +
+                "\"albums\": [{\"id\": \"al1\", \"name\": \"Album\", \"rating\": 3}]" +
+                "}");
+
+        Artist artist = mapper.map(document, Artist.class);
+
+        assertEquals("1", artist.getId());
+        assertEquals("mbid", artist.getMbid());
+        assertEquals(ODate.parse("1980-01-01"), artist.getBeginDate());
+        assertNull(artist.getEndDate());
+        assertEquals(Boolean.FALSE, artist.getDeleted());
+        assertArrayEquals(new String[]{"first", "second"}, artist.getImagesUrls());
+
+        assertNotNull(artist.getAlbums());
+        assertEquals("al1", artist.getAlbums().get(0).getId());
+        assertEquals(Double.valueOf(3), artist.getAlbums().get(0).getRating());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullDocument() {
+        mapper.map(null, Album.class);
+    }
+}
@@ -0,0 +1,67 @@
+package com.mapr.music.dao;
+
+import org.junit.Test;
+import org.ojai.Document;
+import org.ojai.json.Json;
+import org.ojai.types.ODate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PageCursorTest {
+
+    @Test
+    public void testIdIsLastSortKey() {
+
+        List<PageCursor.SortKey> keys = PageCursor.sortKeys(Collections.singletonList(SortOption.desc("name")));
+
+        assertEquals(2, keys.size());
+        assertEquals("name", keys.get(0).getField());
+        assertEquals(SortOption.Order.DESC, keys.get(0).getOrder());
+        assertEquals(PageCursor.ID_FIELD, keys.get(1).getField());
+        assertEquals(1, PageCursor.sortKeys(Collections.singletonList(SortOption.asc("_id"))).size());
+    }
+
+    @Test
+    public void testEncodeDecode() {
+
+        List<PageCursor.SortKey> keys = PageCursor.sortKeys(Arrays.asList(
+                SortOption.asc("name", "slug_postfix"),
+                SortOption.desc("released_date", "barcode")));
+
+        Document document = Json.newDocument("{" +
+                "\"_id\": \"1\"," +
+                "\"name\": \"Album\"," +
+                "\"slug_postfix\": {\"$numberLong\": 2}," +
+                "\"released_date\": {\"$dateDay\": \"2001-02-03\"}" +
+                "}");
+
+        String token = PageCursor.of(document, keys).encode();
+        List<Object> values = PageCursor.decode(token, keys).getValues();
+
+        assertEquals("Album", values.get(0));
+        assertEquals(2L, values.get(1));
+        assertEquals(ODate.parse("2001-02-03"), values.get(2));
+        assertNull(values.get(3));
+        assertEquals("1", values.get(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentSortOptions() {
+
+        Document document = Json.newDocument("{\"_id\": \"1\", \"name\": \"Album\"}");
+        String token = PageCursor.of(document, PageCursor.sortKeys(Collections.singletonList(SortOption.asc("name"))))
+                .encode();
+
+        PageCursor.decode(token, PageCursor.sortKeys(Collections.singletonList(SortOption.desc("name"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedCursor() {
+        PageCursor.decode("not a cursor", PageCursor.sortKeys(null));
+    }
+}
@@ -0,0 +1,33 @@
+package com.mapr.music.dao;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RatingAggregatesTest {
+
+    @Test
+    public void testAverage() {
+
+        RatingAggregates.Totals totals = RatingAggregates.Totals.EMPTY.add(4.0).add(5.0).add(3.0);
+
+        assertEquals(12.0, totals.getSum(), 0.0);
+        assertEquals(3, totals.getCount());
+        assertEquals(4.0, totals.getAverage(), 0.0);
+        assertNull(RatingAggregates.Totals.EMPTY.getAverage());
+    }
+
+    @Test
+    public void testMatchesIgnoresRoundingErrors() {
+
+        RatingAggregates.Totals accumulated = new RatingAggregates.Totals(0.1 + 0.2, 2);
+
+        assertTrue(accumulated.matches(new RatingAggregates.Totals(0.3, 2)));
+        assertFalse(accumulated.matches(new RatingAggregates.Totals(0.3, 3)));
+        assertFalse(accumulated.matches(new RatingAggregates.Totals(0.4, 2)));
+        assertFalse(accumulated.matches(null));
+    }
+}
@@ -0,0 +1,65 @@
+package com.mapr.music.dto;
+
+import com.mapr.music.model.Album;
+import com.mapr.music.model.Artist;
+import com.mapr.music.model.Track;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DtoMapperTest {
+
+    @Test
+    public void testModelToDto() {
+
+        Album album = new Album();
+        album.setId("1");
+        album.setName("Album");
+        album.setSlugName("album");
+        album.setSlugPostfix(0L);
+        album.setRating(4.5);
+
+        AlbumDto albumDto = DtoMapper.of(Album.class, AlbumDto.class).map(album);
+
+        assertEquals("1", albumDto.getId());
+        assertEquals("Album", albumDto.getName());
+        assertEquals(Double.valueOf(4.5), albumDto.getRating());
+        assertNull(albumDto.getBarcode());
+    }
+
+    @Test
+    public void testDtoToModel() {
+
+        TrackDto trackDto = new TrackDto();
+        trackDto.setId("track");
+        trackDto.setName("Track");
+        trackDto.setPosition(3L);
+
+        Track track = DtoMapper.of(TrackDto.class, Track.class).map(trackDto);
+
+        assertEquals("track", track.getId());
+        assertEquals("Track", track.getName());
+        assertEquals(Long.valueOf(3), track.getPosition());
+        assertNull(track.getLength());
+    }
+
+    @Test
+    public void testShortInfoToDto() {
+
+        Artist.ShortInfo shortInfo = new Artist.ShortInfo();
+        shortInfo.setId("artist");
+        shortInfo.setName("Artist");
+
+        ArtistDto artistDto = DtoMapper.of(Artist.ShortInfo.class, ArtistDto.class).map(shortInfo);
+
+        assertEquals("artist", artistDto.getId());
+        assertEquals("Artist", artistDto.getName());
+    }
+
+    @Test
+    public void testMapperIsCached() {
+        assertSame(DtoMapper.of(Album.class, AlbumDto.class), DtoMapper.of(Album.class, AlbumDto.class));
+    }
+}
@@ -30,8 +30,8 @@ public class AlbumServiceIntegrationTest {
                 .addClasses(
                         AlbumService.class, AlbumService.class, AlbumDao.class, ArtistDao.class,
                         LanguageDao.class, LanguageDao.class, AlbumDao.class, MaprDbDao.class,
-                        MaprDbDao.class, SlugService.class, StatisticServiceMock.class, StatisticDao.class,
-                        StatisticDao.class, AlbumRateDao.class, AlbumRateDao.class)
+                        MaprDbDao.class, SlugService.class, SlugIndexDao.class, StatisticServiceMock.class,
+                        StatisticDao.class, StatisticDao.class, AlbumRateDao.class, AlbumRateDao.class)
                 .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
     }
 
@@ -2,9 +2,8 @@ package com.mapr.music.service;
 
 import com.mapr.music.dao.AlbumDao;
 import com.mapr.music.dao.AlbumRateDao;
+import com.mapr.music.dao.ArtistDao;
 import com.mapr.music.dao.LanguageDao;
-import com.mapr.music.dao.MaprDbDao;
-import com.mapr.music.model.Artist;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -24,7 +23,7 @@ public class AlbumServiceTest {
         LanguageDao languageDao = mock(LanguageDao.class);
         SlugService slugService = mock(SlugService.class);
         StatisticService statisticService = mock(StatisticService.class);
-        MaprDbDao<Artist> artistDao = mock(MaprDbDao.class);
+        ArtistDao artistDao = mock(ArtistDao.class);
         AlbumRateDao albumRateDao = mock(AlbumRateDao.class);
         AlbumService albumService = new AlbumService(albumDao, artistDao, languageDao, slugService,
                 statisticService, albumRateDao);
@@ -39,7 +38,7 @@ public class AlbumServiceTest {
         LanguageDao languageDao = mock(LanguageDao.class);
         SlugService slugService = mock(SlugService.class);
         StatisticService statisticService = mock(StatisticService.class);
-        MaprDbDao<Artist> artistDao = mock(MaprDbDao.class);
+        ArtistDao artistDao = mock(ArtistDao.class);
         AlbumRateDao albumRateDao = mock(AlbumRateDao.class);
         AlbumService albumService = new AlbumService(albumDao, artistDao, languageDao, slugService,
                 statisticService, albumRateDao);
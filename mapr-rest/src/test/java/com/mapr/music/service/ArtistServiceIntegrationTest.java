@@ -3,6 +3,7 @@ package com.mapr.music.service;
 import com.mapr.music.dao.AlbumDao;
 import com.mapr.music.dao.ArtistDao;
 import com.mapr.music.dao.MaprDbDao;
+import com.mapr.music.dao.SlugIndexDao;
 import com.mapr.music.dao.StatisticDao;
 import com.mapr.music.dto.ArtistDto;
 import com.mapr.music.dto.ResourceDto;
@@ -33,7 +34,7 @@ public class ArtistServiceIntegrationTest {
                 .addClasses(
                         ArtistService.class, ArtistService.class, ArtistDao.class, ArtistDao.class,
                         AlbumDao.class, AlbumDao.class, MaprDbDao.class, MaprDbDao.class, SlugService.class,
-                        StatisticServiceMock.class, StatisticDao.class, StatisticDao.class)
+                        SlugIndexDao.class, StatisticServiceMock.class, StatisticDao.class, StatisticDao.class)
                 .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
     }
 
@@ -0,0 +1,44 @@
+package com.mapr.music.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class GroupCountersTest {
+
+    @Test
+    public void testSetCountsDocumentOnce() {
+
+        GroupCounters counters = new GroupCounters();
+        counters.set("1", "US");
+        counters.set("2", "US");
+        counters.set("2", "US");
+
+        assertEquals(2, counters.getCount("US"));
+    }
+
+    @Test
+    public void testSetMovesDocumentToAnotherGroup() {
+
+        GroupCounters counters = new GroupCounters();
+        counters.set("1", "US");
+        counters.set("2", "US");
+        counters.set("1", "UK");
+
+        assertEquals(1, counters.getCount("US"));
+        assertEquals(1, counters.getCount("UK"));
+    }
+
+    @Test
+    public void testRemoveDropsEmptyGroups() {
+
+        GroupCounters counters = new GroupCounters();
+        counters.set("1", "US");
+        counters.remove("1");
+        counters.remove("unknown");
+
+        assertEquals(0, counters.getCount("US"));
+        assertFalse(counters.getCounts().containsKey("US"));
+    }
+}
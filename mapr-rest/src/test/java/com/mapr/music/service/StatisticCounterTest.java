@@ -0,0 +1,111 @@
+package com.mapr.music.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StatisticCounterTest {
+
+    @Test
+    public void testFlushWritesCoalescedDelta() {
+
+        StatisticCounter counter = new StatisticCounter();
+        counter.increment(0, 10);
+        counter.increment(0, 11);
+        counter.increment(1, 5);
+        counter.decrement(0, 12);
+
+        List<Long> deltas = new ArrayList<>();
+        Map<Integer, Long> offsets = new HashMap<>();
+        counter.flush((delta, flushedOffsets) -> {
+            deltas.add(delta);
+            offsets.putAll(flushedOffsets);
+        });
+
+        assertEquals(Collections.singletonList(2L), deltas);
+        assertEquals(13L, (long) offsets.get(0));
+        assertEquals(6L, (long) offsets.get(1));
+        assertEquals(0, counter.getPendingDelta());
+        assertEquals(offsets, counter.getCheckpoint());
+    }
+
+    @Test
+    public void testFlushSkipsZeroDelta() {
+
+        StatisticCounter counter = new StatisticCounter();
+        counter.increment(0, 1);
+        counter.decrement(0, 2);
+
+        List<Long> deltas = new ArrayList<>();
+        counter.flush((delta, offsets) -> deltas.add(delta));
+
+        assertTrue(deltas.isEmpty());
+    }
+
+    @Test
+    public void testFailedFlushKeepsDelta() {
+
+        StatisticCounter counter = new StatisticCounter();
+        counter.increment(0, 1);
+        counter.increment(0, 2);
+
+        try {
+            counter.flush((delta, offsets) -> {
+                throw new IllegalStateException("Table is not available");
+            });
+            fail("Flush failure is expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        counter.increment(0, 3);
+        assertEquals(3, counter.getPendingDelta());
+        assertTrue(counter.getCheckpoint().isEmpty());
+    }
+
+    @Test
+    public void testChangesBeforeCheckpointAreNotCounted() {
+
+        StatisticCounter counter = new StatisticCounter();
+        counter.restore(Collections.singletonMap(0, 10L));
+
+        counter.increment(0, 8);
+        counter.decrement(0, 9);
+        assertEquals(0, counter.getPendingDelta());
+
+        counter.increment(0, 10);
+        counter.increment(1, 0);
+        assertEquals(2, counter.getPendingDelta());
+    }
+
+    @Test
+    public void testRedeliveredChangesAreNotCountedAfterFailedFlush() {
+
+        StatisticCounter counter = new StatisticCounter();
+        counter.increment(0, 1);
+        counter.increment(0, 2);
+
+        try {
+            counter.flush((delta, offsets) -> {
+                throw new IllegalStateException("Table is not available");
+            });
+            fail("Flush failure is expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // Offsets are not committed, so the same changes are delivered once again
+        counter.increment(0, 1);
+        counter.increment(0, 2);
+        counter.increment(0, 3);
+        assertEquals(3, counter.getPendingDelta());
+    }
+}
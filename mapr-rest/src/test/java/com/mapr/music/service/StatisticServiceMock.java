@@ -9,7 +9,8 @@ import javax.inject.Named;
 
 /**
  * Wrapper for actual {@link CdcStatisticService}, since {@link CdcStatisticService} has {@link javax.ejb.Startup}
- * annotation and can not be created at test execution time.
+ * annotation and can not be created at test execution time. Changelog dispatcher is not used, since the wrapped service
+ * is not initialized.
  */
 public class StatisticServiceMock implements StatisticService {
 
@@ -18,7 +19,7 @@ public class StatisticServiceMock implements StatisticService {
     @Inject
     public StatisticServiceMock(@Named("statisticDao") StatisticDao statisticDao, @Named("albumDao") AlbumDao albumDao,
                                 @Named("artistDao") ArtistDao artistDao) {
-        this.actualService = new CdcStatisticService(statisticDao, albumDao, artistDao);
+        this.actualService = new CdcStatisticService(statisticDao, albumDao, artistDao, null);
     }
 
     @Override